@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.After;
+import org.junit.Test;
+
+public class ContentIdCacheTest {
+
+	private static final long OLD = 1000000000000L;
+
+	private final ContentIdCache cache = ContentIdCache.getInstance();
+
+	private final File file = new File("a.txt"); //$NON-NLS-1$
+
+	private final byte[] rawId = raw(ObjectId
+			.fromString("4b825dc642cb6eb9a060e54bf8d69288fbee4904")); //$NON-NLS-1$
+
+	@After
+	public void tearDown() {
+		cache.clear();
+	}
+
+	@Test
+	public void testHit() {
+		cache.put(file, 10, OLD, null, rawId, 0);
+		assertArrayEquals(rawId, cache.get(file, 10, OLD, null));
+	}
+
+	@Test
+	public void testOffset() {
+		byte[] buffer = new byte[rawId.length + 5];
+		System.arraycopy(rawId, 0, buffer, 5, rawId.length);
+		cache.put(file, 10, OLD, null, buffer, 5);
+		assertArrayEquals(rawId, cache.get(file, 10, OLD, null));
+	}
+
+	@Test
+	public void testChangedFile() {
+		cache.put(file, 10, OLD, null, rawId, 0);
+		assertNull(cache.get(file, 11, OLD, null));
+		assertNull(cache.get(file, 10, OLD + 1, null));
+		assertNull(cache.get(file, 10, OLD, "true")); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testRacyFileNotCached() {
+		long now = System.currentTimeMillis();
+		cache.put(file, 10, now, null, rawId, 0);
+		assertNull(cache.get(file, 10, now, null));
+	}
+
+	@Test
+	public void testZeroIdNotCached() {
+		cache.put(file, 10, OLD, null, raw(ObjectId.zeroId()), 0);
+		assertNull(cache.get(file, 10, OLD, null));
+	}
+
+	private static byte[] raw(ObjectId objectId) {
+		byte[] result = new byte[20];
+		objectId.copyRawTo(result, 0);
+		return result;
+	}
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RepositoryMetadataWatcherTest {
+
+	private File gitDir;
+
+	private Repository repository;
+
+	private RepositoryMetadataWatcher watcher;
+
+	@Before
+	public void setUp() throws IOException {
+		gitDir = File.createTempFile("watcher", ".git"); //$NON-NLS-1$ //$NON-NLS-2$
+		gitDir.delete();
+		assertTrue(new File(gitDir, "refs/heads").mkdirs()); //$NON-NLS-1$
+		assertTrue(new File(gitDir, "refs/tags").mkdirs()); //$NON-NLS-1$
+		write(new File(gitDir, "HEAD"), "ref: refs/heads/master\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		// files modified just now are racy and reported as changed again
+		long settled = System.currentTimeMillis() - 20000;
+		for (String path : new String[] { "HEAD", "refs", "refs/heads", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				"refs/tags" }) //$NON-NLS-1$
+			assertTrue(new File(gitDir, path).setLastModified(settled));
+		repository = mock(Repository.class);
+		when(repository.getDirectory()).thenReturn(gitDir);
+		when(repository.getIndexFile()).thenReturn(new File(gitDir, "index")); //$NON-NLS-1$
+		watcher = new RepositoryMetadataWatcher();
+		// initial state
+		assertTrue(watcher.hasChanged(repository));
+		assertFalse(watcher.hasChanged(repository));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.delete(gitDir, FileUtils.RECURSIVE);
+	}
+
+	@Test
+	public void testIndexChange() throws IOException {
+		File index = new File(gitDir, "index"); //$NON-NLS-1$
+		write(index, "index"); //$NON-NLS-1$
+		touch(index);
+		assertTrue(watcher.hasChanged(repository));
+		assertFalse(watcher.hasChanged(repository));
+	}
+
+	@Test
+	public void testRacyIndexChange() throws IOException {
+		File index = new File(gitDir, "index"); //$NON-NLS-1$
+		write(index, "index1"); //$NON-NLS-1$
+		long modified = System.currentTimeMillis();
+		assertTrue(index.setLastModified(modified));
+		assertTrue(watcher.hasChanged(repository));
+		// same length and modification time, as after a second update within
+		// the timestamp resolution of the file system
+		write(index, "index2"); //$NON-NLS-1$
+		assertTrue(index.setLastModified(modified));
+		assertTrue(watcher.hasChanged(repository));
+	}
+
+	@Test
+	public void testRacyRefUpdate() throws IOException {
+		File heads = new File(gitDir, "refs/heads"); //$NON-NLS-1$
+		write(new File(heads, "a"), "0000000000000000000000000000000000000000\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		long modified = System.currentTimeMillis();
+		assertTrue(heads.setLastModified(modified));
+		assertTrue(watcher.hasChanged(repository));
+		// a second ref added to the folder within the same tick
+		write(new File(heads, "b"), "0000000000000000000000000000000000000000\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue(heads.setLastModified(modified));
+		assertTrue(watcher.hasChanged(repository));
+	}
+
+	@Test
+	public void testHeadChange() throws IOException {
+		File head = new File(gitDir, "HEAD"); //$NON-NLS-1$
+		write(head, "ref: refs/heads/topic-branch\n"); //$NON-NLS-1$
+		touch(head);
+		assertTrue(watcher.hasChanged(repository));
+		assertFalse(watcher.hasChanged(repository));
+	}
+
+	@Test
+	public void testNewRefInNewFolder() throws IOException {
+		File folder = new File(gitDir, "refs/heads/feature"); //$NON-NLS-1$
+		assertTrue(folder.mkdir());
+		touch(folder);
+		touch(folder.getParentFile());
+		assertTrue(watcher.hasChanged(repository));
+		assertFalse(watcher.hasChanged(repository));
+
+		// a ref added to the new folder is detected as well
+		write(new File(folder, "a"), "0000000000000000000000000000000000000000\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		touch(folder);
+		assertTrue(watcher.hasChanged(repository));
+		assertFalse(watcher.hasChanged(repository));
+	}
+
+	@Test
+	public void testDeletedFolder() throws IOException {
+		File tags = new File(gitDir, "refs/tags"); //$NON-NLS-1$
+		FileUtils.delete(tags);
+		touch(tags.getParentFile());
+		assertTrue(watcher.hasChanged(repository));
+		assertFalse(watcher.hasChanged(repository));
+	}
+
+	private int touches;
+
+	private void touch(File file) {
+		// use a modification time which differs from the previous ones, also
+		// on file systems with a resolution of seconds, but is too old to be
+		// racy
+		touches++;
+		assertTrue(file.setLastModified(System.currentTimeMillis() - 10000
+				- touches * 1000));
+	}
+
+	private static void write(File file, String content) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8")); //$NON-NLS-1$
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangedPathIndexTest extends LocalDiskRepositoryTestCase {
+
+	private FileRepository db;
+
+	private TestRepository<FileRepository> util;
+
+	private File file;
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		db = createWorkRepository();
+		util = new TestRepository<FileRepository>(db);
+		file = new File(db.getDirectory(), "test.paths");
+	}
+
+	@Test
+	public void testFilters() throws Exception {
+		RevBlob a = util.blob("a");
+		RevBlob b = util.blob("b");
+		RevCommit c1 = util.commit(util.tree(util.file("src/a.txt", a)));
+		RevCommit c2 = util.commit(
+				util.tree(util.file("src/a.txt", a), util.file("doc/b.txt", b)),
+				c1);
+		RevCommit c3 = util.commit(
+				util.tree(util.file("src/a.txt", a), util.file("doc/b.txt", b)),
+				c2);
+		ChangedPathIndex index = writeAndRead(c1, c2, c3);
+
+		assertEquals(3, index.getCommitCount());
+		assertTrue(index.mightChange(c1, paths("src/a.txt")));
+		assertTrue(index.mightChange(c1, paths("src")));
+		assertTrue(index.mightChange(c2, paths("doc/b.txt")));
+		assertTrue(index.mightChange(c2, paths("src/a.txt", "doc")));
+		assertFalse(index.mightChange(c3, paths("src/a.txt")));
+		assertFalse(index.mightChange(c3, paths("doc/b.txt")));
+		// unknown commits might change anything
+		assertTrue(index.mightChange(ObjectId.zeroId(), paths("src/a.txt")));
+	}
+
+	@Test
+	public void testLayers() throws Exception {
+		RevBlob a = util.blob("a");
+		RevBlob b = util.blob("b");
+		RevCommit c1 = util.commit(util.tree(util.file("src/a.txt", a)));
+		RevCommit c2 = util.commit(
+				util.tree(util.file("src/a.txt", a), util.file("doc/b.txt", b)),
+				c1);
+		ChangedPathIndex base = writeAndRead(c1);
+		File next = new File(db.getDirectory(), "test2.paths");
+		ChangedPathIndex.write(next, base, filters(c2));
+		ChangedPathIndex index = ChangedPathIndex.read(next, 2, base);
+
+		assertEquals(2, index.getCommitCount());
+		assertEquals(1, index.getLayerCommitCount());
+		assertTrue(index.contains(c1));
+		assertTrue(index.contains(c2));
+		assertTrue(index.mightChange(c1, paths("src/a.txt")));
+		assertFalse(index.mightChange(c1, paths("doc/b.txt")));
+		assertTrue(index.mightChange(c2, paths("doc/b.txt")));
+		assertFalse(index.mightChange(c2, paths("src/a.txt")));
+
+		Map<ObjectId, byte[]> filters = new HashMap<ObjectId, byte[]>();
+		index.getLayerFilters(filters);
+		assertEquals(Collections.singleton(c2.copy()), filters.keySet());
+	}
+
+	@Test
+	public void testTooManyChanges() throws Exception {
+		RevBlob a = util.blob("a");
+		List<DirCacheEntry> files = new ArrayList<DirCacheEntry>();
+		for (int i = 0; i <= ChangedPathIndex.MAX_CHANGED_PATHS; i++)
+			files.add(util.file("f" + i, a));
+		RevCommit c = util.commit(util.tree(files
+				.toArray(new DirCacheEntry[files.size()])));
+		ChangedPathIndex index = writeAndRead(c);
+		assertTrue(index.contains(c));
+		assertTrue(index.mightChange(c, paths("x")));
+	}
+
+	@Test
+	public void testWalkWithIndex() throws Exception {
+		RevBlob a1 = util.blob("a1");
+		RevBlob a2 = util.blob("a2");
+		RevBlob b1 = util.blob("b1");
+		RevBlob b2 = util.blob("b2");
+		RevCommit c1 = util.commit(util.tree(util.file("a", a1),
+				util.file("b", b1)));
+		RevCommit c2 = util.commit(util.tree(util.file("a", a1),
+				util.file("b", b2)), c1);
+		RevCommit c3 = util.commit(util.tree(util.file("a", a2),
+				util.file("b", b2)), c2);
+		RevCommit side = util.commit(util.tree(util.file("a", a1),
+				util.file("b", b1)), c1);
+		RevCommit merge = util.commit(util.tree(util.file("a", a2),
+				util.file("b", b2)), c3, side);
+		RevCommit c4 = util.commit(util.tree(util.file("a", a2),
+				util.file("b", b1)), merge);
+		ChangedPathIndex index = writeAndRead(c1, c2, c3, side, c4);
+
+		for (String path : new String[] { "a", "b" }) {
+			RevWalk plain = new RevWalk(db);
+			ChangedPathFilter.setFilter(plain, (ChangedPathIndex) null,
+					paths(path));
+			plain.markStart(plain.parseCommit(c4));
+			RevWalk indexed = new RevWalk(db);
+			ChangedPathFilter.setFilter(indexed, index, paths(path));
+			indexed.markStart(indexed.parseCommit(c4));
+			assertEquals(list(plain), list(indexed));
+		}
+	}
+
+	private ChangedPathIndex writeAndRead(RevCommit... commits)
+			throws Exception {
+		ChangedPathIndex.write(file, null, filters(commits));
+		return ChangedPathIndex.read(file, 1, null);
+	}
+
+	private Map<ObjectId, byte[]> filters(RevCommit... commits)
+			throws Exception {
+		Map<ObjectId, byte[]> filters = new HashMap<ObjectId, byte[]>();
+		for (RevCommit c : commits) {
+			// TestRepository returns unparsed commits
+			RevCommit commit = util.getRevWalk().parseCommit(c);
+			RevCommit parent = null;
+			if (commit.getParentCount() == 1)
+				parent = util.getRevWalk().parseCommit(commit.getParent(0));
+			filters.put(commit.copy(), ChangedPathIndex.createFilter(db,
+					commit, parent));
+		}
+		return filters;
+	}
+
+	private static Collection<String> paths(String... paths) {
+		return Arrays.asList(paths);
+	}
+
+	private static List<ObjectId> list(RevWalk walk) {
+		List<ObjectId> result = new ArrayList<ObjectId>();
+		for (RevCommit commit : walk)
+			result.add(commit.copy());
+		Collections.reverse(result);
+		return result;
+	}
+}
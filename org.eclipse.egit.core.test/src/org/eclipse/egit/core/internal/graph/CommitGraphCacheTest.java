@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommitGraphCacheTest extends LocalDiskRepositoryTestCase {
+
+	private FileRepository db;
+
+	private TestRepository<FileRepository> util;
+
+	private File folder;
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		db = createWorkRepository();
+		util = new TestRepository<FileRepository>(db);
+		folder = new File(db.getDirectory(), "commitgraph");
+	}
+
+	@Test
+	public void testIncrementalUpdate() throws Exception {
+		RevCommit a = util.commit().create();
+		RevCommit b = util.commit().parent(a).create();
+		util.branch("master").update(b);
+		CommitGraphCache cache = new CommitGraphCache(folder, "test");
+		CommitGraph first = cache.updateGraph(db, new NullProgressMonitor());
+		assertEquals(2, first.getCommitCount());
+		assertSame(first, cache.updateGraph(db, new NullProgressMonitor()));
+
+		RevCommit c = util.commit().parent(b).create();
+		RevCommit d = util.commit().parent(a).create();
+		util.branch("master").update(c);
+		util.branch("side").update(d);
+		CommitGraph second = cache.updateGraph(db, new NullProgressMonitor());
+		assertEquals(4, second.getCommitCount());
+		assertEquals(3, second.getGeneration(second.find(c)));
+		assertEquals(2, second.getGeneration(second.find(d)));
+		// the first graph is still readable, its file was not replaced
+		assertEquals(2, first.getCommitCount());
+		assertTrue(first.find(b) >= 0);
+
+		// a new cache reads the latest generation
+		CommitGraphCache reopened = new CommitGraphCache(folder, "test");
+		assertEquals(4, reopened.updateGraph(db, new NullProgressMonitor())
+				.getCommitCount());
+		assertEquals(1, folder.list().length);
+	}
+
+	@Test
+	public void testLayeredUpdate() throws Exception {
+		RevCommit tip = util.commit().create();
+		for (int i = 0; i < 3; i++)
+			tip = util.commit().parent(tip).create();
+		util.branch("master").update(tip);
+		CommitGraphCache cache = new CommitGraphCache(folder, "test");
+		assertEquals(4, cache.updateGraph(db, new NullProgressMonitor())
+				.getCommitCount());
+
+		// a small update is written as a new layer
+		RevCommit a = util.commit().parent(tip).create();
+		util.branch("master").update(a);
+		CommitGraph graph = cache.updateGraph(db, new NullProgressMonitor());
+		assertEquals(5, graph.getCommitCount());
+		assertEquals(1, graph.getLayerCommitCount());
+		assertEquals(4, graph.getBase().getLayerCommitCount());
+		assertEquals(5, graph.getGeneration(graph.find(a)));
+		assertEquals(tip, graph.getId(graph.getParent(graph.find(a), 0)));
+		assertEquals(2, folder.list().length);
+
+		// a new cache reads all layers
+		CommitGraphCache reopened = new CommitGraphCache(folder, "test");
+		graph = reopened.updateGraph(db, new NullProgressMonitor());
+		assertEquals(5, graph.getCommitCount());
+		assertNotNull(graph.getBase());
+
+		// an update at least half as large as a layer is merged with it
+		RevCommit b = util.commit().parent(a).create();
+		RevCommit c = util.commit().parent(b).create();
+		util.branch("master").update(c);
+		graph = reopened.updateGraph(db, new NullProgressMonitor());
+		assertEquals(7, graph.getCommitCount());
+		assertEquals(7, graph.getLayerCommitCount());
+		assertNull(graph.getBase());
+		assertEquals(7, graph.getGeneration(graph.find(c)));
+		assertEquals(1, folder.list().length);
+	}
+}
@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdSubclassMap;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommitGraphTest extends LocalDiskRepositoryTestCase {
+
+	private FileRepository db;
+
+	private TestRepository<FileRepository> util;
+
+	private File file;
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		db = createWorkRepository();
+		util = new TestRepository<FileRepository>(db);
+		file = new File(db.getDirectory(), "test.graph");
+	}
+
+	@Test
+	public void testWriteAndRead() throws Exception {
+		RevCommit a = util.commit().create();
+		RevCommit b = util.commit().parent(a).create();
+		RevCommit c = util.commit().parent(a).create();
+		RevCommit d = util.commit().parent(a).create();
+		RevCommit m = util.commit().parent(b).parent(c).create();
+		RevCommit o = util.commit().parent(m).parent(b).parent(c).parent(d)
+				.create();
+
+		CommitGraph.write(file, null, load(null, o));
+		CommitGraph graph = CommitGraph.read(file, 1, null);
+
+		assertEquals(6, graph.getCommitCount());
+		assertEquals(-1, graph.find(ObjectId.zeroId()));
+		assertParents(graph, a);
+		assertParents(graph, b, a);
+		assertParents(graph, m, b, c);
+		assertParents(graph, o, m, b, c, d);
+		int position = graph.find(o);
+		assertEquals(o, graph.getId(position));
+		assertEquals(util.getRevWalk().parseCommit(o).getCommitTime(),
+				graph.getCommitTime(position));
+		assertEquals(1, graph.getGeneration(graph.find(a)));
+		assertEquals(3, graph.getGeneration(graph.find(m)));
+		assertEquals(4, graph.getGeneration(position));
+	}
+
+	@Test
+	public void testIncrementalLoad() throws Exception {
+		RevCommit a = util.commit().create();
+		RevCommit b = util.commit().parent(a).create();
+		CommitGraph.write(file, null, load(null, b));
+		CommitGraph graph = CommitGraph.read(file, 1, null);
+
+		RevCommit c = util.commit().parent(b).create();
+		List<CommitNode> nodes = load(graph, c);
+		assertEquals(3, nodes.size());
+		assertEquals(a, nodes.get(0));
+		assertEquals(c, nodes.get(2));
+		assertEquals(3, nodes.get(2).generation);
+
+		File next = new File(db.getDirectory(), "test2.graph");
+		CommitGraph.write(next, null, nodes);
+		assertEquals(3, CommitGraph.read(next, 2, null).getCommitCount());
+	}
+
+	@Test
+	public void testLayers() throws Exception {
+		RevCommit a = util.commit().create();
+		RevCommit b = util.commit().parent(a).create();
+		CommitGraph.write(file, null, load(null, b));
+		CommitGraph base = CommitGraph.read(file, 1, null);
+
+		RevCommit c = util.commit().parent(b).create();
+		RevCommit m = util.commit().parent(c).parent(a).create();
+		List<CommitNode> nodes = loadMissing(base, m);
+		assertEquals(Arrays.asList(c, m), nodes);
+
+		File next = new File(db.getDirectory(), "test2.graph");
+		CommitGraph.write(next, base, nodes);
+		CommitGraph graph = CommitGraph.read(next, 2, base);
+		assertEquals(4, graph.getCommitCount());
+		assertEquals(2, graph.getLayerCommitCount());
+		assertTrue(graph.find(c) >= 2);
+		assertEquals(base.find(a), graph.find(a));
+		assertParents(graph, c, b);
+		assertParents(graph, m, c, a);
+		assertEquals(4, graph.getGeneration(graph.find(m)));
+
+		// a layer is only valid on top of the base it was written for
+		try {
+			CommitGraph.read(next, 2, null);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+
+		List<CommitNode> layerNodes = new ArrayList<CommitNode>();
+		graph.getLayerNodes(layerNodes);
+		assertEquals(2, layerNodes.size());
+		for (CommitNode node : layerNodes)
+			if (node.equals(m)) {
+				assertEquals(2, node.parents.length);
+				assertEquals(a, node.parents[1]);
+				assertEquals(4, node.generation);
+			}
+	}
+
+	@Test
+	public void testFindExclusive() throws Exception {
+		RevCommit a = util.commit().create();
+		RevCommit b = util.commit().parent(a).create();
+		RevCommit c = util.commit().parent(b).create();
+		RevCommit d = util.commit().parent(a).create();
+		RevCommit m = util.commit().parent(c).parent(d).create();
+		RevCommit e = util.commit().parent(d).create();
+		RevCommit root = util.commit().create();
+		RevCommit f = util.commit().parent(root).parent(e).create();
+		CommitGraph.write(file, null, load(null, m, f));
+		CommitGraph graph = CommitGraph.read(file, 1, null);
+
+		List<Integer> onlyM = new ArrayList<Integer>();
+		List<Integer> onlyF = new ArrayList<Integer>();
+		graph.findExclusive(graph.find(m), graph.find(f), onlyM, onlyF);
+		assertEquals(Arrays.asList(m, c, b), ids(graph, onlyM));
+		assertEquals(Arrays.asList(f, e, root), ids(graph, onlyF));
+
+		onlyM.clear();
+		onlyF.clear();
+		graph.findExclusive(graph.find(m), graph.find(d), onlyM, onlyF);
+		assertEquals(Arrays.asList(m, c, b), ids(graph, onlyM));
+		assertTrue(onlyF.isEmpty());
+	}
+
+	@Test(expected = IOException.class)
+	public void testCorruptFile() throws Exception {
+		RevCommit a = util.commit().create();
+		CommitGraph.write(file, null, load(null, a));
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(28);
+			raf.write(~raf.read());
+		} finally {
+			raf.close();
+		}
+		CommitGraph.read(file, 1, null);
+	}
+
+	private void assertParents(CommitGraph graph, RevCommit commit,
+			RevCommit... parents) {
+		int position = graph.find(commit);
+		assertTrue(position >= 0);
+		assertEquals(parents.length, graph.getParentCount(position));
+		for (int i = 0; i < parents.length; i++)
+			assertEquals(parents[i], graph.getId(graph.getParent(position, i)));
+	}
+
+	private static List<ObjectId> ids(CommitGraph graph,
+			List<Integer> positions) {
+		List<ObjectId> result = new ArrayList<ObjectId>();
+		for (Integer position : positions)
+			result.add(graph.getId(position.intValue()));
+		return result;
+	}
+
+	private List<CommitNode> load(CommitGraph graph, RevCommit... tips)
+			throws IOException {
+		return createLoader(graph).load(Arrays.asList(tips),
+				new NullProgressMonitor());
+	}
+
+	private List<CommitNode> loadMissing(CommitGraph graph, RevCommit... tips)
+			throws IOException {
+		return createLoader(graph).loadMissing(Arrays.asList(tips),
+				new NullProgressMonitor());
+	}
+
+	private CommitNodeLoader<CommitNode> createLoader(CommitGraph graph) {
+		return new CommitNodeLoader<CommitNode>(db, graph,
+				new ObjectIdSubclassMap<CommitNode>()) {
+			@Override
+			protected CommitNode createNode(AnyObjectId id) {
+				return new CommitNode(id);
+			}
+		};
+	}
+}
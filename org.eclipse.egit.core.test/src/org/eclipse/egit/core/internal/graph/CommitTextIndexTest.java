@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.BitSet;
+
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommitTextIndexTest extends LocalDiskRepositoryTestCase {
+
+	private FileRepository db;
+
+	private TestRepository<FileRepository> util;
+
+	private int fileCount;
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		db = createWorkRepository();
+		util = new TestRepository<FileRepository>(db);
+	}
+
+	@Test
+	public void testCandidates() throws Exception {
+		RevCommit c1 = commit("Fix the parser\n\nBug: 4711");
+		RevCommit c2 = commit("Add a PARSING test");
+		RevCommit c3 = commit("Update documentation");
+		CommitTextIndex index = write(null, 0, c1, c2, c3);
+
+		assertEquals(3, index.getCommitCount());
+		assertEquals(0, index.find(c1));
+		assertEquals(2, index.find(c3));
+		assertEquals(-1, index.find(ObjectId.zeroId()));
+		assertEquals(c2, index.getId(1));
+		assertEquals(c2.getTree(), index.getTreeId(1));
+
+		assertEquals(positions(0, 1), index.getCandidates("pars"));
+		assertEquals(positions(0), index.getCandidates("FIX the"));
+		assertEquals(positions(0), index.getCandidates("g: 471"));
+		assertEquals(positions(), index.getCandidates("parser test"));
+		// identities of the test repository
+		assertEquals(positions(0, 1, 2), index.getCandidates("j. author"));
+		assertEquals(positions(0, 1, 2), index.getCandidates("example.com"));
+		assertNull(index.getCandidates(" :- "));
+	}
+
+	@Test
+	public void testCaseFolding() throws Exception {
+		// long s, final sigma and dotless i
+		RevCommit c1 = commit("Te\u017Ft \u03BB\u03CC\u03B3\u03BF\u03C2 \u0131d");
+		RevCommit c2 = commit("TEST \u039B\u038C\u0393\u039F\u03A3 ID");
+		CommitTextIndex index = write(null, 0, c1, c2);
+
+		assertEquals(positions(0, 1), index.getCandidates("test"));
+		assertEquals(positions(0, 1), index.getCandidates("\u017F"));
+		assertEquals(positions(0, 1),
+				index.getCandidates("\u03BB\u03CC\u03B3\u03BF\u03C3"));
+		assertEquals(positions(0, 1), index.getCandidates("Id"));
+	}
+
+	@Test
+	public void testUpdate() throws Exception {
+		RevCommit c1 = commit("first change");
+		RevCommit c2 = commit("second change");
+		CommitTextIndex base = write(null, 0, c1, c2);
+		RevCommit c3 = commit("third change");
+		RevCommit c4 = commit("another first");
+		CommitTextIndex index = write(base, 0, c3, c4);
+
+		assertEquals(4, index.getCommitCount());
+		assertEquals(2, index.getLayerCommitCount());
+		assertSame(base, index.getBase());
+		for (RevCommit c : new RevCommit[] { c1, c2, c3, c4 })
+			assertTrue(index.find(c) >= 0);
+		assertEquals(2, index.find(c3));
+		assertEquals(c1.getTree(), index.getTreeId(index.find(c1)));
+		assertEquals(positions(0, 1, 2), index.getCandidates("change"));
+		assertEquals(positions(0, 3), index.getCandidates("first"));
+		assertEquals(positions(3), index.getCandidates("another"));
+	}
+
+	@Test
+	public void testMergeLayers() throws Exception {
+		RevCommit c1 = commit("first change");
+		RevCommit c2 = commit("second change");
+		RevCommit c3 = commit("third change");
+		RevCommit c4 = commit("fourth change");
+		CommitTextIndex base = write(write(null, 0, c1, c2, c3), 0, c4);
+		RevCommit c5 = commit("another first");
+		// the top layer with one commit is merged, the first layer is not
+		CommitTextIndex index = write(base, 1, c5);
+
+		assertEquals(5, index.getCommitCount());
+		assertEquals(2, index.getLayerCommitCount());
+		assertSame(base.getBase(), index.getBase());
+		assertEquals(2, index.find(c3));
+		assertEquals(3, index.find(c4));
+		assertEquals(4, index.find(c5));
+		assertEquals(c4.getTree(), index.getTreeId(3));
+		assertEquals(positions(0, 1, 2, 3), index.getCandidates("change"));
+		assertEquals(positions(0, 4), index.getCandidates("first"));
+		assertEquals(positions(3), index.getCandidates("fourth"));
+	}
+
+	private RevCommit commit(String message) throws Exception {
+		return util.commit().message(message).create();
+	}
+
+	/**
+	 * Writes a layer, merging the layers of the base which are not more than
+	 * <code>factor</code> times larger than the commits to write
+	 */
+	private CommitTextIndex write(CommitTextIndex base, int factor,
+			RevCommit... commits) throws Exception {
+		CommitTextIndex.Update update = new CommitTextIndex.Update(base);
+		for (RevCommit commit : commits)
+			update.add(util.getRevWalk().parseCommit(commit));
+		// the base index is mapped from the previous file
+		int generation = ++fileCount;
+		File file = new File(db.getDirectory(), "test" + generation + ".text");
+		update.write(file, factor);
+		CommitTextIndex layerBase = base;
+		int size = commits.length;
+		while (layerBase != null
+				&& size * factor >= layerBase.getLayerCommitCount()) {
+			size += layerBase.getLayerCommitCount();
+			layerBase = layerBase.getBase();
+		}
+		return CommitTextIndex.read(file, generation, layerBase);
+	}
+
+	private static BitSet positions(int... positions) {
+		BitSet result = new BitSet();
+		for (int position : positions)
+			result.set(position);
+		return result;
+	}
+}
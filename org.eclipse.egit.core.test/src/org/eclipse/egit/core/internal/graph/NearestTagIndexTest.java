@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.egit.core.JobFamilies;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NearestTagIndexTest extends LocalDiskRepositoryTestCase {
+
+	private FileRepository db;
+
+	private TestRepository<FileRepository> util;
+
+	private NearestTagIndex index;
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		db = createWorkRepository();
+		util = new TestRepository<FileRepository>(db);
+		index = new NearestTagIndex(db);
+	}
+
+	@Test
+	public void testPreviousAndNextTag() throws Exception {
+		RevCommit a = util.commit().create();
+		RevCommit b = util.commit().parent(a).create();
+		RevCommit c = util.commit().parent(b).create();
+		RevCommit d = util.commit().parent(c).create();
+		RevCommit e = util.commit().parent(d).create();
+		util.update("refs/tags/v1", util.tag("v1", a));
+		util.update("refs/tags/v2", c);
+		util.update("refs/tags/v3", util.tag("v3", e));
+
+		assertNull(previous(a));
+		assertEquals("refs/tags/v2", next(a));
+		assertEquals("refs/tags/v1", previous(b));
+		assertEquals("refs/tags/v2", next(b));
+		assertEquals("refs/tags/v1", previous(c));
+		assertEquals("refs/tags/v3", next(c));
+		assertEquals("refs/tags/v2", previous(d));
+		assertEquals("refs/tags/v3", next(d));
+		assertEquals("refs/tags/v2", previous(e));
+		assertNull(next(e));
+	}
+
+	@Test
+	public void testMerge() throws Exception {
+		RevCommit a = util.commit().create();
+		RevCommit b = util.commit().parent(a).create();
+		RevCommit c = util.commit().parent(b).create();
+		RevCommit side = util.commit().parent(a).create();
+		RevCommit m = util.commit().parent(side).parent(c).create();
+		util.update("refs/tags/v1", a);
+		util.update("refs/tags/v2", b);
+		util.update("refs/tags/v3", m);
+
+		// the tag with the highest generation wins
+		assertEquals("refs/tags/v2", previous(m));
+		assertEquals("refs/tags/v1", previous(side));
+		assertEquals("refs/tags/v2", next(a));
+		assertEquals("refs/tags/v3", next(side));
+	}
+
+	@Test
+	public void testUnindexedCommitAndTagChange() throws Exception {
+		RevCommit a = util.commit().create();
+		RevCommit b = util.commit().parent(a).create();
+		util.update("refs/tags/v1", a);
+		assertEquals("refs/tags/v1", previous(b));
+		assertNull(next(b));
+
+		RevCommit c = util.commit().parent(b).create();
+		assertEquals("refs/tags/v1", previous(c));
+
+		util.update("refs/tags/v2", c);
+		assertEquals("refs/tags/v2", next(b));
+		assertEquals("refs/tags/v1", previous(c));
+	}
+
+	@Test
+	public void testBuildOnRequest() throws Exception {
+		RevCommit a = util.commit().create();
+		RevCommit b = util.commit().parent(a).create();
+		util.update("refs/tags/v1", a);
+		NearestTagIndex registered = NearestTagIndex.getIndex(db);
+		assertFalse(registered.isBuilt());
+		NearestTagIndex.updateIfRequested(db, new NullProgressMonitor());
+		assertFalse(registered.isBuilt());
+
+		registered.requestBuild();
+		NearestTagIndex.updateIfRequested(db, new NullProgressMonitor());
+		assertTrue(registered.isBuilt());
+		Job.getJobManager().join(JobFamilies.COMMIT_GRAPH_UPDATE, null);
+
+		// a changed tag requires another build
+		util.update("refs/tags/v2", b);
+		assertFalse(registered.isBuilt());
+	}
+
+	private String previous(RevCommit commit) throws Exception {
+		return index.getPreviousTag(commit, new NullProgressMonitor());
+	}
+
+	private String next(RevCommit commit) throws Exception {
+		return index.getNextTag(commit, new NullProgressMonitor());
+	}
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.egit.core.JobFamilies;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReachabilityIndexTest extends LocalDiskRepositoryTestCase {
+
+	private FileRepository db;
+
+	private TestRepository<FileRepository> util;
+
+	private ReachabilityIndex index;
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		db = createWorkRepository();
+		util = new TestRepository<FileRepository>(db);
+		index = new ReachabilityIndex(db);
+	}
+
+	@Test
+	public void testBranchesAndTags() throws Exception {
+		RevCommit a = util.commit().create();
+		RevCommit b = util.commit().parent(a).create();
+		RevCommit c = util.commit().parent(a).create();
+		RevCommit m = util.commit().parent(b).parent(c).create();
+		util.branch("master").update(m);
+		util.branch("side").update(c);
+		util.update("refs/tags/v1", util.tag("v1", b));
+
+		assertRefs(a, "refs/heads/master", "refs/heads/side", "refs/tags/v1");
+		assertRefs(b, "refs/heads/master", "refs/tags/v1");
+		assertRefs(c, "refs/heads/master", "refs/heads/side");
+		assertRefs(m, "refs/heads/master");
+		assertEquals(b, index.getTarget("refs/tags/v1"));
+
+		assertEquals(1, getGeneration(a));
+		assertEquals(2, getGeneration(b));
+		assertEquals(2, getGeneration(c));
+		assertEquals(3, getGeneration(m));
+	}
+
+	@Test
+	public void testBuildOnRequest() throws Exception {
+		RevCommit a = util.commit().create();
+		util.branch("master").update(a);
+		ReachabilityIndex registered = ReachabilityIndex.getIndex(db);
+		assertFalse(registered.isBuilt());
+		ReachabilityIndex.updateIfRequested(db, new NullProgressMonitor());
+		assertFalse(registered.isBuilt());
+
+		registered.requestBuild();
+		ReachabilityIndex.updateIfRequested(db, new NullProgressMonitor());
+		assertTrue(registered.isBuilt());
+		Job.getJobManager().join(JobFamilies.COMMIT_GRAPH_UPDATE, null);
+	}
+
+	@Test
+	public void testIncrementalUpdate() throws Exception {
+		RevCommit a = util.commit().create();
+		RevCommit b = util.commit().parent(a).create();
+		util.branch("master").update(b);
+		util.branch("side").update(a);
+		assertRefs(a, "refs/heads/master", "refs/heads/side");
+
+		// fast-forward
+		RevCommit c = util.commit().parent(b).create();
+		util.branch("side").update(c);
+		assertRefs(b, "refs/heads/master", "refs/heads/side");
+		assertRefs(c, "refs/heads/side");
+		assertEquals(3, getGeneration(c));
+
+		// rewind
+		RevCommit d = util.commit().parent(a).create();
+		util.branch("side").update(d);
+		assertRefs(b, "refs/heads/master");
+		assertRefs(c);
+		assertRefs(d, "refs/heads/side");
+		assertRefs(a, "refs/heads/master", "refs/heads/side");
+
+		// delete and add
+		RefUpdate delete = db.updateRef("refs/heads/side");
+		delete.setForceUpdate(true);
+		delete.delete();
+		util.branch("other").update(c);
+		assertRefs(a, "refs/heads/master", "refs/heads/other");
+		assertRefs(c, "refs/heads/other");
+		assertRefs(d);
+	}
+
+	private void assertRefs(RevCommit commit, String... expected)
+			throws Exception {
+		List<String> refs = index.getRefsContaining(commit,
+				new NullProgressMonitor());
+		Set<String> actual = new HashSet<String>(refs);
+		assertEquals(refs.size(), actual.size());
+		assertEquals(new HashSet<String>(Arrays.asList(expected)), actual);
+	}
+
+	private int getGeneration(RevCommit commit) throws Exception {
+		int generation = index.getGeneration(commit,
+				new NullProgressMonitor());
+		assertTrue(generation > 0);
+		return generation;
+	}
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.indexdiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Test;
+
+public class IndexDiffSchedulerTest {
+
+	private static final long TIMEOUT = 10;
+
+	private final List<String> order = Collections
+			.synchronizedList(new ArrayList<String>());
+
+	@Test
+	public void testPoolSize() throws Exception {
+		final IndexDiffScheduler scheduler = new IndexDiffScheduler(2,
+				IndexDiffScheduler.MAX_DEFERRAL);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final CountDownLatch acquired = new CountDownLatch(2);
+		final CountDownLatch waiting = new CountDownLatch(4);
+		final CountDownLatch done = new CountDownLatch(1);
+		Thread[] threads = new Thread[6];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					if (!scheduler.acquire(false, new WaitingMonitor(waiting)))
+						return;
+					try {
+						int current = running.incrementAndGet();
+						synchronized (maxRunning) {
+							if (current > maxRunning.get())
+								maxRunning.set(current);
+						}
+						acquired.countDown();
+						done.await();
+						running.decrementAndGet();
+					} catch (InterruptedException e) {
+						// ends the thread
+					} finally {
+						scheduler.release();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		assertTrue(acquired.await(TIMEOUT, TimeUnit.SECONDS));
+		assertTrue(waiting.await(TIMEOUT, TimeUnit.SECONDS));
+		assertEquals(2, running.get());
+		done.countDown();
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(2, maxRunning.get());
+	}
+
+	@Test
+	public void testVisibleFirst() throws Exception {
+		IndexDiffScheduler scheduler = new IndexDiffScheduler(1,
+				IndexDiffScheduler.MAX_DEFERRAL);
+		assertTrue(scheduler.acquire(false, new NullProgressMonitor()));
+		Thread hidden = start(scheduler, "hidden", false);
+		Thread visible = start(scheduler, "visible", true);
+		scheduler.release();
+		hidden.join();
+		visible.join();
+		assertEquals(Arrays.asList("visible", "hidden"), order);
+	}
+
+	@Test
+	public void testNoStarvation() throws Exception {
+		// every request waited longer than the maximum deferral
+		IndexDiffScheduler scheduler = new IndexDiffScheduler(1, 0);
+		assertTrue(scheduler.acquire(false, new NullProgressMonitor()));
+		Thread hidden = start(scheduler, "hidden", false);
+		Thread visible = start(scheduler, "visible", true);
+		scheduler.release();
+		hidden.join();
+		visible.join();
+		assertEquals(Arrays.asList("hidden", "visible"), order);
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		IndexDiffScheduler scheduler = new IndexDiffScheduler(1,
+				IndexDiffScheduler.MAX_DEFERRAL);
+		assertTrue(scheduler.acquire(false, new NullProgressMonitor()));
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		assertFalse(scheduler.acquire(true, monitor));
+		scheduler.release();
+		assertTrue(scheduler.acquire(false, new NullProgressMonitor()));
+		scheduler.release();
+	}
+
+	private Thread start(final IndexDiffScheduler scheduler, final String name,
+			final boolean visible) throws InterruptedException {
+		CountDownLatch waiting = new CountDownLatch(1);
+		final WaitingMonitor monitor = new WaitingMonitor(waiting);
+		Thread thread = new Thread() {
+			public void run() {
+				if (scheduler.acquire(visible, monitor)) {
+					order.add(name);
+					scheduler.release();
+				}
+			}
+		};
+		thread.start();
+		// the request is enqueued
+		assertTrue(waiting.await(TIMEOUT, TimeUnit.SECONDS));
+		return thread;
+	}
+
+	/**
+	 * Counts down the latch when a request first has to wait for a slot
+	 */
+	private static class WaitingMonitor extends NullProgressMonitor {
+		private final CountDownLatch waiting;
+
+		private boolean counted;
+
+		WaitingMonitor(CountDownLatch waiting) {
+			this.waiting = waiting;
+		}
+
+		@Override
+		public boolean isCanceled() {
+			if (!counted) {
+				counted = true;
+				waiting.countDown();
+			}
+			return super.isCanceled();
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.indexdiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.eclipse.egit.core.internal.indexdiff.PathTrie.Node;
+import org.junit.Test;
+
+/**
+ * Compares the allocations of an incremental update of a single path in a
+ * large status with those of copying the status sets, as IndexDiffData did
+ * before it used a {@link PathTrie}. Allocations are counted instead of timed
+ * so that the result does not depend on the machine.
+ */
+public class PathTrieBenchmarkTest {
+
+	private static final int FOLDERS = 500;
+
+	private static final int FILES_PER_FOLDER = 100;
+
+	private static final String CHANGED_PATH = "project/src/folder7/"
+			+ "Changed.java";
+
+	@Test
+	public void testSinglePathUpdateAllocatesAlongThePath() {
+		PathTrie.Builder builder = new PathTrie.Builder();
+		for (int i = 0; i < FOLDERS; i++)
+			for (int j = 0; j < FILES_PER_FOLDER; j++)
+				builder.add("project/src/folder" + i + "/File" + j + ".java",
+						j % 2 == 0 ? PathTrie.UNTRACKED : PathTrie.IGNORED);
+		PathTrie trie = builder.build();
+		// copying the sets allocates one entry per path
+		int copiedEntries = trie.size(PathTrie.UNTRACKED)
+				+ trie.size(PathTrie.IGNORED);
+		assertEquals(FOLDERS * FILES_PER_FOLDER, copiedEntries);
+
+		PathTrie updated = trie.edit().set(CHANGED_PATH, PathTrie.UNTRACKED,
+				PathTrie.ALL).build();
+		assertEquals(trie.size(PathTrie.UNTRACKED) + 1,
+				updated.size(PathTrie.UNTRACKED));
+
+		Map<Node, Node> shared = new IdentityHashMap<Node, Node>();
+		collect(trie.root, shared);
+		int[] allocated = new int[2];
+		countAllocated(updated.root, shared, allocated);
+		// the root and one node per path segment
+		assertEquals(5, allocated[0]);
+		// the child arrays of the nodes on the path are copied
+		int childSlots = allocated[1];
+		assertTrue("trie update allocated " + childSlots
+				+ " child slots, copying the sets " + copiedEntries
+				+ " entries", childSlots * 50 < copiedEntries);
+	}
+
+	private static void collect(Node node, Map<Node, Node> nodes) {
+		nodes.put(node, node);
+		for (Node child : node.children)
+			collect(child, nodes);
+	}
+
+	/**
+	 * Counts the nodes which are not shared with the old trie and the length
+	 * of their child arrays
+	 */
+	private static void countAllocated(Node node, Map<Node, Node> shared,
+			int[] allocated) {
+		if (shared.containsKey(node))
+			return;
+		allocated[0]++;
+		allocated[1] += node.children.length;
+		for (Node child : node.children)
+			countAllocated(child, shared, allocated);
+	}
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.indexdiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class PathTrieTest {
+
+	@Test
+	public void testSetView() {
+		PathTrie trie = new PathTrie.Builder()
+				.addAll(Arrays.asList("a/b/c.txt", "a/d.txt", "e.txt"),
+						PathTrie.MODIFIED)
+				.add("f/", PathTrie.UNTRACKED_FOLDER).build();
+
+		Set<String> modified = trie.asSet(PathTrie.MODIFIED);
+		assertEquals(3, modified.size());
+		assertEquals(new HashSet<String>(Arrays.asList("a/b/c.txt",
+				"a/d.txt", "e.txt")), new HashSet<String>(modified));
+		assertTrue(modified.contains("a/d.txt"));
+		assertFalse(modified.contains("a"));
+		assertFalse(modified.contains("a/b/"));
+
+		Set<String> untrackedFolders = trie.asSet(PathTrie.UNTRACKED_FOLDER);
+		assertEquals(1, untrackedFolders.size());
+		assertEquals("f/", untrackedFolders.iterator().next());
+		assertTrue(untrackedFolders.contains("f/"));
+		assertFalse(untrackedFolders.contains("f"));
+
+		assertTrue(trie.asSet(PathTrie.ADDED).isEmpty());
+		assertFalse(trie.asSet(PathTrie.ADDED).iterator().hasNext());
+	}
+
+	@Test
+	public void testFolderQueries() {
+		PathTrie trie = new PathTrie.Builder()
+				.add("p/src/A.java", PathTrie.ADDED)
+				.add("p/src/B.java", PathTrie.MODIFIED)
+				.add("p/doc/c.txt", PathTrie.CONFLICTING)
+				.add("p/bin", PathTrie.IGNORED).build();
+
+		assertEquals(PathTrie.ADDED | PathTrie.MODIFIED,
+				trie.getDescendantFlags("p/src"));
+		assertEquals(PathTrie.ADDED | PathTrie.MODIFIED,
+				trie.getDescendantFlags("p/src/"));
+		assertEquals(PathTrie.CONFLICTING, trie.getDescendantFlags("p/doc"));
+		assertEquals(PathTrie.ADDED | PathTrie.MODIFIED
+				| PathTrie.CONFLICTING | PathTrie.IGNORED,
+				trie.getDescendantFlags(""));
+		assertEquals(0, trie.getDescendantFlags("p/unknown"));
+
+		assertEquals(PathTrie.IGNORED,
+				trie.getAncestorOrSelfFlags("p/bin/classes/X.class"));
+		assertEquals(PathTrie.IGNORED, trie.getAncestorOrSelfFlags("p/bin"));
+		assertEquals(0, trie.getAncestorOrSelfFlags("p/binary"));
+		assertEquals(PathTrie.ADDED, trie.getFlags("p/src/A.java"));
+		assertEquals(0, trie.getFlags("p/src"));
+	}
+
+	@Test
+	public void testEditSharesUnchangedNodes() {
+		PathTrie base = new PathTrie.Builder()
+				.add("a/b/c.txt", PathTrie.MODIFIED)
+				.add("a/d.txt", PathTrie.UNTRACKED)
+				.add("x/y.txt", PathTrie.ADDED).build();
+
+		PathTrie edited = base.edit()
+				.set("a/b/c.txt", 0, PathTrie.ALL)
+				.set("a/e.txt", PathTrie.CONFLICTING | PathTrie.MODIFIED,
+						PathTrie.ALL).build();
+
+		// the base trie is not modified
+		assertEquals(1, base.size(PathTrie.MODIFIED));
+		assertTrue(base.asSet(PathTrie.MODIFIED).contains("a/b/c.txt"));
+
+		assertEquals(1, edited.size(PathTrie.MODIFIED));
+		assertEquals("a/e.txt", edited.asSet(PathTrie.MODIFIED).iterator()
+				.next());
+		assertEquals(1, edited.size(PathTrie.CONFLICTING));
+		assertEquals(1, edited.size(PathTrie.UNTRACKED));
+		// empty folders are pruned
+		assertEquals(0, edited.getDescendantFlags("a/b"));
+		assertEquals(null, edited.find("a/b"));
+		// unchanged subtrees are shared
+		assertSame(base.find("x"), edited.find("x"));
+	}
+
+	@Test
+	public void testEditWithMask() {
+		PathTrie base = new PathTrie.Builder()
+				.add("f/", PathTrie.UNTRACKED_FOLDER)
+				.add("f", PathTrie.IGNORED).build();
+
+		PathTrie edited = base.edit().set("f/", 0, PathTrie.UNTRACKED_FOLDER)
+				.build();
+		assertEquals(PathTrie.IGNORED, edited.getFlags("f"));
+		assertTrue(edited.asSet(PathTrie.UNTRACKED_FOLDER).isEmpty());
+
+		assertSame(base.root, base.edit().set("unknown", 0, PathTrie.ALL)
+				.build().root);
+	}
+}
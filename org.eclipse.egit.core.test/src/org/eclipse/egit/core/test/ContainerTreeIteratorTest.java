@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.egit.core.ContainerTreeIterator;
+import org.eclipse.egit.core.op.ConnectProviderOperation;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.eclipse.jgit.util.FS;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ContainerTreeIteratorTest extends GitTestCase {
+
+	private Repository repository;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		repository = new FileRepository(gitDir);
+		repository.create();
+		new ConnectProviderOperation(project.getProject(), gitDir)
+				.execute(null);
+	}
+
+	@Test
+	public void testAttributesOfFolderMembers() throws Exception {
+		project.createFile("a.txt", "content".getBytes("UTF-8"));
+		IFile script = project.createFile("run.sh",
+				"#!/bin/sh\n".getBytes("UTF-8"));
+		boolean executable = FS.DETECTED.supportsExecute();
+		if (executable) {
+			FS.DETECTED.setExecute(script.getLocation().toFile(), true);
+			script.refreshLocal(IResource.DEPTH_ZERO, null);
+		}
+
+		ContainerTreeIterator iterator = new ContainerTreeIterator(repository,
+				project.getProject());
+		moveTo(iterator, "a.txt");
+		assertEquals(FileMode.REGULAR_FILE, iterator.getEntryFileMode());
+		assertEquals(7, iterator.getEntryLength());
+
+		iterator = new ContainerTreeIterator(repository, project.getProject());
+		moveTo(iterator, "run.sh");
+		assertEquals(executable ? FileMode.EXECUTABLE_FILE
+				: FileMode.REGULAR_FILE, iterator.getEntryFileMode());
+		assertEquals(10, iterator.getEntryLength());
+	}
+
+	@Test
+	public void testFileChangedOutsideWorkspace() throws Exception {
+		IFile file = project.createFile("a.txt", "content".getBytes("UTF-8"));
+		File location = file.getLocation().toFile();
+		FileWriter writer = new FileWriter(location);
+		writer.write("changed content");
+		writer.close();
+		assertTrue(location.setLastModified(file.getLocalTimeStamp() + 10000));
+
+		ContainerTreeIterator iterator = new ContainerTreeIterator(repository,
+				project.getProject());
+		moveTo(iterator, "a.txt");
+		// the length is read from the disk like by the per-file calls
+		assertEquals(15, iterator.getEntryLength());
+	}
+
+	@Test
+	public void testContentIdOfFileChangedOutsideWorkspace() throws Exception {
+		IFile file = project.createFile("a.txt", "content".getBytes("UTF-8"));
+		File location = file.getLocation().toFile();
+		long time = System.currentTimeMillis() - 20000;
+		assertTrue(location.setLastModified(time));
+		file.refreshLocal(IResource.DEPTH_ZERO, null);
+		ContainerTreeIterator iterator = new ContainerTreeIterator(repository,
+				project.getProject());
+		moveTo(iterator, "a.txt");
+		iterator.getEntryObjectId();
+
+		// same length, the workspace still has the old timestamp
+		FileWriter writer = new FileWriter(location);
+		writer.write("CONTENT");
+		writer.close();
+		assertTrue(location.setLastModified(time + 10000));
+
+		iterator = new ContainerTreeIterator(repository, project.getProject());
+		moveTo(iterator, "a.txt");
+		assertEquals(location.lastModified(), iterator.getEntryLastModified());
+		assertEquals(new ObjectInserter.Formatter().idFor(
+				Constants.OBJ_BLOB, "CONTENT".getBytes("UTF-8")),
+				iterator.getEntryObjectId());
+	}
+
+	@Test
+	public void testFileDeletedOutsideWorkspace() throws Exception {
+		IFile file = project.createFile("a.txt", "content".getBytes("UTF-8"));
+		assertTrue(file.getLocation().toFile().delete());
+
+		ContainerTreeIterator iterator = new ContainerTreeIterator(repository,
+				project.getProject());
+		moveTo(iterator, "a.txt");
+		assertEquals(FileMode.REGULAR_FILE, iterator.getEntryFileMode());
+		assertEquals(0, iterator.getEntryLength());
+	}
+
+	private static void moveTo(ContainerTreeIterator iterator, String name)
+			throws Exception {
+		while (!iterator.eof()) {
+			if (iterator.getEntryPathString().endsWith("/" + name))
+				return;
+			iterator.next(1);
+		}
+		fail(name + " not found");
+	}
+}
@@ -8,13 +8,25 @@
  *******************************************************************************/
 package org.eclipse.egit.core.test.indexDiff;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.egit.core.Activator;
+import org.eclipse.egit.core.GitCorePreferences;
+import org.eclipse.egit.core.JobFamilies;
 import org.eclipse.egit.core.internal.indexdiff.IndexDiffCache;
 import org.eclipse.egit.core.internal.indexdiff.IndexDiffCacheEntry;
 import org.eclipse.egit.core.internal.indexdiff.IndexDiffChangedListener;
@@ -93,6 +105,130 @@ public void indexDiffChanged(Repository repo,
 			fail("IndexDiffData does not contain aFile as added");
 	}
 
+	@Test
+	public void testExistingEntryLookupDoesNotCreateEntry() throws Exception {
+		IndexDiffCache indexDiffCache = Activator.getDefault()
+				.getIndexDiffCache();
+		assertNull(indexDiffCache.getExistingIndexDiffCacheEntry(repository));
+		IndexDiffCacheEntry cacheEntry = indexDiffCache
+				.getIndexDiffCacheEntry(repository);
+		assertSame(cacheEntry,
+				indexDiffCache.getExistingIndexDiffCacheEntry(repository));
+	}
+
+	@Test
+	public void testUpdatesAreDelayedAndCoalesced() throws Exception {
+		new ConnectProviderOperation(project.project, repository.getDirectory())
+				.execute(null);
+		testRepository
+				.createInitialCommit("testUpdatesAreCoalesced\n\nfirst commit\n");
+		IEclipsePreferences preferences = new InstanceScope()
+				.getNode(Activator.getPluginId());
+		long delay = 1000;
+		preferences.putLong(GitCorePreferences.core_indexDiffUpdateDelay,
+				delay);
+		try {
+			IndexDiffCacheEntry cacheEntry = Activator.getDefault()
+					.getIndexDiffCache().getIndexDiffCacheEntry(repository);
+			Job.getJobManager().join(JobFamilies.INDEX_DIFF_CACHE_UPDATE,
+					null);
+			final AtomicInteger calls = new AtomicInteger();
+			final AtomicLong notified = new AtomicLong();
+			final AtomicReference<IndexDiffData> resultDiff = new AtomicReference<IndexDiffData>(
+					null);
+			cacheEntry
+					.addIndexDiffChangedListener(new IndexDiffChangedListener() {
+						public void indexDiffChanged(Repository repo,
+								IndexDiffData indexDiffData) {
+							calls.incrementAndGet();
+							resultDiff.set(indexDiffData);
+							notified.set(System.currentTimeMillis());
+						}
+					});
+			// every file is created by a separate resource change event
+			project.createFile("file1", "content".getBytes("UTF-8"));
+			project.createFile("file2", "content".getBytes("UTF-8"));
+			long lastChange = System.currentTimeMillis();
+			project.createFile("file3", "content".getBytes("UTF-8"));
+			Job.getJobManager().join(JobFamilies.INDEX_DIFF_CACHE_UPDATE,
+					null);
+			assertEquals(1, calls.get());
+			assertTrue("update was not delayed after the last change",
+					notified.get() - lastChange >= delay);
+			for (String name : new String[] { "file1", "file2", "file3" }) {
+				String path = project.project.getFile(name).getFullPath()
+						.toString().substring(1);
+				assertTrue(resultDiff.get().getUntracked().contains(path));
+			}
+		} finally {
+			preferences.remove(GitCorePreferences.core_indexDiffUpdateDelay);
+		}
+	}
+
+	@Test
+	public void testCanceledUpdateIsRescheduled() throws Exception {
+		new ConnectProviderOperation(project.project, repository.getDirectory())
+				.execute(null);
+		testRepository
+				.createInitialCommit("testCanceledUpdate\n\nfirst commit\n");
+		IEclipsePreferences preferences = new InstanceScope()
+				.getNode(Activator.getPluginId());
+		preferences.putLong(GitCorePreferences.core_indexDiffUpdateDelay, 1000);
+		try {
+			IndexDiffCacheEntry cacheEntry = Activator.getDefault()
+					.getIndexDiffCache().getIndexDiffCacheEntry(repository);
+			Job.getJobManager().join(JobFamilies.INDEX_DIFF_CACHE_UPDATE,
+					null);
+			project.createFile("file1", "content".getBytes("UTF-8"));
+			// e.g. canceled in the Progress view while waiting for the delay
+			Job.getJobManager().cancel(cacheEntry);
+			Job.getJobManager().join(JobFamilies.INDEX_DIFF_CACHE_UPDATE,
+					null);
+			String path = project.project.getFile("file1").getFullPath()
+					.toString().substring(1);
+			assertTrue(cacheEntry.getIndexDiff().getUntracked().contains(path));
+		} finally {
+			preferences.remove(GitCorePreferences.core_indexDiffUpdateDelay);
+		}
+	}
+
+	@Test
+	public void testRestoredSnapshotDetectsFileDeletedOutsideWorkspace()
+			throws Exception {
+		new ConnectProviderOperation(project.project, repository.getDirectory())
+				.execute(null);
+		testRepository
+				.createInitialCommit("testRestoreSnapshot\n\nfirst commit\n");
+		File file = testRepository.createFile(project.project, "tracked");
+		testRepository.addAndCommit(project.project, file, "second commit\n");
+		IndexDiffCache indexDiffCache = Activator.getDefault()
+				.getIndexDiffCache();
+		IndexDiffCacheEntry cacheEntry = indexDiffCache
+				.getIndexDiffCacheEntry(repository);
+		Job.getJobManager().join(JobFamilies.INDEX_DIFF_CACHE_UPDATE, null);
+		assertNotNull(cacheEntry.getIndexDiff());
+		// saves a snapshot of the current index diff
+		indexDiffCache.dispose();
+
+		// not noticed by the workspace
+		assertTrue(file.delete());
+		cacheEntry = indexDiffCache.getIndexDiffCacheEntry(repository);
+		String path = project.project.getFile("tracked").getFullPath()
+				.toString().substring(1);
+		long time = 0;
+		while (!isMissing(cacheEntry.getIndexDiff(), path) && time < 10000) {
+			Thread.sleep(1);
+			time++;
+		}
+		assertTrue("IndexDiffData does not contain tracked as missing",
+				isMissing(cacheEntry.getIndexDiff(), path));
+	}
+
+	private static boolean isMissing(IndexDiffData indexDiffData, String path) {
+		return indexDiffData != null
+				&& indexDiffData.getMissing().contains(path);
+	}
+
 	private void waitForListenerCalled(final AtomicBoolean listenerCalled)
 			throws InterruptedException {
 		long time = 0;
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.test.indexDiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.RandomAccessFile;
+
+import org.eclipse.egit.core.internal.indexdiff.IndexDiffData;
+import org.eclipse.egit.core.internal.indexdiff.IndexDiffSnapshot;
+import org.eclipse.egit.core.test.GitTestCase;
+import org.eclipse.egit.core.test.TestRepository;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.IndexDiff;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IndexDiffSnapshotTest extends GitTestCase {
+
+	TestRepository testRepository;
+
+	Repository repository;
+
+	File stateLocation;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		testRepository = new TestRepository(gitDir);
+		repository = testRepository.getRepository();
+		// inside the git directory to keep it out of the index diff
+		stateLocation = new File(gitDir, "snapshotState");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		testRepository.dispose();
+		repository = null;
+		super.tearDown();
+	}
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		testRepository.createInitialCommit("first commit\n");
+		testRepository.createFile(project.project, "untracked");
+		IndexDiffData data = calcIndexDiffData();
+		assertTrue(data.getUntracked().contains(getPath("untracked")));
+
+		new IndexDiffSnapshot(repository, stateLocation).save(data);
+		IndexDiffSnapshot snapshot = new IndexDiffSnapshot(repository,
+				stateLocation);
+		IndexDiffData loaded = snapshot.load();
+		assertNotNull(loaded);
+		assertEquals(data.getTimestamp(), loaded.getTimestamp());
+		assertEquals(data.getAdded(), loaded.getAdded());
+		assertEquals(data.getChanged(), loaded.getChanged());
+		assertEquals(data.getRemoved(), loaded.getRemoved());
+		assertEquals(data.getMissing(), loaded.getMissing());
+		assertEquals(data.getModified(), loaded.getModified());
+		assertEquals(data.getUntracked(), loaded.getUntracked());
+		assertEquals(data.getUntrackedFolders(), loaded.getUntrackedFolders());
+		assertEquals(data.getConflicting(), loaded.getConflicting());
+		assertEquals(data.getIgnoredNotInIndex(),
+				loaded.getIgnoredNotInIndex());
+
+		snapshot.delete();
+		assertNull(snapshot.load());
+	}
+
+	@Test
+	public void testCorruptSnapshot() throws Exception {
+		testRepository.createInitialCommit("first commit\n");
+		IndexDiffSnapshot snapshot = new IndexDiffSnapshot(repository,
+				stateLocation);
+		snapshot.save(calcIndexDiffData());
+		File[] files = new File(stateLocation, "indexdiff").listFiles();
+		assertEquals(1, files.length);
+		RandomAccessFile file = new RandomAccessFile(files[0], "rw");
+		try {
+			// a byte of the payload, the checksum takes the last 8 bytes
+			long position = file.length() - 9;
+			file.seek(position);
+			int b = file.read();
+			file.seek(position);
+			file.write(b ^ 0xff);
+		} finally {
+			file.close();
+		}
+		assertNull(snapshot.load());
+	}
+
+	@Test
+	public void testIndexChanged() throws Exception {
+		testRepository.createInitialCommit("first commit\n");
+		testRepository.createFile(project.project, "added");
+		IndexDiffSnapshot snapshot = new IndexDiffSnapshot(repository,
+				stateLocation);
+		snapshot.save(calcIndexDiffData());
+		new Git(repository).add().addFilepattern(getPath("added")).call();
+		assertNull(snapshot.load());
+	}
+
+	@Test
+	public void testHeadMoved() throws Exception {
+		RevCommit first = testRepository.createInitialCommit("first commit\n");
+		File file = testRepository.createFile(project.project, "second");
+		testRepository.addAndCommit(project.project, file, "second commit\n");
+		IndexDiffSnapshot snapshot = new IndexDiffSnapshot(repository,
+				stateLocation);
+		snapshot.save(calcIndexDiffData());
+		assertNotNull(snapshot.load());
+
+		// moves HEAD without touching the index
+		RefUpdate update = repository.updateRef(Constants.HEAD);
+		update.setNewObjectId(first);
+		update.forceUpdate();
+		assertNull(snapshot.load());
+	}
+
+	@Test
+	public void testExcludeFileChanged() throws Exception {
+		testRepository.createInitialCommit("first commit\n");
+		IndexDiffSnapshot snapshot = new IndexDiffSnapshot(repository,
+				stateLocation);
+		snapshot.save(calcIndexDiffData());
+		assertNotNull(snapshot.load());
+
+		// e.g. edited while Eclipse was not running
+		File exclude = new File(new File(gitDir, "info"), "exclude");
+		exclude.getParentFile().mkdirs();
+		FileWriter writer = new FileWriter(exclude);
+		try {
+			writer.write("*.log\n");
+		} finally {
+			writer.close();
+		}
+		assertNull(snapshot.load());
+	}
+
+	private IndexDiffData calcIndexDiffData() throws Exception {
+		long timestamp = System.currentTimeMillis();
+		IndexDiff diff = new IndexDiff(repository, Constants.HEAD,
+				new FileTreeIterator(repository));
+		diff.diff();
+		return new IndexDiffData(diff, timestamp);
+	}
+
+	private String getPath(String fileName) {
+		return project.project.getFile(fileName).getFullPath().toString()
+				.substring(1);
+	}
+}
@@ -12,6 +12,7 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -21,6 +22,7 @@
 
 import org.eclipse.core.resources.IStorage;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.egit.core.GitProvider;
 import org.eclipse.egit.core.internal.storage.GitFileRevision;
 import org.eclipse.egit.core.op.ConnectProviderOperation;
@@ -127,6 +129,59 @@ public void testSingleRevision_3() {
 		assertEquals("J. Author",fileRevision.getAuthor());
 	}
 
+	@Test
+	public void testRevisionLookupBeforeFullHistory() {
+		GitProvider provider = (GitProvider)RepositoryProvider.getProvider(project.project);
+		assertNotNull(provider);
+		IFileHistoryProvider fileHistoryProvider = provider.getFileHistoryProvider();
+		IFileHistory fileHistory = fileHistoryProvider.getFileHistoryFor(project.getProject().getWorkspace().getRoot().findMember("Project-1/B.txt"), IFileHistoryProvider.NONE, new NullProgressMonitor());
+		IFileRevision fileRevision = fileHistory.getFileRevision("fd5a571c8a3a4a152e4c413d09d3ecb7d41e1e5f");
+		assertEquals("fd5a571c8a3a4a152e4c413d09d3ecb7d41e1e5f", fileRevision.getContentIdentifier());
+		assertNull(fileHistory.getFileRevision("0000000000000000000000000000000000000000"));
+		assertNull(fileHistory.getFileRevision("no id"));
+		IFileRevision[] fileRevisions = fileHistory.getFileRevisions();
+		assertEquals(2, fileRevisions.length);
+		assertSame(fileRevision, fileRevisions[0]);
+	}
+
+	@Test(expected = OperationCanceledException.class)
+	public void testCanceledHistory() {
+		GitProvider provider = (GitProvider)RepositoryProvider.getProvider(project.project);
+		assertNotNull(provider);
+		IFileHistoryProvider fileHistoryProvider = provider.getFileHistoryProvider();
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		fileHistoryProvider.getFileHistoryFor(project.getProject().getWorkspace().getRoot().findMember("Project-1/B.txt"), IFileHistoryProvider.NONE, monitor);
+	}
+
+	@Test(expected = OperationCanceledException.class)
+	public void testHistoryCanceledWhileWalking() {
+		GitProvider provider = (GitProvider)RepositoryProvider.getProvider(project.project);
+		assertNotNull(provider);
+		IFileHistoryProvider fileHistoryProvider = provider.getFileHistoryProvider();
+		// canceled after the check on entry, while the commits are walked
+		NullProgressMonitor monitor = new NullProgressMonitor() {
+			private int checks;
+
+			@Override
+			public boolean isCanceled() {
+				return ++checks > 1;
+			}
+		};
+		fileHistoryProvider.getFileHistoryFor(project.getProject().getWorkspace().getRoot().findMember("Project-1/B.txt"), IFileHistoryProvider.NONE, monitor);
+	}
+
+	@Test
+	public void testMonitorCanceledAfterCreation() {
+		GitProvider provider = (GitProvider)RepositoryProvider.getProvider(project.project);
+		assertNotNull(provider);
+		IFileHistoryProvider fileHistoryProvider = provider.getFileHistoryProvider();
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		IFileHistory fileHistory = fileHistoryProvider.getFileHistoryFor(project.getProject().getWorkspace().getRoot().findMember("Project-1/B.txt"), IFileHistoryProvider.NONE, monitor);
+		monitor.setCanceled(true);
+		assertEquals(2, fileHistory.getFileRevisions().length);
+	}
+
 	@Test
 	public void testIndexRevision() throws Exception {
 		GitProvider provider = (GitProvider)RepositoryProvider.getProvider(project.project);
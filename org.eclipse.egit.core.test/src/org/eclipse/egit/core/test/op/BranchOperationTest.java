@@ -13,9 +13,14 @@
 
 import java.io.File;
 
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.egit.core.internal.util.ProjectUtil;
 import org.eclipse.egit.core.op.BranchOperation;
 import org.eclipse.egit.core.test.GitTestCase;
 import org.eclipse.egit.core.test.TestRepository;
+import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.Repository;
 import org.junit.After;
@@ -66,4 +71,59 @@ public void testBranchOperation() throws Exception {
 		new BranchOperation(repository, TEST).execute(null);
 		assertTrue(file.exists());
 	}
+
+	@Test
+	public void testBranchSwitchRefreshesChangedFiles() throws Exception {
+		testRepository.createInitialCommit("testBranchSwitch\n\nfirst commit\n");
+		testRepository.createBranch(MASTER, TEST);
+		new BranchOperation(repository, TEST).execute(null);
+		File file = testRepository.createFile(project.getProject(),
+				"folder/a.txt");
+		testRepository.appendFileContent(file, "content");
+		testRepository.track(file);
+		testRepository.commit("Add a.txt");
+		IProject iProject = project.getProject();
+		iProject.refreshLocal(IResource.DEPTH_INFINITE, null);
+		IFile resource = iProject.getFile("folder/a.txt");
+		assertTrue(resource.exists());
+
+		new BranchOperation(repository, MASTER).execute(null);
+		assertFalse(resource.exists());
+
+		new BranchOperation(repository, TEST).execute(null);
+		assertTrue(resource.exists());
+		assertTrue(resource.isSynchronized(IResource.DEPTH_ZERO));
+	}
+
+	@Test
+	public void testBranchSwitchWithTooManyChangedFiles() throws Exception {
+		testRepository.createInitialCommit("testBranchSwitch\n\nfirst commit\n");
+		testRepository.createBranch(MASTER, TEST);
+		new BranchOperation(repository, TEST).execute(null);
+		// more changed paths than refreshed individually
+		for (int i = 0; i <= ProjectUtil.MAX_REFRESH_PATHS; i++)
+			testRepository.createFile(project.getProject(), "many/file" + i);
+		File folder = new File(project.getProject().getLocation().toFile(),
+				"many");
+		new Git(repository).add()
+				.addFilepattern(
+						testRepository.getRepoRelativePath(folder.getPath()))
+				.call();
+		testRepository.commit("Add many files");
+		IProject iProject = project.getProject();
+		iProject.refreshLocal(IResource.DEPTH_INFINITE, null);
+		IFile first = iProject.getFile("many/file0");
+		IFile last = iProject.getFile("many/file"
+				+ ProjectUtil.MAX_REFRESH_PATHS);
+		assertTrue(first.exists());
+
+		new BranchOperation(repository, MASTER).execute(null);
+		assertFalse(first.exists());
+		assertFalse(last.exists());
+
+		new BranchOperation(repository, TEST).execute(null);
+		assertTrue(first.exists());
+		assertTrue(last.exists());
+		assertTrue(iProject.isSynchronized(IResource.DEPTH_INFINITE));
+	}
 }
@@ -9,9 +9,11 @@
 package org.eclipse.egit.core.test.op;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 
 import org.eclipse.core.filesystem.EFS;
@@ -22,7 +24,10 @@
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.egit.core.Activator;
+import org.eclipse.egit.core.JobFamilies;
+import org.eclipse.egit.core.internal.indexdiff.IndexDiffCacheEntry;
 import org.eclipse.egit.core.op.DiscardChangesOperation;
 import org.eclipse.egit.core.test.DualRepositoryTestCase;
 import org.eclipse.egit.core.test.TestRepository;
@@ -105,6 +110,61 @@ public void testDiscardChanges() throws Exception {
 		assertEquals("Hello world 2", contents);
 	}
 
+	@Test
+	public void testDiscardChangesInFolder() throws Exception {
+		IFile file1 = project.getFile(new Path("folder1/file1.txt"));
+		IFile file2 = project.getFile(new Path("folder1/file2.txt"));
+		setNewFileContent(file1, "changed 1");
+		IndexDiffCacheEntry entry = Activator.getDefault().getIndexDiffCache()
+				.getIndexDiffCacheEntry(repository1.getRepository());
+		Job.getJobManager().join(JobFamilies.INDEX_DIFF_CACHE_UPDATE, null);
+		assertTrue(entry.getIndexDiff().getModified()
+				.contains(projectName + "/folder1/file1.txt"));
+
+		DiscardChangesOperation dcop = new DiscardChangesOperation(
+				new IResource[] { project.getFolder("folder1") });
+		dcop.execute(new NullProgressMonitor());
+
+		assertTrue(file1.isSynchronized(IResource.DEPTH_ZERO));
+		assertEquals("Hello world 1",
+				testUtils.slurpAndClose(file1.getContents()));
+		assertTrue(file2.isSynchronized(IResource.DEPTH_ZERO));
+		assertEquals("Hello world 2",
+				testUtils.slurpAndClose(file2.getContents()));
+	}
+
+	@Test
+	public void testDiscardChangesFromRevision() throws Exception {
+		IFile file1 = project.getFile(new Path("folder1/file1.txt"));
+		setNewFileContent(file1, "changed 1");
+		repository1.addToIndex(file1);
+
+		DiscardChangesOperation dcop = new DiscardChangesOperation(
+				new IResource[] { project }, Constants.HEAD);
+		dcop.execute(new NullProgressMonitor());
+
+		assertTrue(file1.isSynchronized(IResource.DEPTH_ZERO));
+		assertEquals("Hello world 1",
+				testUtils.slurpAndClose(file1.getContents()));
+	}
+
+	@Test
+	public void testDiscardChangesMadeOutsideWorkspace() throws Exception {
+		IFile file1 = project.getFile(new Path("folder1/file1.txt"));
+		// not refreshed, neither the workspace nor the index diff cache know
+		FileWriter writer = new FileWriter(file1.getLocation().toFile());
+		writer.write("changed outside");
+		writer.close();
+
+		DiscardChangesOperation dcop = new DiscardChangesOperation(
+				new IResource[] { project.getFolder("folder1") });
+		dcop.execute(new NullProgressMonitor());
+
+		assertTrue(file1.isSynchronized(IResource.DEPTH_ZERO));
+		assertEquals("Hello world 1",
+				testUtils.slurpAndClose(file1.getContents()));
+	}
+
 	private void setNewFileContent(IFile file, String content) throws Exception {
 		file.setContents(
 				new ByteArrayInputStream(content.getBytes(project
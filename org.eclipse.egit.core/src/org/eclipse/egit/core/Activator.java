@@ -27,9 +27,11 @@
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Plugin;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.core.runtime.preferences.DefaultScope;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.egit.core.internal.graph.CommitGraphCache;
 import org.eclipse.egit.core.internal.indexdiff.IndexDiffCache;
 import org.eclipse.egit.core.internal.job.JobUtil;
 import org.eclipse.egit.core.internal.trace.GitTraceLocation;
@@ -39,6 +41,10 @@
 import org.eclipse.egit.core.project.RepositoryMapping;
 import org.eclipse.egit.core.securestorage.EGitSecureStore;
 import org.eclipse.equinox.security.storage.SecurePreferencesFactory;
+import org.eclipse.jgit.events.ListenerHandle;
+import org.eclipse.jgit.events.RefsChangedEvent;
+import org.eclipse.jgit.events.RefsChangedListener;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.osgi.service.debug.DebugOptions;
 import org.eclipse.osgi.service.debug.DebugOptionsListener;
 import org.eclipse.team.core.RepositoryProvider;
@@ -56,6 +62,7 @@ public class Activator extends Plugin implements DebugOptionsListener {
 	private RepositoryUtil repositoryUtil;
 	private EGitSecureStore secureStore;
 	private AutoShareProjects shareGitProjectsJob;
+	private ListenerHandle commitGraphListenerHandle;
 
 	/**
 	 * @return the singleton {@link Activator}
@@ -128,6 +135,18 @@ public void start(final BundleContext context) throws Exception {
 		secureStore = new EGitSecureStore(SecurePreferencesFactory.getDefault());
 
 		registerAutoShareProjects();
+
+		commitGraphListenerHandle = Repository.getGlobalListenerList()
+				.addRefsChangedListener(new RefsChangedListener() {
+					public void onRefsChanged(RefsChangedEvent event) {
+						Repository repository = event.getRepository();
+						// only the repositories the user works with are
+						// indexed in the background
+						if (repository.getDirectory() != null
+								&& repositoryUtil.contains(repository))
+							CommitGraphCache.scheduleUpdate(repository);
+					}
+				});
 	}
 
 	public void optionsChanged(DebugOptions options) {
@@ -164,8 +183,15 @@ public EGitSecureStore getSecureStore() {
 	}
 
 	public void stop(final BundleContext context) throws Exception {
+		commitGraphListenerHandle.remove();
+		commitGraphListenerHandle = null;
+		// pending updates would write to the state location
+		Job.getJobManager().cancel(JobFamilies.COMMIT_GRAPH_UPDATE);
+		Job.getJobManager().join(JobFamilies.COMMIT_GRAPH_UPDATE, null);
+		CommitGraphCache.dispose();
 		GitProjectData.detachFromWorkspace();
 		repositoryCache = null;
+		indexDiffCache.dispose();
 		indexDiffCache = null;
 		repositoryUtil.dispose();
 		repositoryUtil = null;
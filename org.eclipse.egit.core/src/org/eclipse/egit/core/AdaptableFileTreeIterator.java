@@ -14,7 +14,9 @@
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.egit.core.internal.ContentIdCache;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
@@ -26,6 +28,8 @@
  * <p>
  * The iterator automatically adapts to a {@link ContainerTreeIterator} when
  * recursing into directories that are accessible from the given workspace root.
+ * Ids computed for the content of files are cached in the
+ * {@link ContentIdCache}.
  *
  * @see org.eclipse.jgit.treewalk.FileTreeIterator
  * @see org.eclipse.egit.core.ContainerTreeIterator
@@ -34,6 +38,8 @@ public class AdaptableFileTreeIterator extends FileTreeIterator {
 
 	IWorkspaceRoot root;
 
+	private final String contentIdOptions;
+
 	/**
 	 * Create a new iterator to traverse the work tree of the given repository
 	 * <p>
@@ -51,6 +57,7 @@ public AdaptableFileTreeIterator(final Repository repository,
 			final IWorkspaceRoot workspaceRoot) {
 		super(repository);
 		root = workspaceRoot;
+		contentIdOptions = ContentIdCache.getOptions(repository);
 	}
 
 	/**
@@ -72,6 +79,24 @@ protected AdaptableFileTreeIterator(final AdaptableFileTreeIterator parent,
 			File path, final IWorkspaceRoot workspaceRoot) {
 		super(parent, path, FS.DETECTED);
 		root = workspaceRoot;
+		contentIdOptions = parent.contentIdOptions;
+	}
+
+	@Override
+	public byte[] idBuffer() {
+		if ((mode & FileMode.TYPE_MASK) != FileMode.TYPE_FILE)
+			return super.idBuffer();
+		final FileEntry entry = (FileEntry) current();
+		final File file = entry.getFile();
+		final ContentIdCache cache = ContentIdCache.getInstance();
+		final byte[] id = cache.get(file, entry.getLength(),
+				entry.getLastModified(), contentIdOptions);
+		if (id != null)
+			return id;
+		final byte[] computed = super.idBuffer();
+		cache.put(file, entry.getLength(), entry.getLastModified(),
+				contentIdOptions, computed, idOffset());
+		return computed;
 	}
 
 	@Override
@@ -12,12 +12,19 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileInfo;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.egit.core.internal.ContentIdCache;
 import org.eclipse.egit.core.project.RepositoryMapping;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.lib.Constants;
@@ -44,6 +51,11 @@
  * requires the user refresh their workspace when external modifications take
  * place. This is not really a concern as it is common practice to need to do a
  * workspace refresh after externally modifying a file.
+ * <p>
+ * File modes and lengths are read for all children of a container at once
+ * when the iterator for the container is created, instead of querying the
+ * file system separately for each attribute of each file. Ids computed for
+ * the content of files are cached in the {@link ContentIdCache}.
  *
  * @see org.eclipse.jgit.treewalk.TreeWalk
  */
@@ -59,6 +71,8 @@ private static String computePrefix(final IContainer base) {
 
 	private final IContainer node;
 
+	private final String contentIdOptions;
+
 	/**
 	 * Construct a new iterator from a container in the workspace.
 	 * <p>
@@ -76,6 +90,7 @@ private static String computePrefix(final IContainer base) {
 	public ContainerTreeIterator(final Repository repository, final IContainer base) {
 		super(computePrefix(base), repository.getConfig().get(WorkingTreeOptions.KEY));
 		node = base;
+		contentIdOptions = ContentIdCache.getOptions(repository);
 		init(entries());
 		initRootIterator(repository);
 	}
@@ -96,6 +111,7 @@ public ContainerTreeIterator(final Repository repository, final IContainer base)
 	public ContainerTreeIterator(final Repository repository, final IWorkspaceRoot root) {
 		super("", repository.getConfig().get(WorkingTreeOptions.KEY));  //$NON-NLS-1$
 		node = root;
+		contentIdOptions = ContentIdCache.getOptions(repository);
 		init(entries());
 		initRootIterator(repository);
 	}
@@ -122,9 +138,30 @@ public ContainerTreeIterator(final WorkingTreeIterator p,
 		init(entries());
 		Repository repository = RepositoryMapping.getMapping(base)
 				.getRepository();
+		contentIdOptions = ContentIdCache.getOptions(repository);
 		initRootIterator(repository);
 	}
 
+	@Override
+	public byte[] idBuffer() {
+		if ((mode & FileMode.TYPE_MASK) != FileMode.TYPE_FILE)
+			return super.idBuffer();
+		final ResourceEntry entry = getResourceEntry();
+		final IPath location = entry.rsrc.getLocation();
+		if (location == null)
+			return super.idBuffer();
+		final File file = location.toFile();
+		final ContentIdCache cache = ContentIdCache.getInstance();
+		final byte[] id = cache.get(file, entry.getLength(),
+				entry.getLastModified(), contentIdOptions);
+		if (id != null)
+			return id;
+		final byte[] computed = super.idBuffer();
+		cache.put(file, entry.getLength(), entry.getLastModified(),
+				contentIdOptions, computed, idOffset());
+		return computed;
+	}
+
 	@Override
 	public AbstractTreeIterator createSubtreeIterator(ObjectReader reader)
 			throws IncorrectObjectTypeException, IOException {
@@ -153,12 +190,54 @@ private Entry[] entries() {
 			return EOF;
 		}
 
+		final Map<String, IFileInfo> infos = fetchChildInfos();
 		final Entry[] r = new Entry[all.length];
 		for (int i = 0; i < r.length; i++)
-			r[i] = new ResourceEntry(all[i]);
+			r[i] = new ResourceEntry(all[i], getFileInfo(infos, all[i]));
 		return r;
 	}
 
+	/**
+	 * Reads the attributes of all children of the container from the local
+	 * file system in one pass.
+	 *
+	 * @return the attributes by file name or <code>null</code> if they are
+	 *         not available
+	 */
+	private Map<String, IFileInfo> fetchChildInfos() {
+		if (node.getType() == IResource.ROOT)
+			return null;
+		final URI location = node.getLocationURI();
+		if (location == null || !EFS.SCHEME_FILE.equals(location.getScheme()))
+			return null;
+		final IFileInfo[] infos;
+		try {
+			infos = EFS.getStore(location).childInfos(EFS.NONE, null);
+		} catch (CoreException e) {
+			return null;
+		}
+		final Map<String, IFileInfo> result = new HashMap<String, IFileInfo>(
+				infos.length * 2);
+		for (IFileInfo info : infos)
+			result.put(info.getName(), info);
+		return result;
+	}
+
+	private static IFileInfo getFileInfo(Map<String, IFileInfo> infos,
+			IResource resource) {
+		// The attributes are the ones the per-file calls read from the disk,
+		// also for files out of sync with the workspace. Files the workspace
+		// knows but which are missing on disk or replaced by a folder use the
+		// per-file calls. Linked resources are located elsewhere.
+		if (infos == null || resource.getType() != IResource.FILE
+				|| resource.isLinked())
+			return null;
+		final IFileInfo info = infos.get(resource.getName());
+		if (info == null || !info.exists() || info.isDirectory())
+			return null;
+		return info;
+	}
+
 	@Override
 	public boolean isEntryIgnored() throws IOException {
 		return super.isEntryIgnored() ||
@@ -184,12 +263,29 @@ static public class ResourceEntry extends Entry {
 
 		private long length = -1;
 
-		ResourceEntry(final IResource f) {
+		private long lastModified = -1;
+
+		/**
+		 * @param f
+		 *            the resource
+		 * @param info
+		 *            attributes of the file read before, may be
+		 *            <code>null</code>
+		 */
+		ResourceEntry(final IResource f, final IFileInfo info) {
 			rsrc = f;
 
 			switch (f.getType()) {
 			case IResource.FILE:
-				if (FS.DETECTED.supportsExecute()
+				if (info != null) {
+					if (FS.DETECTED.supportsExecute()
+							&& info.getAttribute(EFS.ATTRIBUTE_EXECUTABLE))
+						mode = FileMode.EXECUTABLE_FILE;
+					else
+						mode = FileMode.REGULAR_FILE;
+					length = info.getLength();
+					lastModified = info.getLastModified();
+				} else if (FS.DETECTED.supportsExecute()
 						&& FS.DETECTED.canExecute(asFile()))
 					mode = FileMode.EXECUTABLE_FILE;
 				else
@@ -236,7 +332,15 @@ public long getLength() {
 
 		@Override
 		public long getLastModified() {
-			return rsrc.getLocalTimeStamp();
+			// read from the disk like the length, the content id cache and
+			// the index comparison rely on both
+			if (lastModified < 0) {
+				if (rsrc instanceof IFile)
+					lastModified = asFile().lastModified();
+				else
+					lastModified = rsrc.getLocalTimeStamp();
+			}
+			return lastModified;
 		}
 
 		@Override
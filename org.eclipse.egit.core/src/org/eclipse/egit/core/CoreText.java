@@ -47,6 +47,9 @@ public class CoreText extends NLS {
 	/** */
 	public static String CommitFileRevision_pathNotIn;
 
+	/** */
+	public static String CommitGraphCache_updating;
+
 	/** */
 	public static String CommitOperation_errorCommittingChanges;
 
@@ -25,5 +25,9 @@ public void initializeDefaultPreferences() {
 		p.putBoolean(GitCorePreferences.core_packedGitMMAP, false);
 		p.putInt(GitCorePreferences.core_deltaBaseCacheLimit, 10 * MB);
 		p.putBoolean(GitCorePreferences.core_autoShareProjects, false);
+		p.putLong(GitCorePreferences.core_indexDiffUpdateDelay, 100);
+		p.putInt(GitCorePreferences.core_indexDiffPoolSize, Runtime
+				.getRuntime().availableProcessors());
+		p.putBoolean(GitCorePreferences.core_commitGraph, true);
 	}
 }
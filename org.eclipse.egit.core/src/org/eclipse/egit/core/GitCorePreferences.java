@@ -25,4 +25,13 @@ public class GitCorePreferences {
 	/** */
 	public static final String core_autoShareProjects =
 		"core_autoShareProjects";  //$NON-NLS-1$
+	/** */
+	public static final String core_indexDiffUpdateDelay =
+		"core_indexDiffUpdateDelay";  //$NON-NLS-1$
+	/** */
+	public static final String core_indexDiffPoolSize =
+		"core_indexDiffPoolSize";  //$NON-NLS-1$
+	/** */
+	public static final String core_commitGraph =
+		"core_commitGraph";  //$NON-NLS-1$
 }
@@ -28,4 +28,9 @@ public class JobFamilies {
 	 * Job family for auto share job
 	 */
 	public static final Object AUTO_SHARE = new Object();
+
+	/**
+	 * Job family for commit graph update
+	 */
+	public static final Object COMMIT_GRAPH_UPDATE = new Object();
 }
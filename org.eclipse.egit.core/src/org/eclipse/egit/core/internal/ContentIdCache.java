@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Bounded cache of the blob ids computed for files in the working tree.
+ * <p>
+ * Working tree iterators have to read and hash the content of a file whenever
+ * its timestamp does not allow to decide whether it was modified. This cache
+ * remembers the id computed for a file together with its length and
+ * modification time, so that an unchanged file is hashed only once. Since
+ * Java does not provide access to inodes the file is identified by its
+ * absolute path.
+ * <p>
+ * Ids of files modified very recently are not cached, since the file could be
+ * modified again without changing its modification time.
+ */
+public class ContentIdCache {
+
+	private static final int MAX_ENTRIES = 10000;
+
+	/**
+	 * Files modified less than this amount of milliseconds ago are not cached.
+	 * This covers file systems with a coarse timestamp resolution.
+	 */
+	private static final long RACY_INTERVAL = 3000;
+
+	private static final ContentIdCache INSTANCE = new ContentIdCache();
+
+	private static class CachedId {
+		final long length;
+
+		final long lastModified;
+
+		final String options;
+
+		final byte[] id;
+
+		CachedId(long length, long lastModified, String options, byte[] id) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.options = options;
+			this.id = id;
+		}
+	}
+
+	private final Map<String, CachedId> cache = new LinkedHashMap<String, CachedId>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedId> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * @return the cache instance
+	 */
+	public static ContentIdCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param repository
+	 * @return a string describing the options of the repository which
+	 *         influence the id computed for a file in the working tree
+	 */
+	public static String getOptions(Repository repository) {
+		return repository.getConfig().getString(
+				ConfigConstants.CONFIG_CORE_SECTION, null,
+				ConfigConstants.CONFIG_KEY_AUTOCRLF);
+	}
+
+	/**
+	 * @param file
+	 * @param length
+	 *            the length of the file as seen by the iterator
+	 * @param lastModified
+	 *            the modification time of the file as seen by the iterator
+	 * @param options
+	 *            a string describing the options used to compute the id, e.g.
+	 *            the line ending conversion. May be <code>null</code>.
+	 * @return the cached id as raw bytes or <code>null</code> if no id is
+	 *         cached for this state of the file
+	 */
+	public byte[] get(File file, long length, long lastModified, String options) {
+		CachedId cached;
+		synchronized (cache) {
+			cached = cache.get(file.getAbsolutePath());
+		}
+		if (cached == null || cached.length != length
+				|| cached.lastModified != lastModified
+				|| !equals(cached.options, options))
+			return null;
+		return cached.id;
+	}
+
+	/**
+	 * @param file
+	 * @param length
+	 *            the length of the file as seen by the iterator
+	 * @param lastModified
+	 *            the modification time of the file as seen by the iterator
+	 * @param options
+	 *            a string describing the options used to compute the id, e.g.
+	 *            the line ending conversion. May be <code>null</code>.
+	 * @param id
+	 *            buffer containing the raw id
+	 * @param offset
+	 *            position of the id within the buffer
+	 */
+	public void put(File file, long length, long lastModified, String options,
+			byte[] id, int offset) {
+		if (lastModified <= 0
+				|| System.currentTimeMillis() - lastModified < RACY_INTERVAL)
+			return;
+		byte[] copy = new byte[Constants.OBJECT_ID_LENGTH];
+		System.arraycopy(id, offset, copy, 0, copy.length);
+		if (ObjectId.zeroId().equals(ObjectId.fromRaw(copy)))
+			return; // the content could not be read
+		synchronized (cache) {
+			cache.put(file.getAbsolutePath(), new CachedId(length,
+					lastModified, options, copy));
+		}
+	}
+
+	/**
+	 * Removes all cached ids
+	 */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	private static boolean equals(String s1, String s2) {
+		return s1 == null ? s2 == null : s1.equals(s2);
+	}
+}
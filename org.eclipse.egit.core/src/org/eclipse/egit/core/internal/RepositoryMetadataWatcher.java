@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Detects changes of the metadata of repositories with a small number of file
+ * system calls.
+ * <p>
+ * {@link Repository#scanForRepoChanges()} reads every loose ref of a
+ * repository. This watcher only checks the index, <code>HEAD</code>,
+ * <code>packed-refs</code> and the folders below <code>refs</code>. Git
+ * updates refs by renaming a lock file, which modifies the folder containing
+ * the ref. A folder is only listed again if it was modified. Repositories for
+ * which {@link #hasChanged(Repository)} returns <code>true</code> should be
+ * scanned for changes.
+ * <p>
+ * Like the racy git handling of JGit, a file or folder whose modification time
+ * was within the file system's timestamp resolution of the previous check is
+ * considered as changed again, since a second modification in the same tick
+ * does not change the modification time.
+ */
+public class RepositoryMetadataWatcher {
+
+	private static final String PACKED_REFS = "packed-refs"; //$NON-NLS-1$
+
+	// the modification time resolution of FAT is 2 seconds, allow for some
+	// clock skew on top of that
+	private static final long TIMESTAMP_RESOLUTION = 2500L;
+
+	private static class MetadataState {
+		long lastCheck;
+
+		long indexModified;
+
+		long indexLength;
+
+		long headModified;
+
+		long headLength;
+
+		long packedRefsModified;
+
+		long packedRefsLength;
+
+		final Map<File, Long> refFolders = new HashMap<File, Long>();
+	}
+
+	private final Map<Repository, MetadataState> states = new WeakHashMap<Repository, MetadataState>();
+
+	/**
+	 * Checks whether the metadata of the given repository changed since the
+	 * last call of this method for the same repository. The first call for a
+	 * repository always returns <code>true</code>.
+	 *
+	 * @param repository
+	 * @return <code>true</code> if the index, HEAD or any ref might have
+	 *         changed
+	 */
+	public synchronized boolean hasChanged(Repository repository) {
+		MetadataState state = states.get(repository);
+		boolean changed = false;
+		if (state == null) {
+			state = new MetadataState();
+			states.put(repository, state);
+			changed = true;
+		}
+		// take the time before reading the modification times, a file
+		// modified after this point is racy for the next check
+		long now = System.currentTimeMillis();
+		long lastCheck = state.lastCheck;
+		File gitDir = repository.getDirectory();
+
+		File index = repository.isBare() ? null : repository.getIndexFile();
+		long modified = index != null ? index.lastModified() : 0;
+		long length = index != null ? index.length() : 0;
+		if (isModified(modified, state.indexModified, lastCheck)
+				|| length != state.indexLength) {
+			state.indexModified = modified;
+			state.indexLength = length;
+			changed = true;
+		}
+
+		File head = new File(gitDir, Constants.HEAD);
+		modified = head.lastModified();
+		length = head.length();
+		if (isModified(modified, state.headModified, lastCheck)
+				|| length != state.headLength) {
+			state.headModified = modified;
+			state.headLength = length;
+			changed = true;
+		}
+
+		File packedRefs = new File(gitDir, PACKED_REFS);
+		modified = packedRefs.lastModified();
+		length = packedRefs.length();
+		if (isModified(modified, state.packedRefsModified, lastCheck)
+				|| length != state.packedRefsLength) {
+			state.packedRefsModified = modified;
+			state.packedRefsLength = length;
+			changed = true;
+		}
+
+		File refs = new File(gitDir, Constants.R_REFS);
+		if (!state.refFolders.containsKey(refs))
+			state.refFolders.put(refs, Long.valueOf(0));
+		if (checkRefFolders(state.refFolders, lastCheck))
+			changed = true;
+		state.lastCheck = now;
+		return changed;
+	}
+
+	/**
+	 * Forgets the state of all repositories
+	 */
+	public synchronized void clear() {
+		states.clear();
+	}
+
+	/**
+	 * @param modified
+	 *            the current modification time
+	 * @param lastModified
+	 *            the modification time at the last check
+	 * @param lastCheck
+	 *            the time of the last check
+	 * @return <code>true</code> if the modification time changed or if the
+	 *         last check was too close to the modification to notice a
+	 *         further modification
+	 */
+	private static boolean isModified(long modified, long lastModified,
+			long lastCheck) {
+		if (modified != lastModified)
+			return true;
+		return modified != 0 && lastCheck - modified < TIMESTAMP_RESOLUTION;
+	}
+
+	private static boolean checkRefFolders(Map<File, Long> refFolders,
+			long lastCheck) {
+		boolean changed = false;
+		Map<File, Long> added = null;
+		for (Iterator<Map.Entry<File, Long>> it = refFolders.entrySet()
+				.iterator(); it.hasNext();) {
+			Map.Entry<File, Long> entry = it.next();
+			File folder = entry.getKey();
+			long modified = folder.lastModified();
+			if (!isModified(modified, entry.getValue().longValue(), lastCheck))
+				continue;
+			changed = true;
+			if (modified == 0) {
+				// folder was deleted, sub folders are removed when they are
+				// checked
+				it.remove();
+				continue;
+			}
+			entry.setValue(Long.valueOf(modified));
+			File[] children = folder.listFiles();
+			if (children == null)
+				continue;
+			for (File child : children)
+				if (child.isDirectory() && !refFolders.containsKey(child)) {
+					if (added == null)
+						added = new HashMap<File, Long>();
+					added.put(child, Long.valueOf(0));
+				}
+		}
+		if (added != null) {
+			refFolders.putAll(added);
+			// check new folders for sub folders
+			checkRefFolders(refFolders, lastCheck);
+		}
+		return changed;
+	}
+}
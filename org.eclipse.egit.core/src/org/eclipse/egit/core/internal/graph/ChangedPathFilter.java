@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.graph;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Limits a revision walk to the commits changing the given paths, using the
+ * {@link ChangedPathIndex} to skip the tree diff of commits which certainly
+ * did not change them.
+ * <p>
+ * The tree filter of a {@link RevWalk} is applied after its revision filter
+ * to the commit the revision filter accepted last. The revision filter
+ * installed here remembers whether the index excludes the commit, the tree
+ * filter then rejects all entries, so the walk treats the commit exactly like
+ * a commit without changes of the paths, including the rewriting of parents.
+ * If the tree filter is ever called before the revision filter, the index is
+ * not used.
+ */
+public class ChangedPathFilter {
+
+	/**
+	 * Sets a tree filter for the given paths combined with
+	 * {@link TreeFilter#ANY_DIFF} on the walk
+	 *
+	 * @param walk
+	 *            a walk without revision filter
+	 * @param repository
+	 * @param paths
+	 *            repository relative paths
+	 */
+	public static void setFilter(RevWalk walk, Repository repository,
+			Collection<String> paths) {
+		setFilter(walk, CommitGraphCache.getChangedPathIndex(repository),
+				paths);
+	}
+
+	/**
+	 * @param walk
+	 * @param index
+	 *            the index to use, may be <code>null</code>
+	 * @param paths
+	 */
+	static void setFilter(RevWalk walk, ChangedPathIndex index,
+			Collection<String> paths) {
+		TreeFilter filter = AndTreeFilter.create(PathFilterGroup
+				.createFromStrings(paths), TreeFilter.ANY_DIFF);
+		if (index == null) {
+			walk.setTreeFilter(filter);
+			return;
+		}
+		ChangedPathFilter state = new ChangedPathFilter(index, paths);
+		walk.setRevFilter(state.new IndexRevFilter());
+		walk.setTreeFilter(state.new IndexTreeFilter(filter));
+	}
+
+	private final ChangedPathIndex index;
+
+	private final Collection<String> paths;
+
+	/** <code>null</code> until the order of the filters is known */
+	private Boolean enabled;
+
+	private boolean skipCurrent;
+
+	private ChangedPathFilter(ChangedPathIndex index, Collection<String> paths) {
+		this.index = index;
+		this.paths = new ArrayList<String>(paths);
+	}
+
+	private class IndexRevFilter extends RevFilter {
+		@Override
+		public boolean include(RevWalk walker, RevCommit c) {
+			if (enabled == null)
+				enabled = Boolean.TRUE;
+			skipCurrent = enabled.booleanValue() && c.getParentCount() <= 1
+					&& !index.mightChange(c, paths);
+			return true;
+		}
+
+		@Override
+		public RevFilter clone() {
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return "CHANGED_PATH_INDEX"; //$NON-NLS-1$
+		}
+	}
+
+	private class IndexTreeFilter extends TreeFilter {
+		private final TreeFilter delegate;
+
+		IndexTreeFilter(TreeFilter delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public boolean include(TreeWalk walker) throws MissingObjectException,
+				IncorrectObjectTypeException, IOException {
+			if (enabled == null)
+				enabled = Boolean.FALSE;
+			if (skipCurrent)
+				return false;
+			return delegate.include(walker);
+		}
+
+		@Override
+		public boolean shouldBeRecursive() {
+			return delegate.shouldBeRecursive();
+		}
+
+		@Override
+		public TreeFilter clone() {
+			return new IndexTreeFilter(delegate.clone());
+		}
+
+		@Override
+		public String toString() {
+			return delegate.toString();
+		}
+	}
+}
@@ -0,0 +1,457 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.graph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Read-only index of Bloom filters of the paths changed by commits, backed by
+ * memory-mapped files.
+ * <p>
+ * For every commit with at most one parent the index contains a Bloom filter
+ * of the paths changed against the parent, including all parent folders of
+ * the changed paths. If a path is not contained in the filter, the commit
+ * certainly did not change it. Merge commits and commits changing more than
+ * {@link #MAX_CHANGED_PATHS} paths have no filter.
+ * <p>
+ * Like the {@link CommitGraph}, the index consists of layers. Each layer is a
+ * file containing the filters of the commits added by one update, commits
+ * which are not contained in a layer are looked up in its base.
+ * <p>
+ * The file starts with a magic number, a format version, the generation of
+ * the file of the base layer, the number of commits in the base layers, the
+ * number of commits and the length of the filter data. It continues with the
+ * sorted commit ids, the end offset of the filter of every commit in the
+ * filter data and the filter data, and ends with a CRC32 checksum of
+ * everything before.
+ */
+public class ChangedPathIndex {
+
+	/** commits changing more paths have no filter */
+	static final int MAX_CHANGED_PATHS = 512;
+
+	private static final int MAGIC = 0x45435049; // "ECPI"
+
+	private static final int VERSION = 2;
+
+	private static final int HEADER_SIZE = 24;
+
+	private static final int CHECKSUM_SIZE = 8;
+
+	private static final int NO_FILTER = 0x80000000;
+
+	private static final int BITS_PER_ENTRY = 10;
+
+	private static final int HASH_COUNT = 7;
+
+	private static final int SEED1 = 0x293ae76f;
+
+	private static final int SEED2 = 0x7e646e2c;
+
+	private final ByteBuffer buffer;
+
+	private final int fileGeneration;
+
+	private final ChangedPathIndex base;
+
+	private final int baseCount;
+
+	private final int count;
+
+	private final int offsetsOffset;
+
+	private final int dataOffset;
+
+	private ChangedPathIndex(ByteBuffer buffer, int fileGeneration,
+			ChangedPathIndex base, int count) {
+		this.buffer = buffer;
+		this.fileGeneration = fileGeneration;
+		this.base = base;
+		this.baseCount = base != null ? base.getCommitCount() : 0;
+		this.count = count;
+		offsetsOffset = HEADER_SIZE + count * Constants.OBJECT_ID_LENGTH;
+		dataOffset = offsetsOffset + count * 4;
+	}
+
+	/**
+	 * @return the number of commits in the index
+	 */
+	public int getCommitCount() {
+		return baseCount + count;
+	}
+
+	/**
+	 * @return the number of commits in this layer
+	 */
+	int getLayerCommitCount() {
+		return count;
+	}
+
+	/**
+	 * @return the base layer, <code>null</code> for the first layer
+	 */
+	ChangedPathIndex getBase() {
+		return base;
+	}
+
+	/**
+	 * @param commit
+	 * @return <code>true</code> if the index contains the commit
+	 */
+	public boolean contains(AnyObjectId commit) {
+		if (find(commit) >= 0)
+			return true;
+		return base != null && base.contains(commit);
+	}
+
+	/**
+	 * @param commit
+	 * @param paths
+	 *            repository relative paths
+	 * @return <code>false</code> if the commit certainly did not change any of
+	 *         the paths, <code>true</code> if it might have changed one of
+	 *         them or the index has no filter for the commit
+	 */
+	public boolean mightChange(AnyObjectId commit, Collection<String> paths) {
+		int position = find(commit);
+		if (position < 0)
+			return base == null || base.mightChange(commit, paths);
+		int end = buffer.getInt(offsetsOffset + position * 4);
+		if ((end & NO_FILTER) != 0)
+			return true;
+		int start = getStart(position);
+		if (end == start)
+			// no changes
+			return false;
+		for (String path : paths)
+			if (mightContain(start, end - start, Constants.encode(path)))
+				return true;
+		return false;
+	}
+
+	private int getStart(int position) {
+		return position == 0 ? 0 : buffer.getInt(offsetsOffset
+				+ (position - 1) * 4) & ~NO_FILTER;
+	}
+
+	private boolean mightContain(int start, int length, byte[] path) {
+		int bits = length * 8;
+		int h1 = murmur3(SEED1, path);
+		int h2 = murmur3(SEED2, path);
+		for (int i = 0; i < HASH_COUNT; i++) {
+			int bit = (int) (((h1 + i * h2) & 0xffffffffL) % bits);
+			if ((buffer.get(dataOffset + start + bit / 8) & (1 << (bit % 8))) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	private int find(AnyObjectId id) {
+		byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+		id.copyRawTo(raw, 0);
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int offset = HEADER_SIZE + mid * Constants.OBJECT_ID_LENGTH;
+			int cmp = 0;
+			for (int i = 0; i < raw.length && cmp == 0; i++)
+				cmp = (raw[i] & 0xff) - (buffer.get(offset + i) & 0xff);
+			if (cmp == 0)
+				return mid;
+			if (cmp < 0)
+				high = mid;
+			else
+				low = mid + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param position
+	 * @return the filter of the commit at the given position,
+	 *         <code>null</code> if the commit has no filter
+	 */
+	private byte[] getFilter(int position) {
+		int end = buffer.getInt(offsetsOffset + position * 4);
+		if ((end & NO_FILTER) != 0)
+			return null;
+		int start = getStart(position);
+		byte[] filter = new byte[end - start];
+		ByteBuffer data = buffer.duplicate();
+		data.position(dataOffset + start);
+		data.get(filter);
+		return filter;
+	}
+
+	/**
+	 * Adds the filters of the commits of this layer to the given map
+	 *
+	 * @param filters
+	 *            commit id to filter, <code>null</code> for commits without
+	 *            filter
+	 */
+	void getLayerFilters(Map<ObjectId, byte[]> filters) {
+		for (int i = 0; i < count; i++) {
+			byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+			ByteBuffer ids = buffer.duplicate();
+			ids.position(HEADER_SIZE + i * Constants.OBJECT_ID_LENGTH);
+			ids.get(raw);
+			filters.put(ObjectId.fromRaw(raw), getFilter(i));
+		}
+	}
+
+	/**
+	 * Computes the filter of a commit
+	 *
+	 * @param repository
+	 * @param commit
+	 *            a parsed commit with at most one parent
+	 * @param parent
+	 *            the parsed parent or <code>null</code> for root commits
+	 * @return the filter, <code>null</code> if too many paths changed
+	 * @throws IOException
+	 */
+	static byte[] createFilter(Repository repository, RevCommit commit,
+			RevCommit parent) throws IOException {
+		Set<String> paths = new HashSet<String>();
+		TreeWalk tw = new TreeWalk(repository);
+		try {
+			tw.setRecursive(true);
+			tw.setFilter(TreeFilter.ANY_DIFF);
+			if (parent != null)
+				tw.addTree(parent.getTree());
+			else
+				tw.addTree(new EmptyTreeIterator());
+			tw.addTree(commit.getTree());
+			while (tw.next()) {
+				String path = tw.getPathString();
+				// add the path and its parent folders
+				for (;;) {
+					if (!paths.add(path))
+						break;
+					int slash = path.lastIndexOf('/');
+					if (slash < 0)
+						break;
+					path = path.substring(0, slash);
+				}
+				if (paths.size() > MAX_CHANGED_PATHS)
+					return null;
+			}
+		} finally {
+			tw.release();
+		}
+		if (paths.isEmpty())
+			return new byte[0];
+		int bits = Math.max(64, paths.size() * BITS_PER_ENTRY);
+		byte[] filter = new byte[(bits + 7) / 8];
+		bits = filter.length * 8;
+		for (String path : paths) {
+			byte[] bytes = Constants.encode(path);
+			int h1 = murmur3(SEED1, bytes);
+			int h2 = murmur3(SEED2, bytes);
+			for (int i = 0; i < HASH_COUNT; i++) {
+				int bit = (int) (((h1 + i * h2) & 0xffffffffL) % bits);
+				filter[bit / 8] |= 1 << (bit % 8);
+			}
+		}
+		return filter;
+	}
+
+	/**
+	 * 32-bit MurmurHash3 of the given bytes
+	 */
+	private static int murmur3(int seed, byte[] data) {
+		final int c1 = 0xcc9e2d51;
+		final int c2 = 0x1b873593;
+		int h = seed;
+		int blocks = data.length / 4;
+		for (int i = 0; i < blocks; i++) {
+			int k = (data[4 * i] & 0xff) | ((data[4 * i + 1] & 0xff) << 8)
+					| ((data[4 * i + 2] & 0xff) << 16)
+					| ((data[4 * i + 3] & 0xff) << 24);
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+			h ^= k;
+			h = Integer.rotateLeft(h, 13);
+			h = h * 5 + 0xe6546b64;
+		}
+		int k = 0;
+		int tail = blocks * 4;
+		switch (data.length & 3) {
+		case 3:
+			k ^= (data[tail + 2] & 0xff) << 16;
+			//$FALL-THROUGH$
+		case 2:
+			k ^= (data[tail + 1] & 0xff) << 8;
+			//$FALL-THROUGH$
+		case 1:
+			k ^= data[tail] & 0xff;
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+			h ^= k;
+		}
+		h ^= data.length;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * Maps an index file into memory
+	 *
+	 * @param file
+	 * @param fileGeneration
+	 *            the generation of the file
+	 * @param base
+	 *            the base layer referenced by the file, <code>null</code> if
+	 *            the file has no base
+	 * @return the index
+	 * @throws IOException
+	 *             if the file cannot be read or is corrupt
+	 */
+	static ChangedPathIndex read(File file, int fileGeneration,
+			ChangedPathIndex base) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		ByteBuffer buffer;
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size < HEADER_SIZE + CHECKSUM_SIZE || size > Integer.MAX_VALUE)
+				throw new IOException(file.getAbsolutePath());
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		} finally {
+			// the mapping stays valid
+			in.close();
+		}
+		int size = buffer.capacity();
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+			throw new IOException(file.getAbsolutePath());
+		int baseGeneration = buffer.getInt(8);
+		int baseCount = buffer.getInt(12);
+		long count = buffer.getInt(16);
+		long dataLength = buffer.getInt(20);
+		if (baseGeneration != (base != null ? base.fileGeneration : 0)
+				|| baseCount != (base != null ? base.getCommitCount() : 0)
+				|| count < 0
+				|| dataLength < 0
+				|| HEADER_SIZE + count * (Constants.OBJECT_ID_LENGTH + 4)
+						+ dataLength + CHECKSUM_SIZE != size)
+			throw new IOException(file.getAbsolutePath());
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[8192];
+		ByteBuffer data = buffer.duplicate();
+		data.limit(size - CHECKSUM_SIZE);
+		while (data.hasRemaining()) {
+			int n = Math.min(chunk.length, data.remaining());
+			data.get(chunk, 0, n);
+			crc.update(chunk, 0, n);
+		}
+		if (crc.getValue() != buffer.getLong(size - CHECKSUM_SIZE))
+			throw new IOException(file.getAbsolutePath());
+		return new ChangedPathIndex(buffer, fileGeneration, base, (int) count);
+	}
+
+	/**
+	 * Writes a layer of an index
+	 *
+	 * @param file
+	 *            a file which does not exist yet
+	 * @param base
+	 *            the base layer, <code>null</code> for the first layer
+	 * @param filters
+	 *            commit id to filter, <code>null</code> for commits without
+	 *            filter. The commits must not be contained in the base layer.
+	 * @throws IOException
+	 */
+	static void write(File file, ChangedPathIndex base,
+			Map<ObjectId, byte[]> filters) throws IOException {
+		List<ObjectId> ids = new ArrayList<ObjectId>(filters.keySet());
+		Collections.sort(ids);
+		int dataLength = 0;
+		for (byte[] filter : filters.values())
+			if (filter != null)
+				dataLength += filter.length;
+
+		File folder = file.getParentFile();
+		if (!folder.isDirectory() && !folder.mkdirs())
+			throw new IOException(folder.getAbsolutePath());
+		File tmp = new File(folder, file.getName() + ".tmp"); //$NON-NLS-1$
+		CheckedOutputStream checked = new CheckedOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp)),
+				new CRC32());
+		DataOutputStream out = new DataOutputStream(checked);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(base != null ? base.fileGeneration : 0);
+			out.writeInt(base != null ? base.getCommitCount() : 0);
+			out.writeInt(ids.size());
+			out.writeInt(dataLength);
+			byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+			for (ObjectId id : ids) {
+				id.copyRawTo(raw, 0);
+				out.write(raw);
+			}
+			int end = 0;
+			for (ObjectId id : ids) {
+				byte[] filter = filters.get(id);
+				if (filter == null)
+					out.writeInt(end | NO_FILTER);
+				else {
+					end += filter.length;
+					out.writeInt(end);
+				}
+			}
+			for (ObjectId id : ids) {
+				byte[] filter = filters.get(id);
+				if (filter != null)
+					out.write(filter);
+			}
+			out.flush();
+			out.writeLong(checked.getChecksum().getValue());
+		} finally {
+			out.close();
+		}
+		if (file.exists() || !tmp.renameTo(file)) {
+			tmp.delete();
+			throw new IOException(file.getAbsolutePath());
+		}
+	}
+}
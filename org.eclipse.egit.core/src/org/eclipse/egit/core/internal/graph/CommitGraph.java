@@ -0,0 +1,501 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.graph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Read-only commit graph backed by memory-mapped files.
+ * <p>
+ * Like the split commit graph of C git, the graph consists of layers. Each
+ * layer is a file containing the sorted ids of the commits added by one
+ * update, the commits of its base layers are not repeated. Commits are
+ * addressed by their position, the positions of a layer follow those of its
+ * base. For every commit the positions of the first two parents, the commit
+ * time and the generation number are stored. Parents may be contained in a
+ * base layer. Further parents of octopus merges are stored in a separate list
+ * of positions, the second parent field then refers to this list.
+ * <p>
+ * The file starts with a magic number, a format version, the generation of
+ * the file of the base layer, the number of commits in the base layers, the
+ * number of commits and the length of the extra parent list. It ends with a
+ * CRC32 checksum of everything before. Since commits are immutable, a graph
+ * written for an older state of the repository is still correct for all
+ * commits it contains.
+ */
+public class CommitGraph {
+
+	private static final int MAGIC = 0x45434752; // "ECGR"
+
+	private static final int VERSION = 2;
+
+	private static final int HEADER_SIZE = 24;
+
+	private static final int ENTRY_SIZE = 16;
+
+	private static final int CHECKSUM_SIZE = 8;
+
+	private static final int NO_PARENT = -1;
+
+	private static final int EXTRA_PARENTS = 0x80000000;
+
+	private static final int LAST_PARENT = 0x80000000;
+
+	private final ByteBuffer buffer;
+
+	private final int fileGeneration;
+
+	private final CommitGraph base;
+
+	private final int baseCount;
+
+	private final int count;
+
+	private final int entriesOffset;
+
+	private final int extraParentsOffset;
+
+	private CommitGraph(ByteBuffer buffer, int fileGeneration,
+			CommitGraph base, int count) {
+		this.buffer = buffer;
+		this.fileGeneration = fileGeneration;
+		this.base = base;
+		this.baseCount = base != null ? base.getCommitCount() : 0;
+		this.count = count;
+		entriesOffset = HEADER_SIZE + count * Constants.OBJECT_ID_LENGTH;
+		extraParentsOffset = entriesOffset + count * ENTRY_SIZE;
+	}
+
+	/**
+	 * @return the number of commits in the graph
+	 */
+	public int getCommitCount() {
+		return baseCount + count;
+	}
+
+	/**
+	 * @return the number of commits in this layer
+	 */
+	int getLayerCommitCount() {
+		return count;
+	}
+
+	/**
+	 * @return the base layer, <code>null</code> for the first layer
+	 */
+	CommitGraph getBase() {
+		return base;
+	}
+
+	/**
+	 * @return the generation of the file of this layer
+	 */
+	int getFileGeneration() {
+		return fileGeneration;
+	}
+
+	/**
+	 * @param id
+	 * @return the position of the commit or -1 if the graph does not contain
+	 *         the commit
+	 */
+	public int find(AnyObjectId id) {
+		byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+		id.copyRawTo(raw, 0);
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compare(raw, mid);
+			if (cmp == 0)
+				return baseCount + mid;
+			if (cmp < 0)
+				high = mid;
+			else
+				low = mid + 1;
+		}
+		return base != null ? base.find(id) : -1;
+	}
+
+	private int compare(byte[] raw, int position) {
+		int offset = HEADER_SIZE + position * Constants.OBJECT_ID_LENGTH;
+		for (int i = 0; i < raw.length; i++) {
+			int cmp = (raw[i] & 0xff) - (buffer.get(offset + i) & 0xff);
+			if (cmp != 0)
+				return cmp;
+		}
+		return 0;
+	}
+
+	/**
+	 * @param position
+	 * @return the id of the commit
+	 */
+	public ObjectId getId(int position) {
+		if (position < baseCount)
+			return base.getId(position);
+		int local = toLocal(position);
+		byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+		ByteBuffer ids = buffer.duplicate();
+		ids.position(HEADER_SIZE + local * Constants.OBJECT_ID_LENGTH);
+		ids.get(raw);
+		return ObjectId.fromRaw(raw);
+	}
+
+	/**
+	 * @param position
+	 * @return the commit time in seconds since the epoch
+	 */
+	public int getCommitTime(int position) {
+		if (position < baseCount)
+			return base.getCommitTime(position);
+		return buffer.getInt(entriesOffset + toLocal(position) * ENTRY_SIZE
+				+ 8);
+	}
+
+	/**
+	 * @param position
+	 * @return the generation number, 1 for root commits
+	 */
+	public int getGeneration(int position) {
+		if (position < baseCount)
+			return base.getGeneration(position);
+		return buffer.getInt(entriesOffset + toLocal(position) * ENTRY_SIZE
+				+ 12);
+	}
+
+	/**
+	 * @param position
+	 * @return the number of parents of the commit
+	 */
+	public int getParentCount(int position) {
+		if (position < baseCount)
+			return base.getParentCount(position);
+		int offset = entriesOffset + toLocal(position) * ENTRY_SIZE;
+		if (buffer.getInt(offset) == NO_PARENT)
+			return 0;
+		int second = buffer.getInt(offset + 4);
+		if (second == NO_PARENT)
+			return 1;
+		if ((second & EXTRA_PARENTS) == 0)
+			return 2;
+		int n = 1;
+		int extra = extraParentsOffset + (second & ~EXTRA_PARENTS) * 4;
+		while ((buffer.getInt(extra) & LAST_PARENT) == 0) {
+			extra += 4;
+			n++;
+		}
+		return n + 1;
+	}
+
+	/**
+	 * @param position
+	 * @param n
+	 *            the index of the parent, less than
+	 *            {@link #getParentCount(int)}
+	 * @return the position of the n-th parent of the commit
+	 */
+	public int getParent(int position, int n) {
+		if (position < baseCount)
+			return base.getParent(position, n);
+		int offset = entriesOffset + toLocal(position) * ENTRY_SIZE;
+		int parent;
+		if (n == 0)
+			parent = buffer.getInt(offset);
+		else {
+			int second = buffer.getInt(offset + 4);
+			if ((second & EXTRA_PARENTS) == 0 && n == 1)
+				parent = second;
+			else if ((second & EXTRA_PARENTS) != 0)
+				parent = buffer.getInt(extraParentsOffset
+						+ ((second & ~EXTRA_PARENTS) + n - 1) * 4)
+						& ~LAST_PARENT;
+			else
+				parent = NO_PARENT;
+		}
+		checkPosition(parent);
+		return parent;
+	}
+
+	/**
+	 * Finds the commits reachable from only one of two commits without
+	 * parsing any commit. The graph is walked by descending generation number
+	 * until all commits still to visit are reachable from both commits.
+	 *
+	 * @param a
+	 *            the position of the first commit
+	 * @param b
+	 *            the position of the second commit
+	 * @param onlyA
+	 *            receives the positions of the commits reachable only from
+	 *            the first commit, children before parents
+	 * @param onlyB
+	 *            receives the positions of the commits reachable only from
+	 *            the second commit, children before parents
+	 */
+	public void findExclusive(int a, int b, List<Integer> onlyA,
+			List<Integer> onlyB) {
+		final int fromA = 1;
+		final int fromB = 2;
+		final int fromBoth = fromA | fromB;
+		Map<Integer, Integer> flags = new HashMap<Integer, Integer>();
+		PriorityQueue<Integer> queue = new PriorityQueue<Integer>(11,
+				new Comparator<Integer>() {
+					public int compare(Integer p1, Integer p2) {
+						return getGeneration(p2.intValue())
+								- getGeneration(p1.intValue());
+					}
+				});
+		flags.put(Integer.valueOf(a), Integer.valueOf(fromA));
+		queue.add(Integer.valueOf(a));
+		Integer old = flags.put(Integer.valueOf(b), Integer.valueOf(fromB));
+		if (old != null)
+			return;
+		queue.add(Integer.valueOf(b));
+		// number of queued commits not reachable from both
+		int pending = 2;
+		while (pending > 0) {
+			Integer position = queue.poll();
+			int flag = flags.get(position).intValue();
+			if (flag == fromA)
+				onlyA.add(position);
+			else if (flag == fromB)
+				onlyB.add(position);
+			if (flag != fromBoth)
+				pending--;
+			int parentCount = getParentCount(position.intValue());
+			for (int i = 0; i < parentCount; i++) {
+				// parents have a lower generation, they are not visited yet
+				Integer parent = Integer.valueOf(getParent(position
+						.intValue(), i));
+				Integer parentFlag = flags.get(parent);
+				int oldFlag = parentFlag != null ? parentFlag.intValue() : 0;
+				int newFlag = oldFlag | flag;
+				if (newFlag == oldFlag)
+					continue;
+				flags.put(parent, Integer.valueOf(newFlag));
+				if (parentFlag == null) {
+					queue.add(parent);
+					if (newFlag != fromBoth)
+						pending++;
+				} else if (newFlag == fromBoth)
+					pending--;
+			}
+		}
+	}
+
+	private void checkPosition(int position) {
+		if (position < 0 || position >= baseCount + count)
+			throw new IndexOutOfBoundsException(String.valueOf(position));
+	}
+
+	/**
+	 * @param position
+	 *            a position of this layer
+	 * @return the position within this layer
+	 */
+	private int toLocal(int position) {
+		checkPosition(position);
+		return position - baseCount;
+	}
+
+	/**
+	 * Adds the commits of this layer to a list, their parents are nodes which
+	 * are not loaded
+	 *
+	 * @param nodes
+	 */
+	void getLayerNodes(List<CommitNode> nodes) {
+		int end = baseCount + count;
+		for (int position = baseCount; position < end; position++) {
+			CommitNode node = new CommitNode(getId(position));
+			node.parents = new CommitNode[getParentCount(position)];
+			for (int n = 0; n < node.parents.length; n++)
+				node.parents[n] = new CommitNode(getId(getParent(position, n)));
+			node.commitTime = getCommitTime(position);
+			node.generation = getGeneration(position);
+			nodes.add(node);
+		}
+	}
+
+	/**
+	 * Maps a commit graph file into memory
+	 *
+	 * @param file
+	 * @param fileGeneration
+	 *            the generation of the file
+	 * @param base
+	 *            the base layer referenced by the file, <code>null</code> if
+	 *            the file has no base
+	 * @return the commit graph
+	 * @throws IOException
+	 *             if the file cannot be read or is corrupt
+	 */
+	static CommitGraph read(File file, int fileGeneration, CommitGraph base)
+			throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		ByteBuffer buffer;
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size < HEADER_SIZE + CHECKSUM_SIZE || size > Integer.MAX_VALUE)
+				throw new IOException(file.getAbsolutePath());
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		} finally {
+			// the mapping stays valid
+			in.close();
+		}
+		int size = buffer.capacity();
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+			throw new IOException(file.getAbsolutePath());
+		int baseGeneration = buffer.getInt(8);
+		int baseCount = buffer.getInt(12);
+		long count = buffer.getInt(16);
+		long extraParents = buffer.getInt(20);
+		if (baseGeneration != (base != null ? base.fileGeneration : 0)
+				|| baseCount != (base != null ? base.getCommitCount() : 0)
+				|| count < 0
+				|| extraParents < 0
+				|| HEADER_SIZE + count * (Constants.OBJECT_ID_LENGTH + ENTRY_SIZE)
+						+ extraParents * 4 + CHECKSUM_SIZE != size)
+			throw new IOException(file.getAbsolutePath());
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[8192];
+		ByteBuffer data = buffer.duplicate();
+		data.limit(size - CHECKSUM_SIZE);
+		while (data.hasRemaining()) {
+			int n = Math.min(chunk.length, data.remaining());
+			data.get(chunk, 0, n);
+			crc.update(chunk, 0, n);
+		}
+		if (crc.getValue() != buffer.getLong(size - CHECKSUM_SIZE))
+			throw new IOException(file.getAbsolutePath());
+		return new CommitGraph(buffer, fileGeneration, base, (int) count);
+	}
+
+	/**
+	 * Writes a layer of a commit graph
+	 *
+	 * @param file
+	 *            a file which does not exist yet
+	 * @param base
+	 *            the base layer, <code>null</code> for the first layer
+	 * @param commits
+	 *            loaded commit nodes not contained in the base layer, the
+	 *            parents of all commits must be contained in the nodes or the
+	 *            base layer
+	 * @throws IOException
+	 */
+	static void write(File file, CommitGraph base,
+			Collection<? extends CommitNode> commits) throws IOException {
+		List<CommitNode> sorted = new ArrayList<CommitNode>(commits);
+		Collections.sort(sorted, new Comparator<CommitNode>() {
+			public int compare(CommitNode o1, CommitNode o2) {
+				return o1.compareTo(o2);
+			}
+		});
+		int baseCount = base != null ? base.getCommitCount() : 0;
+		Map<AnyObjectId, Integer> positions = new HashMap<AnyObjectId, Integer>(
+				sorted.size() * 2);
+		int extraParents = 0;
+		for (CommitNode commit : sorted) {
+			positions.put(commit,
+					Integer.valueOf(baseCount + positions.size()));
+			if (commit.parents.length > 2)
+				extraParents += commit.parents.length - 1;
+		}
+
+		File folder = file.getParentFile();
+		if (!folder.isDirectory() && !folder.mkdirs())
+			throw new IOException(folder.getAbsolutePath());
+		File tmp = new File(folder, file.getName() + ".tmp"); //$NON-NLS-1$
+		CheckedOutputStream checked = new CheckedOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp)),
+				new CRC32());
+		DataOutputStream out = new DataOutputStream(checked);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(base != null ? base.fileGeneration : 0);
+			out.writeInt(baseCount);
+			out.writeInt(sorted.size());
+			out.writeInt(extraParents);
+			byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+			for (CommitNode commit : sorted) {
+				commit.copyRawTo(raw, 0);
+				out.write(raw);
+			}
+			int extraIndex = 0;
+			for (CommitNode commit : sorted) {
+				CommitNode[] parents = commit.parents;
+				out.writeInt(parents.length > 0 ? position(positions,
+						base, parents[0]) : NO_PARENT);
+				if (parents.length > 2) {
+					out.writeInt(EXTRA_PARENTS | extraIndex);
+					extraIndex += parents.length - 1;
+				} else
+					out.writeInt(parents.length > 1 ? position(positions,
+							base, parents[1]) : NO_PARENT);
+				out.writeInt(commit.commitTime);
+				out.writeInt(commit.generation);
+			}
+			for (CommitNode commit : sorted) {
+				CommitNode[] parents = commit.parents;
+				if (parents.length <= 2)
+					continue;
+				for (int i = 1; i < parents.length; i++) {
+					int position = position(positions, base, parents[i]);
+					if (i == parents.length - 1)
+						position |= LAST_PARENT;
+					out.writeInt(position);
+				}
+			}
+			out.flush();
+			out.writeLong(checked.getChecksum().getValue());
+		} finally {
+			out.close();
+		}
+		if (file.exists() || !tmp.renameTo(file)) {
+			tmp.delete();
+			throw new IOException(file.getAbsolutePath());
+		}
+	}
+
+	private static int position(Map<AnyObjectId, Integer> positions,
+			CommitGraph base, CommitNode commit) throws IOException {
+		Integer position = positions.get(commit);
+		if (position != null)
+			return position.intValue();
+		int basePosition = base != null ? base.find(commit) : -1;
+		if (basePosition < 0)
+			throw new IOException(commit.name());
+		return basePosition;
+	}
+}
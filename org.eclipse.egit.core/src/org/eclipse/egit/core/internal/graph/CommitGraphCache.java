@@ -0,0 +1,566 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.graph;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.preferences.DefaultScope;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.egit.core.Activator;
+import org.eclipse.egit.core.CoreText;
+import org.eclipse.egit.core.GitCorePreferences;
+import org.eclipse.egit.core.JobFamilies;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdSubclassMap;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Manages the {@link CommitGraph}, {@link ChangedPathIndex} and
+ * {@link CommitTextIndex} files of repositories in the plugin state location.
+ * <p>
+ * The files are updated by a background job after the refs of a repository
+ * changed. Only commits not yet contained in the previous files are parsed.
+ * Like the split commit graph of C git, an update writes these commits as a
+ * new layer on top of the existing files. A layer which is not more than twice
+ * as large as the commits to write is merged into the new layer, which keeps
+ * the number of layers logarithmic in the number of commits.
+ */
+public class CommitGraphCache {
+
+	private static final String FOLDER = "commitgraph"; //$NON-NLS-1$
+
+	private static final String GRAPH_EXTENSION = ".graph"; //$NON-NLS-1$
+
+	private static final String CHANGED_PATHS_EXTENSION = ".paths"; //$NON-NLS-1$
+
+	private static final String TEXT_EXTENSION = ".text"; //$NON-NLS-1$
+
+	private static final long UPDATE_DELAY = 5000;
+
+	private static final int LAYER_SIZE_FACTOR = 2;
+
+	/** number of commits parsed with one RevWalk when computing filters */
+	private static final int FILTER_BATCH_SIZE = 10000;
+
+	/** number of commits added to the text index before writing it */
+	private static final int TEXT_WRITE_SIZE = 100000;
+
+	private static final Map<File, CommitGraphCache> CACHES = new HashMap<File, CommitGraphCache>();
+
+	/**
+	 * The generations of a layered memory-mapped file. Every update writes a
+	 * new layer to a new file named by its generation, a mapped file is never
+	 * replaced. The header of a layer contains the generation of its base
+	 * layer after the magic number and the format version. Files of older
+	 * generations which are no longer referenced by the latest layer are
+	 * deleted when a newer one is published, files which cannot be deleted
+	 * while they are still mapped are deleted with the next generation.
+	 *
+	 * @param <T>
+	 */
+	private static abstract class MappedFile<T> {
+		private final File folder;
+
+		private final String prefix;
+
+		private final String extension;
+
+		private T content;
+
+		private List<File> layers;
+
+		private int generation = -1;
+
+		MappedFile(File folder, String name, String extension) {
+			this.folder = folder;
+			this.prefix = name + '.';
+			this.extension = extension;
+		}
+
+		/**
+		 * @return the content of the latest generation or <code>null</code>
+		 *         if there is none or it cannot be read. A file which cannot
+		 *         be read is not deleted, it is superseded by the next
+		 *         generation.
+		 */
+		synchronized T get() {
+			if (generation < 0) {
+				generation = 0;
+				File latest = null;
+				for (File f : listFiles())
+					if (getGeneration(f) > generation) {
+						generation = getGeneration(f);
+						latest = f;
+					}
+				if (latest != null)
+					try {
+						List<File> files = new ArrayList<File>();
+						content = load(latest, files);
+						layers = files;
+						deleteOldFiles();
+					} catch (IOException e) {
+						content = null;
+					}
+			}
+			return content;
+		}
+
+		/**
+		 * @return a file for the next generation which does not exist yet
+		 */
+		synchronized File next() {
+			get();
+			File f;
+			do {
+				f = new File(folder, prefix + ++generation + extension);
+			} while (f.exists());
+			return f;
+		}
+
+		/**
+		 * Makes a written file the latest generation
+		 *
+		 * @param f
+		 *            a file returned by {@link #next()}
+		 * @return the content of the file
+		 * @throws IOException
+		 */
+		synchronized T publish(File f) throws IOException {
+			List<File> files = new ArrayList<File>();
+			content = load(f, files);
+			layers = files;
+			deleteOldFiles();
+			return content;
+		}
+
+		/**
+		 * Reads a layer and its base layers
+		 *
+		 * @param f
+		 * @param files
+		 *            receives the files of the layers
+		 * @return the content of the layer
+		 * @throws IOException
+		 */
+		private T load(File f, List<File> files) throws IOException {
+			int fileGeneration = getGeneration(f);
+			int baseGeneration;
+			DataInputStream in = new DataInputStream(new FileInputStream(f));
+			try {
+				// skip the magic number and the version
+				in.readInt();
+				in.readInt();
+				baseGeneration = in.readInt();
+			} finally {
+				in.close();
+			}
+			T base = null;
+			if (baseGeneration != 0) {
+				if (baseGeneration < 0 || baseGeneration >= fileGeneration)
+					throw new IOException(f.getAbsolutePath());
+				base = load(new File(folder, prefix + baseGeneration
+						+ extension), files);
+			}
+			files.add(f);
+			return read(f, fileGeneration, base);
+		}
+
+		private void deleteOldFiles() {
+			int currentGeneration = getGeneration(layers
+					.get(layers.size() - 1));
+			for (File f : listFiles()) {
+				int fileGeneration = getGeneration(f);
+				if (fileGeneration >= 0 && fileGeneration < currentGeneration
+						&& !layers.contains(f))
+					f.delete();
+			}
+		}
+
+		private File[] listFiles() {
+			File[] files = folder.listFiles();
+			return files != null ? files : new File[0];
+		}
+
+		private int getGeneration(File f) {
+			String name = f.getName();
+			if (!name.startsWith(prefix) || !name.endsWith(extension))
+				return -1;
+			try {
+				return Integer.parseInt(name.substring(prefix.length(),
+						name.length() - extension.length()));
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+
+		abstract T read(File f, int fileGeneration, T base)
+				throws IOException;
+	}
+
+	/**
+	 * @param repository
+	 * @return the commit graph of the repository or <code>null</code> if it
+	 *         was not written yet. The graph might not contain the most recent
+	 *         commits.
+	 */
+	public static CommitGraph getCommitGraph(Repository repository) {
+		CommitGraphCache cache = getCache(repository);
+		return cache != null ? cache.getGraph(repository) : null;
+	}
+
+	/**
+	 * @param repository
+	 * @return the changed path index of the repository or <code>null</code>
+	 *         if it was not written yet. The index might not contain the most
+	 *         recent commits.
+	 */
+	public static ChangedPathIndex getChangedPathIndex(Repository repository) {
+		CommitGraphCache cache = getCache(repository);
+		if (cache == null || cache.getGraph(repository) == null)
+			return null;
+		return cache.changedPaths.get();
+	}
+
+	/**
+	 * @param repository
+	 * @return the commit text index of the repository or <code>null</code>
+	 *         if it was not written yet. The index might not contain the most
+	 *         recent commits.
+	 */
+	public static CommitTextIndex getCommitTextIndex(Repository repository) {
+		CommitGraphCache cache = getCache(repository);
+		if (cache == null || cache.getGraph(repository) == null)
+			return null;
+		return cache.text.get();
+	}
+
+	/**
+	 * Schedules an update of the commit graph of the repository
+	 *
+	 * @param repository
+	 */
+	public static void scheduleUpdate(Repository repository) {
+		scheduleUpdate(repository, UPDATE_DELAY);
+	}
+
+	/**
+	 * Schedules an update of the commit graph of the repository
+	 *
+	 * @param repository
+	 * @param delay
+	 *            the delay in milliseconds
+	 */
+	public static void scheduleUpdate(Repository repository, long delay) {
+		CommitGraphCache cache = getCache(repository);
+		if (cache != null)
+			cache.schedule(repository, delay);
+	}
+
+	/**
+	 * Forgets the caches of all repositories, which releases their mapped
+	 * files. Must only be called after all update jobs finished.
+	 */
+	public static void dispose() {
+		synchronized (CACHES) {
+			CACHES.clear();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the commit graph and its indexes are
+	 *         updated and used, see {@link GitCorePreferences#core_commitGraph}
+	 */
+	public static boolean isEnabled() {
+		IEclipsePreferences d = new DefaultScope().getNode(Activator
+				.getPluginId());
+		IEclipsePreferences p = new InstanceScope().getNode(Activator
+				.getPluginId());
+		return p.getBoolean(GitCorePreferences.core_commitGraph, d
+				.getBoolean(GitCorePreferences.core_commitGraph, true));
+	}
+
+	private static CommitGraphCache getCache(Repository repository) {
+		File gitDir = repository.getDirectory();
+		Activator activator = Activator.getDefault();
+		if (gitDir == null || activator == null || !isEnabled())
+			return null;
+		synchronized (CACHES) {
+			CommitGraphCache cache = CACHES.get(gitDir);
+			if (cache == null) {
+				File folder = new File(activator.getStateLocation().toFile(),
+						FOLDER);
+				cache = new CommitGraphCache(folder, getFileName(gitDir));
+				CACHES.put(gitDir, cache);
+			}
+			return cache;
+		}
+	}
+
+	private static String getFileName(File gitDir) {
+		String path = gitDir.getAbsolutePath();
+		return ObjectId.fromRaw(
+				Constants.newMessageDigest().digest(Constants.encode(path)))
+				.name();
+	}
+
+	private final MappedFile<CommitGraph> graph;
+
+	private final MappedFile<ChangedPathIndex> changedPaths;
+
+	private final MappedFile<CommitTextIndex> text;
+
+	private Repository pendingRepository;
+
+	private Job updateJob;
+
+	CommitGraphCache(File folder, String name) {
+		graph = new MappedFile<CommitGraph>(folder, name, GRAPH_EXTENSION) {
+			@Override
+			CommitGraph read(File f, int fileGeneration, CommitGraph base)
+					throws IOException {
+				return CommitGraph.read(f, fileGeneration, base);
+			}
+		};
+		changedPaths = new MappedFile<ChangedPathIndex>(folder, name,
+				CHANGED_PATHS_EXTENSION) {
+			@Override
+			ChangedPathIndex read(File f, int fileGeneration,
+					ChangedPathIndex base) throws IOException {
+				return ChangedPathIndex.read(f, fileGeneration, base);
+			}
+		};
+		text = new MappedFile<CommitTextIndex>(folder, name, TEXT_EXTENSION) {
+			@Override
+			CommitTextIndex read(File f, int fileGeneration,
+					CommitTextIndex base) throws IOException {
+				return CommitTextIndex.read(f, fileGeneration, base);
+			}
+		};
+	}
+
+	private synchronized CommitGraph getGraph(Repository repository) {
+		CommitGraph result = graph.get();
+		if (result == null && updateJob == null)
+			schedule(repository, UPDATE_DELAY);
+		return result;
+	}
+
+	private synchronized void schedule(Repository repository, long delay) {
+		pendingRepository = repository;
+		if (updateJob == null) {
+			updateJob = new Job(NLS.bind(CoreText.CommitGraphCache_updating,
+					repository.getDirectory().getPath())) {
+
+				@Override
+				protected IStatus run(IProgressMonitor monitor) {
+					Repository repo;
+					synchronized (CommitGraphCache.this) {
+						repo = pendingRepository;
+						pendingRepository = null;
+					}
+					if (repo == null)
+						return Status.OK_STATUS;
+					try {
+						CommitGraph commitGraph = updateGraph(repo, monitor);
+						ReachabilityIndex.updateIfRequested(repo, monitor);
+						NearestTagIndex.updateIfRequested(repo, monitor);
+						updateChangedPaths(repo, commitGraph, monitor);
+						updateText(repo, commitGraph, monitor);
+					} catch (OperationCanceledException e) {
+						return Status.CANCEL_STATUS;
+					} catch (IOException e) {
+						return Activator.error(e.getMessage(), e);
+					}
+					return Status.OK_STATUS;
+				}
+
+				@Override
+				public boolean belongsTo(Object family) {
+					if (family.equals(JobFamilies.COMMIT_GRAPH_UPDATE))
+						return true;
+					return super.belongsTo(family);
+				}
+			};
+			updateJob.setSystem(true);
+			updateJob.setPriority(Job.DECORATE);
+		}
+		updateJob.schedule(delay);
+	}
+
+	CommitGraph updateGraph(Repository repository,
+			IProgressMonitor monitor) throws IOException {
+		CommitGraph oldGraph = graph.get();
+		List<ObjectId> tips = new ArrayList<ObjectId>();
+		boolean changed = oldGraph == null;
+		RevWalk rw = new RevWalk(repository);
+		try {
+			for (Ref ref : repository.getAllRefs().values()) {
+				if (ref.getObjectId() == null)
+					continue;
+				ObjectId tip = ReachabilityIndex.peel(rw, ref.getObjectId());
+				if (tip == ObjectId.zeroId())
+					continue;
+				tips.add(tip);
+				if (!changed && oldGraph.find(tip) < 0)
+					changed = true;
+			}
+		} finally {
+			rw.release();
+		}
+		if (!changed)
+			return oldGraph;
+		ObjectIdSubclassMap<CommitNode> nodes = new ObjectIdSubclassMap<CommitNode>();
+		CommitNodeLoader<CommitNode> loader = new CommitNodeLoader<CommitNode>(
+				repository, oldGraph, nodes) {
+			@Override
+			protected CommitNode createNode(AnyObjectId id) {
+				return new CommitNode(id);
+			}
+		};
+		List<CommitNode> commits = loader.loadMissing(tips, monitor);
+		CommitGraph base = oldGraph;
+		while (base != null
+				&& commits.size() * LAYER_SIZE_FACTOR >= base
+						.getLayerCommitCount()) {
+			base.getLayerNodes(commits);
+			base = base.getBase();
+		}
+		File file = graph.next();
+		CommitGraph.write(file, base, commits);
+		return graph.publish(file);
+	}
+
+	/**
+	 * Computes the filters of the commits of the graph which are not yet
+	 * contained in the changed path index and writes them as a new layer. If
+	 * the job is canceled, the filters computed so far are written.
+	 */
+	private void updateChangedPaths(Repository repository,
+			CommitGraph commitGraph, IProgressMonitor monitor)
+			throws IOException {
+		if (commitGraph == null)
+			return;
+		ChangedPathIndex oldIndex = changedPaths.get();
+		List<ObjectId> missing = new ArrayList<ObjectId>();
+		for (int i = 0; i < commitGraph.getCommitCount(); i++)
+			if (commitGraph.getParentCount(i) <= 1) {
+				ObjectId id = commitGraph.getId(i);
+				if (oldIndex == null || !oldIndex.contains(id))
+					missing.add(id);
+			}
+		if (missing.isEmpty())
+			return;
+
+		Map<ObjectId, byte[]> filters = new HashMap<ObjectId, byte[]>();
+		RevWalk rw = null;
+		try {
+			for (int i = 0; i < missing.size(); i++) {
+				if (monitor.isCanceled())
+					break;
+				if (i % FILTER_BATCH_SIZE == 0) {
+					// limit the number of parsed commits kept in memory
+					if (rw != null)
+						rw.release();
+					rw = new RevWalk(repository);
+					rw.setRetainBody(false);
+				}
+				RevCommit commit = rw.parseCommit(missing.get(i));
+				RevCommit parent = null;
+				if (commit.getParentCount() == 1)
+					parent = rw.parseCommit(commit.getParent(0));
+				filters.put(commit.copy(), ChangedPathIndex.createFilter(
+						repository, commit, parent));
+			}
+		} finally {
+			if (rw != null)
+				rw.release();
+		}
+		if (filters.isEmpty())
+			return;
+		ChangedPathIndex base = oldIndex;
+		while (base != null
+				&& filters.size() * LAYER_SIZE_FACTOR >= base
+						.getLayerCommitCount()) {
+			base.getLayerFilters(filters);
+			base = base.getBase();
+		}
+		File file = changedPaths.next();
+		ChangedPathIndex.write(file, base, filters);
+		changedPaths.publish(file);
+	}
+
+	/**
+	 * Adds the commits of the graph which are not yet contained in the text
+	 * index as a new layer. A layer is written after every
+	 * {@link #TEXT_WRITE_SIZE} commits to limit the memory used by the update,
+	 * and when the job is canceled.
+	 */
+	private void updateText(Repository repository, CommitGraph commitGraph,
+			IProgressMonitor monitor) throws IOException {
+		if (commitGraph == null)
+			return;
+		CommitTextIndex oldIndex = text.get();
+		List<ObjectId> missing = new ArrayList<ObjectId>();
+		for (int i = 0; i < commitGraph.getCommitCount(); i++) {
+			ObjectId id = commitGraph.getId(i);
+			if (oldIndex == null || oldIndex.find(id) < 0)
+				missing.add(id);
+		}
+		if (missing.isEmpty())
+			return;
+
+		CommitTextIndex.Update update = new CommitTextIndex.Update(oldIndex);
+		RevWalk rw = null;
+		try {
+			for (int i = 0; i < missing.size(); i++) {
+				if (monitor.isCanceled())
+					break;
+				if (i % FILTER_BATCH_SIZE == 0) {
+					// limit the number of parsed commits kept in memory
+					if (rw != null)
+						rw.release();
+					rw = new RevWalk(repository);
+				}
+				update.add(rw.parseCommit(missing.get(i)));
+				if (update.size() == TEXT_WRITE_SIZE) {
+					File file = text.next();
+					update.write(file, LAYER_SIZE_FACTOR);
+					update = new CommitTextIndex.Update(text.publish(file));
+				}
+			}
+		} finally {
+			if (rw != null)
+				rw.release();
+		}
+		if (update.size() > 0) {
+			File file = text.next();
+			update.write(file, LAYER_SIZE_FACTOR);
+			text.publish(file);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.graph;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Commit in an in-memory commit graph, see {@link CommitNodeLoader}
+ */
+class CommitNode extends ObjectId {
+
+	/** <code>null</code> until the node was loaded */
+	CommitNode[] parents;
+
+	int commitTime;
+
+	/** 1 for root commits, 0 until the node was loaded */
+	int generation;
+
+	CommitNode(AnyObjectId id) {
+		super(id);
+	}
+
+	boolean isLoaded() {
+		return generation > 0;
+	}
+}
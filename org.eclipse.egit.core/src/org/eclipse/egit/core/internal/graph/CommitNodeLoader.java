@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.graph;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectIdSubclassMap;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Loads commits with their parents, commit time and generation number into
+ * a map of {@link CommitNode}s.
+ * <p>
+ * Commits contained in the {@link CommitGraph} of the repository are read
+ * from there, only the other commits are parsed.
+ *
+ * @param <N>
+ *            the node type
+ */
+abstract class CommitNodeLoader<N extends CommitNode> {
+
+	private static final CommitNode[] NO_PARENTS = new CommitNode[0];
+
+	private final Repository repository;
+
+	private final CommitGraph graph;
+
+	private final ObjectIdSubclassMap<N> nodes;
+
+	/**
+	 * @param repository
+	 * @param graph
+	 *            the commit graph to consult first, may be <code>null</code>
+	 * @param nodes
+	 *            the map to add the nodes to
+	 */
+	CommitNodeLoader(Repository repository, CommitGraph graph,
+			ObjectIdSubclassMap<N> nodes) {
+		this.repository = repository;
+		this.graph = graph;
+		this.nodes = nodes;
+	}
+
+	/**
+	 * @param id
+	 * @return a new node
+	 */
+	protected abstract N createNode(AnyObjectId id);
+
+	/**
+	 * @param id
+	 * @return the node for the id, created if necessary
+	 */
+	N getOrCreate(AnyObjectId id) {
+		N node = nodes.get(id);
+		if (node == null) {
+			node = createNode(id);
+			nodes.add(node);
+		}
+		return node;
+	}
+
+	/**
+	 * Loads the given commits and all their ancestors which are not loaded
+	 * yet
+	 *
+	 * @param commits
+	 * @param monitor
+	 * @return the newly loaded nodes, parents before their children
+	 * @throws IOException
+	 */
+	List<N> load(Collection<? extends AnyObjectId> commits,
+			IProgressMonitor monitor) throws IOException {
+		return load(commits, false, monitor);
+	}
+
+	/**
+	 * Loads the given commits and their ancestors which are neither loaded
+	 * yet nor contained in the commit graph. Commits contained in the graph
+	 * are loaded with their commit time and generation number but without
+	 * parents, their ancestors are not visited.
+	 *
+	 * @param commits
+	 * @param monitor
+	 * @return the newly loaded nodes which are not contained in the graph,
+	 *         parents before their children
+	 * @throws IOException
+	 */
+	List<N> loadMissing(Collection<? extends AnyObjectId> commits,
+			IProgressMonitor monitor) throws IOException {
+		return load(commits, true, monitor);
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<N> load(Collection<? extends AnyObjectId> commits,
+			boolean stopAtGraph, IProgressMonitor monitor) throws IOException {
+		List<N> result = new ArrayList<N>();
+		RevWalk rw = new RevWalk(repository);
+		rw.setRetainBody(false);
+		try {
+			// iterative depth first traversal, a node is finished after all
+			// of its parents
+			List<N> stack = new ArrayList<N>();
+			for (AnyObjectId id : commits) {
+				N node = getOrCreate(id);
+				if (!node.isLoaded())
+					stack.add(node);
+			}
+			while (!stack.isEmpty()) {
+				N node = stack.get(stack.size() - 1);
+				if (node.isLoaded()) {
+					stack.remove(stack.size() - 1);
+					continue;
+				}
+				if (node.parents == null) {
+					if (monitor.isCanceled())
+						throw new OperationCanceledException();
+					if (stopAtGraph && loadFromGraph(node)) {
+						stack.remove(stack.size() - 1);
+						continue;
+					}
+					readParents(rw, node);
+				}
+				boolean parentsLoaded = true;
+				for (CommitNode parent : node.parents)
+					if (!parent.isLoaded()) {
+						stack.add((N) parent);
+						parentsLoaded = false;
+					}
+				if (parentsLoaded) {
+					stack.remove(stack.size() - 1);
+					int generation = 0;
+					for (CommitNode parent : node.parents)
+						generation = Math.max(generation, parent.generation);
+					node.generation = generation + 1;
+					result.add(node);
+				}
+			}
+		} finally {
+			rw.release();
+		}
+		return result;
+	}
+
+	private boolean loadFromGraph(N node) {
+		int position = graph != null ? graph.find(node) : -1;
+		if (position < 0)
+			return false;
+		node.parents = NO_PARENTS;
+		node.commitTime = graph.getCommitTime(position);
+		node.generation = graph.getGeneration(position);
+		return true;
+	}
+
+	private void readParents(RevWalk rw, N node) throws IOException {
+		int position = graph != null ? graph.find(node) : -1;
+		if (position >= 0) {
+			int count = graph.getParentCount(position);
+			node.parents = new CommitNode[count];
+			for (int i = 0; i < count; i++)
+				node.parents[i] = getOrCreate(graph.getId(graph.getParent(
+						position, i)));
+			node.commitTime = graph.getCommitTime(position);
+		} else {
+			RevCommit commit = rw.parseCommit(node);
+			node.parents = new CommitNode[commit.getParentCount()];
+			for (int i = 0; i < node.parents.length; i++)
+				node.parents[i] = getOrCreate(commit.getParent(i));
+			node.commitTime = commit.getCommitTime();
+		}
+	}
+}
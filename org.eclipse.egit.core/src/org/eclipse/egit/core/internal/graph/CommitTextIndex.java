@@ -0,0 +1,625 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.graph;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.util.IntList;
+import org.eclipse.jgit.util.RawParseUtils;
+
+/**
+ * Read-only inverted index of the words in the messages and the author and
+ * committer identities of commits, backed by memory-mapped files.
+ * <p>
+ * Words are maximal runs of letters and digits, case folded per character the
+ * way case insensitive regular expressions compare characters. Every
+ * commit has a position in the order it was added to the index. For every
+ * word the index contains the sorted positions of the commits using it, so the
+ * index can tell which commits might contain a given text ignoring case. The
+ * index also contains the tree id of every commit.
+ * <p>
+ * Like the {@link CommitGraph}, the index consists of layers. Each layer is a
+ * file containing the commits added by one update, the positions of a layer
+ * follow those of its base.
+ * <p>
+ * The file starts with a magic number, a format version, the generation of
+ * the file of the base layer, the number of commits in the base layers, the
+ * number of commits, the number of words, the length of the word data and the
+ * length of the position data. It continues with the commit ids and the tree
+ * ids in position order, the positions sorted by commit id, the end offsets
+ * of every word in the word data and the position data, the sorted words in
+ * UTF-8 and the delta encoded positions of all words, and ends with a CRC32
+ * checksum of everything before. Positions stored in a layer are relative to
+ * the first position of the layer.
+ */
+public class CommitTextIndex {
+
+	private static final int MAGIC = 0x45435449; // "ECTI"
+
+	private static final int VERSION = 3;
+
+	private static final int HEADER_SIZE = 32;
+
+	private static final int CHECKSUM_SIZE = 8;
+
+	private static final int WORD_ENTRY_SIZE = 8;
+
+	private final ByteBuffer buffer;
+
+	private final int fileGeneration;
+
+	private final CommitTextIndex base;
+
+	private final int baseCount;
+
+	private final int count;
+
+	private final int wordCount;
+
+	private final int treesOffset;
+
+	private final int sortedOffset;
+
+	private final int wordsOffset;
+
+	private final int wordDataOffset;
+
+	private final int positionDataOffset;
+
+	private final int wordDataLength;
+
+	private byte[] wordData;
+
+	private CommitTextIndex(ByteBuffer buffer, int fileGeneration,
+			CommitTextIndex base, int count, int wordCount,
+			int wordDataLength) {
+		this.buffer = buffer;
+		this.fileGeneration = fileGeneration;
+		this.base = base;
+		this.baseCount = base != null ? base.getCommitCount() : 0;
+		this.count = count;
+		this.wordCount = wordCount;
+		this.wordDataLength = wordDataLength;
+		treesOffset = HEADER_SIZE + count * Constants.OBJECT_ID_LENGTH;
+		sortedOffset = treesOffset + count * Constants.OBJECT_ID_LENGTH;
+		wordsOffset = sortedOffset + count * 4;
+		wordDataOffset = wordsOffset + wordCount * WORD_ENTRY_SIZE;
+		positionDataOffset = wordDataOffset + wordDataLength;
+	}
+
+	/**
+	 * @return the number of commits in the index
+	 */
+	public int getCommitCount() {
+		return baseCount + count;
+	}
+
+	/**
+	 * @return the number of commits in this layer
+	 */
+	int getLayerCommitCount() {
+		return count;
+	}
+
+	/**
+	 * @return the base layer, <code>null</code> for the first layer
+	 */
+	CommitTextIndex getBase() {
+		return base;
+	}
+
+	/**
+	 * @param commit
+	 * @return the position of the commit or -1 if the index does not contain
+	 *         it
+	 */
+	public int find(AnyObjectId commit) {
+		byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+		commit.copyRawTo(raw, 0);
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int position = buffer.getInt(sortedOffset + mid * 4);
+			int cmp = compare(raw, position);
+			if (cmp == 0)
+				return baseCount + position;
+			if (cmp < 0)
+				high = mid;
+			else
+				low = mid + 1;
+		}
+		return base != null ? base.find(commit) : -1;
+	}
+
+	private int compare(byte[] raw, int position) {
+		int offset = HEADER_SIZE + position * Constants.OBJECT_ID_LENGTH;
+		for (int i = 0; i < raw.length; i++) {
+			int cmp = (raw[i] & 0xff) - (buffer.get(offset + i) & 0xff);
+			if (cmp != 0)
+				return cmp;
+		}
+		return 0;
+	}
+
+	/**
+	 * @param position
+	 * @return the id of the commit at the given position
+	 */
+	public ObjectId getId(int position) {
+		if (position < baseCount)
+			return base.getId(position);
+		return getObjectId(HEADER_SIZE, position - baseCount);
+	}
+
+	/**
+	 * @param position
+	 * @return the id of the tree of the commit at the given position
+	 */
+	public ObjectId getTreeId(int position) {
+		if (position < baseCount)
+			return base.getTreeId(position);
+		return getObjectId(treesOffset, position - baseCount);
+	}
+
+	private ObjectId getObjectId(int offset, int position) {
+		if (position < 0 || position >= count)
+			throw new IndexOutOfBoundsException(String.valueOf(baseCount
+					+ position));
+		byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+		ByteBuffer ids = buffer.duplicate();
+		ids.position(offset + position * Constants.OBJECT_ID_LENGTH);
+		ids.get(raw);
+		return ObjectId.fromRaw(raw);
+	}
+
+	/**
+	 * Finds the commits which might contain the given text in their message or
+	 * the name or email address of their author or committer, ignoring case
+	 *
+	 * @param text
+	 * @return the positions of the commits which might contain the text,
+	 *         <code>null</code> if the text contains no word and every commit
+	 *         might contain it
+	 */
+	public BitSet getCandidates(String text) {
+		Set<String> words = new HashSet<String>();
+		addWords(text, words);
+		BitSet result = null;
+		for (String word : words) {
+			BitSet commits = getCommits(Constants.encode(word));
+			if (result == null)
+				result = commits;
+			else
+				result.and(commits);
+		}
+		return result;
+	}
+
+	/**
+	 * @param part
+	 *            a part of a word in UTF-8
+	 * @return the positions of the commits using a word containing the part
+	 */
+	private BitSet getCommits(byte[] part) {
+		BitSet result = base != null ? base.getCommits(part) : new BitSet(
+				count);
+		byte[] data = getWordData();
+		int last = data.length - part.length;
+		int word = 0;
+		for (int i = 0; i <= last; i++) {
+			if (data[i] != part[0])
+				continue;
+			int j = 1;
+			while (j < part.length && data[i + j] == part[j])
+				j++;
+			if (j < part.length)
+				continue;
+			while (getWordEnd(word) <= i)
+				word++;
+			int end = getWordEnd(word);
+			if (i + part.length > end)
+				continue;
+			addPositions(word, result);
+			// skip the rest of the word
+			i = end - 1;
+		}
+		return result;
+	}
+
+	private synchronized byte[] getWordData() {
+		if (wordData == null) {
+			byte[] data = new byte[wordDataLength];
+			ByteBuffer words = buffer.duplicate();
+			words.position(wordDataOffset);
+			words.get(data);
+			wordData = data;
+		}
+		return wordData;
+	}
+
+	private int getWordEnd(int word) {
+		return buffer.getInt(wordsOffset + word * WORD_ENTRY_SIZE);
+	}
+
+	private int getPositionsEnd(int word) {
+		return buffer.getInt(wordsOffset + word * WORD_ENTRY_SIZE + 4);
+	}
+
+	private int getPositionsStart(int word) {
+		return word == 0 ? 0 : getPositionsEnd(word - 1);
+	}
+
+	private void addPositions(int word, BitSet positions) {
+		int offset = positionDataOffset + getPositionsStart(word);
+		int end = positionDataOffset + getPositionsEnd(word);
+		int position = 0;
+		while (offset < end) {
+			int delta = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get(offset++);
+				delta |= (b & 0x7f) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			position += delta;
+			positions.set(baseCount + position);
+		}
+	}
+
+	/**
+	 * Adds the positions of a word relative to this layer to a list
+	 */
+	private void getLayerPositions(int word, IntList positions, int offset) {
+		int data = positionDataOffset + getPositionsStart(word);
+		int end = positionDataOffset + getPositionsEnd(word);
+		int position = 0;
+		while (data < end) {
+			int delta = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get(data++);
+				delta |= (b & 0x7f) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			position += delta;
+			positions.add(offset + position);
+		}
+	}
+
+	private String getWord(int word) {
+		int start = word == 0 ? 0 : getWordEnd(word - 1);
+		byte[] data = getWordData();
+		return RawParseUtils.decode(data, start, getWordEnd(word));
+	}
+
+	/**
+	 * Adds the case folded words of a text to a collection
+	 *
+	 * @param text
+	 * @param words
+	 */
+	static void addWords(String text, Collection<String> words) {
+		if (text == null)
+			return;
+		StringBuilder word = new StringBuilder();
+		for (int i = 0; i < text.length(); i++) {
+			// convert single characters to stay independent of the context;
+			// the upper case conversion first folds characters like the long
+			// s or the final sigma, which are equal ignoring case as well
+			char c = Character.toLowerCase(Character.toUpperCase(text
+					.charAt(i)));
+			if (Character.isLetterOrDigit(c))
+				word.append(c);
+			else if (word.length() > 0) {
+				words.add(word.toString());
+				word.setLength(0);
+			}
+		}
+		if (word.length() > 0)
+			words.add(word.toString());
+	}
+
+	private static void addWords(PersonIdent ident, Collection<String> words) {
+		if (ident != null) {
+			addWords(ident.getName(), words);
+			addWords(ident.getEmailAddress(), words);
+		}
+	}
+
+	/**
+	 * Collects the commits to be added to an index and writes them as a new
+	 * layer
+	 */
+	static class Update {
+
+		private final CommitTextIndex base;
+
+		private final List<ObjectId> ids = new ArrayList<ObjectId>();
+
+		private final List<ObjectId> trees = new ArrayList<ObjectId>();
+
+		private final Map<String, IntList> positions = new HashMap<String, IntList>();
+
+		/**
+		 * @param base
+		 *            the index to extend, <code>null</code> to create a new
+		 *            index
+		 */
+		Update(CommitTextIndex base) {
+			this.base = base;
+		}
+
+		/**
+		 * @return the number of added commits
+		 */
+		int size() {
+			return ids.size();
+		}
+
+		/**
+		 * Adds a commit which is not contained in the base index
+		 *
+		 * @param commit
+		 *            a parsed commit with body
+		 */
+		void add(RevCommit commit) {
+			Set<String> words = new HashSet<String>();
+			addWords(commit.getFullMessage(), words);
+			addWords(commit.getAuthorIdent(), words);
+			addWords(commit.getCommitterIdent(), words);
+			int position = ids.size();
+			ids.add(commit.copy());
+			trees.add(commit.getTree().copy());
+			for (String word : words) {
+				IntList list = positions.get(word);
+				if (list == null) {
+					list = new IntList(4);
+					positions.put(word, list);
+				}
+				list.add(position);
+			}
+		}
+
+		/**
+		 * Writes the added commits as a new layer on top of the base index.
+		 * Layers of the base index which are not more than
+		 * <code>factor</code> times larger than the commits to write are
+		 * merged into the new layer.
+		 *
+		 * @param file
+		 *            a file which does not exist yet, it must differ from
+		 *            the files of the base index
+		 * @param factor
+		 * @throws IOException
+		 */
+		void write(File file, int factor) throws IOException {
+			// the merged layers, topmost first
+			List<CommitTextIndex> merged = new ArrayList<CommitTextIndex>();
+			CommitTextIndex layerBase = base;
+			int layerCount = ids.size();
+			while (layerBase != null
+					&& layerCount * factor >= layerBase.count) {
+				merged.add(layerBase);
+				layerCount += layerBase.count;
+				layerBase = layerBase.base;
+			}
+
+			List<ObjectId> layerIds = new ArrayList<ObjectId>(layerCount);
+			List<ObjectId> layerTrees = new ArrayList<ObjectId>(layerCount);
+			Map<String, IntList> layerPositions = new HashMap<String, IntList>();
+			for (int m = merged.size() - 1; m >= 0; m--) {
+				CommitTextIndex layer = merged.get(m);
+				int offset = layerIds.size();
+				for (int i = 0; i < layer.count; i++) {
+					layerIds.add(layer.getObjectId(HEADER_SIZE, i));
+					layerTrees.add(layer.getObjectId(layer.treesOffset, i));
+				}
+				for (int w = 0; w < layer.wordCount; w++)
+					layer.getLayerPositions(w, getList(layerPositions, layer
+							.getWord(w)), offset);
+			}
+			int offset = layerIds.size();
+			layerIds.addAll(ids);
+			layerTrees.addAll(trees);
+			for (Map.Entry<String, IntList> entry : positions.entrySet()) {
+				IntList list = getList(layerPositions, entry.getKey());
+				IntList added = entry.getValue();
+				for (int i = 0; i < added.size(); i++)
+					list.add(offset + added.get(i));
+			}
+			write(file, layerBase, layerIds, layerTrees, layerPositions);
+		}
+
+		private static IntList getList(Map<String, IntList> map, String word) {
+			IntList list = map.get(word);
+			if (list == null) {
+				list = new IntList(4);
+				map.put(word, list);
+			}
+			return list;
+		}
+
+		private static void write(File file, CommitTextIndex layerBase,
+				final List<ObjectId> layerIds, List<ObjectId> layerTrees,
+				Map<String, IntList> layerPositions) throws IOException {
+			String[] words = layerPositions.keySet().toArray(
+					new String[layerPositions.size()]);
+			Arrays.sort(words);
+			ByteArrayOutputStream wordData = new ByteArrayOutputStream();
+			ByteArrayOutputStream positionData = new ByteArrayOutputStream();
+			IntList entries = new IntList();
+			for (String word : words) {
+				// the positions are sorted, merged layers come first
+				IntList list = layerPositions.get(word);
+				int lastPosition = 0;
+				for (int i = 0; i < list.size(); i++) {
+					int position = list.get(i);
+					writeDelta(positionData, position - lastPosition);
+					lastPosition = position;
+				}
+				byte[] bytes = Constants.encode(word);
+				wordData.write(bytes, 0, bytes.length);
+				entries.add(wordData.size());
+				entries.add(positionData.size());
+			}
+
+			Integer[] order = new Integer[layerIds.size()];
+			for (int i = 0; i < order.length; i++)
+				order[i] = Integer.valueOf(i);
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer o1, Integer o2) {
+					return layerIds.get(o1.intValue()).compareTo(
+							layerIds.get(o2.intValue()));
+				}
+			});
+
+			File folder = file.getParentFile();
+			if (!folder.isDirectory() && !folder.mkdirs())
+				throw new IOException(folder.getAbsolutePath());
+			File tmp = new File(folder, file.getName() + ".tmp"); //$NON-NLS-1$
+			CheckedOutputStream checked = new CheckedOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp)),
+					new CRC32());
+			DataOutputStream out = new DataOutputStream(checked);
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(layerBase != null ? layerBase.fileGeneration : 0);
+				out.writeInt(layerBase != null ? layerBase.getCommitCount()
+						: 0);
+				out.writeInt(layerIds.size());
+				out.writeInt(entries.size() / 2);
+				out.writeInt(wordData.size());
+				out.writeInt(positionData.size());
+				writeIds(layerIds, out);
+				writeIds(layerTrees, out);
+				for (Integer position : order)
+					out.writeInt(position.intValue());
+				for (int i = 0; i < entries.size(); i++)
+					out.writeInt(entries.get(i));
+				wordData.writeTo(out);
+				positionData.writeTo(out);
+				out.flush();
+				out.writeLong(checked.getChecksum().getValue());
+			} finally {
+				out.close();
+			}
+			if (file.exists() || !tmp.renameTo(file)) {
+				tmp.delete();
+				throw new IOException(file.getAbsolutePath());
+			}
+		}
+
+		private static void writeIds(List<ObjectId> list, DataOutputStream out)
+				throws IOException {
+			byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+			for (ObjectId id : list) {
+				id.copyRawTo(raw, 0);
+				out.write(raw);
+			}
+		}
+
+		private static void writeDelta(ByteArrayOutputStream out, int delta) {
+			while ((delta & ~0x7f) != 0) {
+				out.write((delta & 0x7f) | 0x80);
+				delta >>>= 7;
+			}
+			out.write(delta);
+		}
+	}
+
+	/**
+	 * Maps an index file into memory
+	 *
+	 * @param file
+	 * @param fileGeneration
+	 *            the generation of the file
+	 * @param base
+	 *            the base layer referenced by the file, <code>null</code> if
+	 *            the file has no base
+	 * @return the index
+	 * @throws IOException
+	 *             if the file cannot be read or is corrupt
+	 */
+	static CommitTextIndex read(File file, int fileGeneration,
+			CommitTextIndex base) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		ByteBuffer buffer;
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size < HEADER_SIZE + CHECKSUM_SIZE || size > Integer.MAX_VALUE)
+				throw new IOException(file.getAbsolutePath());
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		} finally {
+			// the mapping stays valid
+			in.close();
+		}
+		int size = buffer.capacity();
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+			throw new IOException(file.getAbsolutePath());
+		int baseGeneration = buffer.getInt(8);
+		int baseCount = buffer.getInt(12);
+		long count = buffer.getInt(16);
+		long wordCount = buffer.getInt(20);
+		long wordDataLength = buffer.getInt(24);
+		long positionDataLength = buffer.getInt(28);
+		if (baseGeneration != (base != null ? base.fileGeneration : 0)
+				|| baseCount != (base != null ? base.getCommitCount() : 0)
+				|| count < 0
+				|| wordCount < 0
+				|| wordDataLength < 0
+				|| positionDataLength < 0
+				|| HEADER_SIZE + count * (2 * Constants.OBJECT_ID_LENGTH + 4)
+						+ wordCount * WORD_ENTRY_SIZE + wordDataLength
+						+ positionDataLength + CHECKSUM_SIZE != size)
+			throw new IOException(file.getAbsolutePath());
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[8192];
+		ByteBuffer data = buffer.duplicate();
+		data.limit(size - CHECKSUM_SIZE);
+		while (data.hasRemaining()) {
+			int n = Math.min(chunk.length, data.remaining());
+			data.get(chunk, 0, n);
+			crc.update(chunk, 0, n);
+		}
+		if (crc.getValue() != buffer.getLong(size - CHECKSUM_SIZE))
+			throw new IOException(file.getAbsolutePath());
+		return new CommitTextIndex(buffer, fileGeneration, base, (int) count,
+				(int) wordCount, (int) wordDataLength);
+	}
+}
@@ -0,0 +1,299 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.graph;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdSubclassMap;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Index of the closest tagged ancestor and the closest tagged descendant of
+ * every commit reachable from a tag.
+ * <p>
+ * The index is built by a single walk over all commits reachable from tagged
+ * commits, see {@link CommitNodeLoader}. Parents are processed before their
+ * children to compute the closest tagged ancestor, children before their
+ * parents to compute the closest tagged descendant. Among several candidates the tag with
+ * the highest generation is the closest ancestor and the tag with the lowest
+ * generation is the closest descendant. Afterwards both lookups are a single
+ * map access.
+ * <p>
+ * The index is rebuilt when the tags of the repository changed. Commits which
+ * are not reachable from any tag have no tagged descendant, they are added to
+ * the index when their closest tagged ancestor is requested.
+ * <p>
+ * Building the index walks the history reachable from all tags. Callers which
+ * must not block check {@link #isBuilt()} and call {@link #requestBuild()},
+ * the index is then built by the commit graph update job.
+ */
+public class NearestTagIndex {
+
+	private static final Map<Repository, NearestTagIndex> INDEXES = new WeakHashMap<Repository, NearestTagIndex>();
+
+	private static class Node extends CommitNode {
+		/** full name of a tag pointing to this commit, or <code>null</code> */
+		String tag;
+
+		/** closest tagged ancestor */
+		Node previous;
+
+		/** closest tagged descendant */
+		Node next;
+
+		Node(AnyObjectId id) {
+			super(id);
+		}
+
+		Node tagged() {
+			return tag != null ? this : previous;
+		}
+	}
+
+	/**
+	 * @param repository
+	 * @return the index of the repository
+	 */
+	public static NearestTagIndex getIndex(Repository repository) {
+		synchronized (INDEXES) {
+			NearestTagIndex index = INDEXES.get(repository);
+			if (index == null) {
+				index = new NearestTagIndex(repository);
+				INDEXES.put(repository, index);
+			}
+			return index;
+		}
+	}
+
+	// weak, the index is the value of its repository in INDEXES
+	private final Reference<Repository> repository;
+
+	private ObjectIdSubclassMap<Node> nodes;
+
+	/** tag name to the id of the tag */
+	private Map<String, ObjectId> tagIds = new HashMap<String, ObjectId>();
+
+	/** ids of annotated tags to the commits they point to */
+	private final Map<ObjectId, ObjectId> peeledTags = new HashMap<ObjectId, ObjectId>();
+
+	private volatile boolean requested;
+
+	/** the tags the index was built for, <code>null</code> if not built */
+	private volatile Map<String, ObjectId> builtTags;
+
+	NearestTagIndex(Repository repository) {
+		this.repository = new WeakReference<Repository>(repository);
+	}
+
+	private Repository getRepository() throws IOException {
+		Repository result = repository.get();
+		if (result == null)
+			throw new IOException("Repository was garbage collected"); //$NON-NLS-1$
+		return result;
+	}
+
+	/**
+	 * Builds or updates the index of the repository if it was requested by
+	 * {@link #requestBuild()}. Called by the commit graph update job.
+	 *
+	 * @param repository
+	 * @param monitor
+	 * @throws IOException
+	 */
+	static void updateIfRequested(Repository repository,
+			IProgressMonitor monitor) throws IOException {
+		NearestTagIndex index;
+		synchronized (INDEXES) {
+			index = INDEXES.get(repository);
+		}
+		if (index != null && index.requested)
+			synchronized (index) {
+				index.update(monitor);
+			}
+	}
+
+	/**
+	 * @return <code>true</code> if the index was built for the current tags of
+	 *         the repository, queries then do not walk the history of the
+	 *         tags
+	 */
+	public boolean isBuilt() {
+		Map<String, ObjectId> tags = builtTags;
+		if (tags == null)
+			return false;
+		try {
+			return tags.equals(readTags(getRepository()));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Requests the index to be built in the background by the commit graph
+	 * update job
+	 */
+	public void requestBuild() {
+		requested = true;
+		Repository repo = repository.get();
+		if (repo != null)
+			CommitGraphCache.scheduleUpdate(repo, 0);
+	}
+
+	/**
+	 * @param commit
+	 * @param monitor
+	 * @return the full name of the closest tag the commit is reachable from,
+	 *         or <code>null</code>. Tags pointing to the commit itself are not
+	 *         considered.
+	 * @throws IOException
+	 */
+	public synchronized String getNextTag(AnyObjectId commit,
+			IProgressMonitor monitor) throws IOException {
+		update(monitor);
+		Node node = nodes.get(commit);
+		if (node == null || node.next == null)
+			return null;
+		return node.next.tag;
+	}
+
+	/**
+	 * @param commit
+	 * @param monitor
+	 * @return the full name of the closest tag reachable from the commit, or
+	 *         <code>null</code>. Tags pointing to the commit itself are not
+	 *         considered.
+	 * @throws IOException
+	 */
+	public synchronized String getPreviousTag(AnyObjectId commit,
+			IProgressMonitor monitor) throws IOException {
+		update(monitor);
+		Node node = nodes.get(commit);
+		if (node == null || !node.isLoaded()) {
+			// add the missing commits, they have no tagged descendant
+			try {
+				for (Node loaded : createLoader(nodes).load(
+						Collections.singleton(commit), monitor))
+					computePrevious(loaded);
+			} catch (OperationCanceledException e) {
+				// rebuild on next query
+				nodes = null;
+				builtTags = null;
+				throw e;
+			}
+			node = nodes.get(commit);
+		}
+		return node.previous != null ? node.previous.tag : null;
+	}
+
+	private void update(IProgressMonitor monitor) throws IOException {
+		Repository repo = getRepository();
+		RevWalk rw = new RevWalk(repo);
+		try {
+			Map<String, ObjectId> current = readTags(repo);
+			if (nodes != null && current.equals(tagIds))
+				return;
+			nodes = null;
+			builtTags = null;
+			build(rw, current, monitor);
+			tagIds = current;
+			builtTags = current;
+		} finally {
+			rw.release();
+		}
+	}
+
+	private static Map<String, ObjectId> readTags(Repository repo)
+			throws IOException {
+		Map<String, ObjectId> result = new HashMap<String, ObjectId>();
+		for (Ref ref : repo.getRefDatabase().getRefs(Constants.R_TAGS)
+				.values())
+			if (ref.getObjectId() != null)
+				result.put(ref.getName(), ref.getObjectId());
+		return result;
+	}
+
+	private void build(RevWalk rw, Map<String, ObjectId> tags,
+			IProgressMonitor monitor) throws IOException {
+		ObjectIdSubclassMap<Node> newNodes = new ObjectIdSubclassMap<Node>();
+		CommitNodeLoader<Node> loader = createLoader(newNodes);
+		List<Node> tagged = new ArrayList<Node>();
+		for (Map.Entry<String, ObjectId> entry : tags.entrySet()) {
+			ObjectId tagId = entry.getValue();
+			ObjectId commitId = peeledTags.get(tagId);
+			if (commitId == null) {
+				commitId = ReachabilityIndex.peel(rw, tagId);
+				peeledTags.put(tagId.copy(), commitId);
+			}
+			if (commitId == ObjectId.zeroId())
+				continue;
+			Node node = loader.getOrCreate(commitId);
+			tagged.add(node);
+			// prefer the smallest name to get stable results
+			if (node.tag == null || entry.getKey().compareTo(node.tag) < 0)
+				node.tag = entry.getKey();
+		}
+
+		// parents before children
+		List<Node> order = loader.load(tagged, monitor);
+		for (Node node : order)
+			computePrevious(node);
+
+		// children before parents
+		for (int i = order.size() - 1; i >= 0; i--) {
+			Node node = order.get(i);
+			Node candidate = node.tag != null ? node : node.next;
+			if (candidate == null)
+				continue;
+			for (CommitNode p : node.parents) {
+				Node parent = (Node) p;
+				if (parent.next == null
+						|| candidate.generation < parent.next.generation)
+					parent.next = candidate;
+			}
+		}
+
+		nodes = newNodes;
+	}
+
+	private static void computePrevious(Node node) {
+		for (CommitNode p : node.parents) {
+			Node candidate = ((Node) p).tagged();
+			if (candidate != null
+					&& (node.previous == null || candidate.generation > node.previous.generation))
+				node.previous = candidate;
+		}
+	}
+
+	private CommitNodeLoader<Node> createLoader(ObjectIdSubclassMap<Node> map)
+			throws IOException {
+		Repository repo = getRepository();
+		return new CommitNodeLoader<Node>(repo,
+				CommitGraphCache.getCommitGraph(repo), map) {
+			@Override
+			protected Node createNode(AnyObjectId id) {
+				return new Node(id);
+			}
+		};
+	}
+}
@@ -0,0 +1,469 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.graph;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdSubclassMap;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Index answering which branches, remote branches and tags contain a commit.
+ * <p>
+ * The index is built by a single topological walk over all commits reachable
+ * from these refs. Every ref is assigned a bit, every commit stores the set of
+ * refs it is reachable from. Commits with equal sets share one
+ * {@link BitSet} instance, so the index stays small even for many refs. In
+ * addition every commit has a generation number: 1 for root commits, otherwise
+ * one more than the maximum generation of its parents.
+ * <p>
+ * The refs are compared with the indexed state on every query. Added and
+ * fast-forwarded refs are applied incrementally by walking only the commits
+ * which do not yet carry the bit of the ref. Removed and rewound refs clear
+ * their bit before.
+ * <p>
+ * Building the index walks the whole history. Callers which must not block
+ * check {@link #isBuilt()} and call {@link #requestBuild()}, the index is then
+ * built by the commit graph update job.
+ */
+public class ReachabilityIndex {
+
+	private static final Map<Repository, ReachabilityIndex> INDEXES = new WeakHashMap<Repository, ReachabilityIndex>();
+
+	private static final String[] PREFIXES = new String[] {
+			Constants.R_HEADS, Constants.R_REMOTES, Constants.R_TAGS };
+
+	private static class Node extends CommitNode {
+		BitSet refs;
+
+		/** <code>true</code> if refs is shared and must not be modified */
+		boolean shared;
+
+		Node(AnyObjectId id) {
+			super(id);
+		}
+	}
+
+	/**
+	 * @param repository
+	 * @return the index of the repository
+	 */
+	public static ReachabilityIndex getIndex(Repository repository) {
+		synchronized (INDEXES) {
+			ReachabilityIndex index = INDEXES.get(repository);
+			if (index == null) {
+				index = new ReachabilityIndex(repository);
+				INDEXES.put(repository, index);
+			}
+			return index;
+		}
+	}
+
+	// weak, the index is the value of its repository in INDEXES
+	private final Reference<Repository> repository;
+
+	private ObjectIdSubclassMap<Node> nodes;
+
+	/** ref name to bit */
+	private final Map<String, Integer> refBits = new HashMap<String, Integer>();
+
+	/** bit to ref name, <code>null</code> for unused bits */
+	private final List<String> refNames = new ArrayList<String>();
+
+	/** ref name to the commit it points to */
+	private Map<String, ObjectId> refTargets = new HashMap<String, ObjectId>();
+
+	/** ids of annotated tags to the commits they point to */
+	private final Map<ObjectId, ObjectId> peeledTags = new HashMap<ObjectId, ObjectId>();
+
+	private final Map<BitSet, BitSet> internedSets = new HashMap<BitSet, BitSet>();
+
+	private final BitSet emptySet = new BitSet();
+
+	private volatile boolean requested;
+
+	private volatile boolean built;
+
+	ReachabilityIndex(Repository repository) {
+		this.repository = new WeakReference<Repository>(repository);
+	}
+
+	private Repository getRepository() throws IOException {
+		Repository result = repository.get();
+		if (result == null)
+			throw new IOException("Repository was garbage collected"); //$NON-NLS-1$
+		return result;
+	}
+
+	/**
+	 * Builds or updates the index of the repository if it was requested by
+	 * {@link #requestBuild()}. Called by the commit graph update job.
+	 *
+	 * @param repository
+	 * @param monitor
+	 * @throws IOException
+	 */
+	static void updateIfRequested(Repository repository,
+			IProgressMonitor monitor) throws IOException {
+		ReachabilityIndex index;
+		synchronized (INDEXES) {
+			index = INDEXES.get(repository);
+		}
+		if (index != null && index.requested)
+			synchronized (index) {
+				index.update(monitor);
+			}
+	}
+
+	/**
+	 * @return <code>true</code> if the index was built, queries then only
+	 *         apply the changes of the refs since the last query
+	 */
+	public boolean isBuilt() {
+		return built;
+	}
+
+	/**
+	 * Requests the index to be built in the background by the commit graph
+	 * update job
+	 */
+	public void requestBuild() {
+		requested = true;
+		Repository repo = repository.get();
+		if (repo != null)
+			CommitGraphCache.scheduleUpdate(repo, 0);
+	}
+
+	/**
+	 * @param commit
+	 * @param monitor
+	 * @return the names of all branches, remote branches and tags the commit
+	 *         is reachable from
+	 * @throws IOException
+	 */
+	public synchronized List<String> getRefsContaining(AnyObjectId commit,
+			IProgressMonitor monitor) throws IOException {
+		update(monitor);
+		List<String> result = new ArrayList<String>();
+		Node node = nodes.get(commit);
+		if (node == null)
+			return result;
+		BitSet bits = node.refs;
+		for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+			result.add(refNames.get(i));
+		return result;
+	}
+
+	/**
+	 * @param commit
+	 * @param monitor
+	 * @return the generation number of the commit or 0 if the commit is not
+	 *         reachable from any branch, remote branch or tag
+	 * @throws IOException
+	 */
+	public synchronized int getGeneration(AnyObjectId commit,
+			IProgressMonitor monitor) throws IOException {
+		update(monitor);
+		Node node = nodes.get(commit);
+		return node != null ? node.generation : 0;
+	}
+
+	/**
+	 * @param refName
+	 * @return the commit the ref pointed to when the index was last updated,
+	 *         <code>null</code> if the ref is not indexed
+	 */
+	public synchronized ObjectId getTarget(String refName) {
+		return refTargets.get(refName);
+	}
+
+	private void update(IProgressMonitor monitor) throws IOException {
+		RevWalk rw = new RevWalk(getRepository());
+		boolean consistent = false;
+		try {
+			Map<String, ObjectId> current = readRefs(rw);
+			if (nodes == null)
+				build(current, monitor);
+			else if (!current.equals(refTargets))
+				applyChanges(current, monitor);
+			consistent = true;
+		} finally {
+			if (!consistent)
+				// rebuild on next query
+				nodes = null;
+			built = nodes != null;
+			rw.release();
+		}
+	}
+
+	private void applyChanges(Map<String, ObjectId> current,
+			IProgressMonitor monitor) throws IOException {
+		List<String> changed = new ArrayList<String>();
+		for (Iterator<Map.Entry<String, ObjectId>> it = refTargets
+				.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, ObjectId> entry = it.next();
+			String name = entry.getKey();
+			ObjectId newTarget = current.get(name);
+			if (newTarget == null) {
+				int bit = refBits.remove(name).intValue();
+				clearBit(bit);
+				refNames.set(bit, null);
+				it.remove();
+			} else if (!newTarget.equals(entry.getValue())) {
+				Node oldTip = nodes.get(entry.getValue());
+				Node newTip = addCommits(newTarget, monitor);
+				if (!isAncestor(oldTip, newTip))
+					// rewound: commits only reachable from the old
+					// target have to lose the bit
+					clearBit(refBits.get(name).intValue());
+				changed.add(name);
+			}
+		}
+		for (String name : current.keySet())
+			if (!refTargets.containsKey(name)) {
+				allocateBit(name);
+				changed.add(name);
+			}
+		for (String name : changed) {
+			if (monitor.isCanceled())
+				throw new OperationCanceledException();
+			ObjectId target = current.get(name);
+			Node tip = addCommits(target, monitor);
+			markReachable(tip, refBits.get(name).intValue());
+			refTargets.put(name, target);
+		}
+	}
+
+	private Map<String, ObjectId> readRefs(RevWalk rw) throws IOException {
+		Map<String, ObjectId> result = new HashMap<String, ObjectId>();
+		for (String prefix : PREFIXES)
+			for (Ref ref : getRepository().getRefDatabase()
+					.getRefs(prefix).values()) {
+				ObjectId id = ref.getObjectId();
+				if (id == null)
+					continue;
+				ObjectId commitId = id;
+				if (Constants.R_TAGS.equals(prefix)) {
+					commitId = peeledTags.get(id);
+					if (commitId == null) {
+						commitId = peel(rw, id);
+						peeledTags.put(id.copy(), commitId);
+					}
+				}
+				if (commitId != ObjectId.zeroId())
+					result.put(ref.getName(), commitId);
+			}
+		return result;
+	}
+
+	/**
+	 * @return the commit the object points to or the zero id if it does not
+	 *         point to a commit
+	 */
+	static ObjectId peel(RevWalk rw, ObjectId id) throws IOException {
+		try {
+			RevObject object = rw.peel(rw.parseAny(id));
+			if (object instanceof RevCommit)
+				return object.copy();
+		} catch (MissingObjectException e) {
+			// ignore broken tags
+		}
+		return ObjectId.zeroId();
+	}
+
+	private void build(Map<String, ObjectId> targets,
+			IProgressMonitor monitor) throws IOException {
+		refBits.clear();
+		refNames.clear();
+		internedSets.clear();
+		internedSets.put(emptySet, emptySet);
+		ObjectIdSubclassMap<Node> newNodes = new ObjectIdSubclassMap<Node>();
+		Map<ObjectId, BitSet> tipBits = new HashMap<ObjectId, BitSet>();
+		for (Map.Entry<String, ObjectId> entry : targets.entrySet()) {
+			int bit = allocateBit(entry.getKey());
+			BitSet bits = tipBits.get(entry.getValue());
+			if (bits == null) {
+				bits = new BitSet();
+				tipBits.put(entry.getValue(), bits);
+			}
+			bits.set(bit);
+		}
+
+		CommitNodeLoader<Node> loader = createLoader(newNodes);
+		// parents before their children
+		List<Node> order = loader.load(tipBits.keySet(), monitor);
+
+		for (int i = order.size() - 1; i >= 0; i--) {
+			Node node = order.get(i);
+			BitSet own = tipBits.get(node);
+			if (own != null) {
+				if (node.refs == null)
+					node.refs = own;
+				else {
+					node.refs = copyIfShared(node);
+					node.refs.or(own);
+				}
+			}
+			node.refs = node.refs == null ? emptySet : intern(node.refs);
+			node.shared = true;
+			for (CommitNode p : node.parents) {
+				Node parent = (Node) p;
+				if (parent.refs == null) {
+					parent.refs = node.refs;
+					parent.shared = true;
+				} else if (parent.refs != node.refs) {
+					parent.refs = copyIfShared(parent);
+					parent.refs.or(node.refs);
+				}
+			}
+		}
+
+		nodes = newNodes;
+		refTargets = new HashMap<String, ObjectId>(targets);
+	}
+
+	private CommitNodeLoader<Node> createLoader(ObjectIdSubclassMap<Node> map)
+			throws IOException {
+		Repository repo = getRepository();
+		return new CommitNodeLoader<Node>(repo,
+				CommitGraphCache.getCommitGraph(repo), map) {
+			@Override
+			protected Node createNode(AnyObjectId id) {
+				return new Node(id);
+			}
+		};
+	}
+
+	private static BitSet copyIfShared(Node node) {
+		if (!node.shared)
+			return node.refs;
+		node.shared = false;
+		return (BitSet) node.refs.clone();
+	}
+
+	private BitSet intern(BitSet bits) {
+		BitSet interned = internedSets.get(bits);
+		if (interned == null) {
+			internedSets.put(bits, bits);
+			interned = bits;
+		}
+		return interned;
+	}
+
+	private int allocateBit(String name) {
+		int bit = refNames.indexOf(null);
+		if (bit < 0) {
+			bit = refNames.size();
+			refNames.add(name);
+		} else
+			refNames.set(bit, name);
+		refBits.put(name, Integer.valueOf(bit));
+		return bit;
+	}
+
+	/**
+	 * Adds the commits reachable from the given commit which are not yet
+	 * indexed
+	 *
+	 * @return the node of the given commit
+	 */
+	private Node addCommits(ObjectId id, IProgressMonitor monitor)
+			throws IOException {
+		CommitNodeLoader<Node> loader = createLoader(nodes);
+		for (Node node : loader.load(Collections.singleton(id), monitor)) {
+			node.refs = emptySet;
+			node.shared = true;
+		}
+		return loader.getOrCreate(id);
+	}
+
+	/**
+	 * @return <code>true</code> if base is reachable from tip
+	 */
+	private static boolean isAncestor(Node base, Node tip) {
+		if (base == null)
+			return false;
+		Map<Node, Node> seen = new IdentityHashMap<Node, Node>();
+		List<Node> stack = new ArrayList<Node>();
+		stack.add(tip);
+		while (!stack.isEmpty()) {
+			Node node = stack.remove(stack.size() - 1);
+			if (node == base)
+				return true;
+			// ancestors of commits with a lower generation cannot be base
+			if (node.generation <= base.generation
+					|| seen.put(node, node) != null)
+				continue;
+			for (CommitNode parent : node.parents)
+				stack.add((Node) parent);
+		}
+		return false;
+	}
+
+	private void markReachable(Node tip, int bit) {
+		Map<BitSet, BitSet> withBit = new IdentityHashMap<BitSet, BitSet>();
+		List<Node> stack = new ArrayList<Node>();
+		stack.add(tip);
+		while (!stack.isEmpty()) {
+			Node node = stack.remove(stack.size() - 1);
+			if (node.refs.get(bit))
+				continue;
+			BitSet bits = withBit.get(node.refs);
+			if (bits == null) {
+				bits = (BitSet) node.refs.clone();
+				bits.set(bit);
+				bits = intern(bits);
+				withBit.put(node.refs, bits);
+			}
+			node.refs = bits;
+			for (CommitNode parent : node.parents)
+				stack.add((Node) parent);
+		}
+	}
+
+	private void clearBit(int bit) {
+		Map<BitSet, BitSet> withoutBit = new IdentityHashMap<BitSet, BitSet>();
+		for (BitSet bits : new ArrayList<BitSet>(internedSets.keySet()))
+			if (bits.get(bit)) {
+				BitSet cleared = (BitSet) bits.clone();
+				cleared.clear(bit);
+				withoutBit.put(bits, intern(cleared));
+			}
+		if (withoutBit.isEmpty())
+			return;
+		for (Node node : nodes) {
+			BitSet cleared = withoutBit.get(node.refs);
+			if (cleared != null)
+				node.refs = cleared;
+		}
+		for (BitSet bits : withoutBit.keySet())
+			internedSets.remove(bits);
+	}
+}
@@ -28,6 +28,8 @@ public class IndexDiffCache {
 
 	private IndexDiffChangedListener globalListener;
 
+	private final IndexDiffScheduler scheduler = new IndexDiffScheduler();
+
 	/**
 	 * constructor
 	 */
@@ -45,13 +47,27 @@ public IndexDiffCacheEntry getIndexDiffCacheEntry(Repository repository) {
 			entry = entries.get(repository);
 			if (entry != null)
 				return entry;
-			entry = new IndexDiffCacheEntry(repository);
+			entry = new IndexDiffCacheEntry(repository, scheduler);
 			entries.put(repository, entry);
 		}
 		entry.addIndexDiffChangedListener(globalListener);
 		return entry;
 	}
 
+	/**
+	 * Returns the cache entry of the repository without creating one
+	 *
+	 * @param repository
+	 * @return cache entry or <code>null</code> if no entry was created for
+	 *         the repository
+	 */
+	public IndexDiffCacheEntry getExistingIndexDiffCacheEntry(
+			Repository repository) {
+		synchronized (entries) {
+			return entries.get(repository);
+		}
+	}
+
 	/**
 	 * Adds a listener for IndexDiff changes. Note that only caches are
 	 * available for those repositories for which getIndexDiffCacheEntry was
@@ -74,6 +90,21 @@ public void removeIndexDiffChangedListener(IndexDiffChangedListener listener) {
 		}
 	}
 
+	/**
+	 * Disposes all cache entries. The current index diffs are saved so that
+	 * they can be restored on the next startup.
+	 */
+	public void dispose() {
+		IndexDiffCacheEntry[] tmpEntries;
+		synchronized (entries) {
+			tmpEntries = entries.values().toArray(
+					new IndexDiffCacheEntry[entries.size()]);
+			entries.clear();
+		}
+		for (int i = 0; i < tmpEntries.length; i++)
+			tmpEntries[i].dispose();
+	}
+
 	private void createGlobalListener() {
 		globalListener = new IndexDiffChangedListener() {
 			public void indexDiffChanged(Repository repository,
@@ -8,40 +8,58 @@
  *******************************************************************************/
 package org.eclipse.egit.core.internal.indexdiff;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceVisitor;
 import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.eclipse.core.runtime.preferences.DefaultScope;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.egit.core.Activator;
 import org.eclipse.egit.core.CoreText;
 import org.eclipse.egit.core.EclipseGitProgressTransformer;
+import org.eclipse.egit.core.GitCorePreferences;
 import org.eclipse.egit.core.IteratorService;
 import org.eclipse.egit.core.JobFamilies;
 import org.eclipse.egit.core.internal.trace.GitTraceLocation;
+import org.eclipse.egit.core.project.RepositoryMapping;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.events.IndexChangedEvent;
 import org.eclipse.jgit.events.IndexChangedListener;
+import org.eclipse.jgit.events.ListenerHandle;
 import org.eclipse.jgit.events.RefsChangedEvent;
 import org.eclipse.jgit.events.RefsChangedListener;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.IndexDiff;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.treewalk.WorkingTreeIterator;
 import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
 import org.eclipse.osgi.util.NLS;
+import org.eclipse.team.core.Team;
 
 /**
  * This class caches the {@link IndexDiff} for a given repository. The cache
@@ -53,12 +71,47 @@ public class IndexDiffCacheEntry {
 
 	private static final int RESOURCE_LIST_UPDATE_LIMIT = 1000;
 
+	/**
+	 * Files modified up to this amount of milliseconds before a snapshot was
+	 * written are checked again when the snapshot is restored. This covers
+	 * file systems with a coarse timestamp resolution.
+	 */
+	private static final long SNAPSHOT_TIMESTAMP_TOLERANCE = 2000;
+
+	/**
+	 * A repository is considered to be visible if its index diff was requested
+	 * within this amount of milliseconds, e.g. by the decorator
+	 */
+	private static final long VISIBLE_TIMEOUT = 10000;
+
+	/**
+	 * Pending updates are deferred by further changes for at most this
+	 * multiple of the update delay
+	 */
+	private static final int MAX_UPDATE_DELAY_FACTOR = 5;
+
 	private Repository repository;
 
+	private final IndexDiffScheduler scheduler;
+
 	private volatile IndexDiffData indexDiffData;
 
+	private volatile long lastAccess;
+
 	private Job reloadJob;
 
+	private Job updateJob;
+
+	// files and resources to be updated by the next run of the update job
+	private final Set<String> pendingFiles = new HashSet<String>();
+
+	private final Set<IResource> pendingResources = new HashSet<IResource>();
+
+	// time the update job runs at the latest, guarded by pendingFiles
+	private long updateDeadline;
+
+	private volatile boolean disposed;
+
 	// used to serialize index diff update jobs
 	private ReentrantLock lock = new ReentrantLock(true);
 
@@ -66,24 +119,31 @@ public class IndexDiffCacheEntry {
 
 	private IResourceChangeListener resourceChangeListener;
 
+	private ListenerHandle indexChangedListenerHandle;
+
+	private ListenerHandle refsChangedListenerHandle;
+
 	/**
 	 * @param repository
+	 * @param scheduler
+	 *            limits the number of concurrent index diff calculations
 	 */
-	public IndexDiffCacheEntry(Repository repository) {
+	IndexDiffCacheEntry(Repository repository, IndexDiffScheduler scheduler) {
 		this.repository = repository;
-		repository.getListenerList().addIndexChangedListener(
-				new IndexChangedListener() {
+		this.scheduler = scheduler;
+		indexChangedListenerHandle = repository.getListenerList()
+				.addIndexChangedListener(new IndexChangedListener() {
 					public void onIndexChanged(IndexChangedEvent event) {
 						scheduleReloadJob("IndexChanged"); //$NON-NLS-1$
 					}
 				});
-		repository.getListenerList().addRefsChangedListener(
-				new RefsChangedListener() {
+		refsChangedListenerHandle = repository.getListenerList()
+				.addRefsChangedListener(new RefsChangedListener() {
 					public void onRefsChanged(RefsChangedEvent event) {
 						scheduleReloadJob("RefsChanged"); //$NON-NLS-1$
 					}
 				});
-		scheduleReloadJob("IndexDiffCacheEntry construction"); //$NON-NLS-1$
+		scheduleRestoreJob();
 		createResourceChangeListener();
 	}
 
@@ -122,12 +182,22 @@ public void refresh() {
 	 * @return index diff
 	 */
 	public IndexDiffData getIndexDiff() {
+		lastAccess = System.currentTimeMillis();
 		return indexDiffData;
 	}
 
+	private boolean isVisible() {
+		return System.currentTimeMillis() - lastAccess < VISIBLE_TIMEOUT;
+	}
+
 	private void scheduleReloadJob(final String trigger) {
 		if (reloadJob != null)
 			reloadJob.cancel();
+		// the reload covers all pending updates
+		synchronized (pendingFiles) {
+			pendingFiles.clear();
+			pendingResources.clear();
+		}
 		if (!checkRepository())
 			return;
 		reloadJob = new Job(getReloadJobName()) {
@@ -136,13 +206,19 @@ protected IStatus run(IProgressMonitor monitor) {
 				waitForWorkspaceLock();
 				if (monitor.isCanceled())
 					return Status.CANCEL_STATUS;
+				// the slot is acquired with the lock held, so the jobs of a
+				// repository never occupy more than one slot
 				lock.lock();
+				if (!scheduler.acquire(isVisible(), monitor)) {
+					lock.unlock();
+					return Status.CANCEL_STATUS;
+				}
 				try {
 					long startTime = System.currentTimeMillis();
 					IndexDiff result = calcIndexDiff(monitor, getName());
 					if (monitor.isCanceled())
 						return Status.CANCEL_STATUS;
-					indexDiffData = new IndexDiffData(result);
+					indexDiffData = new IndexDiffData(result, startTime);
 					if (GitTraceLocation.INDEXDIFFCACHE.isActive()) {
 						long time = System.currentTimeMillis() - startTime;
 						StringBuilder message = new StringBuilder(
@@ -163,6 +239,7 @@ protected IStatus run(IProgressMonitor monitor) {
 					scheduleReloadJob("Recalculation due to Exception in reload job"); //$NON-NLS-1$
 					return Status.OK_STATUS;
 				} finally {
+					scheduler.release();
 					lock.unlock();
 				}
 			}
@@ -176,7 +253,8 @@ private String getTraceMessage(long time) {
 
 			@Override
 			public boolean belongsTo(Object family) {
-				if (family.equals(JobFamilies.INDEX_DIFF_CACHE_UPDATE))
+				if (family.equals(JobFamilies.INDEX_DIFF_CACHE_UPDATE)
+						|| family == IndexDiffCacheEntry.this)
 					return true;
 				return super.belongsTo(family);
 			}
@@ -185,6 +263,238 @@ public boolean belongsTo(Object family) {
 		reloadJob.schedule();
 	}
 
+	/**
+	 * Stops listening for changes and saves the current index diff to a
+	 * snapshot which is used to initialize the cache on the next startup.
+	 */
+	public void dispose() {
+		disposed = true;
+		if (resourceChangeListener != null)
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(
+					resourceChangeListener);
+		indexChangedListenerHandle.remove();
+		refsChangedListenerHandle.remove();
+		if (reloadJob != null)
+			reloadJob.cancel();
+		if (updateJob != null)
+			updateJob.cancel();
+		IndexDiffSnapshot snapshot = createSnapshot();
+		if (snapshot == null)
+			return;
+		IndexDiffData data = indexDiffData;
+		// an index diff calculated while a job was still pending would not
+		// reflect the state of the work tree
+		boolean updatesPending;
+		synchronized (pendingFiles) {
+			updatesPending = !pendingFiles.isEmpty();
+		}
+		if (data == null || updatesPending
+				|| Job.getJobManager().find(this).length > 0) {
+			snapshot.delete();
+			return;
+		}
+		try {
+			snapshot.save(data);
+		} catch (IOException e) {
+			snapshot.delete();
+			Activator.logError(e.getMessage(), e);
+		}
+	}
+
+	private IndexDiffSnapshot createSnapshot() {
+		if (Activator.getDefault() == null || repository.isBare())
+			return null;
+		return new IndexDiffSnapshot(repository, Activator.getDefault()
+				.getStateLocation().toFile());
+	}
+
+	/**
+	 * Schedules a job which initializes the cache from a snapshot written on
+	 * the last shutdown, or calculates a new index diff if no valid snapshot
+	 * exists. The job replaces the reload job, so a reload requested in the
+	 * meantime cancels the restore.
+	 */
+	private void scheduleRestoreJob() {
+		if (!checkRepository())
+			return;
+		reloadJob = new Job(getReloadJobName()) {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				if (!restoreSnapshot(monitor) && !monitor.isCanceled())
+					scheduleReloadJob("IndexDiffCacheEntry construction"); //$NON-NLS-1$
+				return monitor.isCanceled() ? Status.CANCEL_STATUS
+						: Status.OK_STATUS;
+			}
+
+			@Override
+			public boolean belongsTo(Object family) {
+				if (family.equals(JobFamilies.INDEX_DIFF_CACHE_UPDATE)
+						|| family == IndexDiffCacheEntry.this)
+					return true;
+				return super.belongsTo(family);
+			}
+		};
+		reloadJob.schedule();
+	}
+
+	/**
+	 * Initializes the cache from a snapshot written on the last shutdown. Files
+	 * modified, deleted or created since the snapshot was written are updated
+	 * by an update job.
+	 *
+	 * @param monitor
+	 * @return <code>true</code> if a valid snapshot was restored or the restore
+	 *         was cancelled
+	 */
+	private boolean restoreSnapshot(IProgressMonitor monitor) {
+		IndexDiffSnapshot snapshot = createSnapshot();
+		if (snapshot == null)
+			return false;
+		long startTime = System.currentTimeMillis();
+		IndexDiffData data;
+		try {
+			data = snapshot.load();
+		} catch (IOException e) {
+			data = null;
+		}
+		// the snapshot must not be used again after a crash
+		snapshot.delete();
+		if (data == null)
+			return false;
+
+		Collection<String> filesToUpdate = new HashSet<String>();
+		Collection<IResource> resourcesToUpdate = new HashSet<IResource>();
+		long since = data.getTimestamp() - SNAPSHOT_TIMESTAMP_TOLERANCE;
+		try {
+			if (!collectModifiedFiles(data, since, filesToUpdate,
+					resourcesToUpdate, monitor))
+				return monitor.isCanceled();
+		} catch (IOException e) {
+			return false;
+		} catch (CoreException e) {
+			return false;
+		}
+		lock.lock();
+		try {
+			// a reload scheduled in the meantime cancelled this job and
+			// calculates a more recent index diff
+			if (monitor.isCanceled())
+				return true;
+			indexDiffData = data;
+		} finally {
+			lock.unlock();
+		}
+		if (GitTraceLocation.INDEXDIFFCACHE.isActive()) {
+			long time = System.currentTimeMillis() - startTime;
+			GitTraceLocation.getTrace().trace(
+					GitTraceLocation.INDEXDIFFCACHE.getLocation(),
+					NLS.bind("Restored IndexDiffData snapshot in {0} ms, {1} files modified since snapshot", //$NON-NLS-1$
+							Long.valueOf(time), Integer.valueOf(filesToUpdate
+									.size())));
+		}
+		notifyListeners();
+		if (!filesToUpdate.isEmpty())
+			scheduleUpdateJob(filesToUpdate, resourcesToUpdate);
+		return true;
+	}
+
+	/**
+	 * Collects the files whose state may differ from the snapshot: tracked
+	 * files which were modified since the snapshot was written or whose
+	 * existence changed, untracked files of the snapshot which were deleted
+	 * and workspace files modified since the snapshot was written.
+	 *
+	 * @return <code>false</code> if so many files changed that a full reload
+	 *         is cheaper, if a .gitignore file changed or if the monitor was
+	 *         cancelled
+	 */
+	private boolean collectModifiedFiles(IndexDiffData data, final long since,
+			final Collection<String> filesToUpdate,
+			final Collection<IResource> resourcesToUpdate,
+			IProgressMonitor monitor) throws IOException, CoreException {
+		File workTree = repository.getWorkTree();
+		Set<String> missing = data.getMissing();
+		DirCache dirCache = repository.readDirCache();
+		for (int i = 0; i < dirCache.getEntryCount(); i++) {
+			if (monitor.isCanceled())
+				return false;
+			DirCacheEntry entry = dirCache.getEntry(i);
+			if (entry.getFileMode() == FileMode.GITLINK)
+				continue;
+			String path = entry.getPathString();
+			File file = new File(workTree, path);
+			long lastModified = file.lastModified();
+			boolean modified;
+			if (lastModified == 0)
+				modified = !missing.contains(path);
+			else
+				modified = lastModified >= since || missing.contains(path);
+			if (modified && (isIgnoreFile(path) || !addModifiedFile(path,
+					file, filesToUpdate, resourcesToUpdate)))
+				return false;
+		}
+		for (String path : data.getUntracked()) {
+			File file = new File(workTree, path);
+			if (!file.exists() && (isIgnoreFile(path) || !addModifiedFile(
+					path, file, filesToUpdate, resourcesToUpdate)))
+				return false;
+		}
+
+		// new untracked files, the workspace knows which files are ignored
+		final boolean[] ignoreFileChanged = new boolean[1];
+		for (IProject project : ResourcesPlugin.getWorkspace().getRoot()
+				.getProjects()) {
+			if (monitor.isCanceled())
+				return false;
+			final RepositoryMapping mapping = RepositoryMapping
+					.getMapping(project);
+			if (mapping == null || mapping.getRepository() != repository)
+				continue;
+			project.accept(new IResourceVisitor() {
+				public boolean visit(IResource resource) throws CoreException {
+					if (Team.isIgnoredHint(resource))
+						return false;
+					if (resource.getType() == IResource.FILE
+							&& resource.getLocalTimeStamp() >= since) {
+						String path = mapping.getRepoRelativePath(resource);
+						if (path != null && isIgnoreFile(path)) {
+							ignoreFileChanged[0] = true;
+							return false;
+						}
+						if (path != null) {
+							filesToUpdate.add(path);
+							resourcesToUpdate.add(resource);
+						}
+					}
+					return filesToUpdate.size() < RESOURCE_LIST_UPDATE_LIMIT;
+				}
+			});
+			if (ignoreFileChanged[0])
+				return false;
+		}
+		return filesToUpdate.size() < RESOURCE_LIST_UPDATE_LIMIT;
+	}
+
+	/**
+	 * A changed .gitignore file may change the state of any file below its
+	 * folder
+	 */
+	private static boolean isIgnoreFile(String path) {
+		return path.equals(Constants.DOT_GIT_IGNORE)
+				|| path.endsWith("/" + Constants.DOT_GIT_IGNORE); //$NON-NLS-1$
+	}
+
+	private static boolean addModifiedFile(String path, File file,
+			Collection<String> filesToUpdate,
+			Collection<IResource> resourcesToUpdate) {
+		filesToUpdate.add(path);
+		IFile resource = ResourcesPlugin.getWorkspace().getRoot()
+				.getFileForLocation(new Path(file.getAbsolutePath()));
+		if (resource != null)
+			resourcesToUpdate.add(resource);
+		return filesToUpdate.size() < RESOURCE_LIST_UPDATE_LIMIT;
+	}
+
 	private boolean checkRepository() {
 		if (Activator.getDefault() == null)
 			return false;
@@ -211,23 +521,91 @@ public void run(IProgressMonitor monitor) throws CoreException {
 		}
 	}
 
-	private void scheduleUpdateJob(final Collection<String> filesToUpdate,
-			final Collection<IResource> resourcesToUpdate) {
+	/**
+	 * Adds the given files to the set of files to be updated by the update
+	 * job. The job runs when no files changed for the update delay, but at
+	 * most {@link #MAX_UPDATE_DELAY_FACTOR} times the delay after the first
+	 * change. At most one update job runs at a time.
+	 *
+	 * @param filesToUpdate
+	 * @param resourcesToUpdate
+	 */
+	private void scheduleUpdateJob(Collection<String> filesToUpdate,
+			Collection<IResource> resourcesToUpdate) {
 		if (!checkRepository())
 			return;
+		boolean tooManyFiles = false;
+		synchronized (pendingFiles) {
+			pendingFiles.addAll(filesToUpdate);
+			pendingResources.addAll(resourcesToUpdate);
+			if (pendingFiles.size() >= RESOURCE_LIST_UPDATE_LIMIT) {
+				pendingFiles.clear();
+				pendingResources.clear();
+				tooManyFiles = true;
+			} else {
+				if (updateJob == null)
+					updateJob = createUpdateJob();
+				// checked under the lock the job takes the pending files
+				// with, so the files are either taken by a waiting job or
+				// the job is scheduled again
+				int state = updateJob.getState();
+				long delay = getUpdateDelay();
+				if (state == Job.SLEEPING) {
+					long remaining = updateDeadline
+							- System.currentTimeMillis();
+					if (remaining > 0)
+						updateJob.wakeUp(Math.min(delay, remaining));
+				} else if (state != Job.WAITING) {
+					updateDeadline = System.currentTimeMillis() + delay
+							* MAX_UPDATE_DELAY_FACTOR;
+					updateJob.schedule(delay);
+				}
+			}
+		}
+		if (tooManyFiles)
+			// Calculate new IndexDiff if too many resources changed
+			// This happens e.g. when a project is opened
+			scheduleReloadJob("Too many resources changed"); //$NON-NLS-1$
+	}
+
+	private Job createUpdateJob() {
 		Job job = new Job(getReloadJobName()) {
 			@Override
 			protected IStatus run(IProgressMonitor monitor) {
+				if (disposed)
+					return Status.CANCEL_STATUS;
 				waitForWorkspaceLock();
 				if (monitor.isCanceled())
 					return Status.CANCEL_STATUS;
+				// the slot is acquired with the lock held, so the jobs of a
+				// repository never occupy more than one slot
 				lock.lock();
+				if (!scheduler.acquire(isVisible(), monitor)) {
+					lock.unlock();
+					return Status.CANCEL_STATUS;
+				}
 				try {
+					Collection<String> filesToUpdate;
+					Collection<IResource> resourcesToUpdate;
+					synchronized (pendingFiles) {
+						if (pendingFiles.isEmpty())
+							return Status.OK_STATUS;
+						filesToUpdate = new ArrayList<String>(pendingFiles);
+						resourcesToUpdate = new ArrayList<IResource>(
+								pendingResources);
+						pendingFiles.clear();
+						pendingResources.clear();
+					}
 					long startTime = System.currentTimeMillis();
 					IndexDiffData result = calcIndexDiffData(monitor,
 							getName(), filesToUpdate, resourcesToUpdate);
-					if (monitor.isCanceled())
+					if (monitor.isCanceled()) {
+						synchronized (pendingFiles) {
+							pendingFiles.addAll(filesToUpdate);
+							pendingResources.addAll(resourcesToUpdate);
+						}
 						return Status.CANCEL_STATUS;
+					}
 					indexDiffData = result;
 					if (GitTraceLocation.INDEXDIFFCACHE.isActive()) {
 						long time = System.currentTimeMillis() - startTime;
@@ -252,18 +630,55 @@ protected IStatus run(IProgressMonitor monitor) {
 					scheduleReloadJob("Recalculation due to Exception in update job"); //$NON-NLS-1$
 					return Status.OK_STATUS;
 				} finally {
+					scheduler.release();
 					lock.unlock();
 				}
 			}
 			@Override
 			public boolean belongsTo(Object family) {
-				if (family.equals(JobFamilies.INDEX_DIFF_CACHE_UPDATE))
+				if (family.equals(JobFamilies.INDEX_DIFF_CACHE_UPDATE)
+						|| family == IndexDiffCacheEntry.this)
 					return true;
 				return super.belongsTo(family);
 			}
 
 		};
-		job.schedule();
+		// also called if the job is canceled before it runs
+		job.addJobChangeListener(new JobChangeAdapter() {
+			@Override
+			public void done(IJobChangeEvent event) {
+				if (event.getResult().getSeverity() == IStatus.CANCEL)
+					rescheduleUpdateJob();
+			}
+		});
+		return job;
+	}
+
+	/**
+	 * Schedules the update job again if it was canceled, e.g. in the Progress
+	 * view, while files were pending. Otherwise the files would only be updated
+	 * after the next change, and the snapshot would not be saved on shutdown.
+	 */
+	private void rescheduleUpdateJob() {
+		if (disposed || !checkRepository())
+			return;
+		synchronized (pendingFiles) {
+			if (pendingFiles.isEmpty())
+				return;
+			long delay = getUpdateDelay();
+			updateDeadline = System.currentTimeMillis() + delay
+					* MAX_UPDATE_DELAY_FACTOR;
+			updateJob.schedule(delay);
+		}
+	}
+
+	private static long getUpdateDelay() {
+		IEclipsePreferences d = new DefaultScope().getNode(Activator
+				.getPluginId());
+		IEclipsePreferences p = new InstanceScope().getNode(Activator
+				.getPluginId());
+		return p.getLong(GitCorePreferences.core_indexDiffUpdateDelay, d
+				.getLong(GitCorePreferences.core_indexDiffUpdateDelay, 0));
 	}
 
 	private IndexDiffData calcIndexDiffData(IProgressMonitor monitor,
@@ -335,12 +750,7 @@ public void resourceChanged(IResourceChangeEvent event) {
 				else if (indexDiffData == null)
 					scheduleReloadJob("Resource changed, no diff available"); //$NON-NLS-1$
 				else if (!filesToUpdate.isEmpty())
-					if (filesToUpdate.size() < RESOURCE_LIST_UPDATE_LIMIT)
-						scheduleUpdateJob(filesToUpdate, visitor.getResourcesToUpdate());
-					else
-						// Calculate new IndexDiff if too many resources changed
-						// This happens e.g. when a project is opened
-						scheduleReloadJob("Too many resources changed"); //$NON-NLS-1$
+					scheduleUpdateJob(filesToUpdate, visitor.getResourcesToUpdate());
 			}
 
 		};
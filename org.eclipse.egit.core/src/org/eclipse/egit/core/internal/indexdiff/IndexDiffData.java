@@ -25,6 +25,8 @@ public class IndexDiffData {
 
 	private static final String NEW_LINE = "\n"; //$NON-NLS-1$
 
+	private final PathTrie trie;
+
 	private final Set<String> added;
 
 	private final Set<String> changed;
@@ -45,31 +47,77 @@ public class IndexDiffData {
 
 	private final Collection<IResource> changedResources;
 
+	private final long timestamp;
+
 	/**
 	 * @param indexDiff
+	 * @param timestamp
+	 *            the time the calculation of the index diff was started
+	 */
+	public IndexDiffData(IndexDiff indexDiff, long timestamp) {
+		this(new PathTrie.Builder()
+				.addAll(indexDiff.getAdded(), PathTrie.ADDED)
+				.addAll(indexDiff.getChanged(), PathTrie.CHANGED)
+				.addAll(indexDiff.getRemoved(), PathTrie.REMOVED)
+				.addAll(indexDiff.getMissing(), PathTrie.MISSING)
+				.addAll(indexDiff.getModified(), PathTrie.MODIFIED)
+				.addAll(indexDiff.getUntracked(), PathTrie.UNTRACKED)
+				.addAll(getUntrackedFolders(indexDiff),
+						PathTrie.UNTRACKED_FOLDER)
+				.addAll(indexDiff.getConflicting(), PathTrie.CONFLICTING)
+				.addAll(indexDiff.getIgnoredNotInIndex(), PathTrie.IGNORED)
+				.build(), null, timestamp);
+	}
+
+	/**
+	 * Creates an IndexDiffData object from previously computed lists, e.g.
+	 * read from an {@link IndexDiffSnapshot}.
+	 *
+	 * @param added
+	 * @param changed
+	 * @param removed
+	 * @param missing
+	 * @param modified
+	 * @param untracked
+	 * @param untrackedFolders
+	 *            folder paths must end with /
+	 * @param conflicts
+	 * @param ignored
+	 * @param timestamp
+	 *            the time the calculation of the lists was started
 	 */
-	public IndexDiffData(IndexDiff indexDiff) {
-		added = Collections.unmodifiableSet(new HashSet<String>(indexDiff
-				.getAdded()));
-		changed = Collections.unmodifiableSet(new HashSet<String>(indexDiff
-				.getChanged()));
-		removed = Collections.unmodifiableSet(new HashSet<String>(indexDiff
-				.getRemoved()));
-		missing = Collections.unmodifiableSet(new HashSet<String>(indexDiff
-				.getMissing()));
-		modified = Collections.unmodifiableSet(new HashSet<String>(indexDiff
-				.getModified()));
-		untracked = Collections.unmodifiableSet(new HashSet<String>(indexDiff
-				.getUntracked()));
-		untrackedFolders = Collections.unmodifiableSet(getUntrackedFolders(indexDiff));
-		conflicts = Collections.unmodifiableSet(new HashSet<String>(indexDiff
-				.getConflicting()));
-		ignored = Collections.unmodifiableSet(new HashSet<String>(indexDiff
-				.getIgnoredNotInIndex()));
-		changedResources = null;
-	}
-
-	private Set<String> getUntrackedFolders(IndexDiff indexDiff) {
+	IndexDiffData(Set<String> added, Set<String> changed,
+			Set<String> removed, Set<String> missing, Set<String> modified,
+			Set<String> untracked, Set<String> untrackedFolders,
+			Set<String> conflicts, Set<String> ignored, long timestamp) {
+		this(new PathTrie.Builder().addAll(added, PathTrie.ADDED)
+				.addAll(changed, PathTrie.CHANGED)
+				.addAll(removed, PathTrie.REMOVED)
+				.addAll(missing, PathTrie.MISSING)
+				.addAll(modified, PathTrie.MODIFIED)
+				.addAll(untracked, PathTrie.UNTRACKED)
+				.addAll(untrackedFolders, PathTrie.UNTRACKED_FOLDER)
+				.addAll(conflicts, PathTrie.CONFLICTING)
+				.addAll(ignored, PathTrie.IGNORED).build(), null, timestamp);
+	}
+
+	private IndexDiffData(PathTrie trie,
+			Collection<IResource> changedResources, long timestamp) {
+		this.trie = trie;
+		this.changedResources = changedResources;
+		this.timestamp = timestamp;
+		added = trie.asSet(PathTrie.ADDED);
+		changed = trie.asSet(PathTrie.CHANGED);
+		removed = trie.asSet(PathTrie.REMOVED);
+		missing = trie.asSet(PathTrie.MISSING);
+		modified = trie.asSet(PathTrie.MODIFIED);
+		untracked = trie.asSet(PathTrie.UNTRACKED);
+		untrackedFolders = trie.asSet(PathTrie.UNTRACKED_FOLDER);
+		conflicts = trie.asSet(PathTrie.CONFLICTING);
+		ignored = trie.asSet(PathTrie.IGNORED);
+	}
+
+	private static Set<String> getUntrackedFolders(IndexDiff indexDiff) {
 		HashSet<String> result = new HashSet<String>();
 		for (String folder:indexDiff.getUntrackedFolders())
 			result.add(folder + "/"); //$NON-NLS-1$
@@ -79,7 +127,9 @@ private Set<String> getUntrackedFolders(IndexDiff indexDiff) {
 	/**
 	 * This constructor merges the existing IndexDiffData object baseDiff with a
 	 * new IndexDiffData object that was calculated for a subset of files
-	 * (changedFiles).
+	 * (changedFiles). The result shares all unchanged parts of its
+	 * {@link PathTrie} with baseDiff. Since the state of the other files was
+	 * calculated for baseDiff, the result keeps its timestamp.
 	 *
 	 * @param baseDiff
 	 * @param changedFiles
@@ -91,59 +141,73 @@ public IndexDiffData(IndexDiffData baseDiff,
 			Collection<String> changedFiles,
 			Collection<IResource> changedResources,
 			IndexDiff diffForChangedFiles) {
-		this.changedResources = Collections
-				.unmodifiableCollection(new HashSet<IResource>(changedResources));
-		Set<String> added2 = new HashSet<String>(baseDiff.getAdded());
-		Set<String> changed2 = new HashSet<String>(baseDiff.getChanged());
-		Set<String> removed2 = new HashSet<String>(baseDiff.getRemoved());
-		Set<String> missing2 = new HashSet<String>(baseDiff.getMissing());
-		Set<String> modified2 = new HashSet<String>(baseDiff.getModified());
-		Set<String> untracked2 = new HashSet<String>(baseDiff.getUntracked());
-		Set<String> untrackedFolders2 = new HashSet<String>(baseDiff.getUntrackedFolders());
-		Set<String> conflicts2 = new HashSet<String>(baseDiff.getConflicting());
-		Set<String> ignored2 = new HashSet<String>(baseDiff.getIgnoredNotInIndex());
-
-		mergeList(added2, changedFiles, diffForChangedFiles.getAdded());
-		mergeList(changed2, changedFiles, diffForChangedFiles.getChanged());
-		mergeList(removed2, changedFiles, diffForChangedFiles.getRemoved());
-		mergeList(missing2, changedFiles, diffForChangedFiles.getMissing());
-		mergeList(modified2, changedFiles, diffForChangedFiles.getModified());
-		mergeList(untracked2, changedFiles, diffForChangedFiles.getUntracked());
-		mergeList(untrackedFolders2, changedFiles, getUntrackedFolders(diffForChangedFiles));
-		mergeList(conflicts2, changedFiles,
-				diffForChangedFiles.getConflicting());
-		mergeList(ignored2, changedFiles,
-				diffForChangedFiles.getIgnoredNotInIndex());
-
-		added = Collections.unmodifiableSet(added2);
-		changed = Collections.unmodifiableSet(changed2);
-		removed = Collections.unmodifiableSet(removed2);
-		missing = Collections.unmodifiableSet(missing2);
-		modified = Collections.unmodifiableSet(modified2);
-		untracked = Collections.unmodifiableSet(untracked2);
-		untrackedFolders = Collections.unmodifiableSet(untrackedFolders2);
-		conflicts = Collections.unmodifiableSet(conflicts2);
-		ignored = Collections.unmodifiableSet(ignored2);
-	}
-
-	private void mergeList(Set<String> baseList,
-			Collection<String> changedFiles, Set<String> listForChangedFiles) {
+		this(merge(baseDiff, changedFiles, diffForChangedFiles), Collections
+				.unmodifiableCollection(new HashSet<IResource>(
+						changedResources)), baseDiff.getTimestamp());
+	}
+
+	private static PathTrie merge(IndexDiffData baseDiff,
+			Collection<String> changedFiles, IndexDiff diffForChangedFiles) {
+		Set<String> untrackedFolders = getUntrackedFolders(diffForChangedFiles);
+		PathTrie.Editor editor = baseDiff.getPathTrie().edit();
 		for (String file : changedFiles) {
-			if (baseList.contains(file)) {
-				if (!listForChangedFiles.contains(file))
-					baseList.remove(file);
-			} else {
-				if (listForChangedFiles.contains(file))
-					baseList.add(file);
+			if (file.endsWith("/")) { //$NON-NLS-1$
+				// only the list of untracked folders contains folders
+				editor.set(file, getFlag(untrackedFolders, file,
+						PathTrie.UNTRACKED_FOLDER), PathTrie.UNTRACKED_FOLDER);
+				continue;
 			}
+			int flags = 0;
+			flags |= getFlag(diffForChangedFiles.getAdded(), file,
+					PathTrie.ADDED);
+			flags |= getFlag(diffForChangedFiles.getChanged(), file,
+					PathTrie.CHANGED);
+			flags |= getFlag(diffForChangedFiles.getRemoved(), file,
+					PathTrie.REMOVED);
+			flags |= getFlag(diffForChangedFiles.getMissing(), file,
+					PathTrie.MISSING);
+			flags |= getFlag(diffForChangedFiles.getModified(), file,
+					PathTrie.MODIFIED);
+			flags |= getFlag(diffForChangedFiles.getUntracked(), file,
+					PathTrie.UNTRACKED);
+			flags |= getFlag(diffForChangedFiles.getConflicting(), file,
+					PathTrie.CONFLICTING);
+			flags |= getFlag(diffForChangedFiles.getIgnoredNotInIndex(),
+					file, PathTrie.IGNORED);
+			editor.set(file, flags, PathTrie.ALL & ~PathTrie.UNTRACKED_FOLDER);
 		}
+		return editor.build();
+	}
+
+	private static int getFlag(Set<String> listForChangedFiles, String file,
+			int flag) {
+		return listForChangedFiles.contains(file) ? flag : 0;
+	}
+
+	/**
+	 * @return the time the calculation of the oldest state contained in this
+	 *         data was started; files modified later may have a different
+	 *         state
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * The trie allows to determine the status of a folder without iterating
+	 * over the lists of changed files.
+	 *
+	 * @return the trie containing all paths of this index diff
+	 */
+	public PathTrie getPathTrie() {
+		return trie;
 	}
 
 	/**
 	 * @return list of files added to the index, not in the tree
 	 */
 	public Set<String> getAdded() {
-		return Collections.unmodifiableSet(added);
+		return added;
 	}
 
 	/**
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.indexdiff;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.preferences.DefaultScope;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.egit.core.Activator;
+import org.eclipse.egit.core.GitCorePreferences;
+
+/**
+ * Limits the number of index diff calculations running at the same time.
+ * <p>
+ * The index diff jobs of all repositories acquire a slot before they start
+ * their calculation and release it afterwards. If all slots are in use,
+ * requests are served in the order they arrived, with requests for visible
+ * repositories taking precedence. A request which waited longer than
+ * {@link #MAX_DEFERRAL} milliseconds is treated like a request for a visible
+ * repository, so requests for other repositories cannot starve. The jobs
+ * acquire a slot while holding the lock of their repository, so the jobs of
+ * one repository never take more than one slot.
+ * <p>
+ * The number of slots is configured by the preference
+ * {@link GitCorePreferences#core_indexDiffPoolSize}.
+ */
+class IndexDiffScheduler {
+
+	// interval for checking the cancellation of waiting jobs
+	private static final long POLL_INTERVAL = 100;
+
+	// maximum time a request is deferred in favor of visible repositories
+	static final long MAX_DEFERRAL = 10000;
+
+	private static class Request {
+		final boolean visible;
+
+		final long sequence;
+
+		final long time;
+
+		Request(boolean visible, long sequence, long time) {
+			this.visible = visible;
+			this.sequence = sequence;
+			this.time = time;
+		}
+
+		boolean isUrgent(long now, long maxDeferral) {
+			return visible || now - time >= maxDeferral;
+		}
+
+		boolean precedes(Request other, long now, long maxDeferral) {
+			boolean urgent = isUrgent(now, maxDeferral);
+			if (urgent != other.isUrgent(now, maxDeferral))
+				return urgent;
+			return sequence < other.sequence;
+		}
+	}
+
+	private final List<Request> waiting = new ArrayList<Request>();
+
+	private final int poolSize;
+
+	private final long maxDeferral;
+
+	private int running;
+
+	private long sequence;
+
+	/**
+	 * Creates a scheduler using the configured pool size
+	 */
+	IndexDiffScheduler() {
+		this(0, MAX_DEFERRAL);
+	}
+
+	/**
+	 * @param poolSize
+	 *            the number of slots, the configured pool size is used if not
+	 *            positive
+	 * @param maxDeferral
+	 *            the maximum time in milliseconds a request is deferred in
+	 *            favor of visible repositories
+	 */
+	IndexDiffScheduler(int poolSize, long maxDeferral) {
+		this.poolSize = poolSize;
+		this.maxDeferral = maxDeferral;
+	}
+
+	/**
+	 * Waits until a slot is available for the caller
+	 *
+	 * @param visible
+	 *            <code>true</code> if resources of the repository are visible
+	 *            to the user
+	 * @param monitor
+	 * @return <code>true</code> if a slot was acquired, <code>false</code> if
+	 *         the monitor was canceled while waiting. A slot acquired must be
+	 *         released by {@link #release()}.
+	 */
+	synchronized boolean acquire(boolean visible, IProgressMonitor monitor) {
+		Request request = new Request(visible, sequence++,
+				System.currentTimeMillis());
+		waiting.add(request);
+		try {
+			int size = poolSize > 0 ? poolSize : getPoolSize();
+			while (running >= size || getNext() != request) {
+				if (monitor.isCanceled())
+					return false;
+				try {
+					wait(POLL_INTERVAL);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			running++;
+			return true;
+		} finally {
+			waiting.remove(request);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Releases a slot acquired by {@link #acquire(boolean, IProgressMonitor)}
+	 */
+	synchronized void release() {
+		running--;
+		notifyAll();
+	}
+
+	private Request getNext() {
+		long now = System.currentTimeMillis();
+		Request next = null;
+		for (Request request : waiting)
+			if (next == null || request.precedes(next, now, maxDeferral))
+				next = request;
+		return next;
+	}
+
+	private static int getPoolSize() {
+		Activator activator = Activator.getDefault();
+		if (activator == null)
+			return 1;
+		IEclipsePreferences d = new DefaultScope().getNode(Activator
+				.getPluginId());
+		IEclipsePreferences p = new InstanceScope().getNode(Activator
+				.getPluginId());
+		int size = p.getInt(GitCorePreferences.core_indexDiffPoolSize, d
+				.getInt(GitCorePreferences.core_indexDiffPoolSize, 0));
+		if (size <= 0)
+			size = Runtime.getRuntime().availableProcessors();
+		return size;
+	}
+}
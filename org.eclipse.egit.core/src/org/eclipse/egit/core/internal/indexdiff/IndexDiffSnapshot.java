@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.indexdiff;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.IO;
+
+/**
+ * Persists the {@link IndexDiffData} of a repository in the plugin state
+ * location so that it is available immediately after a restart.
+ * <p>
+ * A snapshot is only used if the index file, HEAD and the repository wide
+ * exclude files did not change since it was written. Files modified after the
+ * {@link IndexDiffData#getTimestamp() timestamp} of the data may have a
+ * different state and must be checked again. The file starts with a
+ * magic number and a format version, followed by the length of the payload,
+ * the payload and a CRC32 checksum of the payload. Snapshots which cannot be
+ * read for any reason are ignored.
+ */
+public class IndexDiffSnapshot {
+
+	private static final int MAGIC = 0x45494453; // "EIDS"
+
+	private static final int VERSION = 3;
+
+	private static final String SNAPSHOT_FOLDER = "indexdiff"; //$NON-NLS-1$
+
+	private static final String SNAPSHOT_EXTENSION = ".snapshot"; //$NON-NLS-1$
+
+	private static final String TMP_EXTENSION = ".tmp"; //$NON-NLS-1$
+
+	private final Repository repository;
+
+	private final File snapshotFile;
+
+	/**
+	 * @param repository
+	 * @param stateLocation
+	 *            the folder to store the snapshot in
+	 */
+	public IndexDiffSnapshot(Repository repository, File stateLocation) {
+		this.repository = repository;
+		File folder = new File(stateLocation, SNAPSHOT_FOLDER);
+		snapshotFile = new File(folder, getSnapshotName(repository)
+				+ SNAPSHOT_EXTENSION);
+	}
+
+	private static String getSnapshotName(Repository repository) {
+		String path = repository.getDirectory().getAbsolutePath();
+		return ObjectId.fromRaw(
+				Constants.newMessageDigest().digest(Constants.encode(path)))
+				.name();
+	}
+
+	/**
+	 * Writes the given data to the snapshot file
+	 *
+	 * @param data
+	 * @throws IOException
+	 */
+	public void save(IndexDiffData data) throws IOException {
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(payload);
+		out.writeUTF(repository.getDirectory().getAbsolutePath());
+		writeIndexIdentity(out);
+		out.writeLong(data.getTimestamp());
+		writeSet(out, data.getAdded());
+		writeSet(out, data.getChanged());
+		writeSet(out, data.getRemoved());
+		writeSet(out, data.getMissing());
+		writeSet(out, data.getModified());
+		writeSet(out, data.getUntracked());
+		writeSet(out, data.getUntrackedFolders());
+		writeSet(out, data.getConflicting());
+		writeSet(out, data.getIgnoredNotInIndex());
+		out.flush();
+		byte[] bytes = payload.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+
+		File folder = snapshotFile.getParentFile();
+		if (!folder.isDirectory() && !folder.mkdirs())
+			throw new IOException(folder.getAbsolutePath());
+		File tmp = new File(folder, snapshotFile.getName() + TMP_EXTENSION);
+		DataOutputStream fileOut = new DataOutputStream(new FileOutputStream(
+				tmp));
+		try {
+			fileOut.writeInt(MAGIC);
+			fileOut.writeInt(VERSION);
+			fileOut.writeInt(bytes.length);
+			fileOut.write(bytes);
+			fileOut.writeLong(crc.getValue());
+		} finally {
+			fileOut.close();
+		}
+		if (snapshotFile.exists() && !snapshotFile.delete())
+			throw new IOException(snapshotFile.getAbsolutePath());
+		if (!tmp.renameTo(snapshotFile))
+			throw new IOException(snapshotFile.getAbsolutePath());
+	}
+
+	/**
+	 * Reads the snapshot file. The snapshot is only returned if it was written
+	 * for the current state of the index and HEAD.
+	 *
+	 * @return the stored data or <code>null</code> if no valid snapshot exists
+	 * @throws IOException
+	 */
+	public IndexDiffData load() throws IOException {
+		if (!snapshotFile.isFile())
+			return null;
+		DataInputStream fileIn = new DataInputStream(new FileInputStream(
+				snapshotFile));
+		byte[] bytes;
+		long checksum;
+		try {
+			if (fileIn.readInt() != MAGIC || fileIn.readInt() != VERSION)
+				return null;
+			int length = fileIn.readInt();
+			if (length < 0 || length > snapshotFile.length())
+				return null;
+			bytes = new byte[length];
+			IO.readFully(fileIn, bytes, 0, length);
+			checksum = fileIn.readLong();
+		} finally {
+			fileIn.close();
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		if (crc.getValue() != checksum)
+			return null;
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				bytes));
+		if (!in.readUTF().equals(
+				repository.getDirectory().getAbsolutePath()))
+			return null;
+		if (!checkIndexIdentity(in))
+			return null;
+		long timestamp = in.readLong();
+		return new IndexDiffData(readSet(in), readSet(in), readSet(in),
+				readSet(in), readSet(in), readSet(in), readSet(in),
+				readSet(in), readSet(in), timestamp);
+	}
+
+	/**
+	 * Deletes the snapshot file
+	 */
+	public void delete() {
+		if (snapshotFile.exists())
+			snapshotFile.delete();
+	}
+
+	private void writeIndexIdentity(DataOutputStream out) throws IOException {
+		File indexFile = repository.getIndexFile();
+		out.writeLong(indexFile.lastModified());
+		out.writeLong(indexFile.length());
+		out.writeUTF(getHead());
+		File[] excludeFiles = getExcludeFiles();
+		out.writeInt(excludeFiles.length);
+		for (File file : excludeFiles) {
+			out.writeUTF(file.getAbsolutePath());
+			out.writeLong(file.lastModified());
+		}
+	}
+
+	private boolean checkIndexIdentity(DataInputStream in) throws IOException {
+		File indexFile = repository.getIndexFile();
+		long lastModified = in.readLong();
+		long length = in.readLong();
+		String head = in.readUTF();
+		if (lastModified != indexFile.lastModified()
+				|| length != indexFile.length() || !head.equals(getHead()))
+			return false;
+		File[] excludeFiles = getExcludeFiles();
+		if (in.readInt() != excludeFiles.length)
+			return false;
+		for (File file : excludeFiles)
+			if (!in.readUTF().equals(file.getAbsolutePath())
+					|| in.readLong() != file.lastModified())
+				return false;
+		return true;
+	}
+
+	/**
+	 * The .gitignore files in the work tree are checked by the
+	 * {@link IndexDiffCacheEntry} like the other files.
+	 *
+	 * @return .git/info/exclude and the file configured as core.excludesfile
+	 */
+	private File[] getExcludeFiles() {
+		File infoExclude = new File(new File(repository.getDirectory(),
+				"info"), "exclude"); //$NON-NLS-1$ //$NON-NLS-2$
+		String excludesFile = repository.getConfig().getString("core", //$NON-NLS-1$
+				null, "excludesfile"); //$NON-NLS-1$
+		if (excludesFile == null)
+			return new File[] { infoExclude };
+		File file;
+		if (excludesFile.startsWith("~/")) //$NON-NLS-1$
+			file = new File(repository.getFS().userHome(),
+					excludesFile.substring(2));
+		else
+			file = new File(excludesFile);
+		return new File[] { infoExclude, file };
+	}
+
+	private String getHead() throws IOException {
+		ObjectId head = repository.resolve(Constants.HEAD);
+		return head != null ? head.name() : ""; //$NON-NLS-1$
+	}
+
+	private static void writeSet(DataOutputStream out, Set<String> set)
+			throws IOException {
+		out.writeInt(set.size());
+		for (String entry : set)
+			out.writeUTF(entry);
+	}
+
+	private static Set<String> readSet(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		Set<String> result = new HashSet<String>(Math.max(16,
+				(int) (size / .75f) + 1));
+		for (int i = 0; i < size; i++)
+			result.add(in.readUTF());
+		return result;
+	}
+}
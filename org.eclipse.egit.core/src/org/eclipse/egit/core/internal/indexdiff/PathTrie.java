@@ -0,0 +1,550 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.core.internal.indexdiff;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable trie of repository relative paths. Each node stores the status
+ * flags of its own path and the combined flags of all its descendants, so
+ * that the status of a folder can be determined by a single lookup
+ * proportional to the depth of the folder.
+ * <p>
+ * The flags for one status can also be accessed as a read-only {@link Set}
+ * of paths, see {@link #asSet(int)}.
+ */
+public class PathTrie {
+
+	/** File added to the index, not in HEAD */
+	public static final int ADDED = 1 << 0;
+
+	/** File changed from HEAD to index */
+	public static final int CHANGED = 1 << 1;
+
+	/** File removed from index, but in HEAD */
+	public static final int REMOVED = 1 << 2;
+
+	/** File in index, but not in the file system */
+	public static final int MISSING = 1 << 3;
+
+	/** File modified in the file system relative to the index */
+	public static final int MODIFIED = 1 << 4;
+
+	/** File neither ignored nor in the index */
+	public static final int UNTRACKED = 1 << 5;
+
+	/** Folder containing only untracked files / folders */
+	public static final int UNTRACKED_FOLDER = 1 << 6;
+
+	/** File in conflict */
+	public static final int CONFLICTING = 1 << 7;
+
+	/** Ignored file or folder which is not in the index */
+	public static final int IGNORED = 1 << 8;
+
+	/** Any change between HEAD and index */
+	public static final int STAGED = ADDED | CHANGED | REMOVED;
+
+	/** All status flags */
+	public static final int ALL = (1 << 9) - 1;
+
+	private static final int FLAG_COUNT = 9;
+
+	private static final char SEPARATOR = '/';
+
+	/** An empty trie */
+	public static final PathTrie EMPTY = new Builder().build();
+
+	/**
+	 * Immutable node of the trie. Children are sorted by name.
+	 */
+	static final class Node {
+
+		static final Node[] NO_CHILDREN = new Node[0];
+
+		final String name;
+
+		final int flags;
+
+		final int subtreeFlags;
+
+		final Node[] children;
+
+		Node(String name, int flags, Node[] children) {
+			this.name = name;
+			this.flags = flags;
+			this.children = children;
+			int sub = 0;
+			for (Node child : children)
+				sub |= child.flags | child.subtreeFlags;
+			this.subtreeFlags = sub;
+		}
+
+		Node getChild(String childName) {
+			int index = indexOf(childName);
+			return index >= 0 ? children[index] : null;
+		}
+
+		int indexOf(String childName) {
+			int low = 0;
+			int high = children.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = children[mid].name.compareTo(childName);
+				if (cmp < 0)
+					low = mid + 1;
+				else if (cmp > 0)
+					high = mid - 1;
+				else
+					return mid;
+			}
+			return -(low + 1);
+		}
+
+		boolean isEmpty() {
+			return flags == 0 && children.length == 0;
+		}
+
+		Node withFlags(int newFlags) {
+			return new Node(name, newFlags, children);
+		}
+
+		Node withChild(int index, Node child) {
+			Node[] newChildren;
+			if (index >= 0) {
+				if (child.isEmpty()) {
+					newChildren = new Node[children.length - 1];
+					System.arraycopy(children, 0, newChildren, 0, index);
+					System.arraycopy(children, index + 1, newChildren, index,
+							newChildren.length - index);
+				} else {
+					newChildren = new Node[children.length];
+					System.arraycopy(children, 0, newChildren, 0,
+							children.length);
+					newChildren[index] = child;
+				}
+			} else {
+				int insert = -(index + 1);
+				newChildren = new Node[children.length + 1];
+				System.arraycopy(children, 0, newChildren, 0, insert);
+				newChildren[insert] = child;
+				System.arraycopy(children, insert, newChildren, insert + 1,
+						children.length - insert);
+			}
+			return new Node(name, flags, newChildren);
+		}
+	}
+
+	/**
+	 * Mutable builder for a {@link PathTrie}
+	 */
+	public static class Builder {
+
+		private static class BuilderNode {
+			int flags;
+
+			Map<String, BuilderNode> children;
+
+			BuilderNode getOrCreateChild(String name) {
+				if (children == null)
+					children = new TreeMap<String, BuilderNode>();
+				BuilderNode child = children.get(name);
+				if (child == null) {
+					child = new BuilderNode();
+					children.put(name, child);
+				}
+				return child;
+			}
+
+			Node build(String name) {
+				if (children == null)
+					return new Node(name, flags, Node.NO_CHILDREN);
+				Node[] result = new Node[children.size()];
+				int i = 0;
+				for (Map.Entry<String, BuilderNode> entry : children.entrySet())
+					result[i++] = entry.getValue().build(entry.getKey());
+				return new Node(name, flags, result);
+			}
+		}
+
+		private final BuilderNode root = new BuilderNode();
+
+		private final int[] counts = new int[FLAG_COUNT];
+
+		/**
+		 * Adds the given flag for all paths
+		 *
+		 * @param paths
+		 *            repository relative paths, folders may end with /
+		 * @param flag
+		 *            one of the status constants of {@link PathTrie}
+		 * @return this builder
+		 */
+		public Builder addAll(Iterable<String> paths, int flag) {
+			for (String path : paths)
+				add(path, flag);
+			return this;
+		}
+
+		/**
+		 * Adds the given flag for a path
+		 *
+		 * @param path
+		 *            repository relative path, folders may end with /
+		 * @param flag
+		 *            one of the status constants of {@link PathTrie}
+		 * @return this builder
+		 */
+		public Builder add(String path, int flag) {
+			BuilderNode node = root;
+			int start = 0;
+			int length = stripSeparator(path);
+			while (start < length) {
+				int end = path.indexOf(SEPARATOR, start);
+				if (end < 0 || end > length)
+					end = length;
+				node = node.getOrCreateChild(path.substring(start, end));
+				start = end + 1;
+			}
+			if ((node.flags & flag) == 0) {
+				node.flags |= flag;
+				counts[bitIndex(flag)]++;
+			}
+			return this;
+		}
+
+		/**
+		 * @return the trie
+		 */
+		public PathTrie build() {
+			return new PathTrie(root.build(""), counts.clone()); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Creates a modified copy of a {@link PathTrie}. The copy shares all nodes
+	 * which are not on the path to a modified node with the original trie, so
+	 * that the cost of a modification depends on the depth of the path and
+	 * not on the size of the trie. The original trie is not modified.
+	 */
+	public static class Editor {
+
+		private Node root;
+
+		private final int[] counts;
+
+		Editor(PathTrie base) {
+			root = base.root;
+			counts = base.counts.clone();
+		}
+
+		/**
+		 * Replaces the flags selected by <code>mask</code> for a path
+		 *
+		 * @param path
+		 *            repository relative path, folders may end with /
+		 * @param flags
+		 *            the new flags
+		 * @param mask
+		 *            the flags to replace, other flags of the path are kept
+		 * @return this editor
+		 */
+		public Editor set(String path, int flags, int mask) {
+			root = set(root, path, 0, stripSeparator(path), flags & mask,
+					mask);
+			return this;
+		}
+
+		private Node set(Node node, String path, int start, int length,
+				int flags, int mask) {
+			if (start >= length) {
+				int newFlags = (node.flags & ~mask) | flags;
+				if (newFlags == node.flags)
+					return node;
+				updateCounts(node.flags, newFlags);
+				return node.withFlags(newFlags);
+			}
+			int end = path.indexOf(SEPARATOR, start);
+			if (end < 0 || end > length)
+				end = length;
+			String name = path.substring(start, end);
+			int index = node.indexOf(name);
+			Node child;
+			if (index >= 0)
+				child = node.children[index];
+			else if (flags == 0)
+				// nothing to remove
+				return node;
+			else
+				child = new Node(name, 0, Node.NO_CHILDREN);
+			Node newChild = set(child, path, end + 1, length, flags, mask);
+			if (newChild == child && index >= 0)
+				return node;
+			return node.withChild(index, newChild);
+		}
+
+		private void updateCounts(int oldFlags, int newFlags) {
+			int changed = oldFlags ^ newFlags;
+			while (changed != 0) {
+				int flag = Integer.lowestOneBit(changed);
+				if ((newFlags & flag) != 0)
+					counts[bitIndex(flag)]++;
+				else
+					counts[bitIndex(flag)]--;
+				changed &= ~flag;
+			}
+		}
+
+		/**
+		 * @return the modified trie
+		 */
+		public PathTrie build() {
+			return new PathTrie(root, counts.clone());
+		}
+	}
+
+	final Node root;
+
+	final int[] counts;
+
+	PathTrie(Node root, int[] counts) {
+		this.root = root;
+		this.counts = counts;
+	}
+
+	/**
+	 * @return an editor creating modified copies of this trie
+	 */
+	public Editor edit() {
+		return new Editor(this);
+	}
+
+	/**
+	 * @param path
+	 *            repository relative path, folders may end with /
+	 * @return the flags of the given path, 0 if the path is not contained
+	 */
+	public int getFlags(String path) {
+		Node node = find(path);
+		return node != null ? node.flags : 0;
+	}
+
+	/**
+	 * @param path
+	 *            repository relative path, folders may end with /. The empty
+	 *            path denotes the repository root.
+	 * @return the combined flags of all paths below the given path
+	 */
+	public int getDescendantFlags(String path) {
+		Node node = find(path);
+		return node != null ? node.subtreeFlags : 0;
+	}
+
+	/**
+	 * @param path
+	 *            repository relative path, folders may end with /
+	 * @return the combined flags of the given path and all its parent folders
+	 */
+	public int getAncestorOrSelfFlags(String path) {
+		Node node = root;
+		int result = node.flags;
+		int start = 0;
+		int length = stripSeparator(path);
+		while (start < length) {
+			int end = path.indexOf(SEPARATOR, start);
+			if (end < 0 || end > length)
+				end = length;
+			node = node.getChild(path.substring(start, end));
+			if (node == null)
+				return result;
+			result |= node.flags;
+			start = end + 1;
+		}
+		return result;
+	}
+
+	/**
+	 * @param flag
+	 *            one of the status constants
+	 * @return the number of paths having the given flag
+	 */
+	public int size(int flag) {
+		return counts[bitIndex(flag)];
+	}
+
+	/**
+	 * Returns a read-only view on all paths having the given flag. Paths of
+	 * {@link #UNTRACKED_FOLDER}s end with /.
+	 *
+	 * @param flag
+	 *            one of the status constants
+	 * @return set of repository relative paths
+	 */
+	public Set<String> asSet(int flag) {
+		return new FlagSet(flag);
+	}
+
+	Node find(String path) {
+		Node node = root;
+		int start = 0;
+		int length = stripSeparator(path);
+		while (start < length && node != null) {
+			int end = path.indexOf(SEPARATOR, start);
+			if (end < 0 || end > length)
+				end = length;
+			node = node.getChild(path.substring(start, end));
+			start = end + 1;
+		}
+		return node;
+	}
+
+	static int stripSeparator(String path) {
+		int length = path.length();
+		if (length > 0 && path.charAt(length - 1) == SEPARATOR)
+			length--;
+		return length;
+	}
+
+	static int bitIndex(int flag) {
+		int index = Integer.numberOfTrailingZeros(flag);
+		if (index >= FLAG_COUNT || flag != 1 << index)
+			throw new IllegalArgumentException(String.valueOf(flag));
+		return index;
+	}
+
+	private class FlagSet extends AbstractSet<String> {
+
+		private final int flag;
+
+		private final boolean folders;
+
+		FlagSet(int flag) {
+			this.flag = flag;
+			this.folders = flag == UNTRACKED_FOLDER;
+			bitIndex(flag);
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof String))
+				return false;
+			String path = (String) o;
+			boolean folderPath = path.length() > 0
+					&& path.charAt(path.length() - 1) == SEPARATOR;
+			if (folderPath != folders)
+				return false;
+			return (getFlags(path) & flag) != 0;
+		}
+
+		@Override
+		public int size() {
+			return PathTrie.this.size(flag);
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			return new FlagIterator(root, flag, folders);
+		}
+	}
+
+	/**
+	 * Depth-first iterator over the nodes having a given flag. Subtrees
+	 * without the flag are skipped.
+	 */
+	private static class FlagIterator implements Iterator<String> {
+
+		private final int flag;
+
+		private final boolean folders;
+
+		private final List<Node> nodes = new ArrayList<Node>();
+
+		private final List<Integer> positions = new ArrayList<Integer>();
+
+		private final StringBuilder path = new StringBuilder();
+
+		private final List<Integer> pathLengths = new ArrayList<Integer>();
+
+		private String next;
+
+		FlagIterator(Node root, int flag, boolean folders) {
+			this.flag = flag;
+			this.folders = folders;
+			if ((root.subtreeFlags & flag) != 0)
+				push(root);
+			advance();
+		}
+
+		private void push(Node node) {
+			nodes.add(node);
+			positions.add(Integer.valueOf(0));
+			pathLengths.add(Integer.valueOf(path.length()));
+		}
+
+		private void pop() {
+			int last = nodes.size() - 1;
+			nodes.remove(last);
+			positions.remove(last);
+			path.setLength(pathLengths.remove(last).intValue());
+		}
+
+		private void advance() {
+			next = null;
+			while (next == null && !nodes.isEmpty()) {
+				int last = nodes.size() - 1;
+				Node node = nodes.get(last);
+				int position = positions.get(last).intValue();
+				if (position >= node.children.length) {
+					pop();
+					continue;
+				}
+				positions.set(last, Integer.valueOf(position + 1));
+				Node child = node.children[position];
+				if (((child.flags | child.subtreeFlags) & flag) == 0)
+					continue;
+				int parentLength = path.length();
+				if (parentLength > 0)
+					path.append(SEPARATOR);
+				path.append(child.name);
+				if ((child.flags & flag) != 0)
+					next = folders ? path.toString() + SEPARATOR : path
+							.toString();
+				if ((child.subtreeFlags & flag) != 0) {
+					pathLengths.add(Integer.valueOf(parentLength));
+					nodes.add(child);
+					positions.add(Integer.valueOf(0));
+				} else
+					path.setLength(parentLength);
+			}
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public String next() {
+			if (next == null)
+				throw new NoSuchElementException();
+			String result = next;
+			advance();
+			return result;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
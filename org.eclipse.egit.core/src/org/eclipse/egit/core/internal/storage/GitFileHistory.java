@@ -10,13 +10,17 @@
 package org.eclipse.egit.core.internal.storage;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.IAdaptable;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.egit.core.Activator;
 import org.eclipse.egit.core.CoreText;
+import org.eclipse.egit.core.internal.graph.ChangedPathFilter;
 import org.eclipse.egit.core.project.RepositoryMapping;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.team.core.history.IFileHistoryProvider;
@@ -24,16 +28,27 @@
 import org.eclipse.team.core.history.provider.FileHistory;
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdSubclassMap;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
-import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.AndRevFilter;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 /**
  * A list of revisions for a specific resource according to some filtering
  * criterion. Though git really does not do file tracking, this corresponds to
  * listing all files with the same path.
+ * <p>
+ * Revisions are created in batches when they are asked for. Before the walk
+ * can rewrite the parents of the first commit it has to collect the complete
+ * filtered history, so this part of the walk is done while the history is
+ * created and is canceled by the monitor passed to the constructor. Later
+ * batches only take the collected commits. The object reader of the walk is
+ * released after every batch, the walk itself is dropped once the history is
+ * exhausted.
  */
 class GitFileHistory extends FileHistory implements IAdaptable {
 	private static final int SINGLE_REVISION = IFileHistoryProvider.SINGLE_REVISION;
@@ -48,12 +63,29 @@ class GitFileHistory extends FileHistory implements IAdaptable {
 
 	private final Repository db;
 
-	private final KidWalk walk;
+	/** Walk producing further revisions, <code>null</code> when exhausted */
+	private KidWalk walk;
 
-	private final IFileRevision[] revisions;
+	private KidCommitList list;
 
+	private final List<IFileRevision> revisions = new ArrayList<IFileRevision>();
+
+	private final ObjectIdSubclassMap<RevisionEntry> revisionsById = new ObjectIdSubclassMap<RevisionEntry>();
+
+	/** Monitor checked by the walk, only set while the history is created */
+	private IProgressMonitor creationMonitor;
+
+	/**
+	 * @param rsrc
+	 * @param flags
+	 * @param monitor
+	 * @throws OperationCanceledException
+	 *             if the monitor is canceled
+	 */
 	GitFileHistory(final IResource rsrc, final int flags,
 			final IProgressMonitor monitor) {
+		if (monitor != null && monitor.isCanceled())
+			throw new OperationCanceledException();
 		resource = rsrc;
 
 		final RepositoryMapping rm = RepositoryMapping.getMapping(resource);
@@ -61,7 +93,6 @@ class GitFileHistory extends FileHistory implements IAdaptable {
 			Activator.logError(NLS.bind(CoreText.GitFileHistory_gitNotAttached,
 					resource.getProject().getName()), null);
 			db = null;
-			walk = null;
 		} else {
 			db = rm.getRepository();
 			walk = new KidWalk(db);
@@ -69,20 +100,25 @@ class GitFileHistory extends FileHistory implements IAdaptable {
 			if (gitPath == null || gitPath.length() == 0) {
 				walk.setTreeFilter(TreeFilter.ANY_DIFF);
 			} else {
-				walk.setTreeFilter(AndTreeFilter.create(PathFilterGroup
-						.createFromStrings(Collections.singleton(gitPath)),
-						TreeFilter.ANY_DIFF));
+				ChangedPathFilter.setFilter(walk, db, Collections
+						.singleton(gitPath));
+			}
+			walk.setRevFilter(AndRevFilter.create(walk.getRevFilter(),
+					new CancelRevFilter()));
+			startWalk(flags);
+			creationMonitor = monitor;
+			try {
+				fill(BATCH_SIZE);
+			} catch (OperationCanceledException e) {
+				releaseWalk();
+				throw e;
+			} finally {
+				creationMonitor = null;
 			}
 		}
-
-		revisions = buildRevisions(monitor, flags);
 	}
 
-	private IFileRevision[] buildRevisions(final IProgressMonitor monitor,
-			final int flags) {
-		if (walk == null)
-			return NO_REVISIONS;
-
+	private void startWalk(final int flags) {
 		final RevCommit root;
 		try {
 			final AnyObjectId headId = db.resolve(Constants.HEAD);
@@ -90,7 +126,8 @@ private IFileRevision[] buildRevisions(final IProgressMonitor monitor,
 				Activator.logError(NLS.bind(
 						CoreText.GitFileHistory_noHeadRevisionAvailable,
 						resource.getProject().getName()), null);
-				return NO_REVISIONS;
+				releaseWalk();
+				return;
 			}
 
 			root = walk.parseCommit(headId);
@@ -100,9 +137,9 @@ private IFileRevision[] buildRevisions(final IProgressMonitor monitor,
 				// just the repository HEAD, even though it may not be
 				// the revision that most recently modified the path.
 				//
-				final CommitFileRevision single;
-				single = new CommitFileRevision(db, root, gitPath);
-				return new IFileRevision[] { single };
+				addRevision(root);
+				releaseWalk();
+				return;
 			}
 
 			walk.markStart(root);
@@ -110,31 +147,58 @@ private IFileRevision[] buildRevisions(final IProgressMonitor monitor,
 			Activator.logError(NLS.bind(
 					CoreText.GitFileHistory_invalidHeadRevision, resource
 							.getProject().getName()), e);
-			return NO_REVISIONS;
+			releaseWalk();
+			return;
 		}
 
-		final KidCommitList list = new KidCommitList();
+		list = new KidCommitList();
 		list.source(walk);
+		walk.release();
+	}
+
+	/**
+	 * Walks the history until it has at least the given number of revisions
+	 * or is exhausted
+	 *
+	 * @param count
+	 */
+	private void fill(final int count) {
 		try {
-			for (;;) {
+			while (walk != null && revisions.size() < count) {
 				final int oldsz = list.size();
-				list.fillTo(oldsz + BATCH_SIZE - 1);
+				try {
+					list.fillTo(oldsz + BATCH_SIZE - 1);
+				} catch (IOException e) {
+					Activator.logError(NLS.bind(
+							CoreText.GitFileHistory_errorParsingHistory,
+							resource.getFullPath()), e);
+					releaseWalk();
+					return;
+				}
+				for (int i = oldsz; i < list.size(); i++)
+					addRevision(list.get(i));
 				if (oldsz == list.size())
-					break;
-				if (monitor != null && monitor.isCanceled())
-					break;
+					releaseWalk();
 			}
-		} catch (IOException e) {
-			Activator.logError(NLS.bind(
-					CoreText.GitFileHistory_errorParsingHistory, resource
-							.getFullPath()), e);
-			return NO_REVISIONS;
+		} finally {
+			// the walk reacquires the reader if it is continued
+			if (walk != null)
+				walk.release();
 		}
+	}
 
-		final IFileRevision[] r = new IFileRevision[list.size()];
-		for (int i = 0; i < r.length; i++)
-			r[i] = new CommitFileRevision(db, list.get(i), gitPath);
-		return r;
+	private void addRevision(final RevCommit commit) {
+		final IFileRevision revision = new CommitFileRevision(db, commit,
+				gitPath);
+		revisions.add(revision);
+		revisionsById.add(new RevisionEntry(commit, revision));
+	}
+
+	private void releaseWalk() {
+		if (walk != null)
+			walk.release();
+		walk = null;
+		list = null;
 	}
 
 	public IFileRevision[] getContributors(final IFileRevision ifr) {
@@ -173,22 +237,60 @@ public IFileRevision getFileRevision(final String id) {
 			return new WorkspaceFileRevision(resource);
 		if (GitFileRevision.INDEX.equals(id))
 			return new IndexFileRevision(db, gitPath);
+		if (!ObjectId.isId(id))
+			return null;
 
 		// Only return a revision if it was matched by this filtered history
-		for (IFileRevision r : revisions) {
-			if (r.getContentIdentifier().equals(id))
-				return r;
+		final ObjectId objectId = ObjectId.fromString(id);
+		synchronized (this) {
+			RevisionEntry entry = revisionsById.get(objectId);
+			while (entry == null && walk != null) {
+				fill(revisions.size() + BATCH_SIZE);
+				entry = revisionsById.get(objectId);
+			}
+			return entry != null ? entry.revision : null;
 		}
-		return null;
 	}
 
-	public IFileRevision[] getFileRevisions() {
-		final IFileRevision[] r = new IFileRevision[revisions.length];
-		System.arraycopy(revisions, 0, r, 0, r.length);
-		return r;
+	public synchronized IFileRevision[] getFileRevisions() {
+		fill(Integer.MAX_VALUE);
+		return revisions.toArray(new IFileRevision[revisions.size()]);
 	}
 
 	public Object getAdapter(Class adapter) {
 		return null;
 	}
+
+	private class CancelRevFilter extends RevFilter {
+		@Override
+		public boolean include(RevWalk walker, RevCommit c) {
+			if (creationMonitor != null && creationMonitor.isCanceled())
+				throw new OperationCanceledException();
+			return true;
+		}
+
+		@Override
+		public boolean requiresCommitBody() {
+			return false;
+		}
+
+		@Override
+		public RevFilter clone() {
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return "CANCEL"; //$NON-NLS-1$
+		}
+	}
+
+	private static class RevisionEntry extends ObjectId {
+		final IFileRevision revision;
+
+		RevisionEntry(final AnyObjectId id, final IFileRevision revision) {
+			super(id);
+			this.revision = revision;
+		}
+	}
 }
@@ -18,7 +18,10 @@
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IProjectDescription;
 import org.eclipse.core.resources.IResource;
@@ -27,6 +30,7 @@
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.SubProgressMonitor;
 import org.eclipse.egit.core.Activator;
 import org.eclipse.egit.core.CoreText;
@@ -45,6 +49,12 @@ public class ProjectUtil {
 	 */
 	public static final String METADATA_FOLDER = ".metadata"; //$NON-NLS-1$
 
+	/**
+	 * Maximum number of changed paths for which resources are refreshed
+	 * individually
+	 */
+	public static final int MAX_REFRESH_PATHS = 1000;
+
 	/**
 	 * The method returns all valid open projects contained in the given Git
 	 * repository. A project is considered as valid if the .project file exists.
@@ -146,6 +156,120 @@ public static void refreshResources(IResource[] resources,
 
 	}
 
+	/**
+	 * The method refreshes the given projects after a checkout which changed
+	 * the given paths. Projects with missing .project file are deleted. If the
+	 * changed paths are unknown or too many paths changed, the projects are
+	 * refreshed completely.
+	 *
+	 * @see ProjectUtil#refreshValidProjects(IProject[], IProgressMonitor)
+	 * @param projects
+	 *            list of valid projects before workdir checkout.
+	 * @param repository
+	 * @param changedPaths
+	 *            repository relative paths of the files modified or removed by
+	 *            the checkout, may be <code>null</code> if unknown
+	 * @param monitor
+	 * @throws CoreException
+	 */
+	public static void refreshValidProjects(IProject[] projects,
+			Repository repository, Collection<String> changedPaths,
+			IProgressMonitor monitor) throws CoreException {
+		if (changedPaths == null || changedPaths.size() > MAX_REFRESH_PATHS) {
+			refreshValidProjects(projects, monitor);
+			return;
+		}
+		try {
+			monitor.beginTask(CoreText.ProjectUtil_refreshingProjects,
+					projects.length);
+			for (IProject p : projects) {
+				if (monitor.isCanceled())
+					break;
+				IPath projectLocation = p.getLocation();
+				if (projectLocation == null)
+					continue;
+				String projectFilePath = projectLocation.append(
+						IProjectDescription.DESCRIPTION_FILE_NAME).toOSString();
+				File projectFile = new File(projectFilePath);
+				if (projectFile.exists())
+					refreshRepositoryPaths(p, repository, changedPaths,
+							new SubProgressMonitor(monitor, 1));
+				else
+					p.delete(false, true, new SubProgressMonitor(monitor, 1));
+			}
+		} finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * The method refreshes the resources of a container which correspond to
+	 * the given repository relative paths. The folders between the container
+	 * and the resources are refreshed as well, so that added and removed
+	 * folders are detected. Resources are refreshed with depth zero, all other
+	 * resources of the container are left untouched.
+	 *
+	 * @param container
+	 * @param repository
+	 *            the repository containing the container
+	 * @param paths
+	 *            repository relative paths of changed files
+	 * @param monitor
+	 * @throws CoreException
+	 */
+	public static void refreshRepositoryPaths(IContainer container,
+			Repository repository, Collection<String> paths,
+			IProgressMonitor monitor) throws CoreException {
+		IPath containerLocation = container.getLocation();
+		if (containerLocation == null)
+			return;
+		String prefix = Repository.stripWorkDir(repository.getWorkTree(),
+				containerLocation.toFile());
+		// sorted, so that folders are refreshed before their members
+		SortedSet<String> toRefresh = new TreeSet<String>();
+		Set<String> folders = new HashSet<String>();
+		for (String path : paths) {
+			String relativePath;
+			if (prefix.length() == 0)
+				relativePath = path;
+			else if (path.length() > prefix.length()
+					&& path.charAt(prefix.length()) == '/'
+					&& path.startsWith(prefix))
+				relativePath = path.substring(prefix.length() + 1);
+			else
+				continue;
+			toRefresh.add(relativePath);
+			int slash = relativePath.lastIndexOf('/');
+			while (slash > 0) {
+				String folder = relativePath.substring(0, slash);
+				if (!folders.add(folder))
+					break;
+				toRefresh.add(folder);
+				slash = folder.lastIndexOf('/');
+			}
+		}
+		try {
+			monitor.beginTask(CoreText.ProjectUtil_refreshing,
+					toRefresh.size());
+			for (String relativePath : toRefresh) {
+				if (monitor.isCanceled())
+					break;
+				IPath path = new Path(relativePath);
+				IResource resource = folders.contains(relativePath) ? container
+						.getFolder(path) : container.getFile(path);
+				// if the parent does not exist after it was refreshed the
+				// resource cannot exist either
+				if (resource.getParent().exists())
+					resource.refreshLocal(IResource.DEPTH_ZERO,
+							new SubProgressMonitor(monitor, 1));
+				else
+					monitor.worked(1);
+			}
+		} finally {
+			monitor.done();
+		}
+	}
+
 	/**
 	 * The method retrieves all accessible projects related to the given
 	 * repository
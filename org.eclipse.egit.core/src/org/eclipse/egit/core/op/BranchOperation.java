@@ -14,7 +14,10 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IWorkspaceRunnable;
@@ -92,8 +95,8 @@ public void run(IProgressMonitor pm) throws CoreException {
 				if (result.getStatus() == Status.NONDELETED)
 					retryDelete(result.getUndeletedList());
 				pm.worked(1);
-				ProjectUtil.refreshValidProjects(validProjects,
-						new SubProgressMonitor(pm, 1));
+				ProjectUtil.refreshValidProjects(validProjects, repository,
+						getChangedPaths(), new SubProgressMonitor(pm, 1));
 				pm.worked(1);
 
 				pm.done();
@@ -114,6 +117,22 @@ public CheckoutResult getResult() {
 		return result;
 	}
 
+	/**
+	 * @return the paths modified or removed by the checkout, or
+	 *         <code>null</code> if they are not known
+	 */
+	private Collection<String> getChangedPaths() {
+		if (result == null || result.getStatus() != Status.OK)
+			return null;
+		List<String> modified = result.getModifiedList();
+		List<String> removed = result.getRemovedList();
+		if (modified == null || removed == null)
+			return null;
+		Set<String> changedPaths = new HashSet<String>(modified);
+		changedPaths.addAll(removed);
+		return changedPaths;
+	}
+
 	void retryDelete(List<String> pathList) {
 		// try to delete, but for a short time only
 		long startTime = System.currentTimeMillis();
@@ -12,12 +12,17 @@
  *******************************************************************************/
 package org.eclipse.egit.core.op;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceRuleFactory;
@@ -39,6 +44,7 @@
 import org.eclipse.jgit.api.CheckoutCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.lib.Repository;
 
 /**
@@ -54,6 +60,12 @@ public class DiscardChangesOperation implements IEGitOperation {
 
 	ISchedulingRule schedulingRule;
 
+	/**
+	 * repository relative paths which are changed by the checkout per
+	 * repository, <code>null</code> values if unknown
+	 */
+	private final Map<Repository, Collection<String>> changedPaths = new HashMap<Repository, Collection<String>>();
+
 	/**
 	 * Construct a {@link DiscardChangesOperation} object.
 	 *
@@ -134,8 +146,7 @@ private void discardChanges(IProgressMonitor monitor) throws CoreException {
 		}
 		monitor.worked(1);
 		try {
-			ProjectUtil.refreshResources(files, new SubProgressMonitor(monitor,
-					1));
+			refreshResources(new SubProgressMonitor(monitor, 1));
 		} catch (CoreException e) {
 			errorOccurred = true;
 			Activator.logError(CoreText.DiscardChangesOperation_refreshFailed,
@@ -150,6 +161,74 @@ private void discardChanges(IProgressMonitor monitor) throws CoreException {
 		}
 	}
 
+	/**
+	 * Refreshes the resources changed by the checkout. Files are refreshed
+	 * directly, in folders and projects only the changed paths are refreshed
+	 * if they are known.
+	 */
+	private void refreshResources(IProgressMonitor monitor)
+			throws CoreException {
+		try {
+			monitor.beginTask(CoreText.ProjectUtil_refreshing, files.length);
+			for (IResource resource : files) {
+				if (monitor.isCanceled())
+					break;
+				Collection<String> paths = changedPaths
+						.get(getRepository(resource));
+				if (resource.getType() == IResource.FILE)
+					resource.refreshLocal(IResource.DEPTH_ZERO,
+							new SubProgressMonitor(monitor, 1));
+				else if (paths == null
+						|| paths.size() > ProjectUtil.MAX_REFRESH_PATHS)
+					resource.refreshLocal(IResource.DEPTH_INFINITE,
+							new SubProgressMonitor(monitor, 1));
+				else
+					ProjectUtil.refreshRepositoryPaths((IContainer) resource,
+							getRepository(resource), paths,
+							new SubProgressMonitor(monitor, 1));
+			}
+		} finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Determines the files written by the checkout of the given paths. The
+	 * checkout writes every index entry below the paths, after checking out a
+	 * revision the index contains the entries of the revision.
+	 *
+	 * @return the repository relative paths or <code>null</code> if they
+	 *         cannot be determined
+	 */
+	private static Collection<String> getCheckedOutPaths(Repository repository,
+			Collection<String> paths) {
+		DirCache cache;
+		try {
+			cache = repository.readDirCache();
+		} catch (IOException e) {
+			return null;
+		}
+		List<String> entries = new ArrayList<String>(cache.getEntryCount());
+		for (int i = 0; i < cache.getEntryCount(); i++)
+			entries.add(cache.getEntry(i).getPathString());
+		Set<String> result = new HashSet<String>();
+		addSelectedPaths(entries, paths, result);
+		return result;
+	}
+
+	private static void addSelectedPaths(Collection<String> candidates,
+			Collection<String> selectedPaths, Collection<String> result) {
+		for (String candidate : candidates)
+			for (String selected : selectedPaths)
+				if (selected.length() == 0
+						|| candidate.equals(selected)
+						|| (candidate.startsWith(selected) && candidate
+								.charAt(selected.length()) == '/')) {
+					result.add(candidate);
+					break;
+				}
+	}
+
 	private static Repository getRepository(IResource resource) {
 		IProject project = resource.getProject();
 		RepositoryMapping repositoryMapping = RepositoryMapping
@@ -171,6 +250,7 @@ private void discardChanges() throws GitAPIException {
 			for (String path : paths)
 				checkoutCommand.addPath(path);
 			checkoutCommand.call();
+			changedPaths.put(repository, getCheckedOutPaths(repository, paths));
 		}
 	}
 
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.eclipse.egit.core.internal.util.ProjectUtil;
+import org.eclipse.egit.ui.Activator.ResourceRefreshJob;
+import org.eclipse.egit.ui.Activator.ResourceRefreshJob.IndexState;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand.ResetType;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResourceRefreshJobTest extends LocalDiskRepositoryTestCase {
+
+	private static final Collection<String> NONE_ADDED = Collections
+			.emptySet();
+
+	private FileRepository repository;
+
+	private Git git;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		repository = createWorkRepository();
+		git = new Git(repository);
+		// old files are not reported as written by a later change
+		long old = System.currentTimeMillis() - 10000;
+		writeFile("a", "a").setLastModified(old);
+		writeFile("b", "b").setLastModified(old);
+		git.add().addFilepattern("a").addFilepattern("b").call();
+		git.commit().setMessage("initial").call();
+	}
+
+	@Test
+	public void testCheckout() throws Exception {
+		git.checkout().setCreateBranch(true).setName("side").call();
+		writeFile("b", "changed");
+		writeFile("c", "c");
+		git.add().addFilepattern("b").addFilepattern("c").call();
+		git.commit().setMessage("side").call();
+
+		IndexState state = ResourceRefreshJob.readIndexState(repository);
+		git.checkout().setName("master").call();
+		assertEquals(paths("b", "c"), new HashSet<String>(ResourceRefreshJob
+				.getChangedPaths(repository, state, NONE_ADDED)));
+
+		state = ResourceRefreshJob.readIndexState(repository);
+		git.checkout().setName("side").call();
+		assertEquals(paths("b", "c"), new HashSet<String>(ResourceRefreshJob
+				.getChangedPaths(repository, state, NONE_ADDED)));
+	}
+
+	@Test
+	public void testResetRemovesAddedFile() throws Exception {
+		writeFile("c", "c");
+		git.add().addFilepattern("c").call();
+
+		IndexState state = ResourceRefreshJob.readIndexState(repository);
+		git.reset().setMode(ResetType.HARD).setRef("HEAD").call();
+		assertEquals(paths("c"), new HashSet<String>(ResourceRefreshJob
+				.getChangedPaths(repository, state, paths("c"))));
+	}
+
+	@Test
+	public void testConflictingPath() throws Exception {
+		IndexState state = ResourceRefreshJob.readIndexState(repository);
+		DirCache index = repository.lockDirCache();
+		DirCacheBuilder builder = index.builder();
+		builder.add(entry("a", DirCacheEntry.STAGE_1));
+		builder.add(entry("a", DirCacheEntry.STAGE_2));
+		builder.add(entry("d", DirCacheEntry.STAGE_0));
+		builder.commit();
+		assertEquals(paths("a", "b"), new HashSet<String>(ResourceRefreshJob
+				.getChangedPaths(repository, state, NONE_ADDED)));
+	}
+
+	@Test
+	public void testTooManyChangedPaths() throws Exception {
+		IndexState state = ResourceRefreshJob.readIndexState(repository);
+		List<String> added = new ArrayList<String>();
+		for (int i = 0; i <= ProjectUtil.MAX_REFRESH_PATHS; i++)
+			added.add("file" + i);
+		assertNull(ResourceRefreshJob.getChangedPaths(repository, state,
+				added));
+	}
+
+	@Test
+	public void testSeed() throws Exception {
+		ResourceRefreshJob job = new ResourceRefreshJob();
+		assertNull(job.getChangedPaths(repository, NONE_ADDED));
+
+		job.seed(repository);
+		writeFile("c", "c");
+		git.add().addFilepattern("c").call();
+		assertEquals(Arrays.asList("c"), job.getChangedPaths(repository,
+				NONE_ADDED));
+
+		// seeding again keeps the state seen last
+		job.seed(repository);
+		writeFile("d", "d");
+		git.add().addFilepattern("d").call();
+		assertTrue(job.getChangedPaths(repository, NONE_ADDED).contains("d"));
+	}
+
+	@Test
+	public void testUnknownAddedPaths() throws Exception {
+		ResourceRefreshJob job = new ResourceRefreshJob();
+		job.seed(repository);
+		git.reset().setMode(ResetType.HARD).setRef("HEAD").call();
+		assertNull(job.getChangedPaths(repository, null));
+	}
+
+	private File writeFile(String path, String content) throws Exception {
+		File file = new File(repository.getWorkTree(), path);
+		write(file, content);
+		return file;
+	}
+
+	private static DirCacheEntry entry(String path, int stage) {
+		DirCacheEntry entry = new DirCacheEntry(path, stage);
+		entry.setFileMode(FileMode.REGULAR_FILE);
+		entry.setObjectId(ObjectId
+				.fromString("1111111111111111111111111111111111111111"));
+		entry.setLastModified(1);
+		return entry;
+	}
+
+	private static HashSet<String> paths(String... paths) {
+		return new HashSet<String>(Arrays.asList(paths));
+	}
+}
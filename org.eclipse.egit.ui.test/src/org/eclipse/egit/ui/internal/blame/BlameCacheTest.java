@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.ui.internal.blame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.RandomAccessFile;
+
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BlameCacheTest extends LocalDiskRepositoryTestCase {
+
+	private static final ObjectId A = ObjectId
+			.fromString("1111111111111111111111111111111111111111");
+
+	private static final ObjectId B = ObjectId
+			.fromString("2222222222222222222222222222222222222222");
+
+	private static final ObjectId BLOB = ObjectId
+			.fromString("3333333333333333333333333333333333333333");
+
+	private FileRepository db;
+
+	private File folder;
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		db = createBareRepository();
+		folder = new File(db.getDirectory(), "blame");
+	}
+
+	@Test
+	public void testMapInsertedLines() throws Exception {
+		BlameCache.Lines mapped = lines().map(text("a\nb\nc\n"),
+				text("a\nx\nb\nc\nd\n"), RawTextComparator.DEFAULT);
+		assertCommits(mapped, A, null, B, A, null);
+	}
+
+	@Test
+	public void testMapRemovedLines() throws Exception {
+		BlameCache.Lines mapped = lines().map(text("a\nb\nc\n"),
+				text("a\nc\n"), RawTextComparator.DEFAULT);
+		assertCommits(mapped, A, A);
+	}
+
+	@Test
+	public void testMapReplacedLines() throws Exception {
+		BlameCache.Lines mapped = lines().map(text("a\nb\nc\n"),
+				text("a\ny\nz\nc\n"), RawTextComparator.DEFAULT);
+		assertCommits(mapped, A, null, null, A);
+	}
+
+	@Test
+	public void testMapIgnoresWhitespace() throws Exception {
+		BlameCache.Lines mapped = lines().map(text("a\nb\nc\n"),
+				text("a\n  b\nc\n"), RawTextComparator.WS_IGNORE_ALL);
+		assertCommits(mapped, A, B, A);
+	}
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		new BlameCache(folder).put(db, "file", A, BLOB, false, lines());
+
+		BlameCache cache = new BlameCache(folder);
+		BlameCache.Lines loaded = cache.get(db, "file", A, BLOB, false);
+		assertNotNull(loaded);
+		assertCommits(loaded, A, B, A);
+		assertNull(cache.get(db, "file", A, BLOB, true));
+		assertNull(cache.get(db, "other", A, BLOB, false));
+		assertNull(cache.get(db, "file", B, BLOB, false));
+	}
+
+	@Test
+	public void testFileFormat() throws Exception {
+		new BlameCache(folder).put(db, "file", A, BLOB, false, lines());
+		File file = getCacheFile();
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			assertEquals(0x45424c43, in.readInt());
+			assertEquals(1, in.readInt());
+			// magic, version, length and the trailing checksum
+			assertEquals(file.length() - 20, in.readInt());
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void testCorruptFile() throws Exception {
+		new BlameCache(folder).put(db, "file", A, BLOB, false, lines());
+		RandomAccessFile file = new RandomAccessFile(getCacheFile(), "rw");
+		try {
+			// a byte of the payload, the checksum takes the last 8 bytes
+			long position = file.length() - 9;
+			file.seek(position);
+			int b = file.read();
+			file.seek(position);
+			file.write(b ^ 0xff);
+		} finally {
+			file.close();
+		}
+		assertNull(new BlameCache(folder).get(db, "file", A, BLOB, false));
+	}
+
+	@Test
+	public void testUnknownVersion() throws Exception {
+		new BlameCache(folder).put(db, "file", A, BLOB, false, lines());
+		RandomAccessFile file = new RandomAccessFile(getCacheFile(), "rw");
+		try {
+			file.seek(4);
+			file.writeInt(2);
+		} finally {
+			file.close();
+		}
+		assertNull(new BlameCache(folder).get(db, "file", A, BLOB, false));
+	}
+
+	private File getCacheFile() {
+		File[] files = folder.listFiles();
+		assertEquals(1, files.length);
+		return files[0];
+	}
+
+	private static BlameCache.Lines lines() {
+		return new BlameCache.Lines(new ObjectId[] { A, B },
+				new int[] { 0, 1, 0 });
+	}
+
+	private static RawText text(String content) {
+		return new RawText(Constants.encode(content));
+	}
+
+	private static void assertCommits(BlameCache.Lines lines,
+			ObjectId... commits) {
+		assertEquals(commits.length, lines.getLineCount());
+		for (int i = 0; i < commits.length; i++)
+			assertEquals(commits[i], lines.getCommit(i));
+	}
+}
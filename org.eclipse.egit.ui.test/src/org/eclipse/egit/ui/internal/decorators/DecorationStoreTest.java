@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.ui.internal.decorators;
+
+import static org.eclipse.core.resources.IResource.FILE;
+import static org.eclipse.core.resources.IResource.FOLDER;
+import static org.eclipse.core.resources.IResource.PROJECT;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DecorationStoreTest {
+
+	private DecorationStore store;
+
+	private Repository repository;
+
+	private Repository otherRepository;
+
+	private IDecoratableResource decoratableResource;
+
+	@Before
+	public void setUp() {
+		store = new DecorationStore();
+		repository = mock(Repository.class);
+		otherRepository = mock(Repository.class);
+		decoratableResource = mock(IDecoratableResource.class);
+	}
+
+	@Test
+	public void storedDecorationIsUpToDate() {
+		assertNull(store.get(repository, "a/b.txt", FILE));
+		store.put(repository, "a/b.txt", FILE, decoratableResource,
+				store.getModificationCount(repository));
+		DecorationStore.Decoration decoration = store.get(repository,
+				"a/b.txt", FILE);
+		assertSame(decoratableResource, decoration.decoratableResource);
+		assertTrue(decoration.upToDate);
+		assertNull(store.get(otherRepository, "a/b.txt", FILE));
+	}
+
+	@Test
+	public void projectAndFolderAreStoredSeparately() {
+		IDecoratableResource project = mock(IDecoratableResource.class);
+		store.put(repository, "a", FOLDER, decoratableResource,
+				store.getModificationCount(repository));
+		store.put(repository, "a", PROJECT, project,
+				store.getModificationCount(repository));
+
+		assertSame(decoratableResource,
+				store.get(repository, "a", FOLDER).decoratableResource);
+		assertSame(project,
+				store.get(repository, "a", PROJECT).decoratableResource);
+
+		store.invalidate(repository, "a/b.txt", false);
+		assertFalse(store.get(repository, "a", FOLDER).upToDate);
+		assertFalse(store.get(repository, "a", PROJECT).upToDate);
+
+		store.remove(repository, "a", true);
+		assertNull(store.get(repository, "a", FOLDER));
+		assertNull(store.get(repository, "a", PROJECT));
+	}
+
+	@Test
+	public void pathInvalidationOutdatesAncestorsOnly() {
+		long count = store.getModificationCount(repository);
+		long otherCount = store.getModificationCount(otherRepository);
+		store.put(repository, "", PROJECT, decoratableResource, count);
+		store.put(repository, "a", FOLDER, decoratableResource, count);
+		store.put(repository, "a/b.txt", FILE, decoratableResource, count);
+		store.put(repository, "a/c.txt", FILE, decoratableResource, count);
+		store.put(otherRepository, "a", FOLDER, decoratableResource,
+				otherCount);
+
+		store.invalidate(repository, "a/b.txt", false);
+
+		assertFalse(store.get(repository, "", PROJECT).upToDate);
+		assertFalse(store.get(repository, "a", FOLDER).upToDate);
+		assertFalse(store.get(repository, "a/b.txt", FILE).upToDate);
+		assertTrue(store.get(repository, "a/c.txt", FILE).upToDate);
+		assertTrue(store.get(otherRepository, "a", FOLDER).upToDate);
+		// outdated decorations are still available
+		assertSame(decoratableResource,
+				store.get(repository, "a", FOLDER).decoratableResource);
+	}
+
+	@Test
+	public void containerInvalidationOutdatesDescendants() {
+		long count = store.getModificationCount(repository);
+		store.put(repository, "a/b/c.txt", FILE, decoratableResource, count);
+		store.put(repository, "a/bc.txt", FILE, decoratableResource, count);
+
+		store.invalidate(repository, "a/b", true);
+
+		assertFalse(store.get(repository, "a/b/c.txt", FILE).upToDate);
+		assertTrue(store.get(repository, "a/bc.txt", FILE).upToDate);
+	}
+
+	@Test
+	public void repositoryInvalidation() {
+		store.put(repository, "a", FOLDER, decoratableResource,
+				store.getModificationCount(repository));
+		store.put(otherRepository, "a", FOLDER, decoratableResource,
+				store.getModificationCount(otherRepository));
+
+		store.invalidate(repository);
+
+		assertFalse(store.get(repository, "a", FOLDER).upToDate);
+		assertTrue(store.get(otherRepository, "a", FOLDER).upToDate);
+
+		store.put(repository, "a", FOLDER, decoratableResource,
+				store.getModificationCount(repository));
+		assertTrue(store.get(repository, "a", FOLDER).upToDate);
+
+		store.invalidateAll();
+		assertFalse(store.get(repository, "a", FOLDER).upToDate);
+		assertFalse(store.get(otherRepository, "a", FOLDER).upToDate);
+	}
+
+	@Test
+	public void leastRecentlyUsedDecorationsAreDropped() {
+		store = new DecorationStore(2);
+		long count = store.getModificationCount(repository);
+		store.put(repository, "a", FILE, decoratableResource, count);
+		store.put(repository, "b", FILE, decoratableResource, count);
+		store.put(otherRepository, "c", FILE, decoratableResource,
+				store.getModificationCount(otherRepository));
+		// uses a, so b is the least recently used decoration
+		assertNotNull(store.get(repository, "a", FILE));
+		store.put(repository, "c", FILE, decoratableResource, count);
+
+		assertNotNull(store.get(repository, "a", FILE));
+		assertNull(store.get(repository, "b", FILE));
+		assertNotNull(store.get(repository, "c", FILE));
+		assertNotNull(store.get(otherRepository, "c", FILE));
+	}
+
+	@Test
+	public void removalDropsDescendantsAndOutdatesAncestors() {
+		long count = store.getModificationCount(repository);
+		store.put(repository, "a", FOLDER, decoratableResource, count);
+		store.put(repository, "a/b", FOLDER, decoratableResource, count);
+		store.put(repository, "a/b/c.txt", FILE, decoratableResource, count);
+		store.put(repository, "a/bc.txt", FILE, decoratableResource, count);
+
+		store.remove(repository, "a/b", true);
+
+		assertNull(store.get(repository, "a/b", FOLDER));
+		assertNull(store.get(repository, "a/b/c.txt", FILE));
+		assertFalse(store.get(repository, "a", FOLDER).upToDate);
+		assertTrue(store.get(repository, "a/bc.txt", FILE).upToDate);
+
+		store.remove(repository, "a/bc.txt", false);
+		assertNull(store.get(repository, "a/bc.txt", FILE));
+		assertNotNull(store.get(repository, "a", FOLDER));
+	}
+
+	@Test
+	public void decorationComputedDuringInvalidationIsOutdated() {
+		long count = store.getModificationCount(repository);
+		store.invalidate(repository, "a", false);
+		store.put(repository, "a", FILE, decoratableResource, count);
+		assertFalse(store.get(repository, "a", FILE).upToDate);
+	}
+
+	@Test
+	public void invalidationOfOtherRepositoryKeepsDecorationUpToDate() {
+		long count = store.getModificationCount(repository);
+		store.getModificationCount(otherRepository);
+		store.invalidate(otherRepository, "a", false);
+		store.invalidate(otherRepository);
+		store.put(repository, "a", FILE, decoratableResource, count);
+		assertTrue(store.get(repository, "a", FILE).upToDate);
+	}
+}
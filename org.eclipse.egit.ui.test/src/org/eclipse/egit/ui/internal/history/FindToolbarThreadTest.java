@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.ui.internal.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jgit.junit.LocalDiskRepositoryTestCase;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FindToolbarThreadTest extends LocalDiskRepositoryTestCase {
+
+	private SWTWalk walk;
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		walk = new SWTWalk(createBareRepository());
+	}
+
+	@Test
+	public void testMatchesInTableOrder() throws Exception {
+		int count = 2 * FindToolbarThread.CHUNK_SIZE + 100;
+		SWTCommit[] commits = new SWTCommit[count];
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < count; i++) {
+			boolean match = i % 1000 == 999;
+			String message = (match ? "Match " : "Commit ") + i;
+			commits[i] = commit("A U Thor", message);
+			if (match)
+				expected.add(Integer.valueOf(i));
+		}
+		FindToolbarThread finder = createFinder("match", true, commits);
+		FindResults results = new FindResults();
+		results.setHighlightFlag(walk.newFlag("highlight"));
+		assertFalse(finder.find(results));
+		assertMatches(results, expected);
+	}
+
+	@Test
+	public void testCaseSensitiveSearch() throws Exception {
+		SWTCommit[] commits = new SWTCommit[] {
+				commit("A U Thor", "Fix the parser"),
+				commit("A U Thor", "fix the parser"),
+				commit("A U Thor", "FIX THE PARSER"),
+				commit("Fix Person", "Update") };
+		FindToolbarThread finder = createFinder("Fix", false, commits);
+		finder.findInAuthor = true;
+		FindResults results = new FindResults();
+		results.setHighlightFlag(walk.newFlag("highlight"));
+		finder.find(results);
+		assertMatches(results, Arrays.asList(Integer.valueOf(0),
+				Integer.valueOf(3)));
+
+		finder = createFinder("Fix", true, commits);
+		finder.findInAuthor = true;
+		results = new FindResults();
+		results.setHighlightFlag(walk.newFlag("highlight2"));
+		finder.find(results);
+		assertEquals(4, results.size());
+	}
+
+	private FindToolbarThread createFinder(String pattern, boolean ignoreCase,
+			SWTCommit[] commits) {
+		FindToolbarThread finder = new FindToolbarThread();
+		finder.pattern = pattern;
+		finder.ignoreCase = ignoreCase;
+		finder.fileRevisions = commits;
+		finder.fileRevisionCount = commits.length;
+		finder.index = new FindIndex();
+		finder.findInComments = true;
+		return finder;
+	}
+
+	private SWTCommit commit(String author, String message) throws Exception {
+		String ident = author + " <author@example.com> 1300000000 +0000\n";
+		String raw = "tree 4b825dc642cb6eb9a060e54bf8d69288fbee4904\n"
+				+ "author " + ident + "committer " + ident + "\n" + message
+				+ "\n";
+		RevCommit commit = RevCommit.parse(walk, Constants.encode(raw));
+		return (SWTCommit) commit;
+	}
+
+	/**
+	 * The match numbers are assigned in the order the matches were added
+	 */
+	private static void assertMatches(FindResults results,
+			List<Integer> expected) {
+		assertEquals(expected.size(), results.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertEquals(i + 1, results.getMatchNumberFor(expected.get(i)
+					.intValue()));
+	}
+}
@@ -12,20 +12,32 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Set;
 
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.egit.core.Activator;
+import org.eclipse.egit.core.JobFamilies;
+import org.eclipse.egit.core.internal.graph.CommitGraph;
+import org.eclipse.egit.core.internal.graph.CommitGraphCache;
 import org.eclipse.egit.ui.common.LocalRepositoryTestCase;
 import org.eclipse.egit.ui.internal.commit.RepositoryCommit;
 import org.eclipse.egit.ui.internal.search.CommitSearchQuery;
 import org.eclipse.egit.ui.internal.search.CommitSearchResult;
 import org.eclipse.egit.ui.internal.search.CommitSearchSettings;
+import org.eclipse.jgit.lib.CommitBuilder;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
@@ -185,4 +197,154 @@ public void testMatchMessage() {
 		assertTrue(status.isOK());
 		validateResult(commit, repository, query.getSearchResult());
 	}
+
+	@Test
+	public void testMaxResults() {
+		CommitSearchSettings settings = createSettings();
+		settings.setMatchMessage(true);
+		settings.setRegExSearch(true);
+		settings.setTextPattern(".*");
+		CommitSearchQuery query = new CommitSearchQuery(settings);
+		IStatus status = query.run(new NullProgressMonitor());
+		assertNotNull(status);
+		assertTrue(status.isOK());
+		assertTrue(((CommitSearchResult) query.getSearchResult())
+				.getMatchCount() > 1);
+		settings.setMaxResults(1);
+		status = query.run(new NullProgressMonitor());
+		assertNotNull(status);
+		assertTrue(status.isOK());
+		assertEquals(1, ((CommitSearchResult) query.getSearchResult())
+				.getMatchCount());
+	}
+
+	@Test
+	public void testDateRange() {
+		CommitSearchSettings settings = createSettings();
+		settings.setMatchCommit(true);
+		settings.setTextPattern(commit.name());
+		long commitTime = commit.getCommitTime() * 1000L;
+		CommitSearchQuery query = new CommitSearchQuery(settings);
+		settings.setCommittedAfter(commitTime);
+		settings.setCommittedBefore(commitTime);
+		IStatus status = query.run(new NullProgressMonitor());
+		assertNotNull(status);
+		assertTrue(status.isOK());
+		validateResult(commit, repository, query.getSearchResult());
+		settings.setCommittedAfter(commitTime + 1000);
+		settings.setCommittedBefore(0);
+		status = query.run(new NullProgressMonitor());
+		assertNotNull(status);
+		assertTrue(status.isOK());
+		validateEmpty(query.getSearchResult());
+		settings.setCommittedAfter(0);
+		settings.setCommittedBefore(commitTime - 1000);
+		status = query.run(new NullProgressMonitor());
+		assertNotNull(status);
+		assertTrue(status.isOK());
+		validateEmpty(query.getSearchResult());
+	}
+
+	@Test
+	public void testIndexedSearchEqualsWalk() throws Exception {
+		CommitGraphCache.scheduleUpdate(repository, 0);
+		Job.getJobManager().join(JobFamilies.COMMIT_GRAPH_UPDATE, null);
+		ObjectId newer = createUnindexedCommit();
+		try {
+			CommitGraph graph = CommitGraphCache.getCommitGraph(repository);
+			assertNotNull(graph);
+			assertNotNull(CommitGraphCache.getCommitTextIndex(repository));
+			assertTrue(graph.find(commit) >= 0);
+			assertTrue(graph.find(newer) < 0);
+
+			// regular expressions are always searched by a full walk
+			CommitSearchSettings settings = createSettings();
+			settings.setAllBranches(true);
+			settings.setCaseSensitive(false);
+			settings.setMatchMessage(true);
+			assertIndexedSearchEqualsWalk(settings, "commit", newer);
+			settings.setMatchAuthor(true);
+			assertIndexedSearchEqualsWalk(settings, commit.getAuthorIdent()
+					.getName(), commit);
+
+			settings = createSettings();
+			settings.setAllBranches(true);
+			settings.setMatchCommit(true);
+			assertIndexedSearchEqualsWalk(settings, commit.name(), commit);
+			assertIndexedSearchEqualsWalk(settings, newer.name(), newer);
+
+			settings = createSettings();
+			settings.setAllBranches(true);
+			settings.setMatchTree(true);
+			assertIndexedSearchEqualsWalk(settings, commit.getTree().name(),
+					commit);
+
+			settings = createSettings();
+			settings.setAllBranches(true);
+			settings.setMatchParents(true);
+			assertIndexedSearchEqualsWalk(settings, commit.getParent(0)
+					.name(), commit);
+			assertIndexedSearchEqualsWalk(settings, commit.name(), newer);
+
+			// no update replaced the index during the searches
+			assertSame(graph, CommitGraphCache.getCommitGraph(repository));
+		} finally {
+			RefUpdate delete = repository.updateRef("refs/heads/unindexed");
+			delete.setForceUpdate(true);
+			delete.delete();
+		}
+	}
+
+	/**
+	 * Creates a commit on top of HEAD on a new branch, and cancels the update
+	 * of the commit graph the new branch schedules
+	 */
+	private ObjectId createUnindexedCommit() throws Exception {
+		ObjectId id;
+		ObjectInserter inserter = repository.newObjectInserter();
+		try {
+			CommitBuilder builder = new CommitBuilder();
+			// a tree no other commit uses
+			builder.setTreeId(inserter.insert(Constants.OBJ_TREE, new byte[0]));
+			builder.setParentId(commit);
+			PersonIdent ident = new PersonIdent("Unindexed Author",
+					"unindexed@example.com");
+			builder.setAuthor(ident);
+			builder.setCommitter(ident);
+			builder.setMessage("Commit missing in the index\n");
+			id = inserter.insert(builder);
+			inserter.flush();
+		} finally {
+			inserter.release();
+		}
+		RefUpdate update = repository.updateRef("refs/heads/unindexed");
+		update.setNewObjectId(id);
+		update.update();
+		// fires the event scheduling the update
+		repository.getAllRefs();
+		Job.getJobManager().cancel(JobFamilies.COMMIT_GRAPH_UPDATE);
+		return id;
+	}
+
+	private void assertIndexedSearchEqualsWalk(CommitSearchSettings settings,
+			String pattern, ObjectId expected) {
+		Set<ObjectId> walked = search(settings, pattern, true);
+		assertTrue(walked.contains(expected));
+		assertEquals(walked, search(settings, pattern, false));
+	}
+
+	private Set<ObjectId> search(CommitSearchSettings settings,
+			String pattern, boolean regex) {
+		settings.setTextPattern(pattern);
+		settings.setRegExSearch(regex);
+		CommitSearchQuery query = new CommitSearchQuery(settings);
+		IStatus status = query.run(new NullProgressMonitor());
+		assertNotNull(status);
+		assertTrue(status.isOK());
+		Set<ObjectId> ids = new HashSet<ObjectId>();
+		for (Object element : ((CommitSearchResult) query.getSearchResult())
+				.getElements())
+			ids.add(((RepositoryCommit) element).getRevCommit().copy());
+		return ids;
+	}
 }
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.ui.search;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipse.egit.ui.internal.search.CommitSearchSettings;
+import org.eclipse.jface.dialogs.DialogSettings;
+import org.eclipse.jface.dialogs.IDialogSettings;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link CommitSearchSettings}
+ */
+public class CommitSearchSettingsTest {
+
+	@Test
+	public void testStoreLimits() {
+		CommitSearchSettings settings = new CommitSearchSettings();
+		settings.setCommittedAfter(1300000000000L);
+		settings.setCommittedBefore(1310000000000L);
+		settings.setMaxResults(50);
+		IDialogSettings dialogSettings = new DialogSettings("test");
+		settings.store(dialogSettings);
+
+		CommitSearchSettings loaded = CommitSearchSettings
+				.create(dialogSettings);
+		assertEquals(1300000000000L, loaded.getCommittedAfter());
+		assertEquals(1310000000000L, loaded.getCommittedBefore());
+		assertEquals(50, loaded.getMaxResults());
+	}
+
+	@Test
+	public void testNoStoredLimits() {
+		IDialogSettings dialogSettings = new DialogSettings("test");
+		dialogSettings.addNewSection("searchSection");
+
+		CommitSearchSettings loaded = CommitSearchSettings
+				.create(dialogSettings);
+		assertEquals(0, loaded.getCommittedAfter());
+		assertEquals(0, loaded.getCommittedBefore());
+		assertEquals(0, loaded.getMaxResults());
+	}
+}
@@ -20,6 +20,7 @@
 @RunWith(Suite.class)
 @SuiteClasses({ CommitSearchDialogTest.class, //
 		CommitSearchQueryTest.class, //
+		CommitSearchSettingsTest.class, //
 })
 public class SearchTests {
 	// Intentionally left blank
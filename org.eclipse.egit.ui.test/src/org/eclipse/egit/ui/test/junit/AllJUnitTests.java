@@ -8,12 +8,15 @@
  *******************************************************************************/
 package org.eclipse.egit.ui.test.junit;
 
+import org.eclipse.egit.ui.internal.blame.BlameCacheTest;
+import org.eclipse.egit.ui.internal.decorators.DecorationStoreTest;
 import org.eclipse.egit.ui.internal.synchronize.mapping.GitChangeSetSorterTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
-@RunWith(Suite.class) @SuiteClasses({ GitChangeSetSorterTest.class })
+@RunWith(Suite.class) @SuiteClasses({ GitChangeSetSorterTest.class,
+		DecorationStoreTest.class, BlameCacheTest.class })
 public class AllJUnitTests {
 	// Empty class
 }
@@ -8,6 +8,8 @@
  *******************************************************************************/
 package org.eclipse.egit.ui.test.nonswt;
 
+import org.eclipse.egit.ui.ResourceRefreshJobTest;
+import org.eclipse.egit.ui.internal.history.FindToolbarThreadTest;
 import org.eclipse.egit.ui.internal.synchronize.model.AllGitModelTests;
 import org.eclipse.egit.ui.test.nonswt.decoration.DecoratableResourceHelperTest;
 import org.junit.runner.RunWith;
@@ -16,7 +18,8 @@
 
 @RunWith(Suite.class)
 @SuiteClasses({ DecoratableResourceHelperTest.class,
-		AllGitModelTests.class })
+		AllGitModelTests.class, ResourceRefreshJobTest.class,
+		FindToolbarThreadTest.class })
 public class AllNonSWTTests {
 	// Empty class
 }
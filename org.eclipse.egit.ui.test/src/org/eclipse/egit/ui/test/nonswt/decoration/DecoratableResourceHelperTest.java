@@ -278,6 +278,42 @@ public void testDecorationModifiedFile() throws Exception {
 			assertTrue(expectedDRs[i].equals(actualDRs[i]));
 	}
 
+	@Test
+	public void testDecorationBatchOfFilesInFolder() throws Exception {
+		// Create a folder with one committed and one new file
+		IFolder folder = project.getFolder(TEST_FOLDER);
+		folder.create(true, true, null);
+		File committed = new File(folder.getLocation().toFile(), TEST_FILE);
+		write(committed, "Something");
+		project.refreshLocal(IResource.DEPTH_INFINITE, null);
+		git.add().addFilepattern(".").call();
+		git.commit().setMessage("First commit").call();
+		write(committed, "SomethingElse");
+		write(new File(folder.getLocation().toFile(), "NewFile"),
+				"Something");
+		project.refreshLocal(IResource.DEPTH_INFINITE, null);
+		IResource file = folder.findMember(TEST_FILE);
+		IResource newFile = folder.findMember("NewFile");
+
+		IDecoratableResource[] expectedDRs = new IDecoratableResource[] {
+				new TestDecoratableResource(project, true, false, true, false,
+						Staged.NOT_STAGED),
+				new TestDecoratableResource(folder, true, false, true, false,
+						Staged.NOT_STAGED),
+				new TestDecoratableResource(file, true, false, true, false,
+						Staged.NOT_STAGED),
+				new TestDecoratableResource(newFile, false, false, false,
+						false, Staged.NOT_STAGED) };
+
+		waitForIndexDiffUpdate(true);
+		IDecoratableResource[] actualDRs = DecoratableResourceHelper
+				.createDecoratableResources(new IResource[] { project, folder,
+						file, newFile });
+
+		for (int i = 0; i < expectedDRs.length; i++)
+			assertTrue(expectedDRs[i].equals(actualDRs[i]));
+	}
+
 	@Test
 	public void testDecorationConflictingFile() throws Exception {
 		// Create new file
@@ -14,13 +14,16 @@
 import java.net.Authenticator;
 import java.net.ProxySelector;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Dictionary;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.core.net.proxy.IProxyService;
@@ -35,18 +38,31 @@
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.egit.core.RepositoryUtil;
+import org.eclipse.egit.core.internal.RepositoryMetadataWatcher;
+import org.eclipse.egit.core.internal.indexdiff.IndexDiffCacheEntry;
+import org.eclipse.egit.core.internal.indexdiff.IndexDiffData;
+import org.eclipse.egit.core.internal.util.ProjectUtil;
 import org.eclipse.egit.core.project.RepositoryMapping;
 import org.eclipse.egit.ui.internal.credentials.EGitCredentialsProvider;
+import org.eclipse.egit.ui.internal.history.FindToolbarThread;
 import org.eclipse.egit.ui.internal.trace.GitTraceLocation;
 import org.eclipse.jface.util.IPropertyChangeListener;
 import org.eclipse.jface.util.PropertyChangeEvent;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
 import org.eclipse.jgit.events.IndexChangedEvent;
 import org.eclipse.jgit.events.IndexChangedListener;
 import org.eclipse.jgit.events.ListenerHandle;
 import org.eclipse.jgit.events.RepositoryEvent;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.SshSessionFactory;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jsch.core.IJSchService;
 import org.eclipse.osgi.service.debug.DebugOptions;
 import org.eclipse.osgi.service.debug.DebugOptionsListener;
@@ -266,6 +282,20 @@ private void setupRepoIndexRefresh() {
 		refreshJob = new ResourceRefreshJob();
 		refreshHandle = Repository.getGlobalListenerList()
 				.addIndexChangedListener(refreshJob);
+		Job seedJob = new Job(UIText.Activator_refreshJobName) {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				for (Repository repository : org.eclipse.egit.core.Activator
+						.getDefault().getRepositoryCache().getAllRepositories()) {
+					if (monitor.isCanceled())
+						return Status.CANCEL_STATUS;
+					refreshJob.seed(repository);
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		seedJob.setSystem(true);
+		seedJob.schedule();
 	}
 
 	/**
@@ -304,6 +334,16 @@ public static synchronized void broadcastPropertyChange(PropertyChangeEvent even
 	/**
 	 * Refresh projects in repositories that we suspect may have resource
 	 * changes.
+	 * <p>
+	 * Only the modification time of the index and the HEAD commit are
+	 * remembered per repository, starting when the job is registered as
+	 * listener. When the index changes, the index entries of the files written
+	 * since then carry a newer modification time. Files deleted from the work
+	 * tree are the files of the previous HEAD and the previously added files
+	 * which are no longer in the index. The added files are taken from the
+	 * index diff cache when the index change is reported, before the cache is
+	 * updated. A project is refreshed completely if the previous state is
+	 * unknown or too many paths changed.
 	 */
 	static class ResourceRefreshJob extends Job implements IndexChangedListener {
 
@@ -311,38 +351,211 @@ static class ResourceRefreshJob extends Job implements IndexChangedListener {
 			super(UIText.Activator_refreshJobName);
 		}
 
-		private Set<IProject> projectsToScan = new LinkedHashSet<IProject>();
+		private Set<Repository> repositoriesToScan = new LinkedHashSet<Repository>();
 		private Set<Repository> repositoriesChanged = new HashSet<Repository>();
+		private final Map<Repository, IndexState> indexStates = new WeakHashMap<Repository, IndexState>();
+
+		/** index diffs of the changed repositories before the change */
+		private final Map<Repository, IndexDiffData> previousIndexDiffs = new WeakHashMap<Repository, IndexDiffData>();
+
+		/**
+		 * The modification time of the index and the HEAD commit
+		 */
+		static class IndexState {
+			private final long indexModified;
+
+			private final ObjectId head;
+
+			IndexState(long indexModified, ObjectId head) {
+				this.indexModified = indexModified;
+				this.head = head;
+			}
+		}
 
 		@Override
 		protected IStatus run(IProgressMonitor monitor) {
 			IProject[] projects = ResourcesPlugin.getWorkspace().getRoot().getProjects();
 			monitor.beginTask(UIText.Activator_refreshingProjects, projects.length);
 
-			while (projectsToScan.size() > 0) {
-				IProject p;
-				synchronized (projectsToScan) {
-					if (projectsToScan.size() == 0)
+			while (repositoriesToScan.size() > 0) {
+				Repository repository;
+				synchronized (repositoriesToScan) {
+					if (repositoriesToScan.size() == 0)
 						break;
-					Iterator<IProject> i = projectsToScan.iterator();
-					p = i.next();
+					Iterator<Repository> i = repositoriesToScan.iterator();
+					repository = i.next();
 					i.remove();
 				}
-				ISchedulingRule rule = p.getWorkspace().getRuleFactory().refreshRule(p);
-				try {
-					getJobManager().beginRule(rule, monitor);
-					p.refreshLocal(IResource.DEPTH_INFINITE, new SubProgressMonitor(monitor, 1));
-				} catch (CoreException e) {
-					handleError(UIText.Activator_refreshFailed, e, false);
-					return new Status(IStatus.ERROR, getPluginId(), e.getMessage());
-				} finally {
-					getJobManager().endRule(rule);
+				IndexDiffData previousIndexDiff;
+				synchronized (previousIndexDiffs) {
+					previousIndexDiff = previousIndexDiffs.remove(repository);
+				}
+				Collection<String> changedPaths = getChangedPaths(repository,
+						previousIndexDiff != null ? previousIndexDiff
+								.getAdded() : null);
+				if (GitTraceLocation.REPOSITORYCHANGESCANNER.isActive())
+					GitTraceLocation.getTrace().trace(
+							GitTraceLocation.REPOSITORYCHANGESCANNER
+									.getLocation(),
+							"Refreshing " + repository + ": " //$NON-NLS-1$ //$NON-NLS-2$
+									+ (changedPaths == null ? "all resources" //$NON-NLS-1$
+											: changedPaths.size() + " paths")); //$NON-NLS-1$
+				for (IProject p : projects) {
+					RepositoryMapping mapping = RepositoryMapping.getMapping(p);
+					if (mapping == null
+							|| mapping.getRepository() != repository)
+						continue;
+					ISchedulingRule rule = p.getWorkspace().getRuleFactory().refreshRule(p);
+					try {
+						getJobManager().beginRule(rule, monitor);
+						if (changedPaths == null)
+							p.refreshLocal(IResource.DEPTH_INFINITE, new SubProgressMonitor(monitor, 1));
+						else
+							ProjectUtil.refreshRepositoryPaths(p, repository,
+									changedPaths, new SubProgressMonitor(
+											monitor, 1));
+					} catch (CoreException e) {
+						handleError(UIText.Activator_refreshFailed, e, false);
+						return new Status(IStatus.ERROR, getPluginId(), e.getMessage());
+					} finally {
+						getJobManager().endRule(rule);
+					}
 				}
 			}
 			monitor.done();
 			return Status.OK_STATUS;
 		}
 
+		/**
+		 * Remembers the current state of the repository unless a state was
+		 * already seen for it, so that the first index change only refreshes
+		 * the changed paths
+		 *
+		 * @param repository
+		 */
+		void seed(Repository repository) {
+			synchronized (indexStates) {
+				if (indexStates.containsKey(repository))
+					return;
+			}
+			IndexState state = readIndexState(repository);
+			if (state == null)
+				return;
+			synchronized (indexStates) {
+				if (!indexStates.containsKey(repository))
+					indexStates.put(repository, state);
+			}
+		}
+
+		/**
+		 * Compares the current index of the repository with the state seen
+		 * before
+		 *
+		 * @param repository
+		 * @param previouslyAdded
+		 *            the paths which were added to the index before the
+		 *            change, <code>null</code> if unknown
+		 * @return the repository relative paths of the files which might have
+		 *         been written or deleted, or <code>null</code> if all
+		 *         resources have to be refreshed
+		 */
+		Collection<String> getChangedPaths(Repository repository,
+				Collection<String> previouslyAdded) {
+			// read before the index, files written later are newer
+			IndexState newState = readIndexState(repository);
+			IndexState oldState;
+			synchronized (indexStates) {
+				if (newState == null) {
+					indexStates.remove(repository);
+					return null;
+				}
+				oldState = indexStates.put(repository, newState);
+			}
+			if (oldState == null || previouslyAdded == null)
+				return null;
+			try {
+				return getChangedPaths(repository, oldState, previouslyAdded);
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * @param repository
+		 * @return the current state of the repository or <code>null</code>
+		 *         if the repository has no index
+		 */
+		static IndexState readIndexState(Repository repository) {
+			if (repository.isBare())
+				return null;
+			try {
+				return new IndexState(repository.getIndexFile()
+						.lastModified(), repository.resolve(Constants.HEAD));
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * @param repository
+		 * @param oldState
+		 *            the state before the index changed
+		 * @param previouslyAdded
+		 *            the paths which were added to the index before it changed
+		 * @return the paths of the files which might have been written or
+		 *         deleted since the old state, or <code>null</code> if too many
+		 *         paths changed
+		 * @throws IOException
+		 */
+		static Collection<String> getChangedPaths(Repository repository,
+				IndexState oldState, Collection<String> previouslyAdded)
+				throws IOException {
+			DirCache index = repository.readDirCache();
+			Set<String> changedPaths = new HashSet<String>();
+			// e.g. deleted by a hard reset
+			for (String path : previouslyAdded)
+				if (index.findEntry(path) < 0)
+					changedPaths.add(path);
+			TreeWalk walk = new TreeWalk(repository);
+			try {
+				walk.setRecursive(true);
+				if (oldState.head != null) {
+					RevWalk revWalk = new RevWalk(repository);
+					try {
+						walk.addTree(revWalk.parseCommit(oldState.head)
+								.getTree());
+					} finally {
+						revWalk.release();
+					}
+				} else
+					walk.addTree(new EmptyTreeIterator());
+				walk.addTree(new DirCacheIterator(index));
+				while (walk.next()) {
+					DirCacheIterator entries = walk.getTree(1,
+							DirCacheIterator.class);
+					if (entries == null)
+						// removed from the index with the file, unless the
+						// file is untracked now
+						changedPaths.add(walk.getPathString());
+					else {
+						DirCacheEntry entry = entries.getDirCacheEntry();
+						long modified = entry.getLastModified();
+						if (entry.getStage() != DirCacheEntry.STAGE_0
+								|| modified == 0
+								|| modified >= oldState.indexModified)
+							changedPaths.add(walk.getPathString());
+					}
+					if (changedPaths.size() > ProjectUtil.MAX_REFRESH_PATHS)
+						return null;
+				}
+			} finally {
+				walk.release();
+			}
+			if (changedPaths.size() > ProjectUtil.MAX_REFRESH_PATHS)
+				return null;
+			return changedPaths;
+		}
+
 		public void onIndexChanged(IndexChangedEvent e) {
 			if (Activator.getDefault().getPreferenceStore()
 					.getBoolean(UIPreferences.REFESH_ON_INDEX_CHANGE))
@@ -357,6 +570,7 @@ public void onIndexChanged(IndexChangedEvent e) {
 		 *            The {@link RepositoryEvent} that triggered this refresh
 		 */
 		private void mayTriggerRefresh(RepositoryEvent e) {
+			rememberIndexDiff(e.getRepository());
 			repositoriesChanged.add(e.getRepository());
 			if (!Activator.getDefault().getPreferenceStore()
 					.getBoolean(UIPreferences.REFESH_ONLY_WHEN_ACTIVE)
@@ -365,32 +579,43 @@ private void mayTriggerRefresh(RepositoryEvent e) {
 		}
 
 		/**
-		 * Figure which projects belong to a repository, add them to a set of
-		 * project to refresh and schedule the refresh as a job.
+		 * Keeps the cached index diff of the repository until the refresh,
+		 * the cache is updated in a job. No cache entry is created for
+		 * repositories without one.
+		 */
+		private void rememberIndexDiff(Repository repository) {
+			synchronized (previousIndexDiffs) {
+				if (previousIndexDiffs.containsKey(repository))
+					return;
+				IndexDiffCacheEntry entry = org.eclipse.egit.core.Activator
+						.getDefault().getIndexDiffCache()
+						.getExistingIndexDiffCacheEntry(repository);
+				if (entry == null)
+					return;
+				IndexDiffData data = entry.getIndexDiff();
+				if (data != null)
+					previousIndexDiffs.put(repository, data);
+			}
+		}
+
+		/**
+		 * Add the changed repositories to the set of repositories to refresh
+		 * and schedule the refresh as a job.
 		 */
 		void triggerRefresh() {
 			if (GitTraceLocation.REPOSITORYCHANGESCANNER.isActive())
 				GitTraceLocation.getTrace().trace(
 						GitTraceLocation.REPOSITORYCHANGESCANNER.getLocation(),
 						"Triggered refresh"); //$NON-NLS-1$
-			IProject[] projects = ResourcesPlugin.getWorkspace().getRoot()
-					.getProjects();
-			Set<IProject> toRefresh = new HashSet<IProject>();
+			Set<Repository> toRefresh;
 			synchronized (repositoriesChanged) {
-				for (IProject p : projects) {
-					RepositoryMapping mapping = RepositoryMapping.getMapping(p);
-					if (mapping != null
-							&& repositoriesChanged.contains(mapping
-									.getRepository())) {
-						toRefresh.add(p);
-					}
-				}
+				toRefresh = new HashSet<Repository>(repositoriesChanged);
 				repositoriesChanged.clear();
 			}
-			synchronized (projectsToScan) {
-				projectsToScan.addAll(toRefresh);
+			synchronized (repositoriesToScan) {
+				repositoriesToScan.addAll(toRefresh);
 			}
-			if (projectsToScan.size() > 0)
+			if (repositoriesToScan.size() > 0)
 				schedule();
 		}
 	}
@@ -398,14 +623,32 @@ void triggerRefresh() {
 	/**
 	 * A Job that looks at the repository meta data and triggers a refresh of
 	 * the resources in the affected projects.
+	 * <p>
+	 * The job checks the few files and folders which change when the index or
+	 * a ref is modified and only scans repositories in which such a change was
+	 * detected. The check runs every few seconds while the workbench is active
+	 * and backs off while it is inactive, activating a workbench window
+	 * schedules a check immediately. All repositories are scanned in a longer
+	 * interval as a fallback for file systems which do not reliably update
+	 * modification times.
 	 */
 	static class RepositoryChangeScanner extends Job {
 		RepositoryChangeScanner() {
 			super(UIText.Activator_repoScanJobName);
 		}
 
-		// FIXME, need to be more intelligent about this to avoid too much work
-		private static final long REPO_SCAN_INTERVAL = 10000L;
+		private static final long REPO_SCAN_INTERVAL = 2000L;
+
+		// interval while the workbench is inactive, the checks are cheap but
+		// nobody looks at the results
+		private static final long INACTIVE_SCAN_INTERVAL = 10000L;
+
+		private static final long FULL_SCAN_INTERVAL = 60000L;
+
+		private final RepositoryMetadataWatcher watcher = new RepositoryMetadataWatcher();
+
+		private long lastFullScan;
+
 		// volatile in order to ensure thread synchronization
 		private volatile boolean doReschedule = true;
 
@@ -424,22 +667,33 @@ protected IStatus run(IProgressMonitor monitor) {
 			// may happen. Don't scan when inactive depending on the user's
 			// choice.
 
+			boolean active = isActive();
 			if (Activator.getDefault().getPreferenceStore()
 					.getBoolean(UIPreferences.REFESH_ONLY_WHEN_ACTIVE)) {
-				if (!isActive()) {
+				if (!active) {
 					monitor.done();
 					if (doReschedule)
-						schedule(REPO_SCAN_INTERVAL);
+						schedule(INACTIVE_SCAN_INTERVAL);
 					return Status.OK_STATUS;
 				}
 			}
 
+			long now = System.currentTimeMillis();
+			boolean fullScan = now - lastFullScan >= FULL_SCAN_INTERVAL;
+			if (fullScan)
+				lastFullScan = now;
+
 			monitor.beginTask(UIText.Activator_scanningRepositories,
 					repos.length);
 			try {
 				for (Repository repo : repos) {
 					if (monitor.isCanceled())
 						break;
+					// always update the watcher state, even on a full scan
+					if (!watcher.hasChanged(repo) && !fullScan) {
+						monitor.worked(1);
+						continue;
+					}
 					if (GitTraceLocation.REPOSITORYCHANGESCANNER.isActive())
 						GitTraceLocation.getTrace().trace(
 								GitTraceLocation.REPOSITORYCHANGESCANNER
@@ -464,7 +718,7 @@ protected IStatus run(IProgressMonitor monitor) {
 						GitTraceLocation.REPOSITORYCHANGESCANNER.getLocation(),
 						"Rescheduling " + getName() + " job"); //$NON-NLS-1$ //$NON-NLS-2$
 			if (doReschedule)
-				schedule(REPO_SCAN_INTERVAL);
+				schedule(active ? REPO_SCAN_INTERVAL : INACTIVE_SCAN_INTERVAL);
 			return Status.OK_STATUS;
 		}
 	}
@@ -525,6 +779,8 @@ public void stop(final BundleContext context) throws Exception {
 		rcs.join();
 		refreshJob.join();
 
+		FindToolbarThread.shutdownWorkers();
+
 		if (GitTraceLocation.REPOSITORYCHANGESCANNER.isActive())
 			GitTraceLocation.getTrace().trace(
 					GitTraceLocation.REPOSITORYCHANGESCANNER.getLocation(),
@@ -1980,6 +1980,12 @@ public class UIText extends NLS {
 	/** */
 	public static String CommitMessageViewer_branches;
 
+	/** */
+	public static String CommitMessageViewer_BranchesPending;
+
+	/** */
+	public static String CommitMessageViewer_TagsPending;
+
 	/** */
 	public static String CommitMessageViewer_BuildDiffListTaskName;
 
@@ -3946,6 +3952,12 @@ public class UIText extends NLS {
 	/** */
 	public static String CommitSearchPage_CommitId;
 
+	/** */
+	public static String CommitSearchPage_CommittedAfter;
+
+	/** */
+	public static String CommitSearchPage_CommittedBefore;
+
 	/** */
 	public static String CommitSearchPage_Committer;
 
@@ -3955,6 +3967,12 @@ public class UIText extends NLS {
 	/** */
 	public static String CommitSearchPage_ContainingTextHint;
 
+	/** */
+	public static String CommitSearchPage_Limits;
+
+	/** */
+	public static String CommitSearchPage_MaxResults;
+
 	/** */
 	public static String CommitSearchPage_Message;
 
@@ -3985,6 +4003,9 @@ public class UIText extends NLS {
 	/** */
 	public static String CommitSearchQuery_TaskSearchCommits;
 
+	/** */
+	public static String CommitSearchQuery_TaskSearchCommitsSingle;
+
 	/** */
 	public static String CommitSearchResult_LabelPlural;
 
@@ -0,0 +1,359 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.ui.internal.blame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.eclipse.egit.ui.Activator;
+import org.eclipse.jgit.blame.BlameResult;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.MyersDiff;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.util.IO;
+
+/**
+ * Bounded cache of blame results, persisted in the plugin state location.
+ * <p>
+ * A result is stored for a repository, a path, the start commit of the blame,
+ * the blob of the path in the start commit and the whitespace mode, and
+ * contains the commit every line of the blob was introduced by. The most
+ * recently used results are kept in memory, at most {@link #MAX_FILES} results
+ * are kept on disk. A file starts with a magic number and a format version,
+ * followed by the length of the payload, the payload and a CRC32 checksum of
+ * the payload. Files which cannot be read for any reason are ignored.
+ */
+class BlameCache {
+
+	private static final int MAGIC = 0x45424c43; // "EBLC"
+
+	private static final int VERSION = 1;
+
+	private static final String FOLDER = "blame"; //$NON-NLS-1$
+
+	private static final String EXTENSION = ".blame"; //$NON-NLS-1$
+
+	private static final String TMP_EXTENSION = ".tmp"; //$NON-NLS-1$
+
+	private static final int MAX_FILES = 100;
+
+	private static final int MAX_ENTRIES = 16;
+
+	/** line without source commit */
+	static final int NO_COMMIT = -1;
+
+	/**
+	 * The source commits of the lines of a file
+	 */
+	static class Lines {
+
+		private final ObjectId[] commits;
+
+		private final int[] lines;
+
+		Lines(ObjectId[] commits, int[] lines) {
+			this.commits = commits;
+			this.lines = lines;
+		}
+
+		/**
+		 * @return the number of lines
+		 */
+		int getLineCount() {
+			return lines.length;
+		}
+
+		/**
+		 * @param line
+		 * @return the commit which introduced the line, <code>null</code> if
+		 *         the line is not committed
+		 */
+		ObjectId getCommit(int line) {
+			int commit = lines[line];
+			return commit == NO_COMMIT ? null : commits[commit];
+		}
+
+		/**
+		 * Maps these lines of a committed file to a changed version of the
+		 * file. Changed lines have no source commit.
+		 *
+		 * @param committed
+		 *            the committed content
+		 * @param changed
+		 *            the changed content
+		 * @param comparator
+		 *            the comparator used for the blame
+		 * @return the lines of the changed file
+		 */
+		Lines map(RawText committed, RawText changed,
+				RawTextComparator comparator) {
+			EditList edits = MyersDiff.INSTANCE.diff(comparator, committed,
+					changed);
+			int[] mapped = new int[changed.size()];
+			int a = 0;
+			int b = 0;
+			for (Edit edit : edits) {
+				while (b < edit.getBeginB())
+					mapped[b++] = lines[a++];
+				while (b < edit.getEndB())
+					mapped[b++] = NO_COMMIT;
+				a = edit.getEndA();
+			}
+			while (b < mapped.length)
+				mapped[b++] = lines[a++];
+			return new Lines(commits, mapped);
+		}
+
+		/**
+		 * @param result
+		 *            a computed blame result
+		 * @return the lines of the result
+		 */
+		static Lines create(BlameResult result) {
+			Map<ObjectId, Integer> indexes = new HashMap<ObjectId, Integer>();
+			List<ObjectId> commits = new ArrayList<ObjectId>();
+			int[] lines = new int[result.getResultContents().size()];
+			for (int i = 0; i < lines.length; i++) {
+				RevCommit commit = result.getSourceCommit(i);
+				if (commit == null) {
+					lines[i] = NO_COMMIT;
+					continue;
+				}
+				Integer index = indexes.get(commit);
+				if (index == null) {
+					index = Integer.valueOf(commits.size());
+					commits.add(commit.copy());
+					indexes.put(commits.get(index.intValue()), index);
+				}
+				lines[i] = index.intValue();
+			}
+			return new Lines(commits.toArray(new ObjectId[commits.size()]),
+					lines);
+		}
+	}
+
+	private static BlameCache instance;
+
+	/**
+	 * @return the cache in the state location of the plugin
+	 */
+	static synchronized BlameCache getDefault() {
+		if (instance == null)
+			instance = new BlameCache(new File(Activator.getDefault()
+					.getStateLocation().toFile(), FOLDER));
+		return instance;
+	}
+
+	private final File folder;
+
+	private final Map<String, Lines> entries = new LinkedHashMap<String, Lines>(
+			MAX_ENTRIES, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Lines> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * @param folder
+	 *            the folder to store the results in
+	 */
+	BlameCache(File folder) {
+		this.folder = folder;
+	}
+
+	/**
+	 * @param repository
+	 * @param path
+	 * @param commit
+	 *            the start commit
+	 * @param blob
+	 *            the blob of the path in the start commit
+	 * @param ignoreWhitespace
+	 * @return the cached lines or <code>null</code>
+	 */
+	synchronized Lines get(Repository repository, String path,
+			AnyObjectId commit, AnyObjectId blob, boolean ignoreWhitespace) {
+		String key = getKey(repository, path, commit, blob, ignoreWhitespace);
+		Lines lines = entries.get(key);
+		if (lines == null) {
+			File file = getFile(key);
+			try {
+				lines = load(file, key);
+			} catch (IOException e) {
+				lines = null;
+			}
+			if (lines == null)
+				return null;
+			entries.put(key, lines);
+			// keep recently used files when removing old ones
+			file.setLastModified(System.currentTimeMillis());
+		}
+		return lines;
+	}
+
+	/**
+	 * Stores lines in the cache
+	 *
+	 * @param repository
+	 * @param path
+	 * @param commit
+	 *            the start commit
+	 * @param blob
+	 *            the blob of the path in the start commit
+	 * @param ignoreWhitespace
+	 * @param lines
+	 */
+	synchronized void put(Repository repository, String path,
+			AnyObjectId commit, AnyObjectId blob, boolean ignoreWhitespace,
+			Lines lines) {
+		String key = getKey(repository, path, commit, blob, ignoreWhitespace);
+		entries.put(key, lines);
+		try {
+			save(getFile(key), key, lines);
+			removeOldFiles();
+		} catch (IOException e) {
+			Activator.logError(e.getMessage(), e);
+		}
+	}
+
+	private static String getKey(Repository repository, String path,
+			AnyObjectId commit, AnyObjectId blob, boolean ignoreWhitespace) {
+		return repository.getDirectory().getAbsolutePath() + '\n' + path
+				+ '\n' + commit.name() + '\n' + blob.name() + '\n'
+				+ ignoreWhitespace;
+	}
+
+	private File getFile(String key) {
+		String name = ObjectId.fromRaw(
+				Constants.newMessageDigest().digest(Constants.encode(key)))
+				.name();
+		return new File(folder, name + EXTENSION);
+	}
+
+	private void removeOldFiles() {
+		File[] files = folder.listFiles();
+		if (files == null || files.length <= MAX_FILES)
+			return;
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				long m1 = f1.lastModified();
+				long m2 = f2.lastModified();
+				return m1 < m2 ? 1 : (m1 == m2 ? 0 : -1);
+			}
+		});
+		for (int i = MAX_FILES; i < files.length; i++)
+			files[i].delete();
+	}
+
+	private static void save(File file, String key, Lines lines)
+			throws IOException {
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(payload);
+		out.writeUTF(key);
+		out.writeInt(lines.commits.length);
+		byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+		for (ObjectId commit : lines.commits) {
+			commit.copyRawTo(raw, 0);
+			out.write(raw);
+		}
+		out.writeInt(lines.lines.length);
+		for (int line : lines.lines)
+			out.writeInt(line);
+		out.flush();
+		byte[] bytes = payload.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+
+		File dir = file.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException(dir.getAbsolutePath());
+		File tmp = new File(dir, file.getName() + TMP_EXTENSION);
+		DataOutputStream fileOut = new DataOutputStream(new FileOutputStream(
+				tmp));
+		try {
+			fileOut.writeInt(MAGIC);
+			fileOut.writeInt(VERSION);
+			fileOut.writeInt(bytes.length);
+			fileOut.write(bytes);
+			fileOut.writeLong(crc.getValue());
+		} finally {
+			fileOut.close();
+		}
+		if (file.exists() && !file.delete())
+			throw new IOException(file.getAbsolutePath());
+		if (!tmp.renameTo(file))
+			throw new IOException(file.getAbsolutePath());
+	}
+
+	private static Lines load(File file, String key) throws IOException {
+		if (!file.isFile())
+			return null;
+		DataInputStream fileIn = new DataInputStream(new FileInputStream(file));
+		byte[] bytes;
+		long checksum;
+		try {
+			if (fileIn.readInt() != MAGIC || fileIn.readInt() != VERSION)
+				return null;
+			int length = fileIn.readInt();
+			if (length < 0 || length > file.length())
+				return null;
+			bytes = new byte[length];
+			IO.readFully(fileIn, bytes, 0, length);
+			checksum = fileIn.readLong();
+		} finally {
+			fileIn.close();
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		if (crc.getValue() != checksum)
+			return null;
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				bytes));
+		if (!in.readUTF().equals(key))
+			return null;
+		ObjectId[] commits = new ObjectId[in.readInt()];
+		byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+		for (int i = 0; i < commits.length; i++) {
+			in.readFully(raw);
+			commits[i] = ObjectId.fromRaw(raw);
+		}
+		int[] lines = new int[in.readInt()];
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = in.readInt();
+			if (lines[i] < NO_COMMIT || lines[i] >= commits.length)
+				return null;
+		}
+		return new Lines(commits, lines);
+	}
+}
@@ -10,6 +10,8 @@
  *****************************************************************************/
 package org.eclipse.egit.ui.internal.blame;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -24,10 +26,16 @@
 import org.eclipse.jface.text.revisions.RevisionInformation;
 import org.eclipse.jgit.api.BlameCommand;
 import org.eclipse.jgit.blame.BlameResult;
+import org.eclipse.jgit.diff.RawText;
 import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.errors.LargeObjectException;
 import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.team.ui.history.RevisionAnnotationController;
 import org.eclipse.ui.IWorkbenchPage;
@@ -36,6 +44,11 @@
 
 /**
  * Blame operation
+ * <p>
+ * The blame of the file in the start commit is taken from the
+ * {@link BlameCache} if possible. Without start commit the lines of the
+ * working tree file are mapped to the blame of the file in HEAD, so only the
+ * uncommitted changes need to be compared.
  */
 public class BlameOperation implements IEGitOperation {
 
@@ -77,53 +90,59 @@ public void execute(IProgressMonitor monitor) throws CoreException {
 		info.setInformationPresenterControlCreator(new BlameInformationControlCreator(
 				true));
 
-		final BlameCommand command = new BlameCommand(repository)
-				.setFollowFileRenames(true).setFilePath(path);
-		if (startCommit != null)
-			command.setStartCommit(startCommit);
-		if (Activator.getDefault().getPreferenceStore()
-				.getBoolean(UIPreferences.BLAME_IGNORE_WHITESPACE))
-			command.setTextComparator(RawTextComparator.WS_IGNORE_ALL);
-
-		final BlameResult result = command.call();
-		if (result == null)
-			return;
-
-		Map<RevCommit, BlameRevision> revisions = new HashMap<RevCommit, BlameRevision>();
-		int lineCount = result.getResultContents().size();
-		monitor.beginTask("", lineCount); //$NON-NLS-1$
-		BlameRevision previous = null;
-		for (int i = 0; i < lineCount; i++) {
-			RevCommit commit = result.getSourceCommit(i);
-			if (commit == null) {
-				// Unregister the current revision
-				if (previous != null) {
-					previous.register();
-					previous = null;
+		boolean ignoreWhitespace = Activator.getDefault().getPreferenceStore()
+				.getBoolean(UIPreferences.BLAME_IGNORE_WHITESPACE);
+		RawTextComparator comparator = ignoreWhitespace ? RawTextComparator.WS_IGNORE_ALL
+				: RawTextComparator.DEFAULT;
+
+		RevWalk walk = new RevWalk(repository);
+		try {
+			BlameCache.Lines lines = getLines(comparator, ignoreWhitespace);
+			if (lines == null)
+				return;
+
+			Map<RevCommit, BlameRevision> revisions = new HashMap<RevCommit, BlameRevision>();
+			int lineCount = lines.getLineCount();
+			monitor.beginTask("", lineCount); //$NON-NLS-1$
+			BlameRevision previous = null;
+			for (int i = 0; i < lineCount; i++) {
+				ObjectId id = lines.getCommit(i);
+				if (id == null) {
+					// Unregister the current revision
+					if (previous != null) {
+						previous.register();
+						previous = null;
+					}
+					continue;
 				}
-				continue;
-			}
-			BlameRevision revision = revisions.get(commit);
-			if (revision == null) {
-				revision = new BlameRevision();
-				revision.setRepository(repository);
-				revision.setCommit(commit);
-				revisions.put(commit, revision);
-				info.addRevision(revision);
+				RevCommit commit = walk.parseCommit(id);
+				BlameRevision revision = revisions.get(commit);
+				if (revision == null) {
+					revision = new BlameRevision();
+					revision.setRepository(repository);
+					revision.setCommit(commit);
+					revisions.put(commit, revision);
+					info.addRevision(revision);
+				}
+				if (previous != null)
+					if (previous == revision)
+						previous.addLine();
+					else {
+						previous.register();
+						previous = revision.reset(i);
+					}
+				else
+					previous = revision.reset(i);
+				monitor.worked(1);
 			}
 			if (previous != null)
-				if (previous == revision)
-					previous.addLine();
-				else {
-					previous.register();
-					previous = revision.reset(i);
-				}
-			else
-				previous = revision.reset(i);
-			monitor.worked(1);
+				previous.register();
+		} catch (IOException e) {
+			throw new CoreException(Activator.createErrorStatus(
+					e.getMessage(), e));
+		} finally {
+			walk.release();
 		}
-		if (previous != null)
-			previous.register();
 
 		shell.getDisplay().asyncExec(new Runnable() {
 			public void run() {
@@ -147,6 +166,77 @@ public void run() {
 		});
 	}
 
+	/**
+	 * @return the source commits of the lines of the file,
+	 *         <code>null</code> if the file cannot be blamed
+	 * @throws IOException
+	 */
+	private BlameCache.Lines getLines(RawTextComparator comparator,
+			boolean ignoreWhitespace) throws IOException {
+		ObjectId commitId = startCommit != null ? startCommit.toObjectId()
+				: repository.resolve(Constants.HEAD);
+		ObjectId blobId = commitId != null ? getBlobId(commitId) : null;
+		if (blobId == null) {
+			// nothing to cache, the file is not committed
+			BlameResult result = createCommand(comparator).call();
+			return result != null ? BlameCache.Lines.create(result) : null;
+		}
+
+		BlameCache cache = BlameCache.getDefault();
+		BlameCache.Lines lines = cache.get(repository, path, commitId, blobId,
+				ignoreWhitespace);
+		if (lines == null) {
+			BlameResult result = createCommand(comparator).setStartCommit(
+					commitId).call();
+			if (result == null)
+				return null;
+			lines = BlameCache.Lines.create(result);
+			cache.put(repository, path, commitId, blobId, ignoreWhitespace,
+					lines);
+		}
+		if (startCommit != null || repository.isBare())
+			return lines;
+		File file = new File(repository.getWorkTree(), path);
+		if (!file.isFile())
+			return lines;
+		RawText committed;
+		try {
+			committed = new RawText(repository.open(blobId,
+					Constants.OBJ_BLOB).getCachedBytes());
+		} catch (LargeObjectException e) {
+			// too large to be mapped in memory, blame the file directly
+			BlameResult result = createCommand(comparator).call();
+			return result != null ? BlameCache.Lines.create(result) : null;
+		}
+		return lines.map(committed, new RawText(file), comparator);
+	}
+
+	private BlameCommand createCommand(RawTextComparator comparator) {
+		BlameCommand command = new BlameCommand(repository)
+				.setFollowFileRenames(true).setFilePath(path)
+				.setTextComparator(comparator);
+		if (startCommit != null)
+			command.setStartCommit(startCommit);
+		return command;
+	}
+
+	private ObjectId getBlobId(ObjectId commitId) throws IOException {
+		RevWalk walk = new RevWalk(repository);
+		try {
+			TreeWalk treeWalk = TreeWalk.forPath(repository, path, walk
+					.parseCommit(commitId).getTree());
+			if (treeWalk == null)
+				return null;
+			try {
+				return treeWalk.getObjectId(0);
+			} finally {
+				treeWalk.release();
+			}
+		} finally {
+			walk.release();
+		}
+	}
+
 	public ISchedulingRule getSchedulingRule() {
 		return null;
 	}
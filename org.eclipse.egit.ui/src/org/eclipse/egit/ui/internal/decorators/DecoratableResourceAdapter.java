@@ -16,160 +16,95 @@
 
 package org.eclipse.egit.ui.internal.decorators;
 
-import static org.eclipse.jgit.lib.Repository.stripWorkDir;
-
-import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
-
 import org.eclipse.core.resources.IResource;
-import org.eclipse.egit.core.Activator;
 import org.eclipse.egit.core.internal.indexdiff.IndexDiffData;
-import org.eclipse.egit.core.project.RepositoryMapping;
-import org.eclipse.egit.ui.internal.trace.GitTraceLocation;
-import org.eclipse.jgit.lib.Repository;
+import org.eclipse.egit.core.internal.indexdiff.PathTrie;
+import org.eclipse.egit.ui.internal.decorators.DecoratableResourceHelper.RepositoryDecorationData;
 
 class DecoratableResourceAdapter extends DecoratableResource {
 
-	private final RepositoryMapping mapping;
-
-	private final Repository repository;
+	private final String repoRelativePath;
 
-	private final boolean trace;
-
-	private IndexDiffData indexDiffData;
+	private final IndexDiffData indexDiffData;
 
+	/**
+	 * @param resourceToWrap
+	 * @param repositoryData
+	 *            the data shared by all resources of the repository which are
+	 *            decorated in the same batch
+	 * @param repoRelativePath
+	 *            the path of the resource relative to the working tree
+	 */
 	@SuppressWarnings("fallthrough")
-	public DecoratableResourceAdapter(IResource resourceToWrap)
-			throws IOException {
+	DecoratableResourceAdapter(IResource resourceToWrap,
+			RepositoryDecorationData repositoryData, String repoRelativePath) {
 		super(resourceToWrap);
-		trace = GitTraceLocation.DECORATION.isActive();
-		long start = 0;
-		if (trace) {
-			GitTraceLocation.getTrace().trace(
-					GitTraceLocation.DECORATION.getLocation(),
-					"Decorate " + resource.getFullPath()); //$NON-NLS-1$
-			start = System.currentTimeMillis();
-		}
-		try {
-			mapping = RepositoryMapping.getMapping(resource);
-			if (mapping == null) {
-				repository = null;
-				return;
+		this.repoRelativePath = repoRelativePath;
+		repositoryName = repositoryData.repositoryName;
+		branch = repositoryData.branch;
+		indexDiffData = repositoryData.indexDiffData;
+		if (indexDiffData != null)
+			switch (resource.getType()) {
+			case IResource.FILE:
+				extractResourceProperties();
+				break;
+			case IResource.PROJECT:
+				tracked = true;
+			case IResource.FOLDER:
+				extractContainerProperties();
+				break;
 			}
-			repository = mapping.getRepository();
-			if (repository == null)
-				return;
-			repositoryName = DecoratableResourceHelper
-					.getRepositoryName(repository);
-			branch = DecoratableResourceHelper.getShortBranch(repository);
-
-			indexDiffData = Activator.getDefault().getIndexDiffCache()
-					.getIndexDiffCacheEntry(repository).getIndexDiff();
-			if (indexDiffData != null)
-				switch (resource.getType()) {
-				case IResource.FILE:
-					extractResourceProperties();
-					break;
-				case IResource.PROJECT:
-					tracked = true;
-				case IResource.FOLDER:
-					extractContainerProperties();
-					break;
-				}
-		} finally {
-			if (trace)
-				GitTraceLocation
-						.getTrace()
-						.trace(GitTraceLocation.DECORATION.getLocation(),
-								"Decoration took " + (System.currentTimeMillis() - start) //$NON-NLS-1$
-										+ " ms"); //$NON-NLS-1$
-		}
 	}
 
 	private void extractResourceProperties() {
-		String repoRelativePath = makeRepoRelative(resource);
+		PathTrie trie = indexDiffData.getPathTrie();
+		int flags = trie.getFlags(repoRelativePath);
 
 		// ignored
-		Set<String> ignoredFiles = indexDiffData.getIgnoredNotInIndex();
-		ignored = containsPrefixPath(ignoredFiles, repoRelativePath);
-		Set<String> untracked = indexDiffData.getUntracked();
-		tracked = !untracked.contains(repoRelativePath) && !ignored;
-
-		Set<String> added = indexDiffData.getAdded();
-		Set<String> removed = indexDiffData.getRemoved();
-		Set<String> changed = indexDiffData.getChanged();
-		if (added.contains(repoRelativePath)) // added
+		ignored = (trie.getAncestorOrSelfFlags(repoRelativePath)
+				& PathTrie.IGNORED) != 0;
+		tracked = (flags & PathTrie.UNTRACKED) == 0 && !ignored;
+
+		if ((flags & PathTrie.ADDED) != 0) // added
 			staged = Staged.ADDED;
-		else if (removed.contains(repoRelativePath)) // removed
+		else if ((flags & PathTrie.REMOVED) != 0) // removed
 			staged = Staged.REMOVED;
-		else if (changed.contains(repoRelativePath)) // changed and added into index
+		else if ((flags & PathTrie.CHANGED) != 0) // changed and added into index
 			staged = Staged.MODIFIED;
 		else
 			staged = Staged.NOT_STAGED;
 
 		// conflicting
-		Set<String> conflicting = indexDiffData.getConflicting();
-		conflicts = conflicting.contains(repoRelativePath);
+		conflicts = (flags & PathTrie.CONFLICTING) != 0;
 
 		// locally modified
-		Set<String> modified = indexDiffData.getModified();
-		dirty = modified.contains(repoRelativePath);
+		dirty = (flags & PathTrie.MODIFIED) != 0;
 	}
 
 	private void extractContainerProperties() {
-		String repoRelativePath = makeRepoRelative(resource) + "/"; //$NON-NLS-1$
+		PathTrie trie = indexDiffData.getPathTrie();
+		int ancestorFlags = trie.getAncestorOrSelfFlags(repoRelativePath);
+		int descendantFlags = trie.getDescendantFlags(repoRelativePath);
 
-		Set<String> ignoredFiles = indexDiffData.getIgnoredNotInIndex();
-		Set<String> untrackedFolders = indexDiffData.getUntrackedFolders();
-		ignored = containsPrefixPath(ignoredFiles, repoRelativePath);
+		ignored = (ancestorFlags & PathTrie.IGNORED) != 0;
 
 		if (ignored)
 			tracked = false;
 		else
-			tracked = !containsPrefixPath(untrackedFolders, repoRelativePath);
+			tracked = (ancestorFlags & PathTrie.UNTRACKED_FOLDER) == 0;
 
 		// containers are marked as staged whenever file was added, removed or
 		// changed
-		Set<String> changed = new HashSet<String>(indexDiffData.getChanged());
-		changed.addAll(indexDiffData.getAdded());
-		changed.addAll(indexDiffData.getRemoved());
-		if (containsPrefix(changed, repoRelativePath))
+		if ((descendantFlags & PathTrie.STAGED) != 0)
 			staged = Staged.MODIFIED;
 		else
 			staged = Staged.NOT_STAGED;
 
 		// conflicting
-		Set<String> conflicting = indexDiffData.getConflicting();
-		conflicts = containsPrefix(conflicting, repoRelativePath);
+		conflicts = (descendantFlags & PathTrie.CONFLICTING) != 0;
 
 		// locally modified
-		Set<String> modified = indexDiffData.getModified();
-		dirty = containsPrefix(modified, repoRelativePath);
-	}
-
-	private String makeRepoRelative(IResource res) {
-		return stripWorkDir(repository.getWorkTree(), res.getLocation()
-				.toFile());
-	}
-
-	private boolean containsPrefix(Set<String> collection, String prefix) {
-		// when prefix is empty we are handling repository root, therefore we
-		// should return true whenever collection isn't empty
-		if (prefix.length() == 1 && !collection.isEmpty())
-			return true;
-
-		for (String path : collection)
-			if (path.startsWith(prefix))
-				return true;
-		return false;
-	}
-
-	private boolean containsPrefixPath(Set<String> collection, String path) {
-		for (String entry : collection)
-			if (path.startsWith(entry))
-				return true;
-		return false;
+		dirty = (descendantFlags & PathTrie.MODIFIED) != 0;
 	}
 
 }
@@ -10,18 +10,24 @@
  *******************************************************************************/
 package org.eclipse.egit.ui.internal.decorators;
 
+import static org.eclipse.jgit.lib.Repository.stripWorkDir;
+
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.WeakHashMap;
 
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.egit.core.ContainerTreeIterator;
 import org.eclipse.egit.core.ContainerTreeIterator.ResourceEntry;
+import org.eclipse.egit.core.internal.indexdiff.IndexDiffData;
 import org.eclipse.egit.core.project.RepositoryMapping;
 import org.eclipse.egit.ui.Activator;
 import org.eclipse.egit.ui.UIText;
 import org.eclipse.egit.ui.internal.decorators.IDecoratableResource.Staged;
+import org.eclipse.egit.ui.internal.trace.GitTraceLocation;
 import org.eclipse.jgit.dircache.DirCache;
 import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.dircache.DirCacheIterator;
@@ -50,6 +56,11 @@ public class DecoratableResourceHelper {
 
 	/**
 	 * Creates a list of decoratable resources for the given list of resources
+	 * <p>
+	 * The resources are decorated as one batch: the data shared by all
+	 * resources of a repository (repository name, branch and index diff) is
+	 * only determined once per repository and the repository relative path of
+	 * a parent folder is only computed once for all of its children.
 	 *
 	 * @param resources
 	 *            the list of resources to be decorated
@@ -70,24 +81,90 @@ public static IDecoratableResource[] createDecoratableResources(
 				return null;
 		}
 
+		final boolean trace = GitTraceLocation.DECORATION.isActive();
+		final long start = trace ? System.currentTimeMillis() : 0;
+
 		final IDecoratableResource[] decoratableResources = new IDecoratableResource[resources.length];
+		final Map<Repository, RepositoryDecorationData> repositoryData = new HashMap<Repository, RepositoryDecorationData>();
+		final Map<IContainer, String> parentPaths = new HashMap<IContainer, String>();
 
 		for (i = 0; i < resources.length; i++) {
 			final IResource resource = resources[i];
-			if (resource != null && resource.getProject().isOpen()) {
-				// Decorate folder and project node separately
+			if (resource == null || !resource.getProject().isOpen())
+				continue;
+			final RepositoryMapping mapping = RepositoryMapping
+					.getMapping(resource);
+			final Repository repository = mapping != null ? mapping
+					.getRepository() : null;
+			if (repository == null) {
+				decoratableResources[i] = new DecoratableResource(resource);
+				continue;
+			}
+			RepositoryDecorationData data = repositoryData.get(repository);
+			if (data == null && !repositoryData.containsKey(repository)) {
 				try {
-					decoratableResources[i] = new DecoratableResourceAdapter(
-							resource);
+					data = new RepositoryDecorationData(repository);
 				} catch (IOException e) {
-					// Ignore - decoratableResources[i] is null
+					// Ignore - decoratableResources of this repository are
+					// null
 				}
+				repositoryData.put(repository, data);
 			}
+			if (data == null || resource.getLocation() == null)
+				continue;
+			decoratableResources[i] = new DecoratableResourceAdapter(resource,
+					data, getRepoRelativePath(repository, resource,
+							parentPaths));
 		}
 
+		if (trace)
+			GitTraceLocation.getTrace().trace(
+					GitTraceLocation.DECORATION.getLocation(),
+					"Decorated " + resources.length + " resources of " //$NON-NLS-1$ //$NON-NLS-2$
+							+ repositoryData.size() + " repositories in " //$NON-NLS-1$
+							+ (System.currentTimeMillis() - start) + " ms"); //$NON-NLS-1$
 		return decoratableResources;
 	}
 
+	private static String getRepoRelativePath(Repository repository,
+			IResource resource, Map<IContainer, String> parentPaths) {
+		final IContainer parent = resource.getParent();
+		if (resource.getType() == IResource.PROJECT || resource.isLinked()
+				|| parent.getLocation() == null)
+			return stripWorkDir(repository.getWorkTree(), resource
+					.getLocation().toFile());
+		String parentPath = parentPaths.get(parent);
+		if (parentPath == null) {
+			parentPath = stripWorkDir(repository.getWorkTree(), parent
+					.getLocation().toFile());
+			parentPaths.put(parent, parentPath);
+		}
+		if (parentPath.length() == 0)
+			return resource.getName();
+		return parentPath + '/' + resource.getName();
+	}
+
+	/**
+	 * Data shared by all resources of a repository which are decorated in the
+	 * same batch
+	 */
+	static class RepositoryDecorationData {
+
+		final String repositoryName;
+
+		final String branch;
+
+		final IndexDiffData indexDiffData;
+
+		RepositoryDecorationData(Repository repository) throws IOException {
+			repositoryName = getRepositoryName(repository);
+			branch = getShortBranch(repository);
+			indexDiffData = org.eclipse.egit.core.Activator.getDefault()
+					.getIndexDiffCache().getIndexDiffCacheEntry(repository)
+					.getIndexDiff();
+		}
+	}
+
 	/**
 	 * Creates a temporary decoratable resource for the given project
 	 *
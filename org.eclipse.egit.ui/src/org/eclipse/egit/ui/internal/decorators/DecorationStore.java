@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.ui.internal.decorators;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * In-memory store of the decorations computed by the
+ * {@link GitLightweightDecorator}
+ * <p>
+ * Decorations are stored per repository, repository relative path and
+ * resource type, since a nested project and the folder at the same location
+ * are decorated differently. Each repository has a generation counter which is
+ * incremented whenever all of its decorations become outdated, e.g. after the
+ * index diff was reloaded. Single paths are invalidated together with their
+ * ancestors, so that a change of one file does not outdate the decorations of
+ * unrelated resources.
+ * <p>
+ * Outdated decorations are kept since they are still shown until the new
+ * decoration is computed. At most {@link #MAX_ENTRIES} decorations are kept per
+ * repository, the least recently used ones are dropped first. Decorations of
+ * removed resources are dropped when the removal is reported.
+ */
+class DecorationStore {
+
+	static final int MAX_ENTRIES = 20000;
+
+	private static final int[] TYPES = { IResource.FILE, IResource.FOLDER,
+			IResource.PROJECT };
+
+	/**
+	 * Result of a lookup in the store
+	 */
+	static class Decoration {
+
+		/**
+		 * the stored decoratable resource or <code>null</code> if the resource
+		 * cannot be decorated
+		 */
+		final IDecoratableResource decoratableResource;
+
+		/**
+		 * <code>true</code> if the decoration is up-to-date
+		 */
+		final boolean upToDate;
+
+		Decoration(IDecoratableResource decoratableResource, boolean upToDate) {
+			this.decoratableResource = decoratableResource;
+			this.upToDate = upToDate;
+		}
+	}
+
+	private static class Entry {
+		final IDecoratableResource decoratableResource;
+
+		final long generation;
+
+		boolean stale;
+
+		Entry(IDecoratableResource decoratableResource, long generation,
+				boolean stale) {
+			this.decoratableResource = decoratableResource;
+			this.generation = generation;
+			this.stale = stale;
+		}
+	}
+
+	private static class Key {
+		final String path;
+
+		final int type;
+
+		Key(String path, int type) {
+			this.path = path;
+			this.type = type;
+		}
+
+		@Override
+		public int hashCode() {
+			return path.hashCode() * 31 + type;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return type == other.type && path.equals(other.path);
+		}
+	}
+
+	private static class RepositoryDecorations {
+		long generation;
+
+		/**
+		 * Incremented on every invalidation. Used to detect decorations which
+		 * were computed while the decorations of the repository were
+		 * invalidated.
+		 */
+		long modificationCount;
+
+		final Map<Key, Entry> entries;
+
+		RepositoryDecorations(final int maxEntries) {
+			entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+					return size() > maxEntries;
+				}
+			};
+		}
+	}
+
+	private final int maxEntries;
+
+	private final Map<Repository, RepositoryDecorations> repositories = new WeakHashMap<Repository, RepositoryDecorations>();
+
+	DecorationStore() {
+		this(MAX_ENTRIES);
+	}
+
+	/**
+	 * @param maxEntries
+	 *            the maximum number of decorations kept per repository
+	 */
+	DecorationStore(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * @param repository
+	 * @return the current modification count of the repository, to be passed
+	 *         to {@link #put(Repository, String, int, IDecoratableResource, long)}
+	 *         when the decoration is computed
+	 */
+	synchronized long getModificationCount(Repository repository) {
+		// invalidations before the first decoration is stored must count
+		return getDecorations(repository).modificationCount;
+	}
+
+	/**
+	 * @param repository
+	 * @param path
+	 *            repository relative path of the resource
+	 * @param type
+	 *            the type of the resource
+	 * @return the stored decoration or <code>null</code> if none is stored
+	 */
+	synchronized Decoration get(Repository repository, String path, int type) {
+		RepositoryDecorations decorations = repositories.get(repository);
+		if (decorations == null)
+			return null;
+		Entry entry = decorations.entries.get(new Key(path, type));
+		if (entry == null)
+			return null;
+		return new Decoration(entry.decoratableResource, !entry.stale
+				&& entry.generation == decorations.generation);
+	}
+
+	/**
+	 * Stores a decoration
+	 *
+	 * @param repository
+	 * @param path
+	 *            repository relative path of the resource
+	 * @param type
+	 *            the type of the resource
+	 * @param decoratableResource
+	 *            the decoratable resource or <code>null</code> if the resource
+	 *            cannot be decorated
+	 * @param computedAt
+	 *            the modification count of the repository obtained before the
+	 *            decoration was computed. If the decorations of the repository
+	 *            were invalidated in the meantime the decoration is stored as
+	 *            outdated.
+	 */
+	synchronized void put(Repository repository, String path, int type,
+			IDecoratableResource decoratableResource, long computedAt) {
+		RepositoryDecorations decorations = getDecorations(repository);
+		decorations.entries.put(new Key(path, type), new Entry(
+				decoratableResource, decorations.generation,
+				computedAt != decorations.modificationCount));
+	}
+
+	private RepositoryDecorations getDecorations(Repository repository) {
+		RepositoryDecorations decorations = repositories.get(repository);
+		if (decorations == null) {
+			decorations = new RepositoryDecorations(maxEntries);
+			repositories.put(repository, decorations);
+		}
+		return decorations;
+	}
+
+	/**
+	 * Outdates all decorations of the given repository
+	 *
+	 * @param repository
+	 */
+	synchronized void invalidate(Repository repository) {
+		RepositoryDecorations decorations = repositories.get(repository);
+		if (decorations != null) {
+			decorations.modificationCount++;
+			decorations.generation++;
+		}
+	}
+
+	/**
+	 * Outdates the decorations of the given path and its ancestors
+	 *
+	 * @param repository
+	 * @param path
+	 *            repository relative path
+	 * @param container
+	 *            <code>true</code> if the path denotes a folder; the
+	 *            decorations of all resources below are outdated as well
+	 */
+	synchronized void invalidate(Repository repository, String path,
+			boolean container) {
+		RepositoryDecorations decorations = repositories.get(repository);
+		if (decorations == null)
+			return;
+		decorations.modificationCount++;
+		outdate(decorations, path);
+		if (container) {
+			String prefix = path.length() == 0 ? "" : path + '/'; //$NON-NLS-1$
+			for (Map.Entry<Key, Entry> e : decorations.entries.entrySet())
+				if (e.getKey().path.startsWith(prefix))
+					e.getValue().stale = true;
+		}
+	}
+
+	private static void outdate(RepositoryDecorations decorations, String path) {
+		String current = path;
+		while (true) {
+			for (int type : TYPES) {
+				Entry entry = decorations.entries.get(new Key(current, type));
+				if (entry != null)
+					entry.stale = true;
+			}
+			if (current.length() == 0)
+				break;
+			int slash = current.lastIndexOf('/');
+			current = slash < 0 ? "" : current.substring(0, slash); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Drops the decorations of the given path, and outdates the decorations of
+	 * its ancestors
+	 *
+	 * @param repository
+	 * @param path
+	 *            repository relative path of a removed resource
+	 * @param container
+	 *            <code>true</code> if the path denotes a folder; the
+	 *            decorations of all resources below are dropped as well
+	 */
+	synchronized void remove(Repository repository, String path,
+			boolean container) {
+		RepositoryDecorations decorations = repositories.get(repository);
+		if (decorations == null)
+			return;
+		decorations.modificationCount++;
+		for (int type : TYPES)
+			decorations.entries.remove(new Key(path, type));
+		if (container) {
+			String prefix = path.length() == 0 ? "" : path + '/'; //$NON-NLS-1$
+			Iterator<Key> keys = decorations.entries.keySet().iterator();
+			while (keys.hasNext())
+				if (keys.next().path.startsWith(prefix))
+					keys.remove();
+		}
+		outdate(decorations, path);
+	}
+
+	/**
+	 * Outdates all decorations of all repositories
+	 */
+	synchronized void invalidateAll() {
+		for (RepositoryDecorations decorations : repositories.values()) {
+			decorations.modificationCount++;
+			decorations.generation++;
+		}
+	}
+
+	/**
+	 * Removes all stored decorations
+	 */
+	synchronized void clear() {
+		repositories.clear();
+	}
+}
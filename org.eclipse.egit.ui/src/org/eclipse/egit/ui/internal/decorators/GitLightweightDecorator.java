@@ -17,18 +17,18 @@
 package org.eclipse.egit.ui.internal.decorators;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.IWorkspaceRoot;
-import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.resources.mapping.ResourceMapping;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IAdaptable;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.QualifiedName;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.egit.core.internal.indexdiff.IndexDiffChangedListener;
@@ -80,17 +80,10 @@ public class GitLightweightDecorator extends LabelProvider implements
 	 */
 	public static final String DECORATOR_ID = "org.eclipse.egit.ui.internal.decorators.GitLightweightDecorator"; //$NON-NLS-1$
 
-	private static final QualifiedName REFRESH_KEY = new QualifiedName(
-			Activator.getPluginId(), "refresh"); //$NON-NLS-1$
-
-	private static final QualifiedName REFRESHED_KEY = new QualifiedName(
-			Activator.getPluginId(), "refreshed"); //$NON-NLS-1$
-
-	private static final QualifiedName DECORATABLE_RESOURCE_KEY = new QualifiedName(
-			Activator.getPluginId(), "decoratableResource"); //$NON-NLS-1$
-
-	private static final QualifiedName NOT_DECORATABLE_KEY = new QualifiedName(
-			Activator.getPluginId(), "notDecoratable"); //$NON-NLS-1$
+	/**
+	 * Decorations computed so far
+	 */
+	private final DecorationStore store = new DecorationStore();
 
 	/**
 	 * Collector for keeping the error view from filling up with exceptions
@@ -157,6 +150,7 @@ public void dispose() {
 		TeamUI.removePropertyChangeListener(this);
 		Activator.removePropertyChangeListener(this);
 		org.eclipse.egit.core.Activator.getDefault().getIndexDiffCache().removeIndexDiffChangedListener(this);
+		store.clear();
 	}
 
 	/**
@@ -196,41 +190,36 @@ public void decorate(Object element, IDecoration decoration) {
 		if (mapping == null)
 			return;
 
+		// Cannot decorate linked resources
+		final String repoRelativePath = mapping.getRepoRelativePath(resource);
+		if (repoRelativePath == null)
+			return;
+		final Repository repository = mapping.getRepository();
+		if (repository == null)
+			return;
+
 		IDecoratableResource decoratableResource = null;
 		final DecorationHelper helper = new DecorationHelper(
 				activator.getPreferenceStore());
 
-		// Step 2: Read session properties
+		// Step 2: Read decoration store
 
-		try {
-			final Boolean notDecoratable = (Boolean) resource
-					.getSessionProperty(NOT_DECORATABLE_KEY);
-			if (notDecoratable != null && notDecoratable.equals(Boolean.TRUE))
+		final DecorationStore.Decoration stored = store.get(repository,
+				repoRelativePath, resource.getType());
+		if (stored != null) {
+			if (stored.decoratableResource == null && stored.upToDate)
 				// Step 2a: Return - resource is not decoratable
 				return;
 
-			decoratableResource = (IDecoratableResource) resource
-					.getSessionProperty(DECORATABLE_RESOURCE_KEY);
-			if (decoratableResource != null) {
-				final Long refreshed = (Long) resource
-						.getSessionProperty(REFRESHED_KEY);
-				if (refreshed != null) {
-					final Long refresh = (Long) resource.getWorkspace()
-							.getRoot().getSessionProperty(REFRESH_KEY);
-					if (refresh == null
-							|| refresh.longValue() <= refreshed.longValue()) {
-						// Condition: Stored decoratable resource exists and is
-						// up-to-date
-						//
-						// Step 2b: Apply stored decoratable resource and return
-						helper.decorate(decoration, decoratableResource);
-						return;
-					}
-				}
+			decoratableResource = stored.decoratableResource;
+			if (decoratableResource != null && stored.upToDate) {
+				// Condition: Stored decoratable resource exists and is
+				// up-to-date
+				//
+				// Step 2b: Apply stored decoratable resource and return
+				helper.decorate(decoration, decoratableResource);
+				return;
 			}
-		} catch (CoreException e) {
-			handleException(resource, e);
-			return;
 		}
 
 		// Condition: Stored decoratable resource either not exists or is
@@ -243,10 +232,6 @@ public void decorate(Object element, IDecoration decoration) {
 				&& Team.isIgnoredHint(resource))
 			return;
 
-		// Cannot decorate linked resources
-		if (mapping.getRepoRelativePath(resource) == null)
-			return;
-
 		// Step 4: For project nodes only: create temporary decoratable resource
 		if (resource.getType() == IResource.PROJECT) {
 			try {
@@ -297,45 +282,50 @@ private void prepareDecoration(final Object[] elements) throws IOException {
 			return;
 
 		final IResource[] resources = new IResource[elements.length];
+		final RepositoryMapping[] mappings = new RepositoryMapping[elements.length];
+		final long[] computedAt = new long[elements.length];
 		for (int i = 0; i < elements.length; i++) {
-			if (elements[i] != null)
-				resources[i] = getResource(elements[i]);
+			if (elements[i] == null)
+				continue;
+			resources[i] = getResource(elements[i]);
+			if (resources[i] == null)
+				continue;
+			mappings[i] = RepositoryMapping.getMapping(resources[i]);
+			if (mappings[i] != null && mappings[i].getRepository() != null)
+				computedAt[i] = store.getModificationCount(mappings[i]
+						.getRepository());
 		}
 
 		// Calculate resource decorations
 		IDecoratableResource[] decoratableResources = DecoratableResourceHelper
 				.createDecoratableResources(resources);
+		if (decoratableResources == null)
+			return;
 
-		// Store decoration result in session property for each resource
+		// Store decoration result for each resource
 		for (int i = 0; i < decoratableResources.length; i++) {
-			try {
-				if (decoratableResources[i] != null) {
-					// Store decoratable resource in session
-					resources[i].setSessionProperty(DECORATABLE_RESOURCE_KEY,
-							decoratableResources[i]);
-					// Set (new) 'refreshed' timestamp
-					resources[i].setSessionProperty(REFRESHED_KEY,
-							Long.valueOf(System.currentTimeMillis()));
-				} else {
-					if (resources[i] != null) {
-						// Set 'notDecoratable' session property
-						resources[i].setSessionProperty(NOT_DECORATABLE_KEY,
-								Boolean.TRUE);
-						if (GitTraceLocation.DECORATION.isActive())
-							GitTraceLocation
-									.getTrace()
-									.trace(GitTraceLocation.DECORATION
-											.getLocation(),
-											"Could not decorate resource: " + resources[i].getFullPath()); //$NON-NLS-1$
-					}
-				}
-			} catch (CoreException e) {
-				handleException(resources[i], e);
-			}
+			if (resources[i] == null)
+				continue;
+			final RepositoryMapping mapping = mappings[i];
+			if (mapping == null || mapping.getRepository() == null)
+				continue;
+			final String repoRelativePath = mapping
+					.getRepoRelativePath(resources[i]);
+			if (repoRelativePath == null)
+				continue;
+			store.put(mapping.getRepository(), repoRelativePath,
+					resources[i].getType(), decoratableResources[i],
+					computedAt[i]);
+			if (decoratableResources[i] == null
+					&& GitTraceLocation.DECORATION.isActive())
+				GitTraceLocation.getTrace().trace(
+						GitTraceLocation.DECORATION.getLocation(),
+						"Could not decorate resource: " + resources[i].getFullPath()); //$NON-NLS-1$
 		}
 
-		// Immediately fire label provider changed event
-		fireLabelEvent();
+		// Immediately fire label provider changed event for the decorated
+		// elements
+		fireLabelEvent(elements);
 	}
 
 	/**
@@ -669,7 +659,33 @@ public void propertyChange(PropertyChangeEvent event) {
 
 	public void indexDiffChanged(Repository repository,
 			IndexDiffData indexDiffData) {
-		postLabelEvent();
+		final Collection<IResource> changedResources = indexDiffData
+				.getChangedResources();
+		if (changedResources == null) {
+			// Full reload: all decorations of the repository are outdated
+			store.invalidate(repository);
+			LabelEventJob.getInstance().postLabelEvent(this);
+			return;
+		}
+		final Set<IResource> affectedResources = new HashSet<IResource>();
+		for (IResource resource : changedResources) {
+			final RepositoryMapping mapping = RepositoryMapping
+					.getMapping(resource);
+			if (mapping == null)
+				continue;
+			final String path = mapping.getRepoRelativePath(resource);
+			final boolean container = resource.getType() != IResource.FILE;
+			if (path != null && !resource.exists())
+				store.remove(repository, path, container);
+			else if (path != null)
+				store.invalidate(repository, path, container);
+			// The decorations of the parents depend on their children
+			IResource current = resource;
+			while (current != null && current.getType() != IResource.ROOT
+					&& affectedResources.add(current))
+				current = current.getParent();
+		}
+		LabelEventJob.getInstance().postLabelEvent(this, affectedResources);
 	}
 
 	// -------- Helper methods --------
@@ -705,24 +721,23 @@ private static IResource getResource(Object actElement) {
 	 * <code>postLabelEvent(null, true)</code>.
 	 */
 	private void postLabelEvent() {
-		final IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-
 		// Invalidate all decorations
-		try {
-			// Set (new) 'refresh' timestamp
-			root.setSessionProperty(REFRESH_KEY,
-					Long.valueOf(System.currentTimeMillis()));
-		} catch (CoreException e) {
-			handleException(root, e);
-		}
+		store.invalidateAll();
 
 		// Post label event to LabelEventJob
 		LabelEventJob.getInstance().postLabelEvent(this);
 	}
 
-	void fireLabelEvent() {
-		final LabelProviderChangedEvent event = new LabelProviderChangedEvent(
-				this);
+	/**
+	 * Fires a label provider changed event in the UI thread
+	 *
+	 * @param elements
+	 *            the elements whose decoration changed or <code>null</code>
+	 *            if all decorations shall be refreshed
+	 */
+	void fireLabelEvent(final Object[] elements) {
+		final LabelProviderChangedEvent event = elements == null ? new LabelProviderChangedEvent(
+				this) : new LabelProviderChangedEvent(this, elements);
 		// Re-trigger decoration process (in UI thread)
 		Display.getDefault().asyncExec(new Runnable() {
 			public void run() {
@@ -773,18 +788,54 @@ private LabelEventJob(final String name) {
 		super(name);
 	}
 
+	/**
+	 * Maximum number of elements of a targeted label event. If more elements
+	 * changed a generic label event is fired instead.
+	 */
+	private static final int MAX_ELEMENTS = 1000;
+
 	private GitLightweightDecorator glwDecorator = null;
 
+	private final Set<Object> elements = new HashSet<Object>();
+
+	private boolean refreshAll = false;
+
 	/**
-	 * Post a label event
+	 * Post a generic label event invalidating all decorations
 	 *
 	 * @param decorator
 	 *            The GitLightweightDecorator that is used to fire a
 	 *            LabelProviderChangedEvent
 	 */
 	void postLabelEvent(final GitLightweightDecorator decorator) {
+		postLabelEvent(decorator, null);
+	}
+
+	/**
+	 * Post a label event for the given elements. Events posted within a short
+	 * period of time are combined into one event.
+	 *
+	 * @param decorator
+	 *            The GitLightweightDecorator that is used to fire a
+	 *            LabelProviderChangedEvent
+	 * @param changedElements
+	 *            the elements whose decoration changed or <code>null</code>
+	 *            if all decorations shall be refreshed
+	 */
+	synchronized void postLabelEvent(final GitLightweightDecorator decorator,
+			final Collection<?> changedElements) {
 		if (this.glwDecorator == null)
 			this.glwDecorator = decorator;
+		if (changedElements == null) {
+			refreshAll = true;
+			elements.clear();
+		} else if (!refreshAll) {
+			elements.addAll(changedElements);
+			if (elements.size() > MAX_ELEMENTS) {
+				refreshAll = true;
+				elements.clear();
+			}
+		}
 		if (getState() == SLEEPING || getState() == WAITING)
 			cancel();
 		schedule(DELAY);
@@ -792,8 +843,17 @@ void postLabelEvent(final GitLightweightDecorator decorator) {
 
 	@Override
 	protected IStatus run(IProgressMonitor monitor) {
+		final Object[] changedElements;
+		synchronized (this) {
+			if (!refreshAll && elements.isEmpty())
+				return Status.OK_STATUS;
+			changedElements = refreshAll ? null : elements
+					.toArray(new Object[elements.size()]);
+			refreshAll = false;
+			elements.clear();
+		}
 		if (glwDecorator != null)
-			glwDecorator.fireLabelEvent();
+			glwDecorator.fireLabelEvent(changedElements);
 		return Status.OK_STATUS;
 	}
 }
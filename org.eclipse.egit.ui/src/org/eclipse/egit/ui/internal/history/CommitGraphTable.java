@@ -18,8 +18,10 @@
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.core.commands.Command;
@@ -52,6 +54,8 @@
 import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.jface.viewers.TableLayout;
 import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectIdSubclassMap;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revplot.PlotCommit;
@@ -132,10 +136,14 @@ static Font highlightFont() {
 
 	private final Color infoBackgroundColor;
 
+	private final GraphContentProvider contentProvider;
+
 	private SWTCommitList allCommits;
 
-	// used for resolving PlotCommit objects by ids
-	private HashMap<String, PlotCommit> commitsMap = null;
+	private int commitCount;
+
+	// used for resolving commits shown in the table by ids
+	private ObjectIdSubclassMap<SWTCommit> commitsMap = null;
 
 	private RevFlag highlight;
 
@@ -169,6 +177,7 @@ static Font highlightFont() {
 		createColumns(rawTable, layout);
 		createPaintListener(rawTable);
 
+		contentProvider = new GraphContentProvider();
 		table = new TableViewer(rawTable) {
 			protected Widget doFindItem(final Object element) {
 				return element != null ? ((SWTCommit) element).widget : null;
@@ -177,12 +186,23 @@ protected Widget doFindItem(final Object element) {
 			protected void mapElement(final Object element, final Widget item) {
 				((SWTCommit) element).widget = item;
 			}
+
+			protected List getSelectionFromWidget() {
+				// selected items which were never shown have no data yet
+				int[] indices = getTable().getSelectionIndices();
+				List<SWTCommit> selection = new ArrayList<SWTCommit>(
+						indices.length);
+				for (int index : indices)
+					if (index < commitCount)
+						selection.add(contentProvider.getCommit(index));
+				return selection;
+			}
 		};
 
 		graphLabelProvider = new GraphLabelProvider();
 
 		table.setLabelProvider(graphLabelProvider);
-		table.setContentProvider(new GraphContentProvider());
+		table.setContentProvider(contentProvider);
 		renderer = new SWTPlotRenderer(rawTable.getDisplay());
 
 		clipboard = new Clipboard(rawTable.getDisplay());
@@ -361,14 +381,14 @@ void selectCommitStored(final RevCommit c) {
 		selectCommit(c);
 	}
 
-	void selectCommit(final RevCommit c) {
-		if (c instanceof PlotCommit) {
-			table.setSelection(new StructuredSelection(c), true);
-		} else if (commitsMap != null) {
-			PlotCommit swtCommit = commitsMap.get(c.getId().name());
-			if (swtCommit != null) {
-				table.setSelection(new StructuredSelection(swtCommit), true);
-			}
+	void selectCommit(final AnyObjectId id) {
+		if (commitsMap == null)
+			return;
+		SWTCommit swtCommit = commitsMap.get(id);
+		if (swtCommit != null) {
+			// create the item so that the viewer need not search for it
+			table.replace(swtCommit, swtCommit.index);
+			table.setSelection(new StructuredSelection(swtCommit), true);
 		}
 	}
 
@@ -409,22 +429,55 @@ private void doCopy() {
 				new Transfer[] { TextTransfer.getInstance() }, DND.CLIPBOARD);
 	}
 
+	/**
+	 * Sets the commits to show. Calling this again with the same list only
+	 * appends the commits added to the list since the last call.
+	 *
+	 * @param hFlag
+	 * @param list
+	 * @param asArray
+	 *            array holding the commits of the list, may be longer than
+	 *            the list; entries below <code>count</code> must not change
+	 *            for the same list
+	 * @param count
+	 *            the number of commits to show
+	 * @param input
+	 */
 	void setInput(final RevFlag hFlag, final SWTCommitList list,
-			final SWTCommit[] asArray, HistoryPageInput input) {
+			final SWTCommit[] asArray, final int count, HistoryPageInput input) {
 		setHistoryPageInput(input);
 		final SWTCommitList oldList = allCommits;
 		highlight = hFlag;
 		allCommits = list;
-		table.setInput(asArray);
-		if (asArray != null && asArray.length > 0) {
-			if (oldList != list) {
-				initCommitsMap();
-			}
+		SWTCommit oldTop = null;
+		if (oldList != list || commitsMap == null) {
+			// keep the rows shown if only new commits were added on top
+			int top = table.getTable().getTopIndex();
+			if (commitsMap != null && top > 0 && top < commitCount)
+				oldTop = contentProvider.getCommit(top);
+			commitsMap = new ObjectIdSubclassMap<SWTCommit>();
+			commitCount = 0;
+			table.setInput(asArray);
 		} else {
-			table.getTable().deselectAll();
+			contentProvider.setCommits(asArray);
+			// lanes of rows already shown may have been extended
+			table.getTable().redraw();
 		}
+		for (int i = commitCount; i < count; i++) {
+			asArray[i].index = i;
+			commitsMap.add(asArray[i]);
+		}
+		commitCount = count;
+		table.setItemCount(count);
+		if (count == 0)
+			table.getTable().deselectAll();
 		if (commitToShow != null)
 			selectCommit(commitToShow);
+		if (oldTop != null) {
+			SWTCommit top = commitsMap.get(oldTop);
+			if (top != null)
+				table.getTable().setTopIndex(top.index);
+		}
 	}
 
 	void setHistoryPageInput(HistoryPageInput input) {
@@ -433,17 +486,6 @@ void setHistoryPageInput(HistoryPageInput input) {
 			menuListener.setInput(input);
 	}
 
-	private void initCommitsMap() {
-		commitsMap = new HashMap<String, PlotCommit>();
-		// ensure that filling (GenerateHistoryJob) and reading (here)
-		// the commit list is thread safe
-		synchronized (allCommits) {
-			for (PlotCommit commit : allCommits)
-				if (commit != null)
-					commitsMap.put(commit.getId().name(), commit);
-		}
-	}
-
 	private void createColumns(final Table rawTable, final TableLayout layout) {
 		final TableColumn graph = new TableColumn(rawTable, SWT.NONE);
 		graph.setResizable(true);
@@ -501,6 +543,8 @@ void doPaint(final Event event) {
 			event.gc.setFont(nFont);
 
 		if (event.index == 0) {
+			// the lanes may be extended concurrently by GenerateHistoryJob,
+			// see there
 			renderer.paint(event, input == null ? null : input.getHead());
 			return;
 		}
@@ -22,16 +22,20 @@
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.egit.core.internal.CompareCoreUtils;
+import org.eclipse.egit.core.internal.graph.NearestTagIndex;
+import org.eclipse.egit.core.internal.graph.ReachabilityIndex;
 import org.eclipse.egit.ui.Activator;
 import org.eclipse.egit.ui.UIPreferences;
 import org.eclipse.egit.ui.UIText;
@@ -48,7 +52,6 @@
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revplot.PlotCommit;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.SWT;
@@ -85,6 +88,8 @@ public class CommitInfoBuilder {
 
 	private Color linesRemovedColor;
 
+	private boolean complete = true;
+
 	/**
 	 * @param db the repository
 	 * @param commit the commit the info should be shown for
@@ -182,8 +187,14 @@ public String format(final List<StyleRange> styles,
 			d.append(LF);
 		}
 
-		List<Ref> branches = getBranches();
-		if (!branches.isEmpty()) {
+		List<Ref> branches = getBranches(monitor);
+		if (branches == null) {
+			complete = false;
+			d.append(UIText.CommitMessageViewer_branches);
+			d.append(": "); //$NON-NLS-1$
+			d.append(UIText.CommitMessageViewer_BranchesPending);
+			d.append(LF);
+		} else if (!branches.isEmpty()) {
 			d.append(UIText.CommitMessageViewer_branches);
 			d.append(": "); //$NON-NLS-1$
 			for (Iterator<Ref> i = branches.iterator(); i.hasNext();) {
@@ -215,34 +226,46 @@ public String format(final List<StyleRange> styles,
 
 		if (Activator.getDefault().getPreferenceStore().getBoolean(
 				UIPreferences.HISTORY_SHOW_TAG_SEQUENCE)) {
-			try {
-				monitor.setTaskName(UIText.CommitMessageViewer_GettingPreviousTagTaskName);
-				Ref followingTag = getNextTag(false, monitor);
-				if (followingTag != null) {
-					d.append(UIText.CommitMessageViewer_follows);
-					d.append(": "); //$NON-NLS-1$
-					RevCommit p = new RevWalk(db).parseCommit(followingTag
-							.getObjectId());
-					addLink(d, formatTagRef(followingTag), styles, p);
-					d.append(LF);
+			if (!isTagIndexBuilt()) {
+				complete = false;
+				d.append(UIText.CommitMessageViewer_follows);
+				d.append(": "); //$NON-NLS-1$
+				d.append(UIText.CommitMessageViewer_TagsPending);
+				d.append(LF);
+				d.append(UIText.CommitMessageViewer_precedes);
+				d.append(": "); //$NON-NLS-1$
+				d.append(UIText.CommitMessageViewer_TagsPending);
+				d.append(LF);
+			} else {
+				try {
+					monitor.setTaskName(UIText.CommitMessageViewer_GettingPreviousTagTaskName);
+					Ref followingTag = getNextTag(false, monitor);
+					if (followingTag != null) {
+						d.append(UIText.CommitMessageViewer_follows);
+						d.append(": "); //$NON-NLS-1$
+						RevCommit p = new RevWalk(db).parseCommit(followingTag
+								.getObjectId());
+						addLink(d, formatTagRef(followingTag), styles, p);
+						d.append(LF);
+					}
+				} catch (IOException e) {
+					Activator.logError(e.getMessage(), e);
 				}
-			} catch (IOException e) {
-				Activator.logError(e.getMessage(), e);
-			}
 
-			try {
-				monitor.setTaskName(UIText.CommitMessageViewer_GettingNextTagTaskName);
-				Ref precedingTag = getNextTag(true, monitor);
-				if (precedingTag != null) {
-					d.append(UIText.CommitMessageViewer_precedes);
-					d.append(": "); //$NON-NLS-1$
-					RevCommit p = new RevWalk(db).parseCommit(precedingTag
-							.getObjectId());
-					addLink(d, formatTagRef(precedingTag), styles, p);
-					d.append(LF);
+				try {
+					monitor.setTaskName(UIText.CommitMessageViewer_GettingNextTagTaskName);
+					Ref precedingTag = getNextTag(true, monitor);
+					if (precedingTag != null) {
+						d.append(UIText.CommitMessageViewer_precedes);
+						d.append(": "); //$NON-NLS-1$
+						RevCommit p = new RevWalk(db).parseCommit(precedingTag
+								.getObjectId());
+						addLink(d, formatTagRef(precedingTag), styles, p);
+						d.append(LF);
+					}
+				} catch (IOException e) {
+					Activator.logError(e.getMessage(), e);
 				}
-			} catch (IOException e) {
-				Activator.logError(e.getMessage(), e);
 			}
 		}
 
@@ -295,10 +318,39 @@ private void addLink(final StringBuilder d, final List<StyleRange> styles,
 	}
 
 	/**
-	 * @return List of heads from those current commit is reachable
+	 * @return <code>false</code> if parts of the last formatted info were
+	 *         still being computed
 	 */
-	private List<Ref> getBranches() {
-		RevWalk revWalk = new RevWalk(db);
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * @return <code>true</code> if the following and preceding tags can be
+	 *         looked up without walking the history of all tags
+	 */
+	private boolean isTagIndexBuilt() {
+		NearestTagIndex index = NearestTagIndex.getIndex(db);
+		if (index.isBuilt())
+			return true;
+		// built by the commit graph update job, like the branches
+		index.requestBuild();
+		return false;
+	}
+
+	/**
+	 * @param monitor
+	 * @return List of heads from those current commit is reachable, or
+	 *         <code>null</code> if they are still being computed
+	 */
+	private List<Ref> getBranches(IProgressMonitor monitor) {
+		ReachabilityIndex index = ReachabilityIndex.getIndex(db);
+		if (!index.isBuilt()) {
+			// building the index walks the whole history, it is built by
+			// the commit graph update job
+			index.requestBuild();
+			return null;
+		}
 		List<Ref> result = new ArrayList<Ref>();
 
 		try {
@@ -307,17 +359,11 @@ private List<Ref> getBranches() {
 			// add remote heads to search
 			refsMap.putAll(db.getRefDatabase().getRefs(Constants.R_REMOTES));
 
-			for (Ref ref : refsMap.values()) {
-				RevCommit headCommit = revWalk.parseCommit(ref.getObjectId());
-				// the base RevCommit also must be allocated using same RevWalk
-				// instance,
-				// otherwise isMergedInto returns wrong result!
-				RevCommit base = revWalk.parseCommit(commit);
-
-				if (revWalk.isMergedInto(base, headCommit))
-					result.add(ref); // commit is reachable
-				// from this head
-			}
+			Set<String> containing = new HashSet<String>(
+					index.getRefsContaining(commit, monitor));
+			for (Ref ref : refsMap.values())
+				if (containing.contains(ref.getName()))
+					result.add(ref); // commit is reachable from this head
 		} catch (IOException e) {
 			// skip exception
 		}
@@ -525,59 +571,15 @@ private Ref getNextTag(boolean searchDescendant, IProgressMonitor monitor)
 			throws IOException, OperationCanceledException {
 		if (monitor.isCanceled())
 			throw new OperationCanceledException();
-		RevWalk revWalk = new RevWalk(db);
-
-		Map<String, Ref> tagsMap = db.getTags();
-		Ref tagRef = null;
-
-		for (Ref ref : tagsMap.values()) {
-			if (monitor.isCanceled())
-				throw new OperationCanceledException();
-			// both RevCommits must be allocated using same RevWalk instance,
-			// otherwise isMergedInto returns wrong result!
-			RevCommit current = revWalk.parseCommit(commit);
-			// tags can point to any object, we only want tags pointing at
-			// commits
-			RevObject any = revWalk.peel(revWalk.parseAny(ref.getObjectId()));
-			if (!(any instanceof RevCommit))
-				continue;
-			RevCommit newTag = (RevCommit) any;
-			if (newTag.getId().equals(commit))
-				continue;
-
-			// check if newTag matches our criteria
-			if (isMergedInto(revWalk, newTag, current, searchDescendant)) {
-				if (monitor.isCanceled())
-					throw new OperationCanceledException();
-				if (tagRef != null) {
-					RevCommit oldTag = revWalk
-							.parseCommit(tagRef.getObjectId());
-
-					// both oldTag and newTag satisfy search criteria, so taking
-					// the closest one
-					if (isMergedInto(revWalk, oldTag, newTag, searchDescendant))
-						tagRef = ref;
-				} else
-					tagRef = ref;
-			}
-		}
-		return tagRef;
-	}
-
-	/**
-	 * @param rw
-	 * @param base
-	 * @param tip
-	 * @param swap
-	 *            if <code>true</code>, base and tip arguments are swapped
-	 * @return <code>true</code> if there is a path directly from tip to base
-	 *         (and thus base is fully merged into tip); <code>false</code>
-	 *         otherwise.
-	 * @throws IOException
-	 */
-	private boolean isMergedInto(final RevWalk rw, final RevCommit base,
-			final RevCommit tip, boolean swap) throws IOException {
-		return !swap ? rw.isMergedInto(base, tip) : rw.isMergedInto(tip, base);
+		NearestTagIndex index = NearestTagIndex.getIndex(db);
+		String tagName;
+		if (searchDescendant)
+			tagName = index.getNextTag(commit, monitor);
+		else
+			tagName = index.getPreviousTag(commit, monitor);
+		if (tagName == null)
+			return null;
+		return db.getTags().get(tagName.substring(Constants.R_TAGS.length()));
 	}
 
 }
@@ -15,10 +15,15 @@
 import java.util.ArrayList;
 import java.util.List;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.ListenerList;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.IJobChangeEvent;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.eclipse.egit.core.internal.graph.NearestTagIndex;
+import org.eclipse.egit.core.internal.graph.ReachabilityIndex;
 import org.eclipse.egit.ui.Activator;
 import org.eclipse.egit.ui.UIPreferences;
 import org.eclipse.egit.ui.UIText;
@@ -238,12 +243,51 @@ public void run() {
 								.getCommitInfo()));
 						text.setStyleRanges(job.getFormatResult()
 								.getStyleRange());
+						if (!job.getFormatResult().isComplete())
+							formatWhenIndexesBuilt();
 					}
 				});
 			}
 		});
 	}
 
+	private void formatWhenIndexesBuilt() {
+		final PlotCommit<?> formatted = commit;
+		final Repository repository = getRepository();
+		Job job = new Job(UIText.FormatJob_buildingCommitInfo) {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				try {
+					// the branches and tags are computed by the commit graph
+					// job
+					Job.getJobManager().join(
+							org.eclipse.egit.core.JobFamilies.COMMIT_GRAPH_UPDATE,
+							monitor);
+				} catch (InterruptedException e) {
+					return Status.CANCEL_STATUS;
+				}
+				if (!ReachabilityIndex.getIndex(repository).isBuilt())
+					return Status.OK_STATUS;
+				if (Activator.getDefault().getPreferenceStore().getBoolean(
+						UIPreferences.HISTORY_SHOW_TAG_SEQUENCE)
+						&& !NearestTagIndex.getIndex(repository).isBuilt())
+					return Status.OK_STATUS;
+				final StyledText text = getTextWidget();
+				if (text == null || text.isDisposed())
+					return Status.OK_STATUS;
+				text.getDisplay().asyncExec(new Runnable() {
+					public void run() {
+						if (!text.isDisposed() && commit == formatted)
+							format();
+					}
+				});
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.schedule();
+	}
+
 	@Override
 	protected void handleDispose() {
 		if (formatJob != null) {
@@ -199,7 +199,8 @@ private void updateUi() {
 				.toString()));
 		setMessage(UIText.CommitSelectionDialog_DialogMessage);
 		table.setInput(highlightFlag, allCommits, allCommits
-				.toArray(new SWTCommit[allCommits.size()]), null);
+				.toArray(new SWTCommit[allCommits.size()]), allCommits.size(),
+				null);
 	}
 
 	private void markStartAllRefs(RevWalk currentWalk, String prefix)
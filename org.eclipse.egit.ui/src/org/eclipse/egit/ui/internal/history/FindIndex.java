@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2011 SAP AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.egit.ui.internal.history;
+
+import org.eclipse.jgit.lib.PersonIdent;
+
+/**
+ * Lower-cased texts of the commits of a history list searched by the find
+ * toolbar, so that messages and identities are decoded and lower-cased once
+ * per commit instead of once per commit and search.
+ * <p>
+ * A field is only indexed once it is searched. Entries are filled lazily by
+ * the threads evaluating a search; every thread fills only the entries of
+ * the range it searches. Commits may be appended while the list is loaded.
+ */
+class FindIndex {
+
+	static final int MESSAGE = 0;
+
+	static final int AUTHOR = 1;
+
+	static final int COMMITTER = 2;
+
+	private final String[][] texts = new String[3][];
+
+	/**
+	 * Returns the lower-cased texts of a field, creating or growing the array
+	 * if needed. Must be called before a search starts its threads.
+	 *
+	 * @param field
+	 *            one of {@link #MESSAGE}, {@link #AUTHOR} or
+	 *            {@link #COMMITTER}
+	 * @param count
+	 *            number of commits in the list
+	 * @return array holding the texts indexed by the row of the commit;
+	 *         entries not yet computed are <code>null</code>
+	 */
+	synchronized String[] getTexts(final int field, final int count) {
+		final String[] old = texts[field];
+		if (old == null)
+			texts[field] = new String[count];
+		else if (old.length < count) {
+			final String[] grown = new String[Math.max(count, 2 * old.length)];
+			System.arraycopy(old, 0, grown, 0, old.length);
+			texts[field] = grown;
+		}
+		return texts[field];
+	}
+
+	/**
+	 * @param texts
+	 *            the array returned by {@link #getTexts(int, int)}
+	 * @param field
+	 * @param index
+	 *            the row of the commit
+	 * @param commit
+	 * @return the lower-cased text of a field of the commit
+	 */
+	static String getText(final String[] texts, final int field,
+			final int index, final SWTCommit commit) {
+		String text = texts[index];
+		if (text == null) {
+			text = normalize(getText(field, commit));
+			texts[index] = text;
+		}
+		return text;
+	}
+
+	private static String getText(final int field, final SWTCommit commit) {
+		switch (field) {
+		case MESSAGE:
+			return commit.getFullMessage();
+		case AUTHOR:
+			return getText(commit.getAuthorIdent());
+		default:
+			return getText(commit.getCommitterIdent());
+		}
+	}
+
+	private static String getText(final PersonIdent ident) {
+		if (ident == null)
+			return ""; //$NON-NLS-1$
+		// the find pattern is a single line, so it cannot match across the
+		// line break
+		return ident.getName() + '\n' + ident.getEmailAddress();
+	}
+
+	private static String normalize(final String text) {
+		return text != null ? text.toLowerCase() : ""; //$NON-NLS-1$
+	}
+}
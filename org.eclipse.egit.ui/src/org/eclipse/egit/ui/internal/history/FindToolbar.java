@@ -83,6 +83,12 @@ public class FindToolbar extends Composite {
 
 	private SWTCommit[] fileRevisions;
 
+	private int fileRevisionCount;
+
+	private SWTCommitList commitList;
+
+	private FindIndex findIndex;
+
 	private Text patternField;
 
 	private Button nextButton;
@@ -233,6 +239,8 @@ public void modifyText(ModifyEvent e) {
 				final FindToolbarThread finder = new FindToolbarThread();
 				finder.pattern = ((Text) e.getSource()).getText();
 				finder.fileRevisions = fileRevisions;
+				finder.fileRevisionCount = fileRevisionCount;
+				finder.index = findIndex;
 				finder.toolbar = thisToolbar;
 				finder.ignoreCase = caseItem.getSelection();
 				finder.findInCommitId = commitIdItem.getSelection();
@@ -256,6 +264,8 @@ public void handleEvent(Event event) {
 					final FindToolbarThread finder = new FindToolbarThread();
 					finder.pattern = patternField.getText();
 					finder.fileRevisions = fileRevisions;
+					finder.fileRevisionCount = fileRevisionCount;
+					finder.index = findIndex;
 					finder.toolbar = thisToolbar;
 					finder.ignoreCase = caseItem.getSelection();
 					finder.findInCommitId = commitIdItem.getSelection();
@@ -435,14 +445,25 @@ private void prefsItemChanged(int findin, MenuItem item) {
 	 *
 	 * @param hFlag
 	 * @param historyTable
+	 * @param list
+	 *            the list the commits are taken from
 	 * @param commitArray
+	 *            array holding the commits, may be longer than the list
+	 * @param commitCount
+	 *            the number of valid commits in <code>commitArray</code>
 	 */
 	void setInput(final RevFlag hFlag, final Table historyTable,
-			final SWTCommit[] commitArray) {
+			final SWTCommitList list, final SWTCommit[] commitArray,
+			final int commitCount) {
+		if (list != commitList || findIndex == null) {
+			commitList = list;
+			findIndex = new FindIndex();
+		}
 		// this may cause a FindBugs warning, but
 		// copying the array is probably not a good
 		// idea
 		this.fileRevisions = commitArray;
+		this.fileRevisionCount = commitCount;
 		this.historyTable = historyTable;
 		findResults.setHighlightFlag(hFlag);
 	}
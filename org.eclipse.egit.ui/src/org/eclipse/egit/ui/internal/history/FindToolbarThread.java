@@ -8,6 +8,19 @@
  *******************************************************************************/
 package org.eclipse.egit.ui.internal.history;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.eclipse.egit.ui.Activator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.PersonIdent;
+
 /**
  * This class executes the search function for the find toolbar. Only one thread
  * is executed at a time.
@@ -20,6 +33,11 @@
  * necessary any more, so the current thread returns.
  * </p>
  * <p>
+ * The commits are searched in chunks by a pool of worker threads using the
+ * lower-cased texts of the {@link FindIndex}. The matches of the chunks are
+ * added to the results in the order of the history table.
+ * </p>
+ * <p>
  * To avoid consuming all the memory in the system, this class limits the
  * maximum results it stores.
  * </p>
@@ -33,10 +51,18 @@ public class FindToolbarThread extends Thread {
 
 	private static final int MAX_RESULTS = 20000;
 
+	static final int CHUNK_SIZE = 4096;
+
+	private static ExecutorService workers;
+
 	String pattern;
 
 	SWTCommit[] fileRevisions;
 
+	int fileRevisionCount;
+
+	FindIndex index;
+
 	FindToolbar toolbar;
 
 	boolean ignoreCase;
@@ -69,6 +95,34 @@ public void run() {
 		}
 	}
 
+	private static synchronized ExecutorService getWorkers() {
+		if (workers == null)
+			workers = Executors.newFixedThreadPool(Runtime.getRuntime()
+					.availableProcessors(), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "history_find_worker"); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		return workers;
+	}
+
+	/**
+	 * Shuts down the worker threads, called when the plugin is stopped
+	 */
+	public static synchronized void shutdownWorkers() {
+		if (workers != null) {
+			workers.shutdownNow();
+			workers = null;
+		}
+	}
+
+	private boolean isObsolete() {
+		return currentThreadIx < globalThreadIx
+				|| (toolbar != null && toolbar.getDisplay().isDisposed());
+	}
+
 	private void execFind() {
 		// If it isn't the last event, just ignore it.
 		if (currentThreadIx < globalThreadIx) {
@@ -78,28 +132,74 @@ private void execFind() {
 		FindResults findResults = toolbar.findResults;
 		findResults.clear();
 
-		boolean maxResultsOverflow = false;
-		if (pattern.length() > 0 && fileRevisions != null) {
-			String findPattern = pattern;
-			if (ignoreCase) {
-				findPattern = pattern.toLowerCase();
+		final boolean overflow;
+		try {
+			overflow = find(findResults);
+		} catch (InterruptedException e) {
+			return;
+		}
+		// If a new find event was generated, ends the current thread.
+		if (isObsolete())
+			return;
+
+		// Updates the toolbar with the result find info.
+		toolbar.getDisplay().syncExec(new Runnable() {
+			public void run() {
+				if (toolbar.isDisposed()) {
+					return;
+				}
+				toolbar.findCompletionUpdate(pattern, overflow);
 			}
+		});
+	}
 
-			long lastUIUpdate = System.currentTimeMillis();
+	/**
+	 * Searches the revisions in chunks by the worker threads and adds the
+	 * matches to the results in the order of the revisions
+	 *
+	 * @param findResults
+	 * @return <code>true</code> if the search stopped after
+	 *         {@link #MAX_RESULTS} matches
+	 * @throws InterruptedException
+	 */
+	boolean find(FindResults findResults) throws InterruptedException {
+		boolean maxResultsOverflow = false;
+		if (pattern.length() == 0 || fileRevisions == null)
+			return false;
+		final int totalRevisions = fileRevisionCount;
+		final String[] messages = findInComments ? index.getTexts(
+				FindIndex.MESSAGE, totalRevisions) : null;
+		final String[] authors = findInAuthor ? index.getTexts(
+				FindIndex.AUTHOR, totalRevisions) : null;
+		final String[] committers = findInCommitter ? index.getTexts(
+				FindIndex.COMMITTER, totalRevisions) : null;
 
-			int totalRevisions = fileRevisions.length;
-			int totalMatches = 0;
-			boolean notFound = true;
-			for (int i = 0; i < totalRevisions; i++) {
-				// If a new find event was generated, ends the current thread.
-				if (toolbar.getDisplay().isDisposed()
-						|| currentThreadIx < globalThreadIx) {
-					return;
+		List<Future<int[]>> chunks = new ArrayList<Future<int[]>>();
+		for (int start = 0; start < totalRevisions; start += CHUNK_SIZE)
+			chunks.add(getWorkers().submit(
+					new Chunk(start, Math.min(start + CHUNK_SIZE,
+							totalRevisions), messages, authors, committers)));
+
+		long lastUIUpdate = System.currentTimeMillis();
+		int totalMatches = 0;
+		try {
+			for (int c = 0; c < chunks.size() && !maxResultsOverflow; c++) {
+				int[] matches = chunks.get(c).get();
+				if (isObsolete())
+					return false;
+				for (int i = 1; i <= matches[0]; i++) {
+					findResults.add(matches[i], fileRevisions[matches[i]]);
+					if (++totalMatches == MAX_RESULTS) {
+						maxResultsOverflow = true;
+						break;
+					}
 				}
 
 				// Updates the toolbar with in process info.
-				if (System.currentTimeMillis() - lastUIUpdate > 500) {
-					final int percentage = (int) (((i + 1F) / totalRevisions) * 100);
+				if (toolbar != null
+						&& System.currentTimeMillis() - lastUIUpdate > 500) {
+					final int percentage = (int) (((c + 1F) / chunks
+							.size()) * 100);
 					toolbar.getDisplay().asyncExec(new Runnable() {
 						public void run() {
 							if (toolbar.isDisposed()) {
@@ -110,116 +210,112 @@ public void run() {
 					});
 					lastUIUpdate = System.currentTimeMillis();
 				}
+			}
+		} catch (ExecutionException e) {
+			Activator.logError(e.getCause().getMessage(), e.getCause());
+		} finally {
+			for (Future<int[]> chunk : chunks)
+				chunk.cancel(false);
+		}
+		return maxResultsOverflow;
+	}
 
-				// Finds for the pattern in the revision history.
-				notFound = true;
-				SWTCommit revision = fileRevisions[i];
+	static void updateGlobalThreadIx() {
+		++globalThreadIx;
+	}
 
-				if (findInCommitId) {
-					String contentId = revision.getId().name();
-					if (contentId != null) {
-						if (ignoreCase) {
-							contentId = contentId.toLowerCase();
-						}
-						if (contentId.indexOf(findPattern) != -1) {
-							totalMatches++;
-							findResults.add(i, revision);
-							notFound = false;
-						}
-					}
-				}
+	/**
+	 * Searches a range of rows. Returns the number of matches followed by
+	 * the rows matching, in ascending order.
+	 */
+	private class Chunk implements Callable<int[]> {
+		private final int start;
 
-				if (findInComments && notFound) {
-					String comment = revision.getFullMessage();
-					if (comment != null) {
-						if (ignoreCase) {
-							comment = comment.toLowerCase();
-						}
-						if (comment.indexOf(findPattern) != -1) {
-							totalMatches++;
-							findResults.add(i, revision);
-							notFound = false;
-						}
-					}
-				}
+		private final int end;
 
-				if (findInAuthor && notFound) {
-					String author = revision.getAuthorIdent().getName();
-					if (author != null) {
-						if (ignoreCase) {
-							author = author.toLowerCase();
-						}
-						if (author.indexOf(findPattern) != -1) {
-							totalMatches++;
-							findResults.add(i, revision);
-							notFound = false;
-						}
-					}
-					if (notFound) {
-						String email = revision.getAuthorIdent()
-								.getEmailAddress();
-						if (email != null) {
-							if (ignoreCase) {
-								email = email.toLowerCase();
-							}
-							if (email.indexOf(findPattern) != -1) {
-								totalMatches++;
-								findResults.add(i, revision);
-								notFound = false;
-							}
-						}
-					}
-				}
+		private final String[] messages;
 
-				if (findInCommitter && notFound) {
-					String committer = revision.getCommitterIdent().getName();
-					if (committer != null) {
-						if (ignoreCase) {
-							committer = committer.toLowerCase();
-						}
-						if (committer.indexOf(findPattern) != -1) {
-							totalMatches++;
-							findResults.add(i, revision);
-							notFound = false;
-						}
-					}
-					if (notFound) {
-						String email = revision.getCommitterIdent()
-								.getEmailAddress();
-						if (email != null) {
-							if (ignoreCase) {
-								email = email.toLowerCase();
-							}
-							if (email.indexOf(findPattern) != -1) {
-								totalMatches++;
-								findResults.add(i, revision);
-								notFound = false;
-							}
-						}
-					}
-				}
+		private final String[] authors;
+
+		private final String[] committers;
 
-				if (totalMatches == MAX_RESULTS) {
-					maxResultsOverflow = true;
+		private final String lowerPattern = pattern.toLowerCase();
+
+		private final char[] idBuffer = new char[Constants.OBJECT_ID_STRING_LENGTH];
+
+		private final StringBuilder id = new StringBuilder(
+				Constants.OBJECT_ID_STRING_LENGTH);
+
+		Chunk(int start, int end, String[] messages, String[] authors,
+				String[] committers) {
+			this.start = start;
+			this.end = end;
+			this.messages = messages;
+			this.authors = authors;
+			this.committers = committers;
+		}
+
+		public int[] call() {
+			int[] matches = new int[16];
+			int count = 0;
+			for (int i = start; i < end; i++) {
+				if ((i & 255) == 0 && isObsolete())
 					break;
+				if (matches(i, fileRevisions[i])) {
+					if (++count == matches.length) {
+						int[] grown = new int[2 * matches.length];
+						System.arraycopy(matches, 0, grown, 0, count);
+						matches = grown;
+					}
+					matches[count] = i;
 				}
 			}
-
+			matches[0] = count;
+			return matches;
 		}
 
-		// Updates the toolbar with the result find info.
-		final boolean overflow = maxResultsOverflow;
-		toolbar.getDisplay().syncExec(new Runnable() {
-			public void run() {
-				if (toolbar.isDisposed()) {
-					return;
-				}
-				toolbar.findCompletionUpdate(pattern, overflow);
+		private boolean matches(int i, SWTCommit revision) {
+			if (findInCommitId) {
+				id.setLength(0);
+				revision.copyTo(idBuffer, id);
+				if (id.indexOf(ignoreCase ? lowerPattern : pattern) != -1)
+					return true;
 			}
-		});
-	}
+			// the lower-cased texts contain the lower-cased pattern if the
+			// texts contain the pattern, so they are checked first also
+			// for case sensitive searches
+			if (findInComments
+					&& FindIndex.getText(messages, FindIndex.MESSAGE, i,
+							revision).indexOf(lowerPattern) != -1) {
+				if (ignoreCase)
+					return true;
+				String comment = revision.getFullMessage();
+				if (comment != null && comment.indexOf(pattern) != -1)
+					return true;
+			}
+			if (findInAuthor
+					&& FindIndex.getText(authors, FindIndex.AUTHOR, i,
+							revision).indexOf(lowerPattern) != -1) {
+				if (ignoreCase || matches(revision.getAuthorIdent()))
+					return true;
+			}
+			if (findInCommitter
+					&& FindIndex.getText(committers, FindIndex.COMMITTER, i,
+							revision).indexOf(lowerPattern) != -1) {
+				if (ignoreCase || matches(revision.getCommitterIdent()))
+					return true;
+			}
+			return false;
+		}
 
-	static void updateGlobalThreadIx() {
-		++globalThreadIx;
+		private boolean matches(PersonIdent ident) {
+			if (ident == null)
+				return false;
+			String name = ident.getName();
+			if (name != null && name.indexOf(pattern) != -1)
+				return true;
+			String email = ident.getEmailAddress();
+			return email != null && email.indexOf(pattern) != -1;
+		}
 	}
 }
@@ -82,7 +82,8 @@ public int compare(StyleRange o1, StyleRange o2) {
 		if(monitor.isCanceled())
 			return Status.CANCEL_STATUS;
 		synchronized(lock) {
-			formatResult = new FormatResult(commitInfo, arr);
+			formatResult = new FormatResult(commitInfo, arr,
+					builder.isComplete());
 		}
 		return Status.OK_STATUS;
 	}
@@ -183,10 +184,13 @@ public List<FileDiff> getCurrentDiffs() {
 	static class FormatResult{
 		String commitInfo;
 		StyleRange[] styleRange;
+		boolean complete;
 
-		FormatResult(String commmitInfo, StyleRange[] styleRange) {
+		FormatResult(String commmitInfo, StyleRange[] styleRange,
+				boolean complete) {
 			this.commitInfo = commmitInfo;
 			this.styleRange = styleRange;
+			this.complete = complete;
 		}
 
 		public String getCommitInfo() {
@@ -196,6 +200,10 @@ public String getCommitInfo() {
 		public StyleRange[] getStyleRange() {
 			return styleRange;
 		}
+
+		public boolean isComplete() {
+			return complete;
+		}
 	}
 
 }
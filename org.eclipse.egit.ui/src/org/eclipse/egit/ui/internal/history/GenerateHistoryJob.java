@@ -19,6 +19,9 @@
 import org.eclipse.egit.ui.UIPreferences;
 import org.eclipse.egit.ui.UIText;
 import org.eclipse.egit.ui.internal.trace.GitTraceLocation;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.osgi.util.NLS;
 
 class GenerateHistoryJob extends Job {
@@ -31,18 +34,35 @@ class GenerateHistoryJob extends Job {
 
 	private final SWTCommitList allCommits;
 
+	private final RevWalk walk;
+
+	/** Commits of the previous walk, see {@link #seedWalk(IProgressMonitor)} */
+	private SWTCommit[] seed;
+
+	private final int seedCount;
+
+	/**
+	 * Commits published to the UI. Only grows, entries which have been
+	 * published are never modified.
+	 */
+	private SWTCommit[] published = new SWTCommit[BATCH_SIZE];
+
 	private int lastUpdateCnt;
 
 	private long lastUpdateAt;
 
 	private boolean trace;
 
-	GenerateHistoryJob(final GitHistoryPage ghp, final SWTCommitList list) {
+	GenerateHistoryJob(final GitHistoryPage ghp, final SWTCommitList list,
+			final RevWalk walk, final SWTCommit[] seed, final int seedCount) {
 		super(NLS.bind(UIText.HistoryPage_refreshJob, Activator.getDefault()
 				.getRepositoryUtil().getRepositoryName(
 						ghp.getInputInternal().getRepository())));
 		page = ghp;
 		allCommits = list;
+		this.walk = walk;
+		this.seed = seed;
+		this.seedCount = seedCount;
 		trace = GitTraceLocation.HISTORYVIEW.isActive();
 	}
 
@@ -58,17 +78,21 @@ protected IStatus run(final IProgressMonitor monitor) {
 					UIText.GenerateHistoryJob_BuildingListMessage, page
 							.getName()));
 			try {
+				seedWalk(monitor);
 				for (;;) {
 					final int oldsz = allCommits.size();
 					if (trace)
 						GitTraceLocation.getTrace().trace(
 								GitTraceLocation.HISTORYVIEW.getLocation(),
 								"Filling commit list"); //$NON-NLS-1$
-					// ensure that filling (here) and reading (CommitGraphTable)
-					// the commit list is thread safe
-					synchronized (allCommits) {
-						allCommits.fillTo(oldsz + BATCH_SIZE - 1);
-					}
+					// Not locked against painting: filling adds passing
+					// lanes to published commits while the UI may paint
+					// them. PlotCommit replaces its lane arrays instead of
+					// changing them, so a row is painted with its old or
+					// its new lanes, and the table is redrawn with the new
+					// lanes after the next update. The commits themselves
+					// are only read through the published array.
+					allCommits.fillTo(oldsz + BATCH_SIZE - 1);
 					if (monitor.isCanceled()) {
 						page.setErrorMessage(NLS.bind(
 								UIText.GenerateHistoryJob_CancelMessage, page
@@ -108,18 +132,50 @@ protected IStatus run(final IProgressMonitor monitor) {
 		return status;
 	}
 
+	/**
+	 * Adds the commits of the previous walk to the new walk. They are then not
+	 * read from the repository again, after ref changes only the new commits
+	 * are read. Lanes and ref labels are still computed by the new walk.
+	 */
+	private void seedWalk(IProgressMonitor monitor) throws IOException {
+		if (seed == null)
+			return;
+		for (int i = 0; i < seedCount && !monitor.isCanceled(); i++) {
+			byte[] raw = seed[i].getRawBuffer();
+			if (raw == null)
+				continue;
+			RevObject known = walk.lookupOrNull(seed[i]);
+			// start points were parsed when they were marked
+			if (known instanceof RevCommit
+					&& ((RevCommit) known).getRawBuffer() != null)
+				continue;
+			RevCommit.parse(walk, raw);
+		}
+		seed = null;
+	}
+
 	void updateUI(boolean incomplete) {
 		if (trace)
 			GitTraceLocation.getTrace().traceEntry(
 					GitTraceLocation.HISTORYVIEW.getLocation());
 		try {
-			if (!incomplete && allCommits.size() == lastUpdateCnt)
+			final int size = allCommits.size();
+			if (!incomplete && size == lastUpdateCnt)
 				return;
 
-			final SWTCommit[] asArray = new SWTCommit[allCommits.size()];
-			allCommits.toArray(asArray);
-			page.showCommitList(this, allCommits, asArray, incomplete);
-			lastUpdateCnt = allCommits.size();
+			// only copy the commits appended since the last update; the
+			// UI keeps reading the previous array until it gets the new one
+			if (size > published.length) {
+				SWTCommit[] grown = new SWTCommit[Math.max(size,
+						2 * published.length)];
+				System.arraycopy(published, 0, grown, 0, lastUpdateCnt);
+				published = grown;
+			}
+			for (int i = lastUpdateCnt; i < size; i++)
+				published[i] = allCommits.get(i);
+			page.showCommitList(this, allCommits, published, size,
+					incomplete);
+			lastUpdateCnt = size;
 		} finally {
 			if (trace)
 				GitTraceLocation.getTrace().traceExit(
@@ -15,8 +15,12 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspaceRoot;
@@ -26,6 +30,7 @@
 import org.eclipse.core.runtime.jobs.IJobChangeEvent;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.eclipse.egit.core.internal.graph.ChangedPathFilter;
 import org.eclipse.egit.core.project.RepositoryMapping;
 import org.eclipse.egit.ui.Activator;
 import org.eclipse.egit.ui.UIIcons;
@@ -67,6 +72,7 @@
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revplot.PlotCommit;
 import org.eclipse.jgit.revplot.PlotWalk;
@@ -78,9 +84,7 @@
 import org.eclipse.jgit.revwalk.RevTag;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
-import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
 import org.eclipse.jgit.treewalk.filter.OrTreeFilter;
-import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.SWT;
@@ -586,6 +590,19 @@ enum ShowFilter {
 	/** Repository of the last input*/
 	private Repository currentRepo;
 
+	/** Refs of {@link #currentRepo} when {@link #currentWalk} was created */
+	private Map<String, Ref> currentRefs;
+
+	/** Whether {@link #currentWalk} starts from all branches */
+	private boolean walkShowsAllBranches;
+
+	/** Commits shown in the table, passed to the next walk */
+	private SWTCommit[] shownCommits;
+
+	private int shownCount;
+
+	private Repository shownRepository;
+
 	private boolean currentShowAllBranches;
 
 	private boolean currentShowNotes;
@@ -1037,7 +1054,8 @@ public void run() {
 														.getLocation(),
 												"Executing async repository changed event"); //$NON-NLS-1$
 							refschangedRunnable = null;
-							initAndStartRevWalk(true);
+							if (refsChangeAffectsGraph())
+								initAndStartRevWalk(true);
 						}
 					}
 				};
@@ -1185,7 +1203,7 @@ else if (o instanceof IAdaptable) {
 			if (showHead)
 				showHead(repo);
 			if (showRef)
-				showRef(ref, repo);
+				showRef(ref);
 			if (showTag)
 				showTag(ref, repo);
 
@@ -1210,14 +1228,10 @@ private void showHead(Repository repo) {
 		}
 	}
 
-	private void showRef(Ref ref, Repository repo) {
-		RevWalk rw = new RevWalk(repo);
-		try {
-			RevCommit c = rw.parseCommit(ref.getLeaf().getObjectId());
-			graph.selectCommit(c);
-		} catch (IOException e) {
-			Activator.handleError(e.getMessage(), e, true);
-		}
+	private void showRef(Ref ref) {
+		ObjectId id = ref.getLeaf().getObjectId();
+		if (id != null)
+			graph.selectCommit(id);
 	}
 
 	private void showTag(Ref ref, Repository repo) {
@@ -1407,24 +1421,28 @@ public HistoryPageInput getInputInternal() {
 	}
 
 	void showCommitList(final Job j, final SWTCommitList list,
-			final SWTCommit[] asArray, final boolean incomplete) {
+			final SWTCommit[] asArray, final int count,
+			final boolean incomplete) {
 		if (trace)
 			GitTraceLocation.getTrace().traceEntry(
 					GitTraceLocation.HISTORYVIEW.getLocation(),
-					new Object[] { list, asArray });
+					new Object[] { list, Integer.valueOf(count) });
 		if (job != j || graph.getControl().isDisposed())
 			return;
 
 		graph.getControl().getDisplay().asyncExec(new Runnable() {
 			public void run() {
 				if (!graph.getControl().isDisposed() && job == j) {
-					graph.setInput(highlightFlag, list, asArray, input);
+					graph.setInput(highlightFlag, list, asArray, count, input);
+					shownCommits = asArray;
+					shownCount = count;
+					shownRepository = input.getRepository();
 					if (trace)
 						GitTraceLocation.getTrace().trace(
 								GitTraceLocation.HISTORYVIEW.getLocation(),
 								"Setting input to table"); //$NON-NLS-1$
 					findToolbar.setInput(highlightFlag, graph.getTableView()
-							.getTable(), asArray);
+							.getTable(), list, asArray, count);
 					if (incomplete)
 						setWarningText(UIText.GitHistoryPage_ListIncompleteWarningMessage);
 					else
@@ -1639,7 +1657,10 @@ private void createNewWalk(Repository db, AnyObjectId headId) {
 		if (currentWalk != null)
 			currentWalk.release();
 		currentWalk = new SWTWalk(db);
+		walkShowsAllBranches = store
+				.getBoolean(UIPreferences.RESOURCEHISTORY_SHOW_ALL_BRANCHES);
 		try {
+			currentRefs = getRefs(db);
 			currentWalk.addAdditionalRefs(db.getRefDatabase().getAdditionalRefs());
 			currentWalk.addAdditionalRefs(db.getRefDatabase().
 					getRefs(Constants.R_NOTES).values());
@@ -1654,10 +1675,91 @@ private void createNewWalk(Repository db, AnyObjectId headId) {
 		highlightFlag = currentWalk.newFlag("highlight"); //$NON-NLS-1$
 	}
 
+	/**
+	 * Checks whether the refs changed in a way which affects the graph. Changed
+	 * refs which are no start points of the walk and which neither pointed nor
+	 * point to a commit known to the walk do not change the commits or labels
+	 * shown in the graph, so no new walk is needed for them.
+	 *
+	 * @return <code>true</code> if the graph needs to be recomputed
+	 */
+	private boolean refsChangeAffectsGraph() {
+		if (input == null || currentWalk == null || currentRefs == null
+				|| !input.getRepository().equals(currentRepo))
+			return true;
+		// the walk must not be accessed while it is filling the list
+		if (job != null && job.getState() != Job.NONE)
+			return true;
+		Repository db = input.getRepository();
+		Map<String, Ref> newRefs;
+		try {
+			newRefs = getRefs(db);
+			Set<String> names = new HashSet<String>(currentRefs.keySet());
+			names.addAll(newRefs.keySet());
+			for (String name : names) {
+				Ref oldRef = currentRefs.get(name);
+				Ref newRef = newRefs.get(name);
+				if (isSameRef(oldRef, newRef))
+					continue;
+				if (isStartRef(name) || isKnownCommit(db, oldRef)
+						|| isKnownCommit(db, newRef))
+					return true;
+			}
+		} catch (IOException e) {
+			return true;
+		}
+		currentRefs = newRefs;
+		if (trace)
+			GitTraceLocation.getTrace().trace(
+					GitTraceLocation.HISTORYVIEW.getLocation(),
+					"Refs changed without affecting the graph"); //$NON-NLS-1$
+		return false;
+	}
+
+	private static Map<String, Ref> getRefs(Repository db) throws IOException {
+		RefDatabase refDb = db.getRefDatabase();
+		Map<String, Ref> refs = new HashMap<String, Ref>(
+				refDb.getRefs(RefDatabase.ALL));
+		for (Ref ref : refDb.getAdditionalRefs())
+			refs.put(ref.getName(), ref);
+		return refs;
+	}
+
+	private static boolean isSameRef(Ref oldRef, Ref newRef) {
+		if (oldRef == null || newRef == null)
+			return oldRef == newRef;
+		if (!oldRef.getLeaf().getName().equals(newRef.getLeaf().getName()))
+			return false;
+		ObjectId oldId = oldRef.getObjectId();
+		ObjectId newId = newRef.getObjectId();
+		if (oldId == null || newId == null)
+			return oldId == newId;
+		return oldId.equals(newId);
+	}
+
+	private boolean isStartRef(String name) {
+		if (name.equals(Constants.HEAD) || name.startsWith(Constants.R_NOTES))
+			return true;
+		if (!walkShowsAllBranches)
+			return false;
+		return name.startsWith(Constants.R_HEADS)
+				|| name.startsWith(Constants.R_REMOTES)
+				|| name.startsWith(Constants.R_TAGS)
+				|| !name.startsWith(Constants.R_REFS);
+	}
+
+	private boolean isKnownCommit(Repository db, Ref ref) throws IOException {
+		if (ref == null || ref.getObjectId() == null)
+			return false;
+		ObjectId id = db.peel(ref).getPeeledObjectId();
+		if (id == null)
+			id = ref.getObjectId();
+		return currentWalk.lookupOrNull(id) != null;
+	}
+
 	private void setWalkStartPoints(Repository db, AnyObjectId headId) {
 		try {
-			if (store
-					.getBoolean(UIPreferences.RESOURCEHISTORY_SHOW_ALL_BRANCHES)) {
+			if (walkShowsAllBranches) {
 				markStartAllRefs(Constants.R_HEADS);
 				markStartAllRefs(Constants.R_REMOTES);
 				markStartAllRefs(Constants.R_TAGS);
@@ -1713,8 +1815,7 @@ && allRegularFiles(paths)) {
 			for (FilterPath p : paths)
 				stringPaths.add(p.getPath());
 
-			currentWalk.setTreeFilter(AndTreeFilter.create(PathFilterGroup
-					.createFromStrings(stringPaths), TreeFilter.ANY_DIFF));
+			ChangedPathFilter.setFilter(currentWalk, db, stringPaths);
 		} else {
 			pathFilters = null;
 			currentWalk.setTreeFilter(TreeFilter.ALL);
@@ -1759,7 +1860,12 @@ private void scheduleNewGenerateHistoryJob() {
 		final SWTCommitList list = new SWTCommitList(graph.getControl()
 				.getDisplay());
 		list.source(currentWalk);
-		final GenerateHistoryJob rj = new GenerateHistoryJob(this, list);
+		// commits already shown are not read from the repository again
+		SWTCommit[] seed = null;
+		if (input.getRepository().equals(shownRepository))
+			seed = shownCommits;
+		final GenerateHistoryJob rj = new GenerateHistoryJob(this, list,
+				currentWalk, seed, shownCount);
 		rj.addJobChangeListener(new JobChangeAdapter() {
 			@Override
 			public void done(final IJobChangeEvent event) {
@@ -8,19 +8,43 @@
  *******************************************************************************/
 package org.eclipse.egit.ui.internal.history;
 
-import org.eclipse.jface.viewers.IStructuredContentProvider;
+import org.eclipse.jface.viewers.ILazyContentProvider;
+import org.eclipse.jface.viewers.TableViewer;
 import org.eclipse.jface.viewers.Viewer;
 
-class GraphContentProvider implements IStructuredContentProvider {
+/**
+ * Lazy content provider for the commit table. The input is an array of
+ * commits which may be longer than the number of items of the table; the
+ * item count is set by the table as commits are appended.
+ */
+class GraphContentProvider implements ILazyContentProvider {
+	private TableViewer viewer;
+
 	private SWTCommit[] list;
 
 	public void inputChanged(final Viewer newViewer, final Object oldInput,
 			final Object newInput) {
+		viewer = (TableViewer) newViewer;
 		list = (SWTCommit[]) newInput;
 	}
 
-	public Object[] getElements(final Object inputElement) {
-		return list;
+	/**
+	 * Replaces the array of the current input after commits were appended,
+	 * without refreshing the viewer
+	 *
+	 * @param commits
+	 *            array starting with the same commits as the current one
+	 */
+	void setCommits(final SWTCommit[] commits) {
+		list = commits;
+	}
+
+	SWTCommit getCommit(final int index) {
+		return list[index];
+	}
+
+	public void updateElement(final int index) {
+		viewer.replace(list[index], index);
 	}
 
 	public void dispose() {
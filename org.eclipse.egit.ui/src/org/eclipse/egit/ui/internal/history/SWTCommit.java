@@ -15,6 +15,9 @@
 class SWTCommit extends PlotCommit<SWTCommitList.SWTLane> {
 	Widget widget;
 
+	/** Row of this commit in the commit table */
+	int index;
+
 	SWTCommit(final AnyObjectId id) {
 		super(id);
 	}
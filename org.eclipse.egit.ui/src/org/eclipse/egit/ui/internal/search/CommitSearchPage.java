@@ -16,6 +16,7 @@
 import java.io.StringReader;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.regex.PatternSyntaxException;
@@ -58,8 +59,11 @@
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.DateTime;
 import org.eclipse.swt.widgets.Group;
 import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Spinner;
 import org.eclipse.swt.widgets.ToolBar;
 import org.eclipse.swt.widgets.ToolItem;
 import org.eclipse.ui.fieldassist.ContentAssistCommandAdapter;
@@ -126,6 +130,18 @@ public void setLayoutData(Object layoutData) {
 
 	private Button searchAllBranchesButton;
 
+	private Button committedAfterButton;
+
+	private DateTime committedAfterDate;
+
+	private Button committedBeforeButton;
+
+	private DateTime committedBeforeDate;
+
+	private Button maxResultsButton;
+
+	private Spinner maxResultsSpinner;
+
 	private CLabel statusLabel;
 
 	private Group repositoryGroup;
@@ -148,6 +164,12 @@ private ISearchQuery newQuery() {
 		settings.setMatchTree(searchTreeButton.getSelection());
 		settings.setMatchParents(searchParentsButton.getSelection());
 		settings.setAllBranches(searchAllBranchesButton.getSelection());
+		if (committedAfterButton.getSelection())
+			settings.setCommittedAfter(getTime(committedAfterDate, false));
+		if (committedBeforeButton.getSelection())
+			settings.setCommittedBefore(getTime(committedBeforeDate, true));
+		if (maxResultsButton.getSelection())
+			settings.setMaxResults(maxResultsSpinner.getSelection());
 		for (Object checked : repositoryViewer.getCheckedElements())
 			settings.addRepository(((RepositoryNode) checked).getRepository()
 					.getDirectory().getAbsolutePath());
@@ -223,6 +245,7 @@ public void createControl(Composite parent) {
 				.applyTo(result);
 		addTextPatternControls(result);
 		addScopeControls(result);
+		addLimitControls(result);
 		addRepositoryControl(result);
 		setControl(result);
 		Dialog.applyDialogFont(result);
@@ -295,6 +318,76 @@ public void widgetSelected(SelectionEvent e) {
 		this.searchParentsButton.addSelectionListener(statusAdapter);
 	}
 
+	private void addLimitControls(Composite parent) {
+		Group limitArea = new Group(parent, SWT.NONE);
+		limitArea.setText(UIText.CommitSearchPage_Limits);
+		GridDataFactory.fillDefaults().grab(true, false).span(2, 1)
+				.applyTo(limitArea);
+		GridLayoutFactory.swtDefaults().numColumns(2).applyTo(limitArea);
+
+		this.committedAfterButton = new Button(limitArea, SWT.CHECK);
+		this.committedAfterButton
+				.setText(UIText.CommitSearchPage_CommittedAfter);
+		this.committedAfterDate = new DateTime(limitArea, SWT.DATE
+				| SWT.DROP_DOWN | SWT.BORDER);
+		enableWith(this.committedAfterButton, this.committedAfterDate);
+
+		this.committedBeforeButton = new Button(limitArea, SWT.CHECK);
+		this.committedBeforeButton
+				.setText(UIText.CommitSearchPage_CommittedBefore);
+		this.committedBeforeDate = new DateTime(limitArea, SWT.DATE
+				| SWT.DROP_DOWN | SWT.BORDER);
+		enableWith(this.committedBeforeButton, this.committedBeforeDate);
+
+		this.maxResultsButton = new Button(limitArea, SWT.CHECK);
+		this.maxResultsButton.setText(UIText.CommitSearchPage_MaxResults);
+		this.maxResultsSpinner = new Spinner(limitArea, SWT.BORDER);
+		this.maxResultsSpinner.setValues(1000, 1, Integer.MAX_VALUE, 0, 100,
+				1000);
+		enableWith(this.maxResultsButton, this.maxResultsSpinner);
+	}
+
+	private static void enableWith(final Button button,
+			final Control control) {
+		control.setEnabled(button.getSelection());
+		button.addSelectionListener(new SelectionAdapter() {
+
+			public void widgetSelected(SelectionEvent e) {
+				control.setEnabled(button.getSelection());
+			}
+
+		});
+	}
+
+	/**
+	 * @param date
+	 * @param endOfDay
+	 * @return the start or the last second of the selected day in
+	 *         milliseconds
+	 */
+	private static long getTime(DateTime date, boolean endOfDay) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		if (endOfDay)
+			calendar.set(date.getYear(), date.getMonth(), date.getDay(), 23,
+					59, 59);
+		else
+			calendar.set(date.getYear(), date.getMonth(), date.getDay());
+		return calendar.getTimeInMillis();
+	}
+
+	private static void setTime(Button button, DateTime date, long time) {
+		button.setSelection(time > 0);
+		date.setEnabled(time > 0);
+		if (time > 0) {
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTimeInMillis(time);
+			date.setDate(calendar.get(Calendar.YEAR),
+					calendar.get(Calendar.MONTH),
+					calendar.get(Calendar.DAY_OF_MONTH));
+		}
+	}
+
 	private void addRepositoryControl(Composite parent) {
 		repositoryGroup = new Group(parent, SWT.NONE);
 		repositoryGroup.setBackgroundMode(SWT.INHERIT_DEFAULT);
@@ -462,6 +555,14 @@ private void handleWidgetSelected() {
 		searchParentsButton.setSelection(settings.isMatchParents());
 		searchTreeButton.setSelection(settings.isMatchTree());
 		searchAllBranchesButton.setSelection(settings.isAllBranches());
+		setTime(committedAfterButton, committedAfterDate,
+				settings.getCommittedAfter());
+		setTime(committedBeforeButton, committedBeforeDate,
+				settings.getCommittedBefore());
+		maxResultsButton.setSelection(settings.getMaxResults() > 0);
+		maxResultsSpinner.setEnabled(settings.getMaxResults() > 0);
+		if (settings.getMaxResults() > 0)
+			maxResultsSpinner.setSelection(settings.getMaxResults());
 
 		List<RepositoryNode> repositories = new LinkedList<RepositoryNode>();
 		for (String path : settings.getRepositories()) {
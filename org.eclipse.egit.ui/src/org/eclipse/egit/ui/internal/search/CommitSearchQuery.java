@@ -13,8 +13,19 @@
 import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -22,6 +33,9 @@
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.egit.core.Activator;
+import org.eclipse.egit.core.internal.graph.CommitGraph;
+import org.eclipse.egit.core.internal.graph.CommitGraphCache;
+import org.eclipse.egit.core.internal.graph.CommitTextIndex;
 import org.eclipse.egit.ui.UIText;
 import org.eclipse.egit.ui.internal.commit.RepositoryCommit;
 import org.eclipse.jgit.lib.Constants;
@@ -30,8 +44,12 @@
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.CommitTimeRevFilter;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.util.IntList;
 import org.eclipse.search.ui.ISearchQuery;
 import org.eclipse.search.ui.ISearchResult;
 
@@ -39,9 +57,19 @@
  * Commit search query class that runs a {@link RevWalk} for all
  * {@link Repository} objects included in the {@link CommitSearchSettings} and
  * matches all {@link RevCommit} objects against the search settings.
+ * <p>
+ * If the {@link CommitGraph} and the {@link CommitTextIndex} of a repository
+ * are available and the pattern is no regular expression, only the commits
+ * the index selects as candidates are parsed and matched.
+ * <p>
+ * The repositories are searched concurrently on a pool with at most one thread
+ * per processor. The matches found so far are added to the result in batches.
  */
 public class CommitSearchQuery implements ISearchQuery {
 
+	/** milliseconds between adding the matches found so far to the result */
+	private static final long PUBLISH_INTERVAL = 200;
+
 	private abstract class SearchMatcher {
 
 		abstract boolean matches(Pattern pattern, RevCommit commit);
@@ -117,6 +145,13 @@ public boolean matches(Pattern pattern, RevCommit commit) {
 
 	private List<SearchMatcher> matchers = new LinkedList<SearchMatcher>();
 
+	/** matches found by the workers but not yet added to the result */
+	private final List<RepositoryCommit> pendingMatches = new ArrayList<RepositoryCommit>();
+
+	private int matchCount;
+
+	private volatile boolean stopped;
+
 	/**
 	 * Create git search query
 	 *
@@ -163,64 +198,145 @@ private Repository getRepository(String name) throws IOException {
 	public IStatus run(IProgressMonitor monitor)
 			throws OperationCanceledException {
 		this.result.removeAll();
+		synchronized (pendingMatches) {
+			pendingMatches.clear();
+			matchCount = 0;
+		}
+		stopped = false;
 
-		Pattern pattern = PatternUtils.createPattern(
+		final Pattern pattern = PatternUtils.createPattern(
 				this.settings.getTextPattern(),
 				this.settings.isCaseSensitive(), this.settings.isRegExSearch());
-		List<String> paths = settings.getRepositories();
+		List<Repository> repositories = new ArrayList<Repository>();
 		try {
-			for (String path : paths) {
-				if (monitor.isCanceled())
-					throw new OperationCanceledException();
-
+			for (String path : settings.getRepositories()) {
 				Repository repo = getRepository(path);
-				if (repo == null)
-					continue;
-
-				monitor.setTaskName(MessageFormat.format(
-						UIText.CommitSearchQuery_TaskSearchCommits, repo
-								.getDirectory().getParentFile().getName()));
-				walkRepository(repo, pattern, monitor);
+				if (repo != null)
+					repositories.add(repo);
 			}
 		} catch (IOException e) {
 			org.eclipse.egit.ui.Activator.handleError(
 					"Error searching commits", e, true); //$NON-NLS-1$
+			return Status.OK_STATUS;
 		}
+		if (repositories.isEmpty())
+			return Status.OK_STATUS;
+
+		String task;
+		if (repositories.size() != 1)
+			task = MessageFormat.format(
+					UIText.CommitSearchQuery_TaskSearchCommits,
+					Integer.valueOf(repositories.size()));
+		else
+			task = UIText.CommitSearchQuery_TaskSearchCommitsSingle;
+		monitor.beginTask(task, repositories.size());
+		int threads = Math.min(repositories.size(), Runtime.getRuntime()
+				.availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CompletionService<Void> service = new ExecutorCompletionService<Void>(
+				executor);
+		IOException error = null;
+		try {
+			for (final Repository repo : repositories)
+				service.submit(new Callable<Void>() {
+					public Void call() throws IOException {
+						walkRepository(repo, pattern);
+						return null;
+					}
+				});
+			int remaining = repositories.size();
+			while (remaining > 0) {
+				Future<Void> done = service.poll(PUBLISH_INTERVAL,
+						TimeUnit.MILLISECONDS);
+				if (monitor.isCanceled())
+					stopped = true;
+				if (done != null) {
+					remaining--;
+					monitor.worked(1);
+					try {
+						done.get();
+					} catch (ExecutionException e) {
+						if (error == null
+								&& e.getCause() instanceof IOException)
+							error = (IOException) e.getCause();
+						else if (e.getCause() instanceof RuntimeException)
+							throw (RuntimeException) e.getCause();
+						else if (e.getCause() instanceof Error)
+							throw (Error) e.getCause();
+					}
+				}
+				publishMatches();
+			}
+		} catch (InterruptedException e) {
+			stopped = true;
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+			publishMatches();
+			monitor.done();
+		}
+		if (error != null)
+			org.eclipse.egit.ui.Activator.handleError(
+					"Error searching commits", error, true); //$NON-NLS-1$
+		if (monitor.isCanceled())
+			throw new OperationCanceledException();
 		return Status.OK_STATUS;
 	}
 
-	private void walkRepository(Repository repository, Pattern pattern,
-			IProgressMonitor monitor) throws IOException {
+	/**
+	 * Adds a match to the matches to be published and stops the search when
+	 * the maximum number of matches is reached
+	 */
+	private void addMatch(RepositoryCommit commit) {
+		int maxResults = this.settings.getMaxResults();
+		synchronized (pendingMatches) {
+			if (maxResults > 0 && matchCount >= maxResults)
+				return;
+			pendingMatches.add(commit);
+			matchCount++;
+			if (maxResults > 0 && matchCount >= maxResults)
+				stopped = true;
+		}
+	}
+
+	private void publishMatches() {
+		List<RepositoryCommit> matches;
+		synchronized (pendingMatches) {
+			if (pendingMatches.isEmpty())
+				return;
+			matches = new ArrayList<RepositoryCommit>(pendingMatches);
+			pendingMatches.clear();
+		}
+		result.addResults(matches);
+	}
+
+	/**
+	 * Runs on a worker thread and returns early if the search is stopped
+	 */
+	private void walkRepository(Repository repository, Pattern pattern)
+			throws IOException {
+		if (!this.settings.isRegExSearch()) {
+			CommitGraph graph = CommitGraphCache.getCommitGraph(repository);
+			CommitTextIndex index = CommitGraphCache
+					.getCommitTextIndex(repository);
+			if (graph != null && index != null) {
+				searchIndex(repository, pattern, graph, index);
+				return;
+			}
+		}
 		RevWalk walk = new RevWalk(repository);
 		try {
 			walk.setRetainBody(true);
-			List<RevCommit> commits = new LinkedList<RevCommit>();
-			if (this.settings.isAllBranches()) {
-				for (Ref ref : repository.getRefDatabase()
-						.getRefs(Constants.R_HEADS).values())
-					if (!ref.isSymbolic())
-						commits.add(walk.parseCommit(ref.getObjectId()));
-				for (Ref ref : repository.getRefDatabase()
-						.getRefs(Constants.R_REMOTES).values())
-					if (!ref.isSymbolic())
-						commits.add(walk.parseCommit(ref.getObjectId()));
-			} else {
-				ObjectId headCommit = repository.resolve(Constants.HEAD);
-				if (headCommit != null)
-					commits.add(walk.parseCommit(headCommit));
-			}
-
+			RevFilter timeFilter = getTimeFilter();
+			if (timeFilter != null)
+				walk.setRevFilter(timeFilter);
+			List<RevCommit> commits = getStartCommits(repository, walk);
 			if (!commits.isEmpty()) {
 				walk.markStart(commits);
 				for (RevCommit commit : walk) {
-					if (monitor.isCanceled())
-						throw new OperationCanceledException();
-					for (SearchMatcher matcher : this.matchers)
-						if (matcher.matches(pattern, commit)) {
-							result.addResult(new RepositoryCommit(repository,
-									commit));
-							break;
-						}
+					if (stopped)
+						return;
+					addIfMatching(repository, pattern, commit);
 				}
 			}
 		} finally {
@@ -228,6 +344,176 @@ private void walkRepository(Repository repository, Pattern pattern,
 		}
 	}
 
+	/**
+	 * @return a filter stopping the walk at commits older than the date range,
+	 *         <code>null</code> if no date range is set
+	 */
+	private RevFilter getTimeFilter() {
+		long after = this.settings.getCommittedAfter();
+		long before = this.settings.getCommittedBefore();
+		if (after > 0 && before > 0)
+			return CommitTimeRevFilter.between(new Date(after),
+					new Date(before));
+		if (after > 0)
+			return CommitTimeRevFilter.after(new Date(after));
+		if (before > 0)
+			return CommitTimeRevFilter.before(new Date(before));
+		return null;
+	}
+
+	private boolean isAfterRange(int commitTime) {
+		long before = this.settings.getCommittedBefore();
+		return before > 0 && commitTime > before / 1000;
+	}
+
+	private boolean isBeforeRange(int commitTime) {
+		long after = this.settings.getCommittedAfter();
+		return after > 0 && commitTime < after / 1000;
+	}
+
+	private List<RevCommit> getStartCommits(Repository repository,
+			RevWalk walk) throws IOException {
+		List<RevCommit> commits = new LinkedList<RevCommit>();
+		if (this.settings.isAllBranches()) {
+			for (Ref ref : repository.getRefDatabase()
+					.getRefs(Constants.R_HEADS).values())
+				if (!ref.isSymbolic())
+					commits.add(walk.parseCommit(ref.getObjectId()));
+			for (Ref ref : repository.getRefDatabase()
+					.getRefs(Constants.R_REMOTES).values())
+				if (!ref.isSymbolic())
+					commits.add(walk.parseCommit(ref.getObjectId()));
+		} else {
+			ObjectId headCommit = repository.resolve(Constants.HEAD);
+			if (headCommit != null)
+				commits.add(walk.parseCommit(headCommit));
+		}
+		return commits;
+	}
+
+	private void addIfMatching(Repository repository, Pattern pattern,
+			RevCommit commit) {
+		for (SearchMatcher matcher : this.matchers)
+			if (matcher.matches(pattern, commit)) {
+				addMatch(new RepositoryCommit(repository, commit));
+				break;
+			}
+	}
+
+	/**
+	 * Matches only the candidates among the commits reachable from the start
+	 * commits, each as soon as it is found. Commits missing in the graph are
+	 * walked until the graph is reached, commits missing in the index are
+	 * always candidates. Like the walk with a date range, the traversal does not
+	 * continue beyond commits older than the range.
+	 */
+	private void searchIndex(Repository repository, Pattern pattern,
+			CommitGraph graph, CommitTextIndex index) throws IOException {
+		BitSet textCandidates = getTextCandidates(index);
+		RevWalk walk = new RevWalk(repository);
+		try {
+			walk.setRetainBody(true);
+			BitSet visited = new BitSet(graph.getCommitCount());
+			IntList positions = new IntList();
+			RevFlag seen = walk.newFlag("seen"); //$NON-NLS-1$
+			LinkedList<RevCommit> pending = new LinkedList<RevCommit>(
+					getStartCommits(repository, walk));
+			while (!pending.isEmpty()) {
+				if (stopped)
+					return;
+				RevCommit commit = pending.removeFirst();
+				if (commit.has(seen))
+					continue;
+				commit.add(seen);
+				int position = graph.find(commit);
+				if (position >= 0) {
+					if (!visited.get(position)) {
+						visited.set(position);
+						positions.add(position);
+					}
+					continue;
+				}
+				if (isBeforeRange(commit.getCommitTime()))
+					continue;
+				if (!isAfterRange(commit.getCommitTime()))
+					addIfMatching(repository, pattern, commit);
+				for (RevCommit parent : commit.getParents()) {
+					walk.parseHeaders(parent);
+					pending.add(parent);
+				}
+			}
+			for (int i = 0; i < positions.size(); i++) {
+				if (stopped)
+					return;
+				int position = positions.get(i);
+				int commitTime = graph.getCommitTime(position);
+				if (isBeforeRange(commitTime))
+					continue;
+				ObjectId id = graph.getId(position);
+				if (!isAfterRange(commitTime)
+						&& isCandidate(pattern, graph, position, id, index,
+								textCandidates))
+					addIfMatching(repository, pattern, walk.parseCommit(id));
+				for (int n = 0; n < graph.getParentCount(position); n++) {
+					int parent = graph.getParent(position, n);
+					if (!visited.get(parent)) {
+						visited.set(parent);
+						positions.add(parent);
+					}
+				}
+			}
+		} finally {
+			walk.dispose();
+		}
+	}
+
+	/**
+	 * @return the index positions of the commits whose text might match the
+	 *         pattern, <code>null</code> if every commit might match
+	 */
+	private BitSet getTextCandidates(CommitTextIndex index) {
+		if (!this.settings.isMatchAuthor()
+				&& !this.settings.isMatchCommitter()
+				&& !this.settings.isMatchMessage())
+			return new BitSet();
+		BitSet candidates = null;
+		String text = this.settings.getTextPattern();
+		// the wildcards and escapes of the pattern separate literal parts
+		for (String part : text.split("[*?\\\\]")) { //$NON-NLS-1$
+			BitSet partCandidates = index.getCandidates(part);
+			if (partCandidates == null)
+				continue;
+			if (candidates == null)
+				candidates = partCandidates;
+			else
+				candidates.and(partCandidates);
+		}
+		return candidates;
+	}
+
+	private boolean isCandidate(Pattern pattern, CommitGraph graph,
+			int position, ObjectId id, CommitTextIndex index,
+			BitSet textCandidates) {
+		int textPosition = index.find(id);
+		if (textPosition < 0)
+			return true;
+		if (textCandidates == null || textCandidates.get(textPosition))
+			return true;
+		if (this.settings.isMatchCommit() && pattern.matcher(id.name()).find())
+			return true;
+		if (this.settings.isMatchTree()
+				&& pattern.matcher(index.getTreeId(textPosition).name())
+						.find())
+			return true;
+		if (this.settings.isMatchParents())
+			for (int n = 0; n < graph.getParentCount(position); n++)
+				if (pattern.matcher(
+						graph.getId(graph.getParent(position, n)).name())
+						.find())
+					return true;
+		return false;
+	}
+
 	/**
 	 * @see org.eclipse.search.ui.ISearchQuery#getLabel()
 	 */
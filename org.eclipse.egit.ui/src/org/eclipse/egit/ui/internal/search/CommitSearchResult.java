@@ -11,6 +11,7 @@
 package org.eclipse.egit.ui.internal.search;
 
 import java.text.MessageFormat;
+import java.util.Collection;
 
 import org.eclipse.egit.ui.UIText;
 import org.eclipse.egit.ui.internal.commit.RepositoryCommit;
@@ -19,6 +20,7 @@
 import org.eclipse.search.ui.text.AbstractTextSearchResult;
 import org.eclipse.search.ui.text.IEditorMatchAdapter;
 import org.eclipse.search.ui.text.IFileMatchAdapter;
+import org.eclipse.search.ui.text.Match;
 import org.eclipse.ui.model.IWorkbenchAdapter;
 
 /**
@@ -50,6 +52,23 @@ public CommitSearchResult addResult(RepositoryCommit commit) {
 		return this;
 	}
 
+	/**
+	 * Add commits to result with a single change event
+	 *
+	 * @param commits
+	 * @return this result
+	 */
+	public CommitSearchResult addResults(Collection<RepositoryCommit> commits) {
+		if (!commits.isEmpty()) {
+			Match[] matches = new Match[commits.size()];
+			int i = 0;
+			for (RepositoryCommit commit : commits)
+				matches[i++] = new CommitMatch(commit);
+			addMatches(matches);
+		}
+		return this;
+	}
+
 	/**
 	 * @see org.eclipse.search.ui.ISearchResult#getLabel()
 	 */
@@ -42,6 +42,12 @@ public class CommitSearchSettings {
 
 	private static final String ALL_BRANCHES = "allBranches"; //$NON-NLS-1$
 
+	private static final String COMMITTED_AFTER = "committedAfter"; //$NON-NLS-1$
+
+	private static final String COMMITTED_BEFORE = "committedBefore"; //$NON-NLS-1$
+
+	private static final String MAX_RESULTS = "maxResults"; //$NON-NLS-1$
+
 	private static final String REPOSITORY_COUNT = "repositoryCount"; //$NON-NLS-1$
 
 	private static final String REPOSITORY = "repository"; //$NON-NLS-1$
@@ -67,6 +73,10 @@ public static CommitSearchSettings create(IDialogSettings settings) {
 			searchSettings.setMatchParents(section.getBoolean(MATCH_PARENTS));
 			searchSettings.setMatchTree(section.getBoolean(MATCH_TREE));
 			searchSettings.setAllBranches(section.getBoolean(ALL_BRANCHES));
+			searchSettings.setCommittedAfter(getLong(section, COMMITTED_AFTER));
+			searchSettings.setCommittedBefore(getLong(section,
+					COMMITTED_BEFORE));
+			searchSettings.setMaxResults((int) getLong(section, MAX_RESULTS));
 			try {
 				int count = section.getInt(REPOSITORY_COUNT);
 				for (int i = 0; i < count; i++)
@@ -78,6 +88,15 @@ public static CommitSearchSettings create(IDialogSettings settings) {
 		return searchSettings;
 	}
 
+	private static long getLong(IDialogSettings section, String key) {
+		try {
+			return section.getLong(key);
+		} catch (NumberFormatException ignored) {
+			// not stored by older versions
+			return 0;
+		}
+	}
+
 	private boolean isMatchCommit = true;
 
 	private boolean isMatchCommitter = true;
@@ -96,6 +115,12 @@ public static CommitSearchSettings create(IDialogSettings settings) {
 
 	private boolean isAllBranches = false;
 
+	private long committedAfter = 0;
+
+	private long committedBefore = 0;
+
+	private int maxResults = 0;
+
 	private String textPattern = null;
 
 	private List<String> repositories = new LinkedList<String>();
@@ -120,6 +145,9 @@ public void store(IDialogSettings settings) {
 		section.put(MATCH_PARENTS, isMatchParents);
 		section.put(MATCH_TREE, isMatchTree);
 		section.put(ALL_BRANCHES, isAllBranches);
+		section.put(COMMITTED_AFTER, committedAfter);
+		section.put(COMMITTED_BEFORE, committedBefore);
+		section.put(MAX_RESULTS, maxResults);
 
 		int count = 0;
 		for (String repo : this.repositories) {
@@ -239,4 +267,40 @@ public void setAllBranches(boolean isAllBranches) {
 		this.isAllBranches = isAllBranches;
 	}
 
+	/**
+	 * @return the earliest commit time in milliseconds to search, 0 for no
+	 *         limit
+	 */
+	public long getCommittedAfter() {
+		return this.committedAfter;
+	}
+
+	/** @param committedAfter */
+	public void setCommittedAfter(long committedAfter) {
+		this.committedAfter = committedAfter;
+	}
+
+	/**
+	 * @return the latest commit time in milliseconds to search, 0 for no
+	 *         limit
+	 */
+	public long getCommittedBefore() {
+		return this.committedBefore;
+	}
+
+	/** @param committedBefore */
+	public void setCommittedBefore(long committedBefore) {
+		this.committedBefore = committedBefore;
+	}
+
+	/** @return maximum number of matches, 0 for no limit */
+	public int getMaxResults() {
+		return this.maxResults;
+	}
+
+	/** @param maxResults */
+	public void setMaxResults(int maxResults) {
+		this.maxResults = maxResults;
+	}
+
 }
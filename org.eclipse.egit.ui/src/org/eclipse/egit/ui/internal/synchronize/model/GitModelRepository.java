@@ -21,6 +21,8 @@
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.egit.core.Activator;
+import org.eclipse.egit.core.internal.graph.CommitGraph;
+import org.eclipse.egit.core.internal.graph.CommitGraphCache;
 import org.eclipse.egit.core.synchronize.dto.GitSynchronizeData;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.lib.ObjectId;
@@ -180,6 +182,9 @@ private List<GitModelObjectContainer> getListOfCommit() {
 			if (srcRev.equals(dstRev))
 				return result;
 
+			if (pathFilter == null && addCommitsFromGraph(rw, result))
+				return result;
+
 			RevFlag localFlag = rw.newFlag("local"); //$NON-NLS-1$
 			RevFlag remoteFlag = rw.newFlag("remote"); //$NON-NLS-1$
 			RevFlagSet allFlags = new RevFlagSet();
@@ -212,6 +217,34 @@ else if (nextCommit.has(remoteFlag))
 		return result;
 	}
 
+	/**
+	 * Finds the commits only on one side on the commit graph, only these
+	 * commits are parsed
+	 *
+	 * @return <code>false</code> if the commit graph does not contain both
+	 *         commits yet
+	 */
+	private boolean addCommitsFromGraph(RevWalk rw,
+			List<GitModelObjectContainer> result) throws IOException {
+		CommitGraph graph = CommitGraphCache.getCommitGraph(repo);
+		if (graph == null)
+			return false;
+		int src = graph.find(srcRev);
+		int dst = graph.find(dstRev);
+		if (src < 0 || dst < 0)
+			return false;
+		List<Integer> local = new ArrayList<Integer>();
+		List<Integer> remote = new ArrayList<Integer>();
+		graph.findExclusive(src, dst, local, remote);
+		for (Integer position : local)
+			result.add(new GitModelCommit(this, rw.parseCommit(graph
+					.getId(position.intValue())), RIGHT, pathFilter));
+		for (Integer position : remote)
+			result.add(new GitModelCommit(this, rw.parseCommit(graph
+					.getId(position.intValue())), LEFT, pathFilter));
+		return true;
+	}
+
 	private GitModelWorkingTree getLocaWorkingTreeChanges() {
 		try {
 			return new GitModelWorkingTree(this, pathFilter);